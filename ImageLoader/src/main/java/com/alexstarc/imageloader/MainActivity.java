@@ -1,16 +1,16 @@
 package com.alexstarc.imageloader;
 
 import android.app.Activity;
-import android.content.BroadcastReceiver;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
+import android.content.ServiceConnection;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.IBinder;
 import android.support.design.widget.FloatingActionButton;
-import android.support.v4.content.LocalBroadcastManager;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
 import android.text.TextUtils;
@@ -26,6 +26,10 @@ import java.lang.ref.WeakReference;
 import java.net.HttpURLConnection;
 
 import com.alexstarc.imageloader.fragments.ImageDisplayDialogFragment;
+import com.alexstarc.imageloader.service.LoadBatch;
+import com.alexstarc.imageloader.service.LoadListener;
+import com.alexstarc.imageloader.service.LoadProgress;
+import com.alexstarc.imageloader.service.LoadResult;
 import com.alexstarc.imageloader.service.LoaderService;
 
 public class MainActivity extends AppCompatActivity {
@@ -34,6 +38,8 @@ public class MainActivity extends AppCompatActivity {
     private static final String EXTRA_SAVED_LOADING_STATE = "loadingState";
     private static final String TAG = "MainActivity";
     private static final String IMAGE_DIALOG_TAG = "imageDialog";
+    private static final long BYTES_PER_KB = 1024;
+    private static final long MILLIS_PER_SECOND = 1000;
 
     private FloatingActionButton mFab = null;
 
@@ -41,6 +47,7 @@ public class MainActivity extends AppCompatActivity {
     private EditText mUrlEdit = null;
     private TextView mUrlEditLabel = null;
     private View mLoadingContainer = null;
+    private TextView mLoadingProgress = null;
 
     // Simple state holder, in case of more complex UIs it would be better to use separate fragments or viewPager or
     // proper state manager
@@ -58,50 +65,81 @@ public class MainActivity extends AppCompatActivity {
             //"http://placehold.it/120x120&text=image1";
             //"http://lorempixel.com/400/200/";
 
-    private LoadBroadcastReceiver mReceiver = null;
     /** Stores activity paused state */
     private boolean mPaused;
+    /** Bound loader service, null until connected */
+    private LoaderService mLoaderService = null;
+    /** Batch which is loading or waits for service connection */
+    private LoadBatch mBatch = null;
 
-    /** Static inner classes are preferable */
-    private static final class LoadBroadcastReceiver extends BroadcastReceiver {
+    private final ServiceConnection mConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(final ComponentName name, final IBinder service) {
+            mLoaderService = ((LoaderService.LocalBinder) service).getService();
+
+            if (mBatch != null && !mBatch.isCancelled()) {
+                mLoaderService.load(mBatch);
+            }
+        }
 
-        // Interface here will work better
-        private MainActivity mActivity = null;
+        @Override
+        public void onServiceDisconnected(final ComponentName name) {
+            mLoaderService = null;
+        }
+    };
+
+    /** Static inner classes are preferable */
+    private static final class ImageLoadListener implements LoadListener {
+        private final Context mContext;
+        private final WeakReference<MainActivity> mActivity;
 
         /**
          * @param activity parent activity
          */
-        void setActivity(final MainActivity activity) {
-            mActivity = activity;
+        ImageLoadListener(final MainActivity activity) {
+            mContext = activity.getApplicationContext();
+            mActivity = new WeakReference<MainActivity>(activity);
         }
 
         @Override
-        public void onReceive(final Context context, final Intent intent) {
-            final String action = intent.getAction();
+        public void onProgress(final LoadProgress progress) {
+            final MainActivity activity = mActivity.get();
 
-            if (LoaderService.ACTION_LOAD_RESULT.equals(action)) {
-                final int status = intent.getIntExtra(LoaderService.EXTRA_STATUS, -1);
-                final String path = intent.getStringExtra(LoaderService.EXTRA_PATH);
-                final String rotatedPath = intent.getStringExtra(LoaderService.EXTRA_ROTATED_PATH);
+            if (activity != null) {
+                activity.showProgress(progress);
+            }
+        }
 
-                Log.d(TAG, "LoadResult " + status + " at [" + path + "]");
+        @Override
+        public void onResult(final LoadResult result) {
+            final int status = result.getStatus();
+            final String path = result.getPath();
+            final String rotatedPath = result.getRotatedPath();
+            final MainActivity activity = mActivity.get();
 
-                if (status != HttpURLConnection.HTTP_OK) {
-                    Toast.makeText(context, String.format(context.getString(R.string.error_loading), status), Toast.LENGTH_LONG).show();
-                } else {
-                    Toast.makeText(context, context.getResources().getText(R.string.saved_to) + path, Toast.LENGTH_LONG).show();
+            Log.d(TAG, "LoadResult " + status + " at [" + path + "]");
 
-                    if (mActivity != null && !TextUtils.isEmpty(rotatedPath)) {
-                        mActivity.showRotatedImageDialog(rotatedPath);
-                    } else {
-                        Toast.makeText(context, R.string.no_rotated_image, Toast.LENGTH_LONG).show();
-                    }
-                }
-                if (mActivity != null) {
-                    mActivity.showInput();
+            if (status != HttpURLConnection.HTTP_OK) {
+                Toast.makeText(mContext, String.format(mContext.getString(R.string.error_loading), status), Toast.LENGTH_LONG).show();
+            } else {
+                Toast.makeText(mContext, mContext.getResources().getText(R.string.saved_to) + path, Toast.LENGTH_LONG).show();
+
+                if (activity != null && !TextUtils.isEmpty(rotatedPath)) {
+                    activity.showRotatedImageDialog(rotatedPath);
+                } else {
+                    Toast.makeText(mContext, R.string.no_rotated_image, Toast.LENGTH_LONG).show();
                 }
             }
         }
+
+        @Override
+        public void onBatchFinished(final LoadBatch batch) {
+            final MainActivity activity = mActivity.get();
+
+            if (activity != null) {
+                activity.showInput();
+            }
+        }
     }
 
     /**
@@ -128,6 +166,7 @@ public class MainActivity extends AppCompatActivity {
         mUrlEdit = (EditText) findViewById(R.id.urlEdit);
         mUrlEditLabel = (TextView) findViewById(R.id.urlEditLabel);
         mLoadingContainer = findViewById(R.id.loadingContainer);
+        mLoadingProgress = (TextView) findViewById(R.id.loadingProgress);
 
         if (!TextUtils.isEmpty(TEST_URL)) {
             mUrlEdit.setText(TEST_URL);
@@ -162,16 +201,14 @@ public class MainActivity extends AppCompatActivity {
     protected void onPause() {
         super.onPause();
 
-        final Intent intent = new Intent(LoaderService.Action.STOP_LOADING.name());
+        if (mBatch != null) {
+            mBatch.cancel();
+            mBatch = null;
+        }
 
-        intent.setClass(getApplicationContext(), LoaderService.class);
-        startService(intent);
         mLoadingUi = false;
-
-        if (mReceiver != null) {
-            LocalBroadcastManager.getInstance(getApplicationContext())
-                    .unregisterReceiver(mReceiver);
-        }
+        unbindService(mConnection);
+        mLoaderService = null;
 
         mPaused = true;
     }
@@ -180,29 +217,23 @@ public class MainActivity extends AppCompatActivity {
     protected void onResume() {
         super.onResume();
 
-        final IntentFilter filter = new IntentFilter(LoaderService.ACTION_LOAD_RESULT);
-
-        mReceiver = new LoadBroadcastReceiver();
-
-        mReceiver.setActivity(this);
-        LocalBroadcastManager.getInstance(getApplicationContext())
-                .registerReceiver(mReceiver, filter);
+        bindService(new Intent(getApplicationContext(), LoaderService.class), mConnection, Context.BIND_AUTO_CREATE);
 
         mPaused = false;
     }
 
     /**
-     * Starts LoaderService with provided url and sets loading UI
+     * Loads provided url with bound LoaderService and sets loading UI.
+     * If service isn't connected yet, batch is submitted once it's connected.
      *
      * @param urlStr to load image from
      */
     private void startLoad(final String urlStr) {
-        final Intent intent = new Intent(LoaderService.Action.LOAD_IMAGE.name());
+        mBatch = new LoadBatch(null, new ImageLoadListener(this)).add(urlStr);
 
-        intent.setClass(getApplicationContext(), LoaderService.class);
-        intent.putExtra(LoaderService.EXTRA_URL, urlStr);
-
-        startService(intent);
+        if (mLoaderService != null) {
+            mLoaderService.load(mBatch);
+        }
 
         showLoading();
     }
@@ -216,6 +247,7 @@ public class MainActivity extends AppCompatActivity {
         mUrlEdit.setVisibility(View.GONE);
         mUrlEditLabel.setVisibility(View.GONE);
         mLoadingContainer.setVisibility(View.VISIBLE);
+        mLoadingProgress.setVisibility(View.GONE);
 
         // Hide keyboard
         InputMethodManager imm = (InputMethodManager)getSystemService(Context.INPUT_METHOD_SERVICE);
@@ -224,6 +256,25 @@ public class MainActivity extends AppCompatActivity {
         imm.hideSoftInputFromWindow(mFab.getWindowToken(), 0);
     }
 
+    /**
+     * Shows loaded size, speed and remaining time under loading indicator
+     *
+     * @param progress of the image
+     */
+    private void showProgress(final LoadProgress progress) {
+        final long kbPerSecond = Math.max(0, progress.getBytesPerSecond() / BYTES_PER_KB);
+
+        if (progress.getPercent() >= 0 && progress.getEtaMillis() >= 0) {
+            mLoadingProgress.setText(getString(R.string.loading_progress, progress.getPercent(), kbPerSecond,
+                    (progress.getEtaMillis() + MILLIS_PER_SECOND - 1) / MILLIS_PER_SECOND));
+        } else {
+            mLoadingProgress.setText(getString(R.string.loading_progress_unknown_size,
+                    progress.getBytesLoaded() / BYTES_PER_KB, kbPerSecond));
+        }
+
+        mLoadingProgress.setVisibility(View.VISIBLE);
+    }
+
     private void showInput() {
         mLoadingUi = false;
         mFab.setEnabled(true);
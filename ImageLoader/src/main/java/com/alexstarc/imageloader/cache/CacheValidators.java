@@ -0,0 +1,214 @@
+package com.alexstarc.imageloader.cache;
+
+import android.text.TextUtils;
+
+import com.alexstarc.imageloader.net.Response;
+
+import java.util.Map;
+
+/**
+ * Http validators and freshness lifetime of cached response, used to revalidate cached files
+ * with conditional requests instead of loading full body again.
+ */
+public class CacheValidators {
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    private static final String HEADER_AGE = "Age";
+    private static final String HEADER_DATE = "Date";
+    private static final String HEADER_EXPIRES = "Expires";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String NO_CACHE = "no-cache";
+    private static final String NO_STORE = "no-store";
+    private static final String MAX_AGE = "max-age=";
+
+    /** Part of last modification age used as freshness lifetime when server didn't provide any, RFC 7234 */
+    private static final int HEURISTIC_DIVIDER = 10;
+    /** Heuristic freshness lifetime is not longer than this */
+    private static final long HEURISTIC_MAX = 24 * 60 * 60 * 1000; // ms
+    /**
+     * Freshness lifetime of response without any caching headers and validators. Such response cannot be
+     * revalidated, so without it every load would download the whole image again
+     */
+    private static final long DEFAULT_LIFETIME = 60 * 60 * 1000; // ms
+    /** Lifetime of response which server didn't say anything about */
+    private static final long UNKNOWN_LIFETIME = -1;
+    /** Separator of fields in serialized form, cannot be part of header value */
+    private static final String SEPARATOR = "\n";
+
+    private final String mETag;
+    private final String mLastModified;
+    /** Time response stops to be fresh, ms from epoch */
+    private final long mExpires;
+    /** False if response must not be stored, it's not serialized since such responses are never cached */
+    private final boolean mIsStorable;
+
+    private CacheValidators(final String eTag, final String lastModified, final long expires,
+                            final boolean storable) {
+        mETag = eTag == null ? "" : eTag;
+        mLastModified = lastModified == null ? "" : lastModified;
+        mExpires = expires;
+        mIsStorable = storable;
+    }
+
+    /**
+     * Reads validators and freshness of the response
+     *
+     * @param response with received headers
+     * @param previous validators of cached response, used for missing headers in 304 response, can be null
+     *
+     * @return validators of the response
+     */
+    public static CacheValidators fromResponse(final Response response, final CacheValidators previous) {
+        final long now = System.currentTimeMillis();
+        String eTag = response.getHeader(HEADER_ETAG);
+        String lastModified = response.getHeader(HEADER_LAST_MODIFIED);
+
+        if (previous != null) {
+            eTag = TextUtils.isEmpty(eTag) ? previous.mETag : eTag;
+            lastModified = TextUtils.isEmpty(lastModified) ? previous.mLastModified : lastModified;
+        }
+
+        long lifetime = getFreshnessLifetime(response, now);
+
+        if (lifetime == UNKNOWN_LIFETIME) {
+            // Response with validators is revalidated cheaply, others are kept for a while
+            lifetime = TextUtils.isEmpty(eTag) && TextUtils.isEmpty(lastModified) ? DEFAULT_LIFETIME : 0;
+        }
+
+        return new CacheValidators(eTag, lastModified, now + lifetime, !isNoStore(response));
+    }
+
+    /**
+     * @return true if Cache-Control forbids to store the response
+     */
+    private static boolean isNoStore(final Response response) {
+        final String cacheControl = response.getHeader(HEADER_CACHE_CONTROL);
+
+        if (TextUtils.isEmpty(cacheControl)) {
+            return false;
+        }
+
+        for (String directive : cacheControl.split(",")) {
+            if (directive.trim().toLowerCase().startsWith(NO_STORE)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return freshness lifetime of the response, 0 if it has to be revalidated on every use,
+     * {@link #UNKNOWN_LIFETIME} if response has no caching headers
+     */
+    private static long getFreshnessLifetime(final Response response, final long now) {
+        final String cacheControl = response.getHeader(HEADER_CACHE_CONTROL);
+        final long age = response.getLongHeader(HEADER_AGE, 0) * 1000L;
+
+        if (!TextUtils.isEmpty(cacheControl)) {
+            for (String directive : cacheControl.split(",")) {
+                final String normDirective = directive.trim().toLowerCase();
+
+                if (normDirective.startsWith(NO_CACHE) || normDirective.startsWith(NO_STORE)) {
+                    return 0;
+                }
+
+                if (normDirective.startsWith(MAX_AGE)) {
+                    try {
+                        return Math.max(0, Long.parseLong(normDirective.substring(MAX_AGE.length())) * 1000 - age);
+                    } catch (NumberFormatException e) {
+                        return 0;
+                    }
+                }
+            }
+        }
+
+        final long responseDate = response.getDateHeader(HEADER_DATE);
+        final long date = responseDate > 0 ? responseDate : now;
+        final long expiration = response.getDateHeader(HEADER_EXPIRES);
+
+        if (expiration > 0) {
+            return Math.max(0, expiration - date);
+        }
+
+        final long lastModified = response.getDateHeader(HEADER_LAST_MODIFIED);
+
+        if (lastModified > 0 && lastModified < date) {
+            return Math.min((date - lastModified) / HEURISTIC_DIVIDER, HEURISTIC_MAX);
+        }
+
+        return UNKNOWN_LIFETIME;
+    }
+
+    /**
+     * @return true if cached response can be used without revalidation
+     */
+    public boolean isFresh() {
+        return System.currentTimeMillis() < mExpires;
+    }
+
+    /**
+     * @return false if response must not be stored in the cache (Cache-Control: no-store)
+     */
+    public boolean isStorable() {
+        return mIsStorable;
+    }
+
+    /**
+     * @return true if there's any validator to make conditional request with
+     */
+    public boolean canRevalidate() {
+        return !TextUtils.isEmpty(mETag) || !TextUtils.isEmpty(mLastModified);
+    }
+
+    /**
+     * Adds conditional request headers
+     *
+     * @param headers request headers to add to
+     */
+    public void applyTo(final Map<String, String> headers) {
+        if (!TextUtils.isEmpty(mETag)) {
+            headers.put(HEADER_IF_NONE_MATCH, mETag);
+        }
+        if (!TextUtils.isEmpty(mLastModified)) {
+            headers.put(HEADER_IF_MODIFIED_SINCE, mLastModified);
+        }
+    }
+
+    /**
+     * @return validators in the form which can be restored by {@link #parse(String)}
+     */
+    public String serialize() {
+        return mETag + SEPARATOR + mLastModified + SEPARATOR + mExpires;
+    }
+
+    /**
+     * @param serialized result of {@link #serialize()}
+     *
+     * @return restored validators or null if they cannot be parsed
+     */
+    public static CacheValidators parse(final String serialized) {
+        if (TextUtils.isEmpty(serialized)) {
+            return null;
+        }
+
+        final String[] parts = serialized.split(SEPARATOR, -1);
+
+        if (parts.length != 3) {
+            return null;
+        }
+
+        try {
+            return new CacheValidators(parts[0], parts[1], Long.parseLong(parts[2]), true);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ETag " + mETag + " Last-Modified " + mLastModified + " expires " + mExpires;
+    }
+}
@@ -0,0 +1,523 @@
+package com.alexstarc.imageloader.cache;
+
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Size bounded LRU cache of files in the provided folder.
+ * State is kept in append-only journal file, so cache survives restarts:
+ * <pre>
+ *     CLEAN hash size fileName [metadata] - entry was stored or its metadata was updated
+ *     READ hash                           - entry was accessed, to restore LRU order
+ *     REMOVE hash                         - entry was removed
+ * </pre>
+ * Each entry can have opaque metadata string, which is kept url-encoded in the journal.
+ * Journal is compacted on open and once it has too many redundant records.
+ * <p>
+ * Files are written to temp files and renamed to their content-addressed names (hash of the key) once complete,
+ * so a file under cache name is always complete, even after crash. Files left by crashed writes are removed on open.
+ */
+public class DiskCache {
+    private static final String TAG = "DiskCache";
+
+    private static final String JOURNAL_FILE = "journal";
+    private static final String JOURNAL_FILE_TMP = "journal.tmp";
+    /** Extension of files being written, they're not part of the cache yet */
+    private static final String TMP_EXTENSION = ".tmp";
+    private static final String CLEAN = "CLEAN";
+    private static final String READ = "READ";
+    private static final String REMOVE = "REMOVE";
+    private static final String ENCODING = "UTF-8";
+    /** Journal is rebuilt once it has this number of records not describing current entries */
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+
+    private final File mDirectory;
+    private final long mMaxSize;
+    /** Entries in access order, eldest first, keyed by key hash */
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<String, Entry>(0, 0.75f, true);
+    private long mSize = 0;
+    private int mRedundantOpCount = 0;
+    private Writer mJournalWriter = null;
+
+    /**
+     * Cache entry
+     */
+    private static final class Entry {
+        final String mHash;
+        final String mFileName;
+        final long mLength;
+        final String mMetadata;
+
+        Entry(final String hash, final String fileName, final long length, final String metadata) {
+            mHash = hash;
+            mFileName = fileName;
+            mLength = length;
+            mMetadata = metadata == null ? "" : metadata;
+        }
+
+        /**
+         * @return journal record describing this entry
+         */
+        String toJournalRecord() {
+            final StringBuilder record = new StringBuilder(CLEAN).append(' ').append(mHash)
+                    .append(' ').append(mLength).append(' ').append(mFileName);
+
+            if (!mMetadata.isEmpty()) {
+                try {
+                    record.append(' ').append(URLEncoder.encode(mMetadata, ENCODING));
+                } catch (UnsupportedEncodingException e) {
+                    Log.wtf(TAG, "No UTF-8 support");
+                }
+            }
+
+            return record.toString();
+        }
+    }
+
+    /**
+     * Opens cache in provided folder, reading journal if it exists
+     *
+     * @param directory to store files in, created if needed
+     * @param maxSize maximum total size of cached files, bytes
+     */
+    public DiskCache(final File directory, final long maxSize) {
+        mDirectory = directory;
+        mMaxSize = maxSize;
+
+        //noinspection ResultOfMethodCallIgnored
+        mDirectory.mkdirs();
+        readJournal();
+        rebuildJournal();
+        trimToSize();
+    }
+
+    /**
+     * @param key to look file for, usually url
+     *
+     * @return cached file or null if there's no such
+     */
+    public synchronized File get(final String key) {
+        final String hash = hashKey(key);
+        final Entry entry = mEntries.get(hash);
+
+        if (entry == null) {
+            return null;
+        }
+
+        final File file = new File(mDirectory, entry.mFileName);
+
+        if (!file.exists()) {
+            Log.w(TAG, "Cached file is missing " + entry.mFileName);
+            removeEntry(entry);
+            return null;
+        }
+
+        appendJournal(READ + " " + hash);
+        return file;
+    }
+
+    /**
+     * Creates new unique temp file in the cache folder to write data for the key into.
+     * File is not part of the cache till {@link #commit(String, File)} is called.
+     *
+     * @param key file will be stored for
+     * @param extension of the file, without dot
+     *
+     * @return new empty file
+     *
+     * @throws IOException if file cannot be created
+     */
+    public File newFile(final String key, final String extension) throws IOException {
+        return File.createTempFile(hashKey(key) + "-", "." + extension + TMP_EXTENSION, mDirectory);
+    }
+
+    /**
+     * @param key to look metadata for
+     *
+     * @return metadata stored with file for the key, empty string if there's no such entry or metadata
+     */
+    public synchronized String getMetadata(final String key) {
+        final Entry entry = mEntries.get(hashKey(key));
+
+        return entry == null ? "" : entry.mMetadata;
+    }
+
+    /**
+     * Replaces metadata of the existing entry, does nothing if there's no entry for the key
+     *
+     * @param key to update metadata for
+     * @param metadata new metadata
+     */
+    public synchronized void setMetadata(final String key, final String metadata) {
+        final Entry entry = mEntries.get(hashKey(key));
+
+        if (entry != null) {
+            final Entry updated = new Entry(entry.mHash, entry.mFileName, entry.mLength, metadata);
+
+            mEntries.put(updated.mHash, updated);
+            appendJournal(updated.toJournalRecord());
+        }
+    }
+
+    /**
+     * Stores completely written file for the key, previous file for the key is replaced
+     *
+     * @see #commit(String, File, String)
+     */
+    public File commit(final String key, final File file) throws IOException {
+        return commit(key, file, "");
+    }
+
+    /**
+     * Stores completely written file with metadata for the key. File is synced to the storage and atomically
+     * renamed to its cache name, replacing previous file for the key, so readers see either old or new file.
+     *
+     * @param key to store file for
+     * @param file created by {@link #newFile(String, String)}
+     * @param metadata to be stored with the file
+     *
+     * @return file under its cache name
+     *
+     * @throws IOException if file cannot be synced or renamed, it's deleted then
+     */
+    public synchronized File commit(final String key, final File file, final String metadata) throws IOException {
+        final String hash = hashKey(key);
+        final File cacheFile = new File(mDirectory, hash + getExtension(file.getName()));
+
+        try {
+            syncFile(file);
+        } catch (IOException e) {
+            abort(file);
+            throw e;
+        }
+
+        if (!file.renameTo(cacheFile)) {
+            abort(file);
+            throw new IOException("Failed to rename " + file.getName());
+        }
+
+        final Entry previous = mEntries.get(hash);
+
+        if (previous != null && !previous.mFileName.equals(cacheFile.getName())) {
+            deleteFile(previous.mFileName);
+        }
+        if (previous != null) {
+            mSize -= previous.mLength;
+        }
+
+        final Entry entry = new Entry(hash, cacheFile.getName(), cacheFile.length(), metadata);
+
+        mEntries.put(hash, entry);
+        mSize += entry.mLength;
+        appendJournal(entry.toJournalRecord());
+        trimToSize();
+
+        return cacheFile;
+    }
+
+    /**
+     * Drops file which was not committed
+     *
+     * @param file created by {@link #newFile(String, String)}
+     */
+    public void abort(final File file) {
+        if (file != null && file.exists() && !file.delete()) {
+            Log.w(TAG, "Failed to delete aborted " + file.getName());
+        }
+    }
+
+    /**
+     * @param key to remove file for
+     */
+    public synchronized void remove(final String key) {
+        final Entry entry = mEntries.get(hashKey(key));
+
+        if (entry != null) {
+            removeEntry(entry);
+        }
+    }
+
+    /**
+     * Removes files which are not cache entries, e.g. temp files of writes interrupted by crash.
+     * Has to be called right after open, before any new files are created.
+     *
+     * @param keepFilter accepts other files stored in the folder which have to be kept, can be null
+     */
+    public synchronized void removeOrphans(final FilenameFilter keepFilter) {
+        final String[] names = mDirectory.list();
+
+        if (names == null) {
+            return;
+        }
+
+        final Set<String> entryNames = new HashSet<String>();
+
+        for (Entry entry : mEntries.values()) {
+            entryNames.add(entry.mFileName);
+        }
+
+        int removed = 0;
+
+        for (String name : names) {
+            if (JOURNAL_FILE.equals(name) || JOURNAL_FILE_TMP.equals(name) || entryNames.contains(name)
+                    || (keepFilter != null && keepFilter.accept(mDirectory, name))) {
+                continue;
+            }
+
+            deleteFile(name);
+            removed++;
+        }
+
+        if (removed > 0) {
+            Log.d(TAG, "Removed orphans " + removed);
+        }
+    }
+
+    /**
+     * @return folder cached files are stored in
+     */
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    /**
+     * @return total size of cached files, bytes
+     */
+    public synchronized long size() {
+        return mSize;
+    }
+
+    /**
+     * Removes eldest entries till cache fits its max size
+     */
+    private void trimToSize() {
+        final Iterator<Map.Entry<String, Entry>> iterator = mEntries.entrySet().iterator();
+
+        while (mSize > mMaxSize && iterator.hasNext()) {
+            final Entry entry = iterator.next().getValue();
+
+            Log.d(TAG, "Evicted " + entry.mFileName);
+            iterator.remove();
+            mSize -= entry.mLength;
+            deleteFile(entry.mFileName);
+            appendJournal(REMOVE + " " + entry.mHash);
+        }
+    }
+
+    /**
+     * @param tmpName name of file created by {@link #newFile(String, String)}
+     *
+     * @return extension of cached file, with dot, or empty string if file has no extension
+     */
+    private static String getExtension(final String tmpName) {
+        final String name = tmpName.endsWith(TMP_EXTENSION)
+                ? tmpName.substring(0, tmpName.length() - TMP_EXTENSION.length()) : tmpName;
+        final int dot = name.lastIndexOf('.');
+
+        return dot < 0 ? "" : name.substring(dot);
+    }
+
+    /**
+     * Makes sure file data is on the storage before it's renamed, otherwise after power loss
+     * renamed file may exist with missing data
+     */
+    private static void syncFile(final File file) throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+
+        try {
+            randomAccessFile.getFD().sync();
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    private void removeEntry(final Entry entry) {
+        mEntries.remove(entry.mHash);
+        mSize -= entry.mLength;
+        deleteFile(entry.mFileName);
+        appendJournal(REMOVE + " " + entry.mHash);
+    }
+
+    private void deleteFile(final String fileName) {
+        final File file = new File(mDirectory, fileName);
+
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Failed to delete " + fileName);
+        }
+    }
+
+    /**
+     * Restores entries and their LRU order from journal, entries with missing or broken files are dropped
+     */
+    private void readJournal() {
+        final File journal = new File(mDirectory, JOURNAL_FILE);
+
+        if (!journal.exists()) {
+            return;
+        }
+
+        BufferedReader reader = null;
+
+        try {
+            reader = new BufferedReader(new FileReader(journal));
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                final String[] parts = line.split(" ");
+
+                if (CLEAN.equals(parts[0]) && (parts.length == 4 || parts.length == 5)) {
+                    final String metadata = parts.length == 5 ? URLDecoder.decode(parts[4], ENCODING) : "";
+
+                    mEntries.put(parts[1], new Entry(parts[1], parts[3], Long.parseLong(parts[2]), metadata));
+                } else if (READ.equals(parts[0]) && parts.length == 2) {
+                    mEntries.get(parts[1]);
+                } else if (REMOVE.equals(parts[0]) && parts.length == 2) {
+                    mEntries.remove(parts[1]);
+                } else {
+                    Log.w(TAG, "Corrupted journal line: " + line);
+                }
+            }
+        } catch (IOException e) {
+            // Keep whatever was read before broken record
+            Log.e(TAG, "Failed to read journal " + e);
+        } catch (IllegalArgumentException e) {
+            // Number or url decoding failed
+            Log.e(TAG, "Corrupted journal " + e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to close journal " + e);
+                }
+            }
+        }
+
+        final Iterator<Entry> iterator = mEntries.values().iterator();
+
+        while (iterator.hasNext()) {
+            final Entry entry = iterator.next();
+            final File file = new File(mDirectory, entry.mFileName);
+
+            if (file.length() != entry.mLength) {
+                iterator.remove();
+                deleteFile(entry.mFileName);
+            } else {
+                mSize += entry.mLength;
+            }
+        }
+    }
+
+    /**
+     * Writes journal containing only current entries, replaces old one atomically
+     */
+    private void rebuildJournal() {
+        closeJournal();
+
+        final File journalTmp = new File(mDirectory, JOURNAL_FILE_TMP);
+        Writer writer = null;
+
+        try {
+            writer = new BufferedWriter(new FileWriter(journalTmp));
+
+            for (Entry entry : mEntries.values()) {
+                writer.write(entry.toJournalRecord() + "\n");
+            }
+
+            writer.close();
+            writer = null;
+
+            if (!journalTmp.renameTo(new File(mDirectory, JOURNAL_FILE))) {
+                Log.e(TAG, "Failed to replace journal");
+            }
+
+            mRedundantOpCount = 0;
+            mJournalWriter = new BufferedWriter(new FileWriter(new File(mDirectory, JOURNAL_FILE), true));
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to rebuild journal " + e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to close journal " + e);
+                }
+            }
+        }
+    }
+
+    private void appendJournal(final String record) {
+        if (mJournalWriter == null) {
+            return;
+        }
+
+        try {
+            mJournalWriter.write(record);
+            mJournalWriter.write('\n');
+            mJournalWriter.flush();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write journal " + e);
+        }
+
+        // Last CLEAN record of each entry is not redundant
+        if (++mRedundantOpCount > REDUNDANT_OP_COMPACT_THRESHOLD + mEntries.size()) {
+            rebuildJournal();
+        }
+    }
+
+    private void closeJournal() {
+        if (mJournalWriter != null) {
+            try {
+                mJournalWriter.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to close journal " + e);
+            }
+
+            mJournalWriter = null;
+        }
+    }
+
+    /**
+     * @param key to be hashed
+     *
+     * @return hex MD5 of the key, safe to be used in file names and journal
+     */
+    public static String hashKey(final String key) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+            final StringBuilder builder = new StringBuilder(digest.length * 2);
+
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+                builder.append(Character.forDigit(b & 0xf, 16));
+            }
+
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // MD5 is guaranteed to be supported
+            return String.valueOf(key.hashCode());
+        } catch (UnsupportedEncodingException e) {
+            // Same for UTF-8
+            return String.valueOf(key.hashCode());
+        }
+    }
+}
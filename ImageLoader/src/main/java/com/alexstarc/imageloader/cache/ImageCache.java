@@ -0,0 +1,266 @@
+package com.alexstarc.imageloader.cache;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Process wide two tier image cache keyed by url: decoded bitmaps in memory and downloaded files on disk.
+ * Disk tier is stored in the apps images folder and survives restarts.
+ */
+public class ImageCache {
+    private static final String TAG = "ImageCache";
+
+    /** Apps folder to store cached images */
+    private static final String IMAGES_FOLDER = "img";
+    /** Maximum size of disk tier */
+    private static final long DISK_CACHE_SIZE = 50 * 1024 * 1024; // 50 MB
+
+    private static ImageCache sInstance = null;
+
+    private final MemoryCache mMemoryCache;
+    private final DiskCache mDiskCache;
+    /** Hashes of urls which partial downloads are used by running jobs */
+    private final Set<String> mActivePartials = new HashSet<String>();
+    /** Last delivered not cached file by url hash, replaced by the next load of the url */
+    private final Map<String, File> mUncachedFiles = new HashMap<String, File>();
+
+    /**
+     * @param context any context, application one is used
+     *
+     * @return shared cache instance
+     */
+    public static synchronized ImageCache getInstance(final Context context) {
+        if (sInstance == null) {
+            sInstance = new ImageCache(context.getApplicationContext());
+        }
+
+        return sInstance;
+    }
+
+    private ImageCache(final Context context) {
+        final MemoryGovernor governor = MemoryGovernor.getInstance(context);
+        final int memoryCacheSize = governor.getMemoryCacheBudget();
+
+        mMemoryCache = new MemoryCache(memoryCacheSize);
+        governor.setMemoryCache(mMemoryCache);
+        mDiskCache = new DiskCache(new File(context.getFilesDir(), IMAGES_FOLDER), DISK_CACHE_SIZE);
+        // No job is running yet, so all temp files are left by crashed or killed process
+        mDiskCache.removeOrphans(new FilenameFilter() {
+            @Override
+            public boolean accept(final File directory, final String name) {
+                return PartialDownload.isResumable(directory, name);
+            }
+        });
+        Log.d(TAG, "Opened, memory " + memoryCacheSize + " disk " + mDiskCache.size() + " bytes");
+    }
+
+    /**
+     * @param key usually url
+     *
+     * @return decoded bitmap from memory tier or null
+     */
+    public Bitmap getBitmap(final String key) {
+        return mMemoryCache.get(key);
+    }
+
+    /**
+     * @param key usually url
+     * @param bitmap to be kept in memory tier
+     */
+    public void putBitmap(final String key, final Bitmap bitmap) {
+        mMemoryCache.put(key, bitmap);
+    }
+
+    /**
+     * @param key of bitmap to be dropped from memory tier
+     */
+    public void removeBitmap(final String key) {
+        mMemoryCache.remove(key);
+    }
+
+    /**
+     * @param key usually url
+     *
+     * @return file from disk tier or null
+     */
+    public File getFile(final String key) {
+        return mDiskCache.get(key);
+    }
+
+    /**
+     * @see DiskCache#newFile(String, String)
+     */
+    public File newFile(final String key, final String extension) throws IOException {
+        return mDiskCache.newFile(key, extension);
+    }
+
+    /**
+     * @see DiskCache#commit(String, File)
+     */
+    public File commitFile(final String key, final File file) throws IOException {
+        return mDiskCache.commit(key, file);
+    }
+
+    /**
+     * Stores downloaded file together with its http validators
+     *
+     * @param key url file was loaded from
+     * @param file created by {@link #newFile(String, String)}
+     * @param validators of the response
+     *
+     * @return file under its cache name
+     *
+     * @throws IOException if file cannot be stored
+     */
+    public File commitFile(final String key, final File file, final CacheValidators validators) throws IOException {
+        return mDiskCache.commit(key, file, validators == null ? "" : validators.serialize());
+    }
+
+    /**
+     * @param key url file was loaded from
+     *
+     * @return http validators stored with cached file or null if there's no such
+     */
+    public CacheValidators getValidators(final String key) {
+        return CacheValidators.parse(mDiskCache.getMetadata(key));
+    }
+
+    /**
+     * Updates validators of cached file after successful revalidation
+     *
+     * @param key url file was loaded from
+     * @param validators of 304 response
+     */
+    public void putValidators(final String key, final CacheValidators validators) {
+        mDiskCache.setMetadata(key, validators.serialize());
+    }
+
+    /**
+     * @see DiskCache#abort(File)
+     */
+    public void abortFile(final File file) {
+        mDiskCache.abort(file);
+    }
+
+    /**
+     * Returns resumable download for the url, with already downloaded part if there's any.
+     * If the same url is already being loaded, returns private download which cannot be resumed later.
+     * Has to be released by {@link #releasePartialDownload(PartialDownload)}.
+     *
+     * @param url to be downloaded
+     *
+     * @return download to write data into
+     *
+     * @throws IOException if private file cannot be created
+     */
+    public PartialDownload acquirePartialDownload(final String url) throws IOException {
+        final String hash = DiskCache.hashKey(url);
+        final File directory = mDiskCache.getDirectory();
+
+        synchronized (mActivePartials) {
+            if (mActivePartials.add(hash)) {
+                return new PartialDownload(new File(directory, hash + PartialDownload.PARTIAL_EXTENSION),
+                        new File(directory, hash + PartialDownload.RECORD_EXTENSION), url);
+            }
+        }
+
+        return new PartialDownload(File.createTempFile(hash + "-", PartialDownload.PARTIAL_EXTENSION, directory), null, url);
+    }
+
+    /**
+     * Lets other jobs to use partial download of the same url. Private download cannot be resumed,
+     * so its file is deleted unless it was already moved to the cache.
+     *
+     * @param partial acquired by {@link #acquirePartialDownload(String)}
+     */
+    public void releasePartialDownload(final PartialDownload partial) {
+        if (partial.hasRecord()) {
+            synchronized (mActivePartials) {
+                mActivePartials.remove(DiskCache.hashKey(partial.getUrl()));
+            }
+        } else {
+            // Failed or cancelled before body is read, nothing else deletes it
+            partial.discard();
+        }
+    }
+
+    /**
+     * Moves completely downloaded file to disk tier
+     *
+     * @param partial completed download
+     * @param validators of the response
+     *
+     * @return cached file
+     *
+     * @throws IOException if file cannot be moved
+     */
+    public File commitPartialDownload(final PartialDownload partial, final CacheValidators validators)
+            throws IOException {
+        final File file = mDiskCache.newFile(partial.getUrl(), partial.getExtension());
+
+        if (!partial.getFile().renameTo(file)) {
+            mDiskCache.abort(file);
+            partial.discard();
+            throw new IOException("Failed to move " + partial.getFile().getName());
+        }
+
+        partial.complete();
+
+        return commitFile(partial.getUrl(), file, validators);
+    }
+
+    /**
+     * Takes completely downloaded file which must not be cached (Cache-Control: no-store). File is not part
+     * of disk tier, so it's never served again. It's kept till the next load of the url or till restart,
+     * so the client can read it. Previously cached file of the url is dropped.
+     *
+     * @param partial completed download
+     *
+     * @return file to deliver
+     *
+     * @throws IOException if file cannot be moved
+     */
+    public File takeUncachedDownload(final PartialDownload partial) throws IOException {
+        final String url = partial.getUrl();
+        final File file = mDiskCache.newFile(url, partial.getExtension());
+
+        mDiskCache.remove(url);
+
+        if (!partial.getFile().renameTo(file)) {
+            mDiskCache.abort(file);
+            partial.discard();
+            throw new IOException("Failed to move " + partial.getFile().getName());
+        }
+
+        partial.complete();
+
+        final File previous;
+
+        synchronized (mUncachedFiles) {
+            previous = mUncachedFiles.put(DiskCache.hashKey(url), file);
+        }
+
+        mDiskCache.abort(previous);
+
+        return file;
+    }
+
+    /**
+     * Removes both bitmap and file for the key
+     *
+     * @param key usually url
+     */
+    public void remove(final String key) {
+        mMemoryCache.remove(key);
+        mDiskCache.remove(key);
+    }
+}
@@ -0,0 +1,81 @@
+package com.alexstarc.imageloader.cache;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+/**
+ * In-memory LRU cache of decoded bitmaps, limited by total bitmaps size in bytes
+ */
+public class MemoryCache {
+    private final LruCache<String, Bitmap> mCache;
+
+    /**
+     * @param maxBytes maximum total size of cached bitmaps
+     */
+    public MemoryCache(final int maxBytes) {
+        mCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(final String key, final Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * @param key to look bitmap for
+     *
+     * @return cached bitmap or null if there's no such
+     */
+    public Bitmap get(final String key) {
+        final Bitmap bitmap = mCache.get(key);
+
+        if (bitmap != null && bitmap.isRecycled()) {
+            mCache.remove(key);
+            return null;
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * @param key to store bitmap with
+     * @param bitmap to be stored
+     */
+    public void put(final String key, final Bitmap bitmap) {
+        if (key == null || bitmap == null) {
+            return;
+        }
+
+        mCache.put(key, bitmap);
+    }
+
+    /**
+     * @param key of bitmap to be removed
+     */
+    public void remove(final String key) {
+        mCache.remove(key);
+    }
+
+    /**
+     * Evicts least recently used bitmaps, e.g. on memory pressure. Cache still can grow back to its max size.
+     *
+     * @param maxBytes to keep
+     */
+    public void trimToSize(final int maxBytes) {
+        mCache.trimToSize(maxBytes);
+    }
+
+    /**
+     * @return maximum total size of cached bitmaps
+     */
+    public int getMaxSize() {
+        return mCache.maxSize();
+    }
+
+    /**
+     * Drops all cached bitmaps
+     */
+    public void clear() {
+        mCache.evictAll();
+    }
+}
@@ -0,0 +1,171 @@
+package com.alexstarc.imageloader.cache;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.alexstarc.imageloader.image.BitmapPool;
+import com.alexstarc.imageloader.image.DecodeBudget;
+import com.alexstarc.imageloader.io.BufferPool;
+
+/**
+ * Sets memory budgets of caches and pools from the app heap limit and shrinks them on memory pressure.
+ * Bitmap pool and buffer pool only save allocations, so they're dropped first. Memory cache keeps shown images,
+ * it's trimmed proportionally to pressure level. Concurrent decodes get smaller budget for a while when
+ * the system reports low memory, so loading switches to smaller images or waits instead of crashing.
+ */
+public class MemoryGovernor implements ComponentCallbacks2 {
+    private static final String TAG = "MemoryGovernor";
+
+    /** Part of the heap which can be taken by memory cache */
+    private static final int MEMORY_CACHE_HEAP_DIVIDER = 8;
+    /** Part of the heap which can be taken by bitmap pool */
+    private static final int POOL_HEAP_DIVIDER = 16;
+    /** Part of the heap which can be taken by bitmaps decoded at the same time */
+    private static final int DECODE_HEAP_DIVIDER = 4;
+    /** Decode budget is restored after this time without new low memory reports */
+    private static final long PRESSURE_TIMEOUT = 30000; // ms
+
+    private static MemoryGovernor sInstance = null;
+
+    private final long mHeapBytes;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Runnable mRestoreDecodeBudget = new Runnable() {
+        @Override
+        public void run() {
+            Log.d(TAG, "Memory pressure is over");
+            DecodeBudget.getInstance().setMaxBytes(getDecodeBudget());
+        }
+    };
+    /** Memory tier of {@link ImageCache}, null until it's created */
+    private volatile MemoryCache mMemoryCache = null;
+
+    /**
+     * @param context any context, application one is used
+     *
+     * @return shared governor instance, it listens to memory callbacks of the application
+     */
+    public static synchronized MemoryGovernor getInstance(final Context context) {
+        if (sInstance == null) {
+            sInstance = new MemoryGovernor(context.getApplicationContext());
+        }
+
+        return sInstance;
+    }
+
+    private MemoryGovernor(final Context context) {
+        final ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        final boolean largeHeap = (context.getApplicationInfo().flags & ApplicationInfo.FLAG_LARGE_HEAP) != 0;
+        final int memoryClass = largeHeap ? am.getLargeMemoryClass() : am.getMemoryClass();
+
+        mHeapBytes = memoryClass * 1024L * 1024L;
+        BitmapPool.getInstance().setMaxSize(getPoolBudget());
+        DecodeBudget.getInstance().setMaxBytes(getDecodeBudget());
+        context.registerComponentCallbacks(this);
+        Log.d(TAG, "Memory class " + memoryClass + " MB" + (largeHeap ? " (large heap)" : ""));
+    }
+
+    /**
+     * @return maximum total size of bitmaps in memory cache, bytes
+     */
+    public int getMemoryCacheBudget() {
+        return (int) Math.min(mHeapBytes / MEMORY_CACHE_HEAP_DIVIDER, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return maximum total size of pooled bitmaps, bytes
+     */
+    public long getPoolBudget() {
+        return mHeapBytes / POOL_HEAP_DIVIDER;
+    }
+
+    /**
+     * @return maximum total size of bitmaps decoded at the same time without memory pressure, bytes
+     */
+    public long getDecodeBudget() {
+        return mHeapBytes / DECODE_HEAP_DIVIDER;
+    }
+
+    /**
+     * @param memoryCache to be trimmed on memory pressure
+     */
+    void setMemoryCache(final MemoryCache memoryCache) {
+        mMemoryCache = memoryCache;
+    }
+
+    @Override
+    public void onTrimMemory(final int level) {
+        Log.d(TAG, "onTrimMemory " + level);
+
+        if (level >= TRIM_MEMORY_COMPLETE) {
+            // Process is among the first to be killed, anything released lets it live longer
+            trim(0);
+        } else if (level >= TRIM_MEMORY_MODERATE) {
+            trim(4);
+        } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_UI_HIDDEN) {
+            // Shown images aren't needed while UI is hidden
+            trim(2);
+        } else if (level >= TRIM_MEMORY_RUNNING_CRITICAL) {
+            trim(4);
+            reduceDecodeBudget(4);
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            trim(2);
+            reduceDecodeBudget(2);
+        } else if (level >= TRIM_MEMORY_RUNNING_MODERATE) {
+            // Pooled bitmaps are just saved allocations, the cheapest thing to give back
+            BitmapPool.getInstance().clear();
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        Log.d(TAG, "onLowMemory");
+        trim(0);
+        reduceDecodeBudget(4);
+    }
+
+    @Override
+    public void onConfigurationChanged(final Configuration newConfig) {
+    }
+
+    /**
+     * Drops pooled bitmaps and buffers and trims memory cache
+     *
+     * @param cacheDivider part of memory cache to keep, e.g. 2 keeps half of it, 0 drops it completely
+     */
+    private void trim(final int cacheDivider) {
+        BitmapPool.getInstance().clear();
+        BufferPool.getInstance().clear();
+
+        final MemoryCache memoryCache = mMemoryCache;
+
+        if (memoryCache == null) {
+            return;
+        }
+
+        if (cacheDivider == 0) {
+            memoryCache.clear();
+        } else {
+            memoryCache.trimToSize(memoryCache.getMaxSize() / cacheDivider);
+        }
+    }
+
+    /**
+     * Reduces decode budget until no low memory is reported for {@link #PRESSURE_TIMEOUT}
+     *
+     * @param divider part of full budget to keep
+     */
+    private void reduceDecodeBudget(final int divider) {
+        final DecodeBudget budget = DecodeBudget.getInstance();
+
+        // Repeated reports of lighter pressure don't raise the budget
+        budget.setMaxBytes(Math.min(budget.getMaxBytes(), getDecodeBudget() / divider));
+        mHandler.removeCallbacks(mRestoreDecodeBudget);
+        mHandler.postDelayed(mRestoreDecodeBudget, PRESSURE_TIMEOUT);
+    }
+}
@@ -0,0 +1,387 @@
+package com.alexstarc.imageloader.cache;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.alexstarc.imageloader.io.BufferPool;
+import com.alexstarc.imageloader.io.ChannelOutputStream;
+import com.alexstarc.imageloader.net.Response;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * File being downloaded together with sidecar record (url, validator, bytes written),
+ * so download can be resumed with http Range request after cancel or failure.
+ */
+public class PartialDownload {
+    private static final String TAG = "PartialDownload";
+
+    /** Extension of partially downloaded file */
+    static final String PARTIAL_EXTENSION = ".part";
+    /** Extension of sidecar record */
+    static final String RECORD_EXTENSION = ".part.info";
+
+    private static final String HEADER_RANGE = "Range";
+    private static final String HEADER_IF_RANGE = "If-Range";
+    private static final String HEADER_CONTENT_RANGE = "Content-Range";
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String WEAK_ETAG_PREFIX = "W/";
+    private static final String BYTES_UNIT = "bytes ";
+
+    /** Downloads not resumed for this time are dropped */
+    private static final long MAX_RECORD_AGE = 7 * 24 * 60 * 60 * 1000L; // ms
+
+    private static final String KEY_URL = "url";
+    private static final String KEY_VALIDATOR = "validator";
+    private static final String KEY_EXTENSION = "extension";
+    private static final String KEY_BYTES_WRITTEN = "bytesWritten";
+
+    private final File mFile;
+    /** Null for private downloads, which cannot be resumed */
+    private final File mRecordFile;
+    private final String mUrl;
+    private String mValidator = "";
+    private String mExtension = "";
+    private long mBytesWritten = 0;
+
+    /**
+     * @param file to download into
+     * @param recordFile sidecar record, null if download cannot be resumed
+     * @param url file is loaded from
+     */
+    PartialDownload(final File file, final File recordFile, final String url) {
+        mFile = file;
+        mRecordFile = recordFile;
+        mUrl = url;
+
+        if (mRecordFile != null) {
+            readRecord();
+        }
+    }
+
+    /**
+     * Resumed data is not checked to be an image, so only downloads which image header was already
+     * detected in can be resumed
+     *
+     * @return true if part of the file is downloaded and server can be asked for the rest of it
+     */
+    public boolean canResume() {
+        return isResumable() && mFile.length() >= mBytesWritten;
+    }
+
+    /**
+     * @return number of bytes already downloaded
+     */
+    public long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    /**
+     * @return extension of downloaded file, empty if download was not started
+     */
+    public String getExtension() {
+        return mExtension;
+    }
+
+    /**
+     * @return file data is downloaded into
+     */
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * Adds headers to request the rest of the file, if it wasn't changed on the server
+     *
+     * @param headers request headers to add to
+     */
+    public void applyTo(final Map<String, String> headers) {
+        headers.put(HEADER_RANGE, "bytes=" + mBytesWritten + "-");
+        headers.put(HEADER_IF_RANGE, mValidator);
+    }
+
+    /**
+     * @param response with 206 status
+     *
+     * @return true if response continues downloaded part
+     */
+    public boolean matchesRange(final Response response) {
+        // Content-Range: bytes 100-999/1000
+        final String contentRange = response.getHeader(HEADER_CONTENT_RANGE);
+
+        if (contentRange == null || !contentRange.startsWith(BYTES_UNIT)) {
+            return false;
+        }
+
+        final int dash = contentRange.indexOf('-');
+
+        if (dash < 0) {
+            return false;
+        }
+
+        try {
+            return Long.parseLong(contentRange.substring(BYTES_UNIT.length(), dash).trim()) == mBytesWritten;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Starts download from the beginning, remembering validator of full response
+     *
+     * @param response with 200 status
+     */
+    public void start(final Response response) {
+        mExtension = "";
+        mBytesWritten = 0;
+        mValidator = getStrongValidator(response);
+        saveRecord();
+    }
+
+    /**
+     * @param extension of the file, detected from its data once download is started
+     */
+    public void setExtension(final String extension) {
+        mExtension = extension;
+        saveRecord();
+    }
+
+    /**
+     * Opens output for downloaded data. Data is written through pooled direct buffer sized for the download,
+     * and space for known length is allocated up front, so file isn't extended on every write.
+     *
+     * @param resume true to append to already downloaded part, false to write from beginning
+     * @param remainingLength number of bytes expected to be written, -1 if unknown
+     *
+     * @return output stream
+     *
+     * @throws IOException if file cannot be opened or there's no space for it
+     */
+    public OutputStream openOutput(final boolean resume, final long remainingLength) throws IOException {
+        final long start = resume ? mBytesWritten : 0;
+        final RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+
+        try {
+            // Drop anything written after last saved record, it might be incomplete
+            file.setLength(start);
+
+            if (remainingLength > 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                Preallocator.preallocate(file, start, remainingLength);
+            }
+
+            final BufferPool pool = BufferPool.getInstance();
+
+            return new ChannelOutputStream(file, start, pool.chooseSize(remainingLength), pool);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Saves downloaded state to resume later, or drops the file if it cannot be resumed
+     *
+     * @param bytesWritten total number of bytes written to the file
+     */
+    public void suspend(final long bytesWritten) {
+        mBytesWritten = bytesWritten;
+
+        if (isResumable()) {
+            saveRecord();
+            Log.d(TAG, "Suspended at " + bytesWritten + " " + mUrl);
+        } else {
+            discard();
+        }
+    }
+
+    /**
+     * Removes downloaded file and record
+     */
+    public void discard() {
+        mBytesWritten = 0;
+        mValidator = "";
+        deleteFile(mFile);
+
+        if (mRecordFile != null) {
+            deleteFile(mRecordFile);
+        }
+    }
+
+    /**
+     * @return url file is loaded from
+     */
+    String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * @return true if download has sidecar record and can be resumed by later jobs
+     */
+    boolean hasRecord() {
+        return mRecordFile != null;
+    }
+
+    /**
+     * Removes record only, called once file is moved to the cache
+     */
+    void complete() {
+        if (mRecordFile != null) {
+            deleteFile(mRecordFile);
+        }
+    }
+
+    /**
+     * @param directory downloads are stored in
+     * @param name of the file
+     *
+     * @return true if file is part of resumable download which is not too old and has to be kept on cleanup
+     */
+    static boolean isResumable(final File directory, final String name) {
+        final String recordName;
+
+        if (name.endsWith(RECORD_EXTENSION)) {
+            recordName = name;
+        } else if (name.endsWith(PARTIAL_EXTENSION)) {
+            recordName = name.substring(0, name.length() - PARTIAL_EXTENSION.length()) + RECORD_EXTENSION;
+        } else {
+            return false;
+        }
+
+        // Private downloads don't have records and cannot be resumed
+        final File record = new File(directory, recordName);
+
+        return record.exists() && System.currentTimeMillis() - record.lastModified() < MAX_RECORD_AGE;
+    }
+
+    /**
+     * @return true if record has everything needed to resume download
+     */
+    private boolean isResumable() {
+        return mRecordFile != null && mBytesWritten > 0 && !TextUtils.isEmpty(mValidator)
+                && !TextUtils.isEmpty(mExtension);
+    }
+
+    /**
+     * @return ETag or Last-Modified of the response, empty string if there's no strong validator
+     */
+    private static String getStrongValidator(final Response response) {
+        // Range of encoded response counts compressed bytes, while decompressed ones are stored
+        if (response.isContentEncoded()) {
+            return "";
+        }
+
+        final String eTag = response.getHeader(HEADER_ETAG);
+
+        // Weak ETag cannot be used for If-Range
+        if (!TextUtils.isEmpty(eTag) && !eTag.startsWith(WEAK_ETAG_PREFIX)) {
+            return eTag;
+        }
+
+        final String lastModified = response.getHeader(HEADER_LAST_MODIFIED);
+
+        return lastModified == null ? "" : lastModified;
+    }
+
+    /**
+     * Allocates file space with fallocate, which is available since Lollipop
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static final class Preallocator {
+        static void preallocate(final RandomAccessFile file, final long offset, final long length) throws IOException {
+            try {
+                Os.posix_fallocate(file.getFD(), offset, length);
+            } catch (ErrnoException e) {
+                if (e.errno == OsConstants.ENOSPC) {
+                    throw new IOException("No space for " + length + " bytes");
+                }
+                // Not supported by file system (e.g. FAT on external storage), file grows while it's written
+                Log.w(TAG, "Failed to preallocate " + e);
+            }
+        }
+    }
+
+    private void readRecord() {
+        if (!mRecordFile.exists()) {
+            return;
+        }
+
+        final Properties record = new Properties();
+        InputStream input = null;
+
+        try {
+            input = new FileInputStream(mRecordFile);
+            record.load(input);
+
+            // Hash collision or broken record, cannot be resumed
+            if (!mUrl.equals(record.getProperty(KEY_URL))) {
+                return;
+            }
+
+            mValidator = record.getProperty(KEY_VALIDATOR, "");
+            mExtension = record.getProperty(KEY_EXTENSION, "");
+            mBytesWritten = Long.parseLong(record.getProperty(KEY_BYTES_WRITTEN, "0"));
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read record " + e);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Broken record " + e);
+            mBytesWritten = 0;
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to close record " + e);
+                }
+            }
+        }
+    }
+
+    private void saveRecord() {
+        if (mRecordFile == null) {
+            return;
+        }
+
+        final Properties record = new Properties();
+        OutputStream output = null;
+
+        record.setProperty(KEY_URL, mUrl);
+        record.setProperty(KEY_VALIDATOR, mValidator);
+        record.setProperty(KEY_EXTENSION, mExtension);
+        record.setProperty(KEY_BYTES_WRITTEN, String.valueOf(mBytesWritten));
+
+        try {
+            output = new FileOutputStream(mRecordFile);
+            record.store(output, null);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to save record " + e);
+        } finally {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to close record " + e);
+                }
+            }
+        }
+    }
+
+    private static void deleteFile(final File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Failed to delete " + file.getName());
+        }
+    }
+}
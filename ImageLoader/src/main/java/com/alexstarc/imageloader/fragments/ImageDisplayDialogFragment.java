@@ -2,11 +2,11 @@ package com.alexstarc.imageloader.fragments;
 
 import android.app.Activity;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.annotation.Nullable;
 import android.support.v4.app.DialogFragment;
+import android.util.DisplayMetrics;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -17,6 +17,13 @@ import java.io.File;
 import java.lang.ref.WeakReference;
 
 import com.alexstarc.imageloader.R;
+import com.alexstarc.imageloader.cache.ImageCache;
+import com.alexstarc.imageloader.image.BitmapPool;
+import com.alexstarc.imageloader.image.DecodeExecutor;
+import com.alexstarc.imageloader.image.ExifOrientation;
+import com.alexstarc.imageloader.image.ImageDecoder;
+import com.alexstarc.imageloader.image.TargetSize;
+import com.alexstarc.imageloader.image.Transform;
 
 /**
  * Dialog fragment to show rotated image
@@ -25,7 +32,7 @@ public class ImageDisplayDialogFragment extends DialogFragment {
     /** Fragment argument to hold filename for loading */
     private static final String KEY_FILENAME = "filename";
     private String mPath = null;
-    private AsyncTask<Void, Void, Void> mLoadingTask = null;
+    private AsyncTask<Void, Void, Bitmap> mLoadingTask = null;
 
     /**
      * Created image showing dialog.
@@ -65,9 +72,6 @@ public class ImageDisplayDialogFragment extends DialogFragment {
     @Nullable
     @Override
     public View onCreateView(final LayoutInflater inflater, @Nullable final ViewGroup container, @Nullable final Bundle savedInstanceState) {
-        // TODO: probably can start earlier
-        mLoadingTask = new ShowRotatedImageTask().execute();
-
         View v = inflater.inflate(R.layout.image_dialog, container, false);
 
         v.setOnClickListener(new View.OnClickListener() {
@@ -77,6 +81,20 @@ public class ImageDisplayDialogFragment extends DialogFragment {
             }
         });
 
+        // Dialog wraps the image, so it's limited by the screen only
+        final DisplayMetrics metrics = getResources().getDisplayMetrics();
+        final TargetSize target = new TargetSize(metrics.widthPixels, metrics.heightPixels, TargetSize.ScaleMode.FIT);
+        final String key = getBitmapKey(mPath, target);
+        final Bitmap cachedBitmap = ImageCache.getInstance(getActivity()).getBitmap(key);
+
+        if (cachedBitmap != null) {
+            // Shown before, no need to decode again
+            setImage(v, cachedBitmap);
+        } else {
+            mLoadingTask = new ShowRotatedImageTask(this, mPath, key, target)
+                    .executeOnExecutor(DecodeExecutor.getInstance());
+        }
+
         Toast.makeText(getActivity(), R.string.tap_anywhere_to_close, Toast.LENGTH_LONG).show();
 
         return v;
@@ -84,40 +102,86 @@ public class ImageDisplayDialogFragment extends DialogFragment {
     }
 
     /**
-     * Simple AsyncTask to show rotated image in the dialog
+     * Rotated file name is unique for its content, modification time is checked in case file is replaced in place
+     *
+     * @param path of displayed file
+     * @param target size image is decoded to
+     *
+     * @return key of decoded image in memory cache
+     */
+    private static String getBitmapKey(final String path, final TargetSize target) {
+        return "display:" + path + "#" + new File(path).lastModified() + "@" + target.toKey();
+    }
+
+    /**
+     * Decodes image to be shown in the dialog and puts it to memory cache, so reopened dialog shows it at once
      */
-    private class ShowRotatedImageTask extends AsyncTask<Void, Void, Void> {
-        /** Loaded bitmap */
-        private Bitmap mBitmap = null;
+    private static class ShowRotatedImageTask extends AsyncTask<Void, Void, Bitmap> {
+        /** Task may outlive the dialog, it mustn't keep it in memory */
+        private final WeakReference<ImageDisplayDialogFragment> mFragment;
+        private final String mPath;
+        private final String mKey;
+        private final TargetSize mTarget;
+        private final ImageCache mCache;
+
+        ShowRotatedImageTask(final ImageDisplayDialogFragment fragment, final String path, final String key,
+                             final TargetSize target) {
+            mFragment = new WeakReference<ImageDisplayDialogFragment>(fragment);
+            mPath = path;
+            mKey = key;
+            mTarget = target;
+            mCache = ImageCache.getInstance(fragment.getActivity());
+        }
 
         @Override
-        protected Void doInBackground(final Void... params) {
-            if (new File(mPath).exists()) {
-                mBitmap = BitmapFactory.decodeFile(mPath);
+        protected Bitmap doInBackground(final Void... params) {
+            if (!new File(mPath).exists()) {
+                return null;
             }
 
-            return null;
+            final BitmapPool pool = BitmapPool.getInstance();
+            Bitmap bitmap = ImageDecoder.decodeFile(mPath, mTarget, pool);
+
+            // JPEG can be rotated via EXIF only, so apply it before showing
+            final Transform orientation = ExifOrientation.toTransform(ExifOrientation.read(mPath));
+
+            if (bitmap != null && orientation != null) {
+                final Bitmap oriented = orientation.apply(bitmap, pool);
+
+                if (oriented != bitmap) {
+                    pool.put(bitmap);
+                }
+
+                bitmap = oriented;
+            }
+
+            // Cached even if dialog is already closed, it's likely to be opened again.
+            // Bitmap is shared from now on, so it's never returned to the pool
+            mCache.putBitmap(mKey, bitmap);
+
+            return bitmap;
         }
 
         @Override
-        protected void onPostExecute(final Void aVoid) {
-            super.onPostExecute(aVoid);
+        protected void onPostExecute(final Bitmap bitmap) {
+            final ImageDisplayDialogFragment fragment = mFragment.get();
 
-            setImage(mBitmap);
+            if (fragment != null && fragment.getView() != null) {
+                fragment.setImage(fragment.getView(), bitmap);
+            }
         }
     }
 
     /**
      * Sets image to dialogs UI
      *
-     * @param bitmap
+     * @param root view of the dialog
+     * @param bitmap to show, can be null
      */
-    private void setImage(final Bitmap bitmap) {
-        if (getDialog() != null) {
-            getDialog().findViewById(R.id.progress).setVisibility(View.GONE);
-            getDialog().findViewById(R.id.image).setVisibility(View.VISIBLE);
-            ((ImageView)getDialog().findViewById(R.id.image)).setImageBitmap(bitmap);
-        }
+    private void setImage(final View root, final Bitmap bitmap) {
+        root.findViewById(R.id.progress).setVisibility(View.GONE);
+        root.findViewById(R.id.image).setVisibility(View.VISIBLE);
+        ((ImageView) root.findViewById(R.id.image)).setImageBitmap(bitmap);
 
         mLoadingTask = null;
     }
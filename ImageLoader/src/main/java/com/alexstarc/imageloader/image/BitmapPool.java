@@ -0,0 +1,287 @@
+package com.alexstarc.imageloader.image;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Pool of mutable bitmaps, bucketed by their size in bytes, to be reused for decoding (inBitmap)
+ * and as transformation targets instead of allocating new pixel memory for each image.
+ * Before KitKat bitmaps can be reused only for exactly the same size and config.
+ */
+public class BitmapPool {
+    private static final String TAG = "BitmapPool";
+
+    /** Reused bitmap can be no more than this times bigger than requested one, not to waste memory */
+    private static final int MAX_SIZE_MULTIPLE = 4;
+
+    private static BitmapPool sInstance = null;
+
+    /** Bitmaps by their size in bytes */
+    private final TreeMap<Integer, LinkedList<Bitmap>> mBuckets = new TreeMap<Integer, LinkedList<Bitmap>>();
+    /** All pooled bitmaps, eldest first, to evict least recently returned ones */
+    private final LinkedList<Bitmap> mOrder = new LinkedList<Bitmap>();
+    private long mMaxSize;
+    private long mSize = 0;
+    private int mHitCount = 0;
+    private int mMissCount = 0;
+
+    /**
+     * @return shared pool instance, its size is set by {@link com.alexstarc.imageloader.cache.MemoryGovernor},
+     * nothing is pooled until then
+     */
+    public static synchronized BitmapPool getInstance() {
+        if (sInstance == null) {
+            sInstance = new BitmapPool(0);
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * @param maxSize maximum total size of pooled bitmaps, bytes
+     */
+    public BitmapPool(final long maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * @return true if bitmaps of different size can be reused, from KitKat
+     */
+    static boolean canReconfigure() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    }
+
+    /**
+     * Returns pooled bitmap of the required size, or creates new one if there's no such
+     *
+     * @param width of bitmap
+     * @param height of bitmap
+     * @param config of bitmap
+     *
+     * @return mutable bitmap with undefined content
+     */
+    public Bitmap obtain(final int width, final int height, final Bitmap.Config config) {
+        final Bitmap bitmap = getReusable(width, height, config);
+
+        return bitmap != null ? bitmap : Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Returns pooled bitmap which can hold image of the required size, e.g. for BitmapFactory.Options.inBitmap
+     *
+     * @param width of bitmap
+     * @param height of bitmap
+     * @param config of bitmap
+     *
+     * @return mutable bitmap with undefined content or null if there's no suitable one
+     */
+    public synchronized Bitmap getReusable(final int width, final int height, final Bitmap.Config config) {
+        final int size = width * height * getBytesPerPixel(config);
+        final Bitmap bitmap;
+
+        if (canReconfigure()) {
+            bitmap = takeReconfigurable(size, width, height, config);
+        } else {
+            bitmap = takeExact(size, width, height, config);
+        }
+
+        if (bitmap == null) {
+            mMissCount++;
+        } else {
+            mHitCount++;
+        }
+
+        return bitmap;
+    }
+
+    /**
+     * Returns bitmap to the pool, bitmap must not be used by caller anymore
+     *
+     * @param bitmap to be reused, immutable and recycled ones are ignored
+     */
+    public synchronized void put(final Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return;
+        }
+
+        final int size = getSize(bitmap);
+
+        if (size > mMaxSize) {
+            bitmap.recycle();
+            return;
+        }
+
+        LinkedList<Bitmap> bucket = mBuckets.get(size);
+
+        if (bucket == null) {
+            bucket = new LinkedList<Bitmap>();
+            mBuckets.put(size, bucket);
+        }
+
+        bucket.add(bitmap);
+        mOrder.add(bitmap);
+        mSize += size;
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Changes max size of the pool, evicting bitmaps if needed
+     *
+     * @param maxSize new maximum total size, bytes
+     */
+    public synchronized void setMaxSize(final long maxSize) {
+        mMaxSize = maxSize;
+        trimToSize(mMaxSize);
+    }
+
+    /**
+     * Drops and recycles all pooled bitmaps
+     */
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    /**
+     * @return total size of pooled bitmaps, bytes
+     */
+    public synchronized long size() {
+        return mSize;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return TAG + " size " + mSize + "/" + mMaxSize + " hits " + mHitCount + " misses " + mMissCount;
+    }
+
+    private Bitmap takeReconfigurable(final int size, final int width, final int height, final Bitmap.Config config) {
+        Integer key = mBuckets.ceilingKey(size);
+
+        while (key != null && key <= (long) size * MAX_SIZE_MULTIPLE) {
+            final Bitmap bitmap = take(key, null);
+
+            try {
+                bitmap.reconfigure(width, height, config);
+                return bitmap;
+            } catch (IllegalArgumentException e) {
+                // Should not happen, but do not keep such bitmap
+                Log.w(TAG, "Failed to reconfigure " + e);
+                bitmap.recycle();
+            }
+
+            key = mBuckets.ceilingKey(size);
+        }
+
+        return null;
+    }
+
+    private Bitmap takeExact(final int size, final int width, final int height, final Bitmap.Config config) {
+        final LinkedList<Bitmap> bucket = mBuckets.get(size);
+
+        if (bucket == null) {
+            return null;
+        }
+
+        for (Bitmap bitmap : bucket) {
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height && bitmap.getConfig() == config) {
+                return take(size, bitmap);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Removes bitmap from the pool
+     *
+     * @param key of the bucket
+     * @param bitmap to take, or null to take any from the bucket
+     *
+     * @return taken bitmap
+     */
+    private Bitmap take(final int key, final Bitmap bitmap) {
+        final LinkedList<Bitmap> bucket = mBuckets.get(key);
+        final Bitmap taken = bitmap == null ? bucket.removeLast() : bitmap;
+
+        if (bitmap != null) {
+            bucket.remove(bitmap);
+        }
+        if (bucket.isEmpty()) {
+            mBuckets.remove(key);
+        }
+
+        removeIdentical(mOrder, taken);
+        mSize -= key;
+
+        return taken;
+    }
+
+    private void trimToSize(final long maxSize) {
+        while (mSize > maxSize && !mOrder.isEmpty()) {
+            final Bitmap bitmap = mOrder.removeFirst();
+            final int size = getSize(bitmap);
+            final LinkedList<Bitmap> bucket = mBuckets.get(size);
+
+            if (bucket != null) {
+                removeIdentical(bucket, bitmap);
+
+                if (bucket.isEmpty()) {
+                    mBuckets.remove(size);
+                }
+            }
+
+            mSize -= size;
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Bitmap doesn't override equals, but be explicit about identity
+     */
+    private static void removeIdentical(final LinkedList<Bitmap> list, final Bitmap bitmap) {
+        final Iterator<Bitmap> iterator = list.iterator();
+
+        while (iterator.hasNext()) {
+            if (iterator.next() == bitmap) {
+                iterator.remove();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return size of bitmap's pixel memory, which can be reused
+     */
+    private static int getSize(final Bitmap bitmap) {
+        return canReconfigure() ? bitmap.getAllocationByteCount() : bitmap.getByteCount();
+    }
+
+    /**
+     * @param config of bitmap, null is treated as ARGB_8888
+     *
+     * @return number of bytes used by one pixel
+     */
+    public static int getBytesPerPixel(final Bitmap.Config config) {
+        if (config == null) {
+            return 4;
+        }
+
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+
+            case ARGB_8888:
+            default:
+                return 4;
+        }
+    }
+}
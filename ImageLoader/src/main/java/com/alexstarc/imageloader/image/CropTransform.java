@@ -0,0 +1,53 @@
+package com.alexstarc.imageloader.image;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+
+/**
+ * Crops rectangle out of bitmap, rectangle is clipped by bitmap bounds
+ */
+public class CropTransform implements Transform {
+    private final int mLeft;
+    private final int mTop;
+    private final int mWidth;
+    private final int mHeight;
+
+    /**
+     * @param left of cropped area
+     * @param top of cropped area
+     * @param width of cropped area
+     * @param height of cropped area
+     */
+    public CropTransform(final int left, final int top, final int width, final int height) {
+        mLeft = left;
+        mTop = top;
+        mWidth = width;
+        mHeight = height;
+    }
+
+    @Override
+    public Bitmap apply(final Bitmap source, final BitmapPool pool) {
+        final int left = Math.max(0, Math.min(mLeft, source.getWidth() - 1));
+        final int top = Math.max(0, Math.min(mTop, source.getHeight() - 1));
+        final int width = Math.max(1, Math.min(mWidth, source.getWidth() - left));
+        final int height = Math.max(1, Math.min(mHeight, source.getHeight() - top));
+
+        if (left == 0 && top == 0 && width == source.getWidth() && height == source.getHeight()) {
+            return source;
+        }
+
+        final Bitmap result = pool.obtain(width, height,
+                source.getConfig() == null ? Bitmap.Config.ARGB_8888 : source.getConfig());
+
+        new Canvas(result).drawBitmap(source, new Rect(left, top, left + width, top + height),
+                new Rect(0, 0, width, height), null);
+
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "crop" + mLeft + "," + mTop + "," + mWidth + "x" + mHeight;
+    }
+}
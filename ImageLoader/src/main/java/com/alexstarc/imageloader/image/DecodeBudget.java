@@ -0,0 +1,116 @@
+package com.alexstarc.imageloader.image;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+/**
+ * Limits memory taken by bitmaps being decoded at the same time. Decode which doesn't fit the budget waits
+ * for others to finish, and decode which wouldn't fit even alone is sampled down more, so loading
+ * degrades to smaller images instead of running out of memory.
+ */
+public final class DecodeBudget {
+    private static final String TAG = "DecodeBudget";
+
+    private static DecodeBudget sInstance = null;
+
+    private long mMaxBytes;
+    private long mUsedBytes = 0;
+
+    /**
+     * @return budget shared by the application, it's set by {@link com.alexstarc.imageloader.cache.MemoryGovernor},
+     * decodes are not limited until then
+     */
+    public static synchronized DecodeBudget getInstance() {
+        if (sInstance == null) {
+            sInstance = new DecodeBudget(Long.MAX_VALUE);
+        }
+
+        return sInstance;
+    }
+
+    DecodeBudget(final long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Changes the budget, decodes which are already admitted are not affected
+     *
+     * @param maxBytes total size of bitmaps decoded at the same time
+     */
+    public synchronized void setMaxBytes(final long maxBytes) {
+        mMaxBytes = maxBytes;
+        notifyAll();
+    }
+
+    /**
+     * @return total size of bitmaps decoded at the same time
+     */
+    public synchronized long getMaxBytes() {
+        return mMaxBytes;
+    }
+
+    /**
+     * Waits until decoded bitmap fits the budget. Every admitted decode has to be released
+     * with {@link #release(int, int, Bitmap.Config, int)} and the returned sample size.
+     *
+     * @param width of the decoded image part
+     * @param height of the decoded image part
+     * @param config of decoded bitmap
+     * @param sampleSize required for the image
+     *
+     * @return sample size to decode with, not less than required one, 0 if thread was interrupted while waiting
+     */
+    synchronized int acquire(final int width, final int height, final Bitmap.Config config, final int sampleSize) {
+        int admittedSize = sampleSize;
+
+        while (estimateBytes(width, height, config, admittedSize) > mMaxBytes
+                && (width > admittedSize || height > admittedSize)) {
+            admittedSize *= 2;
+        }
+
+        if (admittedSize != sampleSize) {
+            Log.w(TAG, "Sampling " + width + "x" + height + " by " + admittedSize + " instead of " + sampleSize);
+        }
+
+        final long bytes = estimateBytes(width, height, config, admittedSize);
+
+        // Single decode is always let through, so budget smaller than a bitmap doesn't stop loading
+        while (mUsedBytes > 0 && mUsedBytes + bytes > mMaxBytes) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 0;
+            }
+        }
+
+        mUsedBytes += bytes;
+
+        return admittedSize;
+    }
+
+    /**
+     * @param width of the decoded image part
+     * @param height of the decoded image part
+     * @param config of decoded bitmap
+     * @param sampleSize returned by {@link #acquire(int, int, Bitmap.Config, int)}
+     */
+    synchronized void release(final int width, final int height, final Bitmap.Config config, final int sampleSize) {
+        mUsedBytes = Math.max(0, mUsedBytes - estimateBytes(width, height, config, sampleSize));
+        notifyAll();
+    }
+
+    /**
+     * @return size of the bitmap decoded with the sample size, bytes
+     */
+    private static long estimateBytes(final int width, final int height, final Bitmap.Config config,
+                                      final int sampleSize) {
+        return (long) ((width + sampleSize - 1) / sampleSize) * ((height + sampleSize - 1) / sampleSize)
+                * BitmapPool.getBytesPerPixel(config);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return TAG + " " + mUsedBytes + "/" + mMaxBytes;
+    }
+}
@@ -0,0 +1,59 @@
+package com.alexstarc.imageloader.image;
+
+import android.os.Process;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor for decoding images to be displayed. It's separate from AsyncTask's default one,
+ * so shown images don't wait for unrelated tasks, and from loading threads which run with background priority.
+ */
+public final class DecodeExecutor {
+    private static final String TAG = "DecodeExecutor";
+
+    /** Decoding is CPU and memory bound, more threads would only raise memory peak */
+    private static final int THREADS = 2;
+    /** Idle threads are stopped after this time */
+    private static final long KEEP_ALIVE = 30; // seconds
+
+    private static ThreadPoolExecutor sInstance = null;
+
+    private DecodeExecutor() {
+    }
+
+    /**
+     * @return executor shared by the application
+     */
+    public static synchronized Executor getInstance() {
+        if (sInstance == null) {
+            sInstance = new ThreadPoolExecutor(THREADS, THREADS, KEEP_ALIVE, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new DecodeThreadFactory());
+            sInstance.allowCoreThreadTimeOut(true);
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * Creates named threads with priority above background, decoded image is waited for by the user
+     */
+    private static final class DecodeThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_DEFAULT + Process.THREAD_PRIORITY_LESS_FAVORABLE);
+                    runnable.run();
+                }
+            }, TAG + "-" + mCount.incrementAndGet());
+        }
+    }
+}
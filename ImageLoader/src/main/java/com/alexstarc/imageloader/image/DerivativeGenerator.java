@@ -0,0 +1,175 @@
+package com.alexstarc.imageloader.image;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Makes several derivatives from one decoded image. Outputs are made from biggest to smallest one, and
+ * the image is halved progressively between them, so each output is resized from the closest bigger
+ * intermediate. It's cheaper than scaling every output from full image and keeps bilinear filtering
+ * from skipping source pixels.
+ */
+public final class DerivativeGenerator {
+    private DerivativeGenerator() {
+    }
+
+    /**
+     * @param specs derivatives to make
+     *
+     * @return target sizes of the derivatives, to decode image once for all of them
+     */
+    public static List<TargetSize> getTargetSizes(final List<DerivativeSpec> specs) {
+        final List<TargetSize> targets = new ArrayList<TargetSize>(specs.size());
+
+        for (DerivativeSpec spec : specs) {
+            targets.add(spec.getTargetSize());
+        }
+
+        return targets;
+    }
+
+    /**
+     * Scales, crops and transforms decoded image to every derivative
+     *
+     * @param source decoded image, not smaller than any target, released to the pool once used
+     * @param specs derivatives to make
+     * @param pool to take results and intermediate bitmaps from
+     *
+     * @return derivative bitmaps in the order of specs, owned by caller
+     */
+    public static List<Bitmap> generate(final Bitmap source, final List<DerivativeSpec> specs, final BitmapPool pool) {
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+        final Integer[] order = new Integer[specs.size()];
+
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+
+        // Least reduced outputs first, each smaller one can be made from more reduced intermediate image
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer first, final Integer second) {
+                return Double.compare(getScale(specs.get(second).getTargetSize(), width, height),
+                        getScale(specs.get(first).getTargetSize(), width, height));
+            }
+        });
+
+        final Bitmap[] results = new Bitmap[order.length];
+        Bitmap base = source;
+
+        for (int i = 0; i < order.length; i++) {
+            final DerivativeSpec spec = specs.get(order[i]);
+            final TargetSize target = spec.getTargetSize();
+            // Output size is computed from decoded image the same way for every intermediate
+            final int outputWidth = target.getOutputWidth(width, height);
+            final int outputHeight = target.getOutputHeight(width, height);
+
+            base = halveWhileCovers(base, target, outputWidth, outputHeight, pool);
+
+            final boolean isLast = i == order.length - 1;
+            Bitmap output = scale(base, target, outputWidth, outputHeight, pool);
+
+            if (output == base) {
+                if (isLast) {
+                    // Nothing else is made from the base, it's handed over
+                    base = null;
+                } else {
+                    // Transforms may change bitmap in place, while base is still needed for next outputs
+                    output = copy(base, pool);
+                }
+            }
+
+            final Transform transform = spec.getTransform();
+
+            if (transform != null) {
+                final Bitmap transformed = transform.apply(output, pool);
+
+                if (transformed != output) {
+                    pool.put(output);
+                }
+
+                output = transformed;
+            }
+
+            results[order[i]] = output;
+        }
+
+        pool.put(base);
+
+        return Collections.unmodifiableList(Arrays.asList(results));
+    }
+
+    /**
+     * Halves the image while visible part of halved one is still not smaller than the output
+     *
+     * @return reduced image, provided one is released to the pool if it's reduced
+     */
+    private static Bitmap halveWhileCovers(final Bitmap bitmap, final TargetSize target, final int outputWidth,
+                                           final int outputHeight, final BitmapPool pool) {
+        Bitmap current = bitmap;
+
+        while (true) {
+            final int halfWidth = current.getWidth() / 2;
+            final int halfHeight = current.getHeight() / 2;
+
+            if (halfWidth == 0 || halfHeight == 0 || target.getVisibleWidth(halfWidth, halfHeight) < outputWidth
+                    || target.getVisibleHeight(halfWidth, halfHeight) < outputHeight) {
+                return current;
+            }
+
+            final Bitmap half = new ResizeTransform(halfWidth, halfHeight).apply(current, pool);
+
+            pool.put(current);
+            current = half;
+        }
+    }
+
+    /**
+     * Crops visible part of the image and resizes it to the output size
+     *
+     * @return scaled image, or provided one if it already has the output size, provided one isn't released
+     */
+    private static Bitmap scale(final Bitmap bitmap, final TargetSize target, final int outputWidth,
+                                final int outputHeight, final BitmapPool pool) {
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        final int visibleWidth = target.getVisibleWidth(width, height);
+        final int visibleHeight = target.getVisibleHeight(width, height);
+        final List<Transform> transforms = new ArrayList<Transform>(2);
+
+        if (visibleWidth != width || visibleHeight != height) {
+            transforms.add(new CropTransform((width - visibleWidth) / 2, (height - visibleHeight) / 2,
+                    visibleWidth, visibleHeight));
+        }
+
+        if (outputWidth != visibleWidth || outputHeight != visibleHeight) {
+            transforms.add(new ResizeTransform(outputWidth, outputHeight));
+        }
+
+        return transforms.isEmpty() ? bitmap : new TransformPipeline(transforms).apply(bitmap, pool);
+    }
+
+    private static Bitmap copy(final Bitmap bitmap, final BitmapPool pool) {
+        final Bitmap result = pool.obtain(bitmap.getWidth(), bitmap.getHeight(),
+                bitmap.getConfig() == null ? Bitmap.Config.ARGB_8888 : bitmap.getConfig());
+
+        new Canvas(result).drawBitmap(bitmap, 0, 0, null);
+
+        return result;
+    }
+
+    /**
+     * @return how much visible part of the image is scaled to make the output, bigger side scale if they differ
+     */
+    private static double getScale(final TargetSize target, final int width, final int height) {
+        return Math.max((double) target.getOutputWidth(width, height) / target.getVisibleWidth(width, height),
+                (double) target.getOutputHeight(width, height) / target.getVisibleHeight(width, height));
+    }
+}
@@ -0,0 +1,60 @@
+package com.alexstarc.imageloader.image;
+
+/**
+ * Description of one image made from loaded one: its size, transformation and output format
+ */
+public class DerivativeSpec {
+    private final TargetSize mTargetSize;
+    private final Transform mTransform;
+    private final ImageEncoder mEncoder;
+
+    /**
+     * @param targetSize to scale image to
+     * @param transform applied after scaling, null to keep image as is
+     * @param encoder to save image with
+     */
+    public DerivativeSpec(final TargetSize targetSize, final Transform transform, final ImageEncoder encoder) {
+        if (targetSize == null || encoder == null) {
+            throw new IllegalArgumentException("Wrong derivative " + targetSize + " " + encoder);
+        }
+
+        mTargetSize = targetSize;
+        mTransform = transform;
+        mEncoder = encoder;
+    }
+
+    /**
+     * @return size image is scaled to
+     */
+    public TargetSize getTargetSize() {
+        return mTargetSize;
+    }
+
+    /**
+     * @return transformation applied after scaling, null if there's none
+     */
+    public Transform getTransform() {
+        return mTransform;
+    }
+
+    /**
+     * @return encoder image is saved with
+     */
+    public ImageEncoder getEncoder() {
+        return mEncoder;
+    }
+
+    /**
+     * Transform is identified by its toString(), so transforms with parameters have to include them there
+     *
+     * @return key unique for the derivative, to be used as a part of cache keys
+     */
+    public String toKey() {
+        return mTargetSize.toKey() + (mTransform == null ? "" : "-" + mTransform) + "." + mEncoder.toKey();
+    }
+
+    @Override
+    public String toString() {
+        return toKey();
+    }
+}
@@ -0,0 +1,123 @@
+package com.alexstarc.imageloader.image;
+
+import android.media.ExifInterface;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * JPEG rotation without decoding: rotation is written to EXIF orientation tag, so pixels stay untouched
+ * and there's no quality loss from re-encoding. Viewers apply the orientation while displaying.
+ */
+public final class ExifOrientation {
+    private static final String TAG = "ExifOrientation";
+
+    /**
+     * Orientation after clockwise rotation by 90 degrees, indexed by orientation before it.
+     * E.g. flip then rotation by 90 degrees is transverse.
+     */
+    private static final int[] ROTATED_90 = {
+            ExifInterface.ORIENTATION_ROTATE_90,      // undefined is treated as normal
+            ExifInterface.ORIENTATION_ROTATE_90,      // normal
+            ExifInterface.ORIENTATION_TRANSVERSE,     // flip horizontal
+            ExifInterface.ORIENTATION_ROTATE_270,     // rotate 180
+            ExifInterface.ORIENTATION_TRANSPOSE,      // flip vertical
+            ExifInterface.ORIENTATION_FLIP_HORIZONTAL, // transpose
+            ExifInterface.ORIENTATION_ROTATE_180,     // rotate 90
+            ExifInterface.ORIENTATION_FLIP_VERTICAL,  // transverse
+            ExifInterface.ORIENTATION_NORMAL          // rotate 270
+    };
+
+    private ExifOrientation() {
+    }
+
+    /**
+     * @param orientation current EXIF orientation
+     * @param degrees clockwise rotation, multiple of 90
+     *
+     * @return EXIF orientation of the image rotated for the degrees
+     */
+    public static int rotate(final int orientation, final int degrees) {
+        int result = orientation >= 0 && orientation < ROTATED_90.length
+                ? orientation : ExifInterface.ORIENTATION_NORMAL;
+        final int steps = (((degrees % 360) + 360) % 360) / 90;
+
+        for (int i = 0; i < steps; i++) {
+            result = ROTATED_90[result];
+        }
+
+        return result;
+    }
+
+    /**
+     * @param fileName of JPEG image
+     *
+     * @return EXIF orientation of the image, normal if it's not set or cannot be read
+     */
+    public static int read(final String fileName) {
+        try {
+            return new ExifInterface(fileName).getAttributeInt(ExifInterface.TAG_ORIENTATION,
+                    ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read orientation " + e);
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    /**
+     * Rotates JPEG image by updating its orientation tag, file is rewritten in place
+     *
+     * @param fileName of JPEG image
+     * @param degrees clockwise rotation, multiple of 90
+     *
+     * @return true if tag was written
+     */
+    public static boolean writeRotation(final String fileName, final int degrees) {
+        try {
+            final ExifInterface exif = new ExifInterface(fileName);
+            final int orientation = exif.getAttributeInt(ExifInterface.TAG_ORIENTATION,
+                    ExifInterface.ORIENTATION_NORMAL);
+
+            exif.setAttribute(ExifInterface.TAG_ORIENTATION, String.valueOf(rotate(orientation, degrees)));
+            exif.saveAttributes();
+
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write orientation " + e);
+            return false;
+        }
+    }
+
+    /**
+     * @param orientation EXIF orientation
+     *
+     * @return transform to display image with the orientation, null if image is displayed as is
+     */
+    public static Transform toTransform(final int orientation) {
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                return new FlipTransform(true);
+
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                return new RotateTransform(180);
+
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                return new FlipTransform(false);
+
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                return new TransformPipeline(new RotateTransform(90), new FlipTransform(true));
+
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                return new RotateTransform(90);
+
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                return new TransformPipeline(new RotateTransform(90), new FlipTransform(false));
+
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                return new RotateTransform(270);
+
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.alexstarc.imageloader.image;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+
+/**
+ * Mirrors bitmap horizontally or vertically, mutable bitmap is mirrored in place
+ */
+public class FlipTransform implements Transform {
+    private final boolean mHorizontal;
+
+    /**
+     * @param horizontal true to mirror left to right, false to mirror upside down
+     */
+    public FlipTransform(final boolean horizontal) {
+        mHorizontal = horizontal;
+    }
+
+    @Override
+    public Bitmap apply(final Bitmap source, final BitmapPool pool) {
+        if (source.isMutable()) {
+            if (mHorizontal) {
+                InPlaceOps.flipHorizontal(source);
+            } else {
+                InPlaceOps.flipVertical(source);
+            }
+
+            return source;
+        }
+
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+        final Bitmap result = pool.obtain(width, height,
+                source.getConfig() == null ? Bitmap.Config.ARGB_8888 : source.getConfig());
+        final Matrix matrix = new Matrix();
+
+        if (mHorizontal) {
+            matrix.setScale(-1, 1);
+            matrix.postTranslate(width, 0);
+        } else {
+            matrix.setScale(1, -1);
+            matrix.postTranslate(0, height);
+        }
+
+        new Canvas(result).drawBitmap(source, matrix, null);
+
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return mHorizontal ? "flipH" : "flipV";
+    }
+}
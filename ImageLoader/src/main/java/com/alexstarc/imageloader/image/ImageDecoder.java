@@ -0,0 +1,456 @@
+package com.alexstarc.imageloader.image;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.alexstarc.imageloader.io.StreamUtils;
+
+/**
+ * Decodes images sampled down to the required size, from file or directly from loading stream.
+ * Decoded bitmaps are mutable, so they can be transformed in place, and reuse pooled bitmaps memory when possible.
+ */
+public class ImageDecoder {
+    private static final String TAG = "ImageDecoder";
+
+    /** Images with bigger side are decoded by regions */
+    public static final int LARGE_IMAGE_SIZE = 4096;
+    /** Config of decoded bitmaps, images are shown and saved without alpha */
+    private static final Bitmap.Config DECODED_CONFIG = Bitmap.Config.RGB_565;
+    /** Height of decoded strip of large image, in sampled pixels */
+    private static final int REGION_STRIP_HEIGHT = 512;
+
+    private ImageDecoder() {
+    }
+
+    /**
+     * Decodes file, first reading its bounds to pick sample size. Images bigger than {@link #LARGE_IMAGE_SIZE}
+     * are decoded by regions, so only visible part is decoded and memory peak stays limited.
+     *
+     * @param fileName to decode
+     * @param target size to decode image to
+     * @param pool to take reused and intermediate bitmaps from
+     *
+     * @return decoded bitmap of the target size or null if file cannot be decoded
+     */
+    public static Bitmap decodeFile(final String fileName, final TargetSize target, final BitmapPool pool) {
+        // First decode with inJustDecodeBounds=true to check dimensions
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(fileName, options);
+
+        if (isLarge(options.outWidth, options.outHeight)) {
+            final int width = options.outWidth;
+            final int height = options.outHeight;
+            final int visibleWidth = target.getVisibleWidth(width, height);
+            final int visibleHeight = target.getVisibleHeight(width, height);
+            final Bitmap bitmap = decodeRegions(fileName, (width - visibleWidth) / 2, (height - visibleHeight) / 2,
+                    visibleWidth, visibleHeight, target.calculateInSampleSize(visibleWidth, visibleHeight), pool);
+
+            if (bitmap != null) {
+                return applySize(bitmap, target, pool);
+            }
+            // Format isn't supported by region decoder, fall back to ordinary sampled decoding
+        }
+
+        return applySize(decodeFile(fileName, options, options.outWidth, options.outHeight,
+                target.calculateInSampleSize(options.outWidth, options.outHeight), pool), target, pool);
+    }
+
+    /**
+     * Decodes whole file once for several targets, sampled so it's not smaller than any of them.
+     * Result is scaled to the target size only if there's single target.
+     *
+     * @param fileName to decode
+     * @param targets sizes image will be scaled to, not empty
+     * @param pool to take reused and intermediate bitmaps from
+     *
+     * @return decoded bitmap or null if file cannot be decoded
+     */
+    public static Bitmap decodeFile(final String fileName, final List<TargetSize> targets, final BitmapPool pool) {
+        if (targets.size() == 1) {
+            return decodeFile(fileName, targets.get(0), pool);
+        }
+
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(fileName, options);
+
+        final int width = options.outWidth;
+        final int height = options.outHeight;
+        final int sampleSize = calculateInSampleSize(width, height, targets);
+
+        if (isLarge(width, height)) {
+            // Targets may be cropped differently, so whole image is decoded
+            final Bitmap bitmap = decodeRegions(fileName, 0, 0, width, height, sampleSize, pool);
+
+            if (bitmap != null) {
+                return bitmap;
+            }
+        }
+
+        return decodeFile(fileName, options, width, height, sampleSize, pool);
+    }
+
+    /**
+     * Decodes whole file once it's admitted by {@link DecodeBudget}
+     */
+    private static Bitmap decodeFile(final String fileName, final BitmapFactory.Options options, final int width,
+                                     final int height, final int sampleSize, final BitmapPool pool) {
+        final DecodeBudget budget = DecodeBudget.getInstance();
+        final int admittedSize = budget.acquire(width, height, DECODED_CONFIG, sampleSize);
+
+        if (admittedSize == 0) {
+            return null;
+        }
+
+        try {
+            setupOptions(options, width, height, admittedSize, pool);
+
+            try {
+                return decodeFile(fileName, options);
+            } catch (OutOfMemoryError e) {
+                // Budget is only an estimate, e.g. other parts of the app hold memory too
+                Log.w(TAG, "Out of memory, decoding smaller " + e);
+                pool.clear();
+                options.inBitmap = null;
+                options.inSampleSize *= 2;
+                return decodeFile(fileName, options);
+            }
+        } catch (OutOfMemoryError e) {
+            Log.e(TAG, "Out of memory " + e);
+            return null;
+        } finally {
+            budget.release(width, height, DECODED_CONFIG, admittedSize);
+        }
+    }
+
+    private static Bitmap decodeFile(final String fileName, final BitmapFactory.Options options) {
+        try {
+            return BitmapFactory.decodeFile(fileName, options);
+        } catch (IllegalArgumentException e) {
+            // Pooled bitmap cannot be reused for this image, it's released by decoder
+            Log.w(TAG, "Failed to decode into pooled bitmap " + e);
+            options.inBitmap = null;
+            return BitmapFactory.decodeFile(fileName, options);
+        }
+    }
+
+    /**
+     * @param width of the image
+     * @param height of the image
+     * @param targets sizes image will be scaled to, not empty
+     *
+     * @return biggest sample size with which decoded image can be downscaled to every target
+     */
+    public static int calculateInSampleSize(final int width, final int height, final List<TargetSize> targets) {
+        int sampleSize = Integer.MAX_VALUE;
+
+        for (TargetSize target : targets) {
+            sampleSize = Math.min(sampleSize, target.calculateInSampleSize(width, height));
+        }
+
+        return sampleSize;
+    }
+
+    /**
+     * @param header of the image
+     *
+     * @return true if image is too big to be decoded at once and has to be decoded from file by regions
+     */
+    public static boolean isLarge(final ImageHeader header) {
+        return isLarge(header.getWidth(), header.getHeight());
+    }
+
+    private static boolean isLarge(final int width, final int height) {
+        return width > LARGE_IMAGE_SIZE || height > LARGE_IMAGE_SIZE;
+    }
+
+    /**
+     * Decodes part of the image strip by strip into single sampled bitmap, once it's admitted by {@link DecodeBudget}
+     *
+     * @return sampled bitmap of the part or null if image cannot be decoded by regions
+     */
+    private static Bitmap decodeRegions(final String fileName, final int left, final int top, final int visibleWidth,
+                                        final int visibleHeight, final int sampleSize, final BitmapPool pool) {
+        final DecodeBudget budget = DecodeBudget.getInstance();
+        final int admittedSize = budget.acquire(visibleWidth, visibleHeight, DECODED_CONFIG, sampleSize);
+
+        if (admittedSize == 0) {
+            return null;
+        }
+
+        try {
+            return decodeRegionsSampled(fileName, left, top, visibleWidth, visibleHeight, admittedSize, pool);
+        } catch (OutOfMemoryError e) {
+            Log.e(TAG, "Out of memory " + e);
+            pool.clear();
+            return null;
+        } finally {
+            budget.release(visibleWidth, visibleHeight, DECODED_CONFIG, admittedSize);
+        }
+    }
+
+    private static Bitmap decodeRegionsSampled(final String fileName, final int left, final int top,
+                                               final int visibleWidth, final int visibleHeight, final int sampleSize,
+                                               final BitmapPool pool) {
+        final BitmapRegionDecoder decoder;
+
+        try {
+            decoder = BitmapRegionDecoder.newInstance(fileName, false);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to create region decoder " + e);
+            return null;
+        }
+
+        final int stripHeight = REGION_STRIP_HEIGHT * sampleSize;
+        final Bitmap result = pool.obtain(divideRoundUp(visibleWidth, sampleSize),
+                divideRoundUp(visibleHeight, sampleSize), DECODED_CONFIG);
+        final Canvas canvas = new Canvas(result);
+        final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
+        final Rect region = new Rect();
+        final Rect source = new Rect();
+        final Rect destination = new Rect();
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = DECODED_CONFIG;
+        options.inMutable = true;
+
+        try {
+            for (int y = top; y < top + visibleHeight; y += stripHeight) {
+                region.set(left, y, left + visibleWidth, Math.min(y + stripHeight, top + visibleHeight));
+
+                final Bitmap strip = decoder.decodeRegion(region, options);
+
+                if (strip == null) {
+                    Log.w(TAG, "Failed to decode region " + region);
+                    pool.put(result);
+                    return null;
+                }
+
+                // Strip starts at multiple of sample size, so its position in result is exact
+                final int destinationTop = (y - top) / sampleSize;
+
+                source.set(0, 0, Math.min(strip.getWidth(), result.getWidth()), getDrawnRows(region.height(),
+                        sampleSize, strip.getHeight(), result.getHeight() - destinationTop));
+                destination.set(0, destinationTop, source.width(), destinationTop + source.height());
+                canvas.drawBitmap(strip, source, destination, paint);
+
+                // All strips but last have same size, reuse memory for the next one
+                if (BitmapPool.canReconfigure()) {
+                    options.inBitmap = strip;
+                } else {
+                    pool.put(strip);
+                }
+            }
+        } finally {
+            if (options.inBitmap != null) {
+                pool.put(options.inBitmap);
+            }
+
+            decoder.recycle();
+        }
+
+        return result;
+    }
+
+    /**
+     * Scales and crops sampled bitmap to exact output size of the target
+     */
+    private static Bitmap applySize(final Bitmap bitmap, final TargetSize target, final BitmapPool pool) {
+        if (bitmap == null) {
+            return null;
+        }
+
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+        final int visibleWidth = target.getVisibleWidth(width, height);
+        final int visibleHeight = target.getVisibleHeight(width, height);
+        final int outputWidth = target.getOutputWidth(width, height);
+        final int outputHeight = target.getOutputHeight(width, height);
+        final List<Transform> transforms = new ArrayList<Transform>(2);
+
+        if (visibleWidth != width || visibleHeight != height) {
+            transforms.add(new CropTransform((width - visibleWidth) / 2, (height - visibleHeight) / 2,
+                    visibleWidth, visibleHeight));
+        }
+
+        if (outputWidth != visibleWidth || outputHeight != visibleHeight) {
+            transforms.add(new ResizeTransform(outputWidth, outputHeight));
+        }
+
+        if (transforms.isEmpty()) {
+            return bitmap;
+        }
+
+        final Bitmap result = new TransformPipeline(transforms).apply(bitmap, pool);
+
+        if (result != bitmap) {
+            pool.put(bitmap);
+        }
+
+        return result;
+    }
+
+    /**
+     * Reads image header without changing stream position
+     *
+     * @param input stream supporting mark, e.g. BufferedInputStream
+     *
+     * @return parsed header or null if it cannot be parsed
+     *
+     * @throws IOException if stream cannot be read
+     */
+    public static ImageHeader peekHeader(final InputStream input) throws IOException {
+        input.mark(ImageHeader.MAX_HEADER_SIZE);
+
+        final ImageHeader header = ImageHeader.parse(input);
+
+        input.reset();
+
+        if (header == null) {
+            Log.w(TAG, "Unknown image header");
+        }
+
+        return header;
+    }
+
+    /**
+     * @param fileName of the image
+     *
+     * @return parsed header or null if it cannot be parsed
+     */
+    public static ImageHeader readHeader(final String fileName) {
+        InputStream input = null;
+
+        try {
+            input = new BufferedInputStream(new FileInputStream(fileName));
+            return ImageHeader.parse(input);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read header " + e);
+            return null;
+        } finally {
+            StreamUtils.close(input);
+        }
+    }
+
+    /**
+     * Decodes image while it's being loaded. Sample size is picked from dimensions in the image header,
+     * so data is read only once and decoding finishes as soon as last byte arrives.
+     *
+     * @param input stream positioned at the image start
+     * @param header of the image, see {@link #peekHeader(InputStream)}
+     * @param target size to decode image to
+     * @param pool to take reused and intermediate bitmaps from
+     *
+     * @return decoded bitmap of the target size or null if image cannot be decoded
+     */
+    public static Bitmap decodeStream(final InputStream input, final ImageHeader header, final TargetSize target,
+                                      final BitmapPool pool) {
+        return applySize(decodeStream(input, header,
+                target.calculateInSampleSize(header.getWidth(), header.getHeight()), pool), target, pool);
+    }
+
+    /**
+     * Decodes image while it's being loaded, once for several targets. Result is sampled so it's not smaller
+     * than any of them, it's scaled to the target size only if there's single target.
+     *
+     * @param input stream positioned at the image start
+     * @param header of the image, see {@link #peekHeader(InputStream)}
+     * @param targets sizes image will be scaled to, not empty
+     * @param pool to take reused and intermediate bitmaps from
+     *
+     * @return decoded bitmap or null if image cannot be decoded
+     */
+    public static Bitmap decodeStream(final InputStream input, final ImageHeader header,
+                                      final List<TargetSize> targets, final BitmapPool pool) {
+        if (targets.size() == 1) {
+            return decodeStream(input, header, targets.get(0), pool);
+        }
+
+        return decodeStream(input, header, calculateInSampleSize(header.getWidth(), header.getHeight(), targets),
+                pool);
+    }
+
+    private static Bitmap decodeStream(final InputStream input, final ImageHeader header, final int sampleSize,
+                                       final BitmapPool pool) {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        final DecodeBudget budget = DecodeBudget.getInstance();
+        final int admittedSize = budget.acquire(header.getWidth(), header.getHeight(), DECODED_CONFIG, sampleSize);
+
+        if (admittedSize == 0) {
+            return null;
+        }
+
+        setupOptions(options, header.getWidth(), header.getHeight(), admittedSize, pool);
+
+        try {
+            return BitmapFactory.decodeStream(input, null, options);
+        } catch (IllegalArgumentException e) {
+            // Stream is already consumed, so caller has to decode from file
+            Log.w(TAG, "Failed to decode into pooled bitmap " + e);
+            return null;
+        } catch (OutOfMemoryError e) {
+            // Same, file is decoded later, hopefully with more free memory
+            Log.w(TAG, "Out of memory " + e);
+            pool.clear();
+            return null;
+        } finally {
+            budget.release(header.getWidth(), header.getHeight(), DECODED_CONFIG, admittedSize);
+        }
+    }
+
+    /**
+     * Prepares options to decode pixels of sampled image
+     */
+    private static void setupOptions(final BitmapFactory.Options options, final int width, final int height,
+                                     final int sampleSize, final BitmapPool pool) {
+        options.inSampleSize = sampleSize;
+
+        // Decode bitmap with inSampleSize set
+        options.inJustDecodeBounds = false;
+        options.inPreferredConfig = DECODED_CONFIG;
+        options.inDither = true;
+        options.inMutable = true;
+
+        // Before KitKat only same size bitmaps without sampling can be reused, keep it simple and skip them
+        if (BitmapPool.canReconfigure() && width > 0 && height > 0) {
+            // Decoders round sampled size differently, so take the bigger one
+            options.inBitmap = pool.getReusable(divideRoundUp(width, options.inSampleSize),
+                    divideRoundUp(height, options.inSampleSize), options.inPreferredConfig);
+        }
+    }
+
+    /**
+     * Reused strip isn't shrunk for the last shorter region, only its top rows are decoded
+     *
+     * @param regionHeight height of decoded region, image pixels
+     * @param sampleSize region is decoded with
+     * @param stripHeight height of decoded strip bitmap
+     * @param rowsLeft rows of the result from the strip position to the bottom
+     *
+     * @return rows of the strip to draw into the result
+     */
+    static int getDrawnRows(final int regionHeight, final int sampleSize, final int stripHeight,
+                            final int rowsLeft) {
+        return Math.min(Math.min(divideRoundUp(regionHeight, sampleSize), stripHeight), rowsLeft);
+    }
+
+    static int divideRoundUp(final int value, final int divider) {
+        return (value + divider - 1) / divider;
+    }
+}
@@ -0,0 +1,99 @@
+package com.alexstarc.imageloader.image;
+
+import android.graphics.Bitmap;
+
+import java.io.OutputStream;
+
+/**
+ * Output format and quality of saved images
+ */
+public class ImageEncoder {
+    /** Default quality of lossy formats */
+    public static final int DEFAULT_QUALITY = 90;
+
+    /** Supported output formats */
+    public enum OutputFormat {
+        JPEG(Bitmap.CompressFormat.JPEG, "jpg"),
+        /** Lossless, quality is ignored */
+        PNG(Bitmap.CompressFormat.PNG, "png"),
+        /** Noticeably smaller than JPEG of the same quality, transparency is kept since API 18 */
+        WEBP(Bitmap.CompressFormat.WEBP, "webp");
+
+        private final Bitmap.CompressFormat mCompressFormat;
+        private final String mExtension;
+
+        OutputFormat(final Bitmap.CompressFormat compressFormat, final String extension) {
+            mCompressFormat = compressFormat;
+            mExtension = extension;
+        }
+
+        /**
+         * @return file extension, without dot
+         */
+        public String getExtension() {
+            return mExtension;
+        }
+    }
+
+    private final OutputFormat mFormat;
+    private final int mQuality;
+
+    /**
+     * @param format to encode images to
+     * @param quality of lossy formats, 0-100
+     */
+    public ImageEncoder(final OutputFormat format, final int quality) {
+        if (format == null || quality < 0 || quality > 100) {
+            throw new IllegalArgumentException("Wrong encoder " + format + " " + quality);
+        }
+
+        mFormat = format;
+        mQuality = quality;
+    }
+
+    /**
+     * JPEG keeps lossless EXIF rotation possible and output of existing clients unchanged,
+     * WebP is chosen explicitly, e.g. with {@code LoaderService.Action.CONFIGURE}
+     *
+     * @return encoder used when nothing is configured
+     */
+    public static ImageEncoder getDefault() {
+        return new ImageEncoder(OutputFormat.JPEG, DEFAULT_QUALITY);
+    }
+
+    /**
+     * @return output format
+     */
+    public OutputFormat getFormat() {
+        return mFormat;
+    }
+
+    /**
+     * @return extension of encoded files, without dot
+     */
+    public String getExtension() {
+        return mFormat.getExtension();
+    }
+
+    /**
+     * @return string identifying encoded output, e.g. to be part of cache key
+     */
+    public String toKey() {
+        return mFormat.getExtension() + mQuality;
+    }
+
+    /**
+     * @param bitmap to encode
+     * @param output to write encoded image to, not closed
+     *
+     * @return true if image was encoded
+     */
+    public boolean encode(final Bitmap bitmap, final OutputStream output) {
+        return bitmap.compress(mFormat.mCompressFormat, mQuality, output);
+    }
+
+    @Override
+    public String toString() {
+        return mFormat + " " + mQuality;
+    }
+}
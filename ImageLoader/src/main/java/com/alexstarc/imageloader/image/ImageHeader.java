@@ -0,0 +1,369 @@
+package com.alexstarc.imageloader.image;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Image format and dimensions, parsed from the first bytes of the image without decoding it
+ */
+public class ImageHeader {
+    /** Supported image formats, detected by magic bytes regardless of declared content type */
+    public enum Format {
+        JPEG("jpg", "image/jpeg", false),
+        PNG("png", "image/png", false),
+        /** Pixels are usually stored uncompressed */
+        BMP("bmp", "image/bmp", true),
+        /** Only the first frame of animated GIF is decoded */
+        GIF("gif", "image/gif", false),
+        /** Lossless and alpha WebP can be decoded since API 18 only */
+        WEBP("webp", "image/webp", false);
+
+        private final String mExtension;
+        private final String mMimeType;
+        private final boolean mIsCompressible;
+
+        Format(final String extension, final String mimeType, final boolean compressible) {
+            mExtension = extension;
+            mMimeType = mimeType;
+            mIsCompressible = compressible;
+        }
+
+        /**
+         * @param extension of the file or url path, without dot, case insensitive
+         *
+         * @return format with the extension, null if there's no such one
+         */
+        public static Format fromExtension(final String extension) {
+            for (Format format : values()) {
+                if (format.mExtension.equalsIgnoreCase(extension)) {
+                    return format;
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * Data of other formats is already compressed, transfer compression only costs CPU for them
+         *
+         * @return true if gzip transfer makes data of this format much smaller
+         */
+        public boolean isCompressible() {
+            return mIsCompressible;
+        }
+
+        /**
+         * @return file extension, without dot
+         */
+        public String getExtension() {
+            return mExtension;
+        }
+
+        /**
+         * @return mime type
+         */
+        public String getMimeType() {
+            return mMimeType;
+        }
+    }
+
+    /** Maximum number of bytes read to find image dimensions, JPEG can have up to 64 KB of EXIF before them */
+    public static final int MAX_HEADER_SIZE = 128 * 1024;
+
+    private static final int JPEG_MARKER = 0xFF;
+    private static final int JPEG_SOI = 0xD8;
+    private static final int JPEG_SOS = 0xDA;
+    private static final int JPEG_EOI = 0xD9;
+    private static final int JPEG_TEM = 0x01;
+    private static final int JPEG_RST0 = 0xD0;
+    private static final int JPEG_RST7 = 0xD7;
+    private static final int JPEG_SOF0 = 0xC0;
+    private static final int JPEG_SOF15 = 0xCF;
+    private static final int JPEG_DHT = 0xC4;
+    private static final int JPEG_JPG = 0xC8;
+    private static final int JPEG_DAC = 0xCC;
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final int PNG_IHDR = 0x49484452;
+    private static final int BMP_CORE_HEADER_SIZE = 12;
+    private static final int WEBP_VP8 = 0x56503820; // "VP8 "
+    private static final int WEBP_VP8L = 0x5650384C; // "VP8L"
+    private static final int WEBP_VP8X = 0x56503858; // "VP8X"
+    private static final int WEBP_WEBP = 0x57454250; // "WEBP"
+    private static final int WEBP_LOSSLESS_SIGNATURE = 0x2F;
+    private static final int[] WEBP_LOSSY_START_CODE = {0x9D, 0x01, 0x2A};
+    private static final int WEBP_DIMENSION_MASK = 0x3FFF;
+
+    private final Format mFormat;
+    private final int mWidth;
+    private final int mHeight;
+
+    private ImageHeader(final Format format, final int width, final int height) {
+        mFormat = format;
+        mWidth = width;
+        mHeight = height;
+    }
+
+    /**
+     * @return image format
+     */
+    public Format getFormat() {
+        return mFormat;
+    }
+
+    /**
+     * @return image width, pixels
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * @return image height, pixels
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * Reads image header from the stream, no more than {@link #MAX_HEADER_SIZE} bytes are read.
+     * Stream position is not restored, so caller has to mark and reset it if needed.
+     *
+     * @param input to read header from
+     *
+     * @return parsed header or null if format is not supported or header is broken
+     *
+     * @throws IOException if stream cannot be read
+     */
+    public static ImageHeader parse(final InputStream input) throws IOException {
+        final HeaderReader reader = new HeaderReader(input);
+
+        try {
+            final int first = reader.readByte();
+            final int second = reader.readByte();
+
+            if (first == JPEG_MARKER && second == JPEG_SOI) {
+                return parseJpeg(reader);
+            }
+            if (first == (PNG_SIGNATURE[0] & 0xFF) && second == PNG_SIGNATURE[1]) {
+                return parsePng(reader);
+            }
+            if (first == 'B' && second == 'M') {
+                return parseBmp(reader);
+            }
+            if (first == 'G' && second == 'I') {
+                return parseGif(reader);
+            }
+            if (first == 'R' && second == 'I') {
+                return parseWebp(reader);
+            }
+        } catch (EOFException e) {
+            // Truncated header or it's too big
+        }
+
+        return null;
+    }
+
+    private static ImageHeader parseJpeg(final HeaderReader reader) throws IOException {
+        while (true) {
+            // Markers can be padded with any number of 0xFF
+            int marker = reader.readByte();
+
+            if (marker != JPEG_MARKER) {
+                return null;
+            }
+            while (marker == JPEG_MARKER) {
+                marker = reader.readByte();
+            }
+
+            if (marker == JPEG_TEM || (marker >= JPEG_RST0 && marker <= JPEG_RST7)) {
+                // Stand-alone markers without length
+                continue;
+            }
+            if (marker == JPEG_SOS || marker == JPEG_EOI) {
+                // Image data started, but there was no frame header
+                return null;
+            }
+
+            final int length = reader.readShort();
+
+            if (marker >= JPEG_SOF0 && marker <= JPEG_SOF15
+                    && marker != JPEG_DHT && marker != JPEG_JPG && marker != JPEG_DAC) {
+                // Precision, then height and width
+                reader.skip(1);
+
+                final int height = reader.readShort();
+                final int width = reader.readShort();
+
+                return new ImageHeader(Format.JPEG, width, height);
+            }
+
+            reader.skip(length - 2);
+        }
+    }
+
+    private static ImageHeader parsePng(final HeaderReader reader) throws IOException {
+        for (int i = 2; i < PNG_SIGNATURE.length; i++) {
+            if (reader.readByte() != (PNG_SIGNATURE[i] & 0xFF)) {
+                return null;
+            }
+        }
+
+        // IHDR chunk always goes first: length, type, width, height
+        reader.skip(4);
+
+        if (reader.readInt() != PNG_IHDR) {
+            return null;
+        }
+
+        return new ImageHeader(Format.PNG, reader.readInt(), reader.readInt());
+    }
+
+    private static ImageHeader parseBmp(final HeaderReader reader) throws IOException {
+        // File size, reserved fields and data offset
+        reader.skip(12);
+
+        final int headerSize = reader.readIntLittleEndian();
+
+        if (headerSize == BMP_CORE_HEADER_SIZE) {
+            final int width = reader.readShortLittleEndian();
+            final int height = reader.readShortLittleEndian();
+
+            return new ImageHeader(Format.BMP, width, height);
+        }
+
+        final int width = reader.readIntLittleEndian();
+        // Negative height means top-down bitmap
+        final int height = Math.abs(reader.readIntLittleEndian());
+
+        return new ImageHeader(Format.BMP, width, height);
+    }
+
+    private static ImageHeader parseGif(final HeaderReader reader) throws IOException {
+        // GIF87a or GIF89a
+        if (reader.readByte() != 'F' || reader.readByte() != '8') {
+            return null;
+        }
+
+        final int version = reader.readByte();
+
+        if ((version != '7' && version != '9') || reader.readByte() != 'a') {
+            return null;
+        }
+
+        // Logical screen size
+        final int width = reader.readShortLittleEndian();
+        final int height = reader.readShortLittleEndian();
+
+        return new ImageHeader(Format.GIF, width, height);
+    }
+
+    private static ImageHeader parseWebp(final HeaderReader reader) throws IOException {
+        // RIFF, file size, WEBP, then the first chunk type and size
+        if (reader.readByte() != 'F' || reader.readByte() != 'F') {
+            return null;
+        }
+
+        reader.skip(4);
+
+        if (reader.readInt() != WEBP_WEBP) {
+            return null;
+        }
+
+        final int chunk = reader.readInt();
+
+        reader.skip(4);
+
+        if (chunk == WEBP_VP8) {
+            // Frame tag, then start code and 14 bit dimensions with 2 bit scale
+            reader.skip(3);
+
+            for (int code : WEBP_LOSSY_START_CODE) {
+                if (reader.readByte() != code) {
+                    return null;
+                }
+            }
+
+            final int width = reader.readShortLittleEndian() & WEBP_DIMENSION_MASK;
+            final int height = reader.readShortLittleEndian() & WEBP_DIMENSION_MASK;
+
+            return new ImageHeader(Format.WEBP, width, height);
+        }
+
+        if (chunk == WEBP_VP8L) {
+            if (reader.readByte() != WEBP_LOSSLESS_SIGNATURE) {
+                return null;
+            }
+
+            // 14 bits of width - 1 and 14 bits of height - 1
+            final int bits = reader.readIntLittleEndian();
+
+            return new ImageHeader(Format.WEBP, (bits & WEBP_DIMENSION_MASK) + 1, ((bits >> 14) & WEBP_DIMENSION_MASK) + 1);
+        }
+
+        if (chunk == WEBP_VP8X) {
+            // Flags and reserved bytes, then 24 bit canvas width - 1 and height - 1
+            reader.skip(4);
+
+            final int width = reader.readInt24LittleEndian() + 1;
+            final int height = reader.readInt24LittleEndian() + 1;
+
+            return new ImageHeader(Format.WEBP, width, height);
+        }
+
+        return null;
+    }
+
+    /**
+     * Reads big and little endian values, failing with EOFException after {@link #MAX_HEADER_SIZE} bytes
+     */
+    private static final class HeaderReader {
+        private final InputStream mInput;
+        private int mCount = 0;
+
+        HeaderReader(final InputStream input) {
+            mInput = input;
+        }
+
+        int readByte() throws IOException {
+            if (mCount >= MAX_HEADER_SIZE) {
+                throw new EOFException("Header is too big");
+            }
+
+            final int value = mInput.read();
+
+            if (value == -1) {
+                throw new EOFException();
+            }
+
+            mCount++;
+            return value;
+        }
+
+        int readShort() throws IOException {
+            return (readByte() << 8) | readByte();
+        }
+
+        int readInt() throws IOException {
+            return (readShort() << 16) | readShort();
+        }
+
+        int readShortLittleEndian() throws IOException {
+            return readByte() | (readByte() << 8);
+        }
+
+        int readInt24LittleEndian() throws IOException {
+            return readShortLittleEndian() | (readByte() << 16);
+        }
+
+        int readIntLittleEndian() throws IOException {
+            return readShortLittleEndian() | (readShortLittleEndian() << 16);
+        }
+
+        void skip(final int count) throws IOException {
+            for (int i = 0; i < count; i++) {
+                readByte();
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.alexstarc.imageloader.image;
+
+import android.graphics.Bitmap;
+
+/**
+ * Transformations done in pixels of mutable bitmap, without allocating another bitmap.
+ * Pixels are processed row by row via per-thread buffers, so only two rows are held at once.
+ */
+final class InPlaceOps {
+    private static final ThreadLocal<int[]> sRowBuffer = new ThreadLocal<int[]>();
+
+    private InPlaceOps() {
+    }
+
+    /**
+     * Rotates bitmap by 180 degrees: swaps mirrored rows, reversing each of them
+     *
+     * @param bitmap mutable bitmap
+     */
+    static void rotate180(final Bitmap bitmap) {
+        swapRows(bitmap, true);
+    }
+
+    /**
+     * Mirrors bitmap upside down
+     *
+     * @param bitmap mutable bitmap
+     */
+    static void flipVertical(final Bitmap bitmap) {
+        swapRows(bitmap, false);
+    }
+
+    /**
+     * Mirrors bitmap left to right
+     *
+     * @param bitmap mutable bitmap
+     */
+    static void flipHorizontal(final Bitmap bitmap) {
+        final int width = bitmap.getWidth();
+        final int[] row = getRowBuffer(width);
+
+        for (int y = 0; y < bitmap.getHeight(); y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            PixelUtils.reverse(row, 0, width);
+            bitmap.setPixels(row, 0, width, 0, y, width, 1);
+        }
+    }
+
+    private static void swapRows(final Bitmap bitmap, final boolean reverseRows) {
+        final int width = bitmap.getWidth();
+        // Both rows are kept in one buffer: top one first, then bottom one
+        final int[] rows = getRowBuffer(width * 2);
+        int top = 0;
+        int bottom = bitmap.getHeight() - 1;
+
+        for (; top < bottom; top++, bottom--) {
+            bitmap.getPixels(rows, 0, width, 0, top, width, 1);
+            bitmap.getPixels(rows, width, width, 0, bottom, width, 1);
+
+            if (reverseRows) {
+                PixelUtils.reverse(rows, 0, width);
+                PixelUtils.reverse(rows, width, width * 2);
+            }
+
+            bitmap.setPixels(rows, width, width, 0, top, width, 1);
+            bitmap.setPixels(rows, 0, width, 0, bottom, width, 1);
+        }
+
+        if (top == bottom && reverseRows) {
+            // Middle row of odd height image
+            bitmap.getPixels(rows, 0, width, 0, top, width, 1);
+            PixelUtils.reverse(rows, 0, width);
+            bitmap.setPixels(rows, 0, width, 0, top, width, 1);
+        }
+    }
+
+    private static int[] getRowBuffer(final int size) {
+        int[] buffer = sRowBuffer.get();
+
+        if (buffer == null || buffer.length < size) {
+            buffer = new int[size];
+            sRowBuffer.set(buffer);
+        }
+
+        return buffer;
+    }
+}
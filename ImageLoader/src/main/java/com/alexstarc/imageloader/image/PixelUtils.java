@@ -0,0 +1,49 @@
+package com.alexstarc.imageloader.image;
+
+/**
+ * Plain java operations on ARGB pixel arrays, used for in-place transformations
+ */
+public final class PixelUtils {
+    private PixelUtils() {
+    }
+
+    /**
+     * Reverses order of pixels in the range
+     *
+     * @param pixels to reverse
+     * @param from first index, inclusive
+     * @param to last index, exclusive
+     */
+    public static void reverse(final int[] pixels, final int from, final int to) {
+        for (int left = from, right = to - 1; left < right; left++, right--) {
+            final int pixel = pixels[left];
+
+            pixels[left] = pixels[right];
+            pixels[right] = pixel;
+        }
+    }
+
+    /**
+     * Rotates image by 180 degrees in place, which for row-major pixels is just reversal of whole array
+     *
+     * @param pixels of the image, row by row
+     * @param width of the image
+     * @param height of the image
+     */
+    public static void rotate180(final int[] pixels, final int width, final int height) {
+        reverse(pixels, 0, width * height);
+    }
+
+    /**
+     * Mirrors image horizontally in place
+     *
+     * @param pixels of the image, row by row
+     * @param width of the image
+     * @param height of the image
+     */
+    public static void flipHorizontal(final int[] pixels, final int width, final int height) {
+        for (int row = 0; row < height; row++) {
+            reverse(pixels, row * width, (row + 1) * width);
+        }
+    }
+}
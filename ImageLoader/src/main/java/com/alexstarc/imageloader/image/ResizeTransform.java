@@ -0,0 +1,48 @@
+package com.alexstarc.imageloader.image;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+/**
+ * Scales bitmap to exact size with bilinear filtering
+ */
+public class ResizeTransform implements Transform {
+    private static final Paint PAINT = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.DITHER_FLAG);
+
+    private final int mWidth;
+    private final int mHeight;
+
+    /**
+     * @param width of result
+     * @param height of result
+     */
+    public ResizeTransform(final int width, final int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Wrong size " + width + "x" + height);
+        }
+
+        mWidth = width;
+        mHeight = height;
+    }
+
+    @Override
+    public Bitmap apply(final Bitmap source, final BitmapPool pool) {
+        if (source.getWidth() == mWidth && source.getHeight() == mHeight) {
+            return source;
+        }
+
+        final Bitmap result = pool.obtain(mWidth, mHeight,
+                source.getConfig() == null ? Bitmap.Config.ARGB_8888 : source.getConfig());
+
+        new Canvas(result).drawBitmap(source, null, new Rect(0, 0, mWidth, mHeight), PAINT);
+
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "resize" + mWidth + "x" + mHeight;
+    }
+}
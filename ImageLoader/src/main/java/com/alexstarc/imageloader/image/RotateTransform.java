@@ -0,0 +1,81 @@
+package com.alexstarc.imageloader.image;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+
+/**
+ * Rotates bitmap clockwise by multiple of 90 degrees, 180 degrees rotation of mutable bitmap is done in place
+ */
+public class RotateTransform implements Transform {
+    private static final Paint PAINT = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    private final int mDegrees;
+
+    /**
+     * @param degrees to rotate for, one of 0, 90, 180, 270 (negative values and values above 360 are normalized)
+     */
+    public RotateTransform(final int degrees) {
+        final int normDegrees = ((degrees % 360) + 360) % 360;
+
+        if (normDegrees % 90 != 0) {
+            throw new IllegalArgumentException("Only multiple of 90 degrees are supported: " + degrees);
+        }
+
+        mDegrees = normDegrees;
+    }
+
+    /**
+     * @return rotation degrees, 0..270
+     */
+    public int getDegrees() {
+        return mDegrees;
+    }
+
+    @Override
+    public Bitmap apply(final Bitmap source, final BitmapPool pool) {
+        if (mDegrees == 0) {
+            return source;
+        }
+
+        if (mDegrees == 180 && source.isMutable()) {
+            InPlaceOps.rotate180(source);
+            return source;
+        }
+
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+        final boolean swapSides = mDegrees != 180;
+        final Bitmap result = pool.obtain(swapSides ? height : width, swapSides ? width : height,
+                source.getConfig() == null ? Bitmap.Config.ARGB_8888 : source.getConfig());
+        final Matrix matrix = new Matrix();
+
+        // Rotate around top-left corner, then move back to visible area
+        matrix.setRotate(mDegrees);
+
+        switch (mDegrees) {
+            case 90:
+                matrix.postTranslate(height, 0);
+                break;
+
+            case 180:
+                matrix.postTranslate(width, height);
+                break;
+
+            case 270:
+            default:
+                matrix.postTranslate(0, width);
+                break;
+        }
+
+        new Canvas(result).drawBitmap(source, matrix, PAINT);
+
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "rotate" + mDegrees;
+    }
+}
@@ -0,0 +1,157 @@
+package com.alexstarc.imageloader.image;
+
+/**
+ * Required size of decoded image and the way image is scaled to it
+ */
+public class TargetSize {
+    /** How image is scaled to the target size */
+    public enum ScaleMode {
+        /** Whole image is visible, aspect ratio is kept, image is only downscaled */
+        FIT,
+        /** Target is covered completely, aspect ratio is kept, extra part is cropped around center */
+        FILL,
+        /** Image is stretched to exactly target size */
+        EXACT
+    }
+
+    private final int mWidth;
+    private final int mHeight;
+    private final ScaleMode mScaleMode;
+
+    /**
+     * @param width of the target, pixels
+     * @param height of the target, pixels
+     * @param scaleMode how image is scaled to the target
+     */
+    public TargetSize(final int width, final int height, final ScaleMode scaleMode) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Wrong target size " + width + "x" + height);
+        }
+
+        mWidth = width;
+        mHeight = height;
+        mScaleMode = scaleMode == null ? ScaleMode.FIT : scaleMode;
+    }
+
+    /**
+     * @return target width, pixels
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * @return target height, pixels
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * @return how image is scaled to the target
+     */
+    public ScaleMode getScaleMode() {
+        return mScaleMode;
+    }
+
+    /**
+     * Finds the biggest power of 2 sample size, with which decoded image is still not smaller than required output,
+     * so it can only be downscaled afterwards
+     *
+     * @param width of the image
+     * @param height of the image
+     *
+     * @return sample size for BitmapFactory.Options.inSampleSize
+     */
+    public int calculateInSampleSize(final int width, final int height) {
+        int inSampleSize = 1;
+
+        if (mScaleMode == ScaleMode.FIT) {
+            // Fitted image is limited by one side only, that side must stay not smaller than the target
+            while (width >= (long) mWidth * inSampleSize * 2 || height >= (long) mHeight * inSampleSize * 2) {
+                inSampleSize *= 2;
+            }
+        } else {
+            // Both sides have to cover the target
+            while (width >= (long) mWidth * inSampleSize * 2 && height >= (long) mHeight * inSampleSize * 2) {
+                inSampleSize *= 2;
+            }
+        }
+
+        return inSampleSize;
+    }
+
+    /**
+     * @param width of the image
+     * @param height of the image
+     *
+     * @return width of the image scaled to the target
+     */
+    public int getOutputWidth(final int width, final int height) {
+        if (mScaleMode != ScaleMode.FIT) {
+            return mWidth;
+        }
+
+        return Math.max(1, (int) Math.round(width * getFitScale(width, height)));
+    }
+
+    /**
+     * @param width of the image
+     * @param height of the image
+     *
+     * @return height of the image scaled to the target
+     */
+    public int getOutputHeight(final int width, final int height) {
+        if (mScaleMode != ScaleMode.FIT) {
+            return mHeight;
+        }
+
+        return Math.max(1, (int) Math.round(height * getFitScale(width, height)));
+    }
+
+    /**
+     * @param width of the image
+     * @param height of the image
+     *
+     * @return width of the image part which stays visible after scaling, it's centered horizontally
+     */
+    public int getVisibleWidth(final int width, final int height) {
+        if (mScaleMode != ScaleMode.FILL || (long) width * mHeight <= (long) height * mWidth) {
+            return width;
+        }
+
+        // Image is wider than target, sides are cropped
+        return Math.max(1, (int) ((long) height * mWidth / mHeight));
+    }
+
+    /**
+     * @param width of the image
+     * @param height of the image
+     *
+     * @return height of the image part which stays visible after scaling, it's centered vertically
+     */
+    public int getVisibleHeight(final int width, final int height) {
+        if (mScaleMode != ScaleMode.FILL || (long) width * mHeight >= (long) height * mWidth) {
+            return height;
+        }
+
+        // Image is taller than target, top and bottom are cropped
+        return Math.max(1, (int) ((long) width * mHeight / mWidth));
+    }
+
+    /**
+     * @return key unique for the target, to be used as a part of cache keys
+     */
+    public String toKey() {
+        return mWidth + "x" + mHeight + mScaleMode.name().toLowerCase();
+    }
+
+    private double getFitScale(final int width, final int height) {
+        return Math.min(1.0, Math.min((double) mWidth / width, (double) mHeight / height));
+    }
+
+    @Override
+    public String toString() {
+        return toKey();
+    }
+}
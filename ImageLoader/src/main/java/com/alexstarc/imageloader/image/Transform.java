@@ -0,0 +1,19 @@
+package com.alexstarc.imageloader.image;
+
+import android.graphics.Bitmap;
+
+/**
+ * Bitmap transformation stage
+ */
+public interface Transform {
+    /**
+     * Transforms bitmap. Mutable source can be changed in place and returned, otherwise result is taken from the pool.
+     * Source must not be used by caller if different bitmap was returned, it's up to caller to put it to the pool.
+     *
+     * @param source bitmap to transform
+     * @param pool to take result bitmap from
+     *
+     * @return transformed bitmap, source or new one
+     */
+    Bitmap apply(Bitmap source, BitmapPool pool);
+}
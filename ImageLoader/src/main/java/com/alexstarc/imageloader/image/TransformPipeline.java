@@ -0,0 +1,52 @@
+package com.alexstarc.imageloader.image;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Applies several transforms one by one, intermediate bitmaps are returned to the pool
+ */
+public class TransformPipeline implements Transform {
+    private final List<Transform> mTransforms;
+
+    /**
+     * @param transforms to be applied in provided order
+     */
+    public TransformPipeline(final Transform... transforms) {
+        mTransforms = new ArrayList<Transform>(transforms.length);
+        Collections.addAll(mTransforms, transforms);
+    }
+
+    /**
+     * @param transforms to be applied in provided order
+     */
+    public TransformPipeline(final List<Transform> transforms) {
+        mTransforms = new ArrayList<Transform>(transforms);
+    }
+
+    @Override
+    public Bitmap apply(final Bitmap source, final BitmapPool pool) {
+        Bitmap current = source;
+
+        for (Transform transform : mTransforms) {
+            final Bitmap result = transform.apply(current, pool);
+
+            // Source is released by caller, only own intermediate bitmaps are returned here
+            if (result != current && current != source) {
+                pool.put(current);
+            }
+
+            current = result;
+        }
+
+        return current;
+    }
+
+    @Override
+    public String toString() {
+        return mTransforms.toString();
+    }
+}
@@ -0,0 +1,170 @@
+package com.alexstarc.imageloader.io;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Pool of direct buffers used to write downloaded data to disk. Direct buffers are written to channels
+ * without extra copy, but they're expensive to allocate, so they're reused between downloads.
+ * Buffer size is chosen from content length and throughput observed for previous downloads.
+ */
+public final class BufferPool {
+    /** Smallest buffer, used for small or unknown size responses on slow network */
+    public static final int MIN_SIZE = 16 * 1024; // bytes
+    /** Largest buffer, bigger ones don't reduce number of syscalls noticeably */
+    public static final int MAX_SIZE = 1024 * 1024; // bytes
+    /** Buffer for response of unknown length, when there's no throughput observed yet */
+    private static final int DEFAULT_SIZE = 64 * 1024; // bytes
+    /** Buffer holds about this time of data at observed throughput, so disk is written a few times a second */
+    private static final long BUFFERED_TIME = 100; // ms
+    /** Total size of buffers kept in the pool */
+    private static final int MAX_POOLED_BYTES = 4 * 1024 * 1024; // bytes
+    /** Weight of the last download in throughput estimate */
+    private static final double THROUGHPUT_ALPHA = 0.3;
+
+    private static final int SIZE_CLASSES = Integer.numberOfTrailingZeros(MAX_SIZE / MIN_SIZE) + 1;
+
+    private static BufferPool sInstance;
+
+    /** Free buffers by size class, index is log2(size / MIN_SIZE) */
+    private final ArrayDeque<ByteBuffer>[] mFreeBuffers;
+    private int mPooledBytes = 0;
+    /** Estimate of download throughput, bytes per second, 0 if not known yet */
+    private double mBytesPerSecond = 0;
+
+    /**
+     * @return pool shared by the application
+     */
+    public static synchronized BufferPool getInstance() {
+        if (sInstance == null) {
+            sInstance = new BufferPool();
+        }
+
+        return sInstance;
+    }
+
+    @SuppressWarnings("unchecked")
+    private BufferPool() {
+        mFreeBuffers = new ArrayDeque[SIZE_CLASSES];
+
+        for (int i = 0; i < SIZE_CLASSES; i++) {
+            mFreeBuffers[i] = new ArrayDeque<ByteBuffer>();
+        }
+    }
+
+    /**
+     * Chooses buffer size for the download: whole response if it's small, otherwise enough
+     * for {@link #BUFFERED_TIME} of data at observed throughput
+     *
+     * @param contentLength of the response, -1 if unknown
+     *
+     * @return buffer size, power of two between {@link #MIN_SIZE} and {@link #MAX_SIZE}
+     */
+    public int chooseSize(final long contentLength) {
+        return chooseSize(contentLength, 0);
+    }
+
+    /**
+     * Same as {@link #chooseSize(long)}, but with throughput known for the source, e.g. for the host
+     *
+     * @param contentLength of the response, -1 if unknown
+     * @param bytesPerSecond throughput of the source, 0 to use one observed for all downloads
+     *
+     * @return buffer size, power of two between {@link #MIN_SIZE} and {@link #MAX_SIZE}
+     */
+    public synchronized int chooseSize(final long contentLength, final double bytesPerSecond) {
+        final double rate = bytesPerSecond > 0 ? bytesPerSecond : mBytesPerSecond;
+        long size = rate > 0 ? (long) (rate * BUFFERED_TIME / 1000) : DEFAULT_SIZE;
+
+        if (contentLength >= 0) {
+            size = Math.min(size, contentLength);
+        }
+
+        return roundSize(size);
+    }
+
+    /**
+     * Updates throughput estimate with finished download
+     *
+     * @param bytes downloaded
+     * @param durationMillis time download took
+     */
+    public synchronized void recordThroughput(final long bytes, final long durationMillis) {
+        // Too short downloads say more about latency than throughput
+        if (bytes < MIN_SIZE || durationMillis <= 0) {
+            return;
+        }
+
+        final double bytesPerSecond = bytes * 1000.0 / durationMillis;
+
+        mBytesPerSecond = mBytesPerSecond == 0 ? bytesPerSecond
+                : THROUGHPUT_ALPHA * bytesPerSecond + (1 - THROUGHPUT_ALPHA) * mBytesPerSecond;
+    }
+
+    /**
+     * @param size of needed buffer, rounded up to power of two
+     *
+     * @return cleared buffer from the pool or new one
+     */
+    public ByteBuffer acquire(final int size) {
+        final int roundedSize = roundSize(size);
+
+        synchronized (this) {
+            final ByteBuffer buffer = mFreeBuffers[getSizeClass(roundedSize)].poll();
+
+            if (buffer != null) {
+                mPooledBytes -= buffer.capacity();
+                buffer.clear();
+                return buffer;
+            }
+        }
+
+        return ByteBuffer.allocateDirect(roundedSize);
+    }
+
+    /**
+     * @param buffer not used anymore, it's dropped if pool is full, can be null
+     */
+    public synchronized void release(final ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || Integer.bitCount(buffer.capacity()) != 1
+                || buffer.capacity() < MIN_SIZE || buffer.capacity() > MAX_SIZE
+                || mPooledBytes + buffer.capacity() > MAX_POOLED_BYTES) {
+            return;
+        }
+
+        mFreeBuffers[getSizeClass(buffer.capacity())].push(buffer);
+        mPooledBytes += buffer.capacity();
+    }
+
+    /**
+     * Drops all pooled buffers, e.g. on low memory
+     */
+    public synchronized void clear() {
+        for (ArrayDeque<ByteBuffer> buffers : mFreeBuffers) {
+            buffers.clear();
+        }
+
+        mPooledBytes = 0;
+    }
+
+    /**
+     * @param size of needed buffer
+     *
+     * @return size rounded up to power of two between {@link #MIN_SIZE} and {@link #MAX_SIZE}
+     */
+    static int roundSize(final long size) {
+        if (size <= MIN_SIZE) {
+            return MIN_SIZE;
+        }
+
+        if (size >= MAX_SIZE) {
+            return MAX_SIZE;
+        }
+
+        return Integer.highestOneBit((int) size - 1) << 1;
+    }
+
+    private static int getSizeClass(final int size) {
+        return Integer.numberOfTrailingZeros(size / MIN_SIZE);
+    }
+}
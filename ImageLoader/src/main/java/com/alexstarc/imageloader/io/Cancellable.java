@@ -0,0 +1,11 @@
+package com.alexstarc.imageloader.io;
+
+/**
+ * Source of cancellation state for long running operations
+ */
+public interface Cancellable {
+    /**
+     * @return true if operation has to be stopped
+     */
+    boolean isCancelled();
+}
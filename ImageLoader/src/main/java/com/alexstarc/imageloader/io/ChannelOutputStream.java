@@ -0,0 +1,111 @@
+package com.alexstarc.imageloader.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Output stream writing to file channel through pooled direct buffer, so many small writes
+ * turn into a few large ones. File tail after written data (e.g. preallocated space) is cut off on close.
+ */
+public class ChannelOutputStream extends OutputStream {
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final BufferPool mPool;
+    private ByteBuffer mBuffer;
+    /** Position in file next flushed byte goes to */
+    private long mPosition;
+
+    /**
+     * @param file opened for writing, closed together with the stream
+     * @param position to start writing from
+     * @param bufferSize size of buffer taken from the pool
+     * @param pool to take buffer from
+     *
+     * @throws IOException if position cannot be set
+     */
+    public ChannelOutputStream(final RandomAccessFile file, final long position, final int bufferSize,
+                               final BufferPool pool) throws IOException {
+        mFile = file;
+        mChannel = file.getChannel();
+        mPool = pool;
+        mPosition = position;
+        mChannel.position(position);
+        mBuffer = pool.acquire(bufferSize);
+    }
+
+    @Override
+    public void write(final int value) throws IOException {
+        checkOpen();
+
+        if (!mBuffer.hasRemaining()) {
+            writeBuffer();
+        }
+
+        mBuffer.put((byte) value);
+    }
+
+    @Override
+    public void write(final byte[] data, final int offset, final int length) throws IOException {
+        checkOpen();
+
+        int written = 0;
+
+        while (written < length) {
+            if (!mBuffer.hasRemaining()) {
+                writeBuffer();
+            }
+
+            final int count = Math.min(mBuffer.remaining(), length - written);
+
+            mBuffer.put(data, offset + written, count);
+            written += count;
+        }
+    }
+
+    /**
+     * Writes buffered data to the file. It's not synced to the storage, so flush stays cheap.
+     */
+    @Override
+    public void flush() throws IOException {
+        checkOpen();
+        writeBuffer();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mBuffer == null) {
+            return;
+        }
+
+        try {
+            writeBuffer();
+            // Drop preallocated space which wasn't written
+            if (mChannel.size() > mPosition) {
+                mChannel.truncate(mPosition);
+            }
+        } finally {
+            mPool.release(mBuffer);
+            mBuffer = null;
+            mFile.close();
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        mBuffer.flip();
+
+        while (mBuffer.hasRemaining()) {
+            mPosition += mChannel.write(mBuffer);
+        }
+
+        mBuffer.clear();
+    }
+
+    private void checkOpen() throws IOException {
+        if (mBuffer == null) {
+            throw new IOException("Stream is closed");
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.alexstarc.imageloader.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream which fails once more data than the limit is read, so response of unknown or wrong length
+ * is stopped as soon as it gets too large, not after it's stored completely
+ */
+public class LimitedInputStream extends FilterInputStream {
+    private final long mLimit;
+    private long mCount = 0;
+
+    /**
+     * Thrown when data exceeds the limit
+     */
+    public static class LimitExceededException extends IOException {
+        public LimitExceededException(final String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * @param input to read data from
+     * @param limit of bytes which can be read
+     */
+    public LimitedInputStream(final InputStream input, final long limit) {
+        super(input);
+        mLimit = limit;
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int value = in.read();
+
+        if (value != -1) {
+            count(1);
+        }
+
+        return value;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+        checkLimit();
+
+        // Single byte over the limit is enough to detect it, the rest of data is not read
+        final int count = in.read(buffer, offset, (int) Math.min(length, mLimit - mCount + 1));
+
+        if (count > 0) {
+            count(count);
+        }
+
+        return count;
+    }
+
+    @Override
+    public long skip(final long count) throws IOException {
+        checkLimit();
+
+        final long skipped = in.skip(Math.min(count, mLimit - mCount + 1));
+
+        count(skipped);
+
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(final int readLimit) {
+        // Not supported, reset data would be counted twice
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("Mark is not supported");
+    }
+
+    private void count(final long bytes) throws LimitExceededException {
+        mCount += bytes;
+        checkLimit();
+    }
+
+    /**
+     * Keeps failing after the limit is exceeded, in case caller goes on reading
+     */
+    private void checkLimit() throws LimitExceededException {
+        if (mCount > mLimit) {
+            throw new LimitExceededException("Data exceeds " + mLimit + " bytes");
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.alexstarc.imageloader.io;
+
+/**
+ * Notified about data read from a stream, called on the reading thread
+ */
+public interface ProgressListener {
+    /**
+     * @param bytesRead total number of bytes read so far
+     */
+    void onProgress(long bytesRead);
+}
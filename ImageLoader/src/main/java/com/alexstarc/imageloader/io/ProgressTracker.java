@@ -0,0 +1,119 @@
+package com.alexstarc.imageloader.io;
+
+/**
+ * Decides when download progress is worth reporting and estimates throughput and remaining time.
+ * Update is reported at most once per interval, or earlier if progress moved by given percent,
+ * so reporting costs stay negligible regardless of read chunk size. Not thread safe.
+ */
+public class ProgressTracker {
+    /** Default minimal time between reports */
+    public static final long DEFAULT_INTERVAL = 250; // ms
+    /** Default progress step which is reported even before interval passes */
+    public static final int DEFAULT_PERCENT_STEP = 5;
+
+    /** Weight of the newest throughput sample in moving average */
+    private static final double SMOOTHING = 0.3;
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final long mIntervalNanos;
+    private final int mPercentStep;
+    private final long mStartBytes;
+    private final long mStartNanos;
+
+    private long mLastBytes;
+    private long mLastNanos;
+    private long mLastReportedBytes = -1;
+    private long mLastReportedNanos;
+    private double mBytesPerSecond = -1;
+
+    /**
+     * Tracker with default interval and step
+     *
+     * @param startBytes bytes already loaded before tracking started (e.g. resumed part)
+     */
+    public ProgressTracker(final long startBytes) {
+        this(startBytes, DEFAULT_INTERVAL, DEFAULT_PERCENT_STEP);
+    }
+
+    /**
+     * @param startBytes bytes already loaded before tracking started (e.g. resumed part)
+     * @param interval minimal time between reports, ms
+     * @param percentStep progress step reported even before interval passes
+     */
+    public ProgressTracker(final long startBytes, final long interval, final int percentStep) {
+        mIntervalNanos = interval * NANOS_PER_MILLI;
+        mPercentStep = percentStep;
+        mStartBytes = startBytes;
+        mStartNanos = System.nanoTime();
+        mLastBytes = startBytes;
+        mLastNanos = mStartNanos;
+        mLastReportedNanos = mStartNanos;
+    }
+
+    /**
+     * @param bytesLoaded total loaded bytes, including start ones
+     * @param totalBytes expected size or -1 if unknown
+     *
+     * @return true if progress should be reported now
+     */
+    public boolean update(final long bytesLoaded, final long totalBytes) {
+        final long now = System.nanoTime();
+        final long elapsed = now - mLastNanos;
+
+        if (elapsed > 0 && bytesLoaded > mLastBytes) {
+            final double sample = (bytesLoaded - mLastBytes) * 1e9 / elapsed;
+
+            mBytesPerSecond = mBytesPerSecond < 0 ? sample : SMOOTHING * sample + (1 - SMOOTHING) * mBytesPerSecond;
+            mLastBytes = bytesLoaded;
+            mLastNanos = now;
+        }
+
+        final boolean first = mLastReportedBytes < 0;
+        final boolean finished = totalBytes > 0 && bytesLoaded >= totalBytes;
+        final boolean intervalPassed = now - mLastReportedNanos >= mIntervalNanos;
+        final boolean stepPassed = totalBytes > 0
+                && (bytesLoaded - mLastReportedBytes) * 100 >= totalBytes * (long) mPercentStep;
+
+        if (!first && !finished && !intervalPassed && !stepPassed) {
+            return false;
+        }
+
+        if (!first && bytesLoaded == mLastReportedBytes) {
+            return false;
+        }
+
+        mLastReportedBytes = bytesLoaded;
+        mLastReportedNanos = now;
+        return true;
+    }
+
+    /**
+     * @return smoothed throughput, bytes per second, -1 until there's enough data
+     */
+    public long getBytesPerSecond() {
+        if (mBytesPerSecond < 0) {
+            // Before two samples, use average since start
+            final long elapsed = mLastNanos - mStartNanos;
+
+            return elapsed > 0 ? (long) ((mLastBytes - mStartBytes) * 1e9 / elapsed) : -1;
+        }
+
+        return (long) mBytesPerSecond;
+    }
+
+    /**
+     * @param bytesLoaded total loaded bytes
+     * @param totalBytes expected size or -1 if unknown
+     *
+     * @return estimated time to finish, ms, -1 if it cannot be estimated
+     */
+    public long getEtaMillis(final long bytesLoaded, final long totalBytes) {
+        final long bytesPerSecond = getBytesPerSecond();
+
+        if (totalBytes <= 0 || bytesPerSecond <= 0) {
+            return -1;
+        }
+
+        return Math.max(0, totalBytes - bytesLoaded) * 1000 / bytesPerSecond;
+    }
+}
@@ -0,0 +1,61 @@
+package com.alexstarc.imageloader.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Helpers for streams and files copying
+ */
+public final class StreamUtils {
+    private StreamUtils() {
+    }
+
+    /**
+     * Copies file content with channels, so data doesn't go through java heap
+     *
+     * @param source file to copy
+     * @param target file to be overwritten
+     *
+     * @throws IOException if copy fails
+     */
+    public static void copyFile(final File source, final File target) throws IOException {
+        FileInputStream input = null;
+        FileOutputStream output = null;
+
+        try {
+            input = new FileInputStream(source);
+            output = new FileOutputStream(target);
+
+            final FileChannel inChannel = input.getChannel();
+            final FileChannel outChannel = output.getChannel();
+            final long size = inChannel.size();
+            long position = 0;
+
+            while (position < size) {
+                position += inChannel.transferTo(position, size - position, outChannel);
+            }
+        } finally {
+            close(input);
+            close(output);
+        }
+    }
+
+    /**
+     * Closes stream ignoring errors, for cleanup paths where data is not needed anymore
+     *
+     * @param closeable to close, can be null
+     */
+    public static void close(final Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing to do, data is not needed anymore
+            }
+        }
+    }
+}
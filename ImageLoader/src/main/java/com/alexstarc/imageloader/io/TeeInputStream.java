@@ -0,0 +1,125 @@
+package com.alexstarc.imageloader.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Input stream which copies all read bytes into provided output, so data can be consumed
+ * (e.g. decoded) and stored at the same time. Once cancelled, stream reports end of data.
+ */
+public class TeeInputStream extends FilterInputStream {
+    private final OutputStream mOutput;
+    private final Cancellable mCancellable;
+    private final ProgressListener mProgressListener;
+    private long mCount = 0;
+
+    /**
+     * @param input to read data from
+     * @param output to copy read data into
+     * @param cancellable to check before each read, can be null
+     */
+    public TeeInputStream(final InputStream input, final OutputStream output, final Cancellable cancellable) {
+        this(input, output, cancellable, null);
+    }
+
+    /**
+     * @param input to read data from
+     * @param output to copy read data into
+     * @param cancellable to check before each read, can be null
+     * @param progressListener to be notified after each read, can be null
+     */
+    public TeeInputStream(final InputStream input, final OutputStream output, final Cancellable cancellable,
+                          final ProgressListener progressListener) {
+        super(input);
+        mOutput = output;
+        mCancellable = cancellable;
+        mProgressListener = progressListener;
+    }
+
+    /**
+     * @return number of bytes read and copied to output
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (isCancelled()) {
+            return -1;
+        }
+
+        final int value = in.read();
+
+        if (value != -1) {
+            mOutput.write(value);
+            mCount++;
+            notifyProgress();
+        }
+
+        return value;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+        if (isCancelled()) {
+            return -1;
+        }
+
+        final int count = in.read(buffer, offset, length);
+
+        if (count > 0) {
+            mOutput.write(buffer, offset, count);
+            mCount += count;
+            notifyProgress();
+        }
+
+        return count;
+    }
+
+    @Override
+    public long skip(final long count) throws IOException {
+        // Skipped data has to be copied too
+        final byte[] buffer = new byte[(int) Math.min(count, 4096)];
+        long skipped = 0;
+
+        while (skipped < count) {
+            final int read = read(buffer, 0, (int) Math.min(buffer.length, count - skipped));
+
+            if (read == -1) {
+                break;
+            }
+
+            skipped += read;
+        }
+
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(final int readLimit) {
+        // Not supported, read bytes are already copied
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("Mark is not supported");
+    }
+
+    private void notifyProgress() {
+        if (mProgressListener != null) {
+            mProgressListener.onProgress(mCount);
+        }
+    }
+
+    private boolean isCancelled() {
+        return mCancellable != null && mCancellable.isCancelled();
+    }
+}
@@ -0,0 +1,83 @@
+package com.alexstarc.imageloader.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Latency distribution of the recent samples. Keeps fixed number of last samples, so percentiles follow
+ * current behaviour and memory stays bounded, while count, sum and max cover all samples.
+ * Not thread safe, {@link MetricsRegistry} guards it.
+ */
+public class LatencyHistogram {
+    /** Number of recent samples used for percentiles */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final long[] mSamples;
+    private int mNext = 0;
+    private int mSize = 0;
+    private long mCount = 0;
+    private long mSum = 0;
+    private long mMax = 0;
+
+    public LatencyHistogram() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of recent samples used for percentiles
+     */
+    public LatencyHistogram(final int capacity) {
+        mSamples = new long[capacity];
+    }
+
+    /**
+     * @param value sample to add, ms
+     */
+    public void add(final long value) {
+        mSamples[mNext] = value;
+        mNext = (mNext + 1) % mSamples.length;
+        mSize = Math.min(mSize + 1, mSamples.length);
+        mCount++;
+        mSum += value;
+        mMax = Math.max(mMax, value);
+    }
+
+    /**
+     * @return number of all added samples
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return mean of all added samples, 0 if there're none
+     */
+    public long getMean() {
+        return mCount == 0 ? 0 : mSum / mCount;
+    }
+
+    /**
+     * @return maximal added sample
+     */
+    public long getMax() {
+        return mMax;
+    }
+
+    /**
+     * @param percentile in range (0, 100]
+     *
+     * @return nearest-rank percentile of recent samples, 0 if there're none
+     */
+    public long getPercentile(final double percentile) {
+        if (mSize == 0) {
+            return 0;
+        }
+
+        final long[] sorted = Arrays.copyOf(mSamples, mSize);
+
+        Arrays.sort(sorted);
+
+        final int rank = (int) Math.ceil(percentile / 100.0 * mSize);
+
+        return sorted[Math.max(0, Math.min(mSize - 1, rank - 1))];
+    }
+}
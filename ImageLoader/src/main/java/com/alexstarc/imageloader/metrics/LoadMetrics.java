@@ -0,0 +1,188 @@
+package com.alexstarc.imageloader.metrics;
+
+/**
+ * Timings and counters of single load request. It's filled by the thread processing the request
+ * and passed to {@link MetricsRegistry} once request is done.
+ */
+public class LoadMetrics {
+    /** Measured phases of the request, phase repeated (e.g. on redirect) is summed up */
+    public enum Phase {
+        /** Connection setup, includes DNS lookup and TLS handshake */
+        CONNECT,
+        /** From sent request to received response headers */
+        FIRST_BYTE,
+        /** Reading of response body, overlaps decoding when image is decoded while loading */
+        DOWNLOAD,
+        DECODE,
+        TRANSFORM,
+        ENCODE,
+        /** Storing files to cache */
+        SAVE
+    }
+
+    /** How request was served in relation to disk cache */
+    public enum CacheResult {
+        /** Fresh cached file, no network */
+        HIT,
+        /** Stale cached file confirmed by server */
+        REVALIDATED,
+        /** Image was loaded */
+        MISS
+    }
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+
+    private final String mHost;
+    private final long[] mPhaseNanos = new long[Phase.values().length];
+    private final long[] mPhaseStarts = new long[Phase.values().length];
+    private final boolean[] mPhaseMeasured = new boolean[Phase.values().length];
+    private long mStartNanos;
+    private long mTotalNanos;
+    private long mBytes = 0;
+    private int mRedirects = 0;
+    private int mRetries = 0;
+    private CacheResult mCacheResult = CacheResult.MISS;
+    private int mStatus = -1;
+    private boolean mIsCancelled = false;
+
+    /**
+     * @param host request is sent to, used to find slow hosts
+     */
+    public LoadMetrics(final String host) {
+        mHost = host;
+    }
+
+    /**
+     * Marks start of the whole request
+     */
+    public void start() {
+        mStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Marks end of the whole request
+     *
+     * @param cancelled true if request was cancelled before finishing
+     */
+    public void finish(final boolean cancelled) {
+        mTotalNanos = System.nanoTime() - mStartNanos;
+        mIsCancelled = cancelled;
+    }
+
+    /**
+     * @param phase which starts now
+     */
+    public void begin(final Phase phase) {
+        mPhaseStarts[phase.ordinal()] = System.nanoTime();
+    }
+
+    /**
+     * @param phase which ends now, it has to be started by {@link #begin(Phase)}
+     */
+    public void end(final Phase phase) {
+        mPhaseNanos[phase.ordinal()] += System.nanoTime() - mPhaseStarts[phase.ordinal()];
+        mPhaseMeasured[phase.ordinal()] = true;
+    }
+
+    /**
+     * @param bytes transferred over network
+     */
+    public void addBytes(final long bytes) {
+        mBytes += bytes;
+    }
+
+    public void addRedirect() {
+        mRedirects++;
+    }
+
+    public void addRetry() {
+        mRetries++;
+    }
+
+    public void setCacheResult(final CacheResult cacheResult) {
+        mCacheResult = cacheResult;
+    }
+
+    /**
+     * @param status returned to the client, from HttpURLConnection statuses
+     */
+    public void setStatus(final int status) {
+        mStatus = status;
+    }
+
+    public String getHost() {
+        return mHost;
+    }
+
+    /**
+     * @param phase to check
+     *
+     * @return true if phase took place during the request
+     */
+    public boolean isMeasured(final Phase phase) {
+        return mPhaseMeasured[phase.ordinal()];
+    }
+
+    /**
+     * @param phase to get duration of
+     *
+     * @return phase duration, ms
+     */
+    public long getMillis(final Phase phase) {
+        return mPhaseNanos[phase.ordinal()] / NANOS_PER_MILLI;
+    }
+
+    /**
+     * @return duration of the whole request, ms
+     */
+    public long getTotalMillis() {
+        return mTotalNanos / NANOS_PER_MILLI;
+    }
+
+    public long getBytes() {
+        return mBytes;
+    }
+
+    public int getRedirects() {
+        return mRedirects;
+    }
+
+    public int getRetries() {
+        return mRetries;
+    }
+
+    public CacheResult getCacheResult() {
+        return mCacheResult;
+    }
+
+    public int getStatus() {
+        return mStatus;
+    }
+
+    public boolean isCancelled() {
+        return mIsCancelled;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+
+        builder.append(mHost).append(' ').append(mStatus).append(' ').append(mCacheResult)
+                .append(" total=").append(getTotalMillis()).append("ms");
+
+        for (Phase phase : Phase.values()) {
+            if (isMeasured(phase)) {
+                builder.append(' ').append(phase.name().toLowerCase()).append('=').append(getMillis(phase)).append("ms");
+            }
+        }
+
+        builder.append(" bytes=").append(mBytes).append(" redirects=").append(mRedirects)
+                .append(" retries=").append(mRetries);
+
+        if (mIsCancelled) {
+            builder.append(" cancelled");
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,187 @@
+package com.alexstarc.imageloader.metrics;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-process aggregation of {@link LoadMetrics}: counters and latency histograms of whole requests,
+ * their phases and hosts. Can be queried directly or exported as JSON.
+ */
+public class MetricsRegistry {
+    /** Counter of finished requests */
+    public static final String COUNTER_REQUESTS = "requests";
+    /** Counter of cancelled requests */
+    public static final String COUNTER_CANCELLED = "cancelled";
+    /** Counter of bytes loaded from network */
+    public static final String COUNTER_BYTES = "bytes";
+    /** Counter of followed redirects */
+    public static final String COUNTER_REDIRECTS = "redirects";
+    /** Counter of repeated attempts after transient failures */
+    public static final String COUNTER_RETRIES = "retries";
+    /** Prefix of counters per cache result, e.g. "cache.hit" */
+    public static final String PREFIX_CACHE = "cache.";
+    /** Prefix of counters per returned status, e.g. "status.200" */
+    public static final String PREFIX_STATUS = "status.";
+
+    /** Histogram of whole request durations */
+    public static final String HISTOGRAM_TOTAL = "total";
+    /** Prefix of histograms per phase, e.g. "phase.decode" */
+    public static final String PREFIX_PHASE = "phase.";
+    /** Prefix of histograms of whole request duration per host, e.g. "host.example.com" */
+    public static final String PREFIX_HOST = "host.";
+
+    /** Hosts above this number are aggregated together, so memory doesn't grow with every new host */
+    private static final int MAX_TRACKED_HOSTS = 64;
+    private static final String OTHER_HOSTS = "other";
+
+    private static MetricsRegistry sInstance;
+
+    private final Map<String, Long> mCounters = new TreeMap<String, Long>();
+    private final Map<String, LatencyHistogram> mHistograms = new TreeMap<String, LatencyHistogram>();
+    private int mTrackedHosts = 0;
+
+    /**
+     * @return registry shared by the application
+     */
+    public static synchronized MetricsRegistry getInstance() {
+        if (sInstance == null) {
+            sInstance = new MetricsRegistry();
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * Adds finished request to counters and histograms
+     *
+     * @param metrics of the finished request
+     */
+    public synchronized void record(final LoadMetrics metrics) {
+        increment(COUNTER_REQUESTS, 1);
+        increment(COUNTER_BYTES, metrics.getBytes());
+        increment(COUNTER_REDIRECTS, metrics.getRedirects());
+        increment(COUNTER_RETRIES, metrics.getRetries());
+
+        if (metrics.isCancelled()) {
+            // Timings of cancelled requests are cut at random points, don't let them skew histograms
+            increment(COUNTER_CANCELLED, 1);
+            return;
+        }
+
+        increment(PREFIX_CACHE + metrics.getCacheResult().name().toLowerCase(), 1);
+        increment(PREFIX_STATUS + metrics.getStatus(), 1);
+
+        getHistogram(HISTOGRAM_TOTAL).add(metrics.getTotalMillis());
+
+        for (LoadMetrics.Phase phase : LoadMetrics.Phase.values()) {
+            if (metrics.isMeasured(phase)) {
+                getHistogram(PREFIX_PHASE + phase.name().toLowerCase()).add(metrics.getMillis(phase));
+            }
+        }
+
+        getHistogram(getHostKey(metrics.getHost())).add(metrics.getTotalMillis());
+    }
+
+    /**
+     * @param name of the counter, see COUNTER_ and PREFIX_ constants
+     *
+     * @return counter value, 0 if nothing was counted
+     */
+    public synchronized long getCounter(final String name) {
+        final Long value = mCounters.get(name);
+
+        return value == null ? 0 : value;
+    }
+
+    /**
+     * @param name of the histogram, see HISTOGRAM_ and PREFIX_ constants
+     * @param percentile in range (0, 100]
+     *
+     * @return percentile of the histogram, ms, 0 if there're no samples
+     */
+    public synchronized long getPercentile(final String name, final double percentile) {
+        final LatencyHistogram histogram = mHistograms.get(name);
+
+        return histogram == null ? 0 : histogram.getPercentile(percentile);
+    }
+
+    /**
+     * Removes all collected data
+     */
+    public synchronized void reset() {
+        mCounters.clear();
+        mHistograms.clear();
+        mTrackedHosts = 0;
+    }
+
+    /**
+     * @return counters and histograms summaries (count, mean, max, p50, p95, p99) as JSON
+     */
+    public synchronized JSONObject toJson() {
+        final JSONObject json = new JSONObject();
+
+        try {
+            final JSONObject counters = new JSONObject();
+
+            for (Map.Entry<String, Long> entry : mCounters.entrySet()) {
+                counters.put(entry.getKey(), entry.getValue().longValue());
+            }
+
+            final JSONObject histograms = new JSONObject();
+
+            for (Map.Entry<String, LatencyHistogram> entry : mHistograms.entrySet()) {
+                final LatencyHistogram histogram = entry.getValue();
+                final JSONObject summary = new JSONObject();
+
+                summary.put("count", histogram.getCount());
+                summary.put("mean", histogram.getMean());
+                summary.put("max", histogram.getMax());
+                summary.put("p50", histogram.getPercentile(50));
+                summary.put("p95", histogram.getPercentile(95));
+                summary.put("p99", histogram.getPercentile(99));
+                histograms.put(entry.getKey(), summary);
+            }
+
+            json.put("counters", counters);
+            json.put("histograms", histograms);
+        } catch (JSONException e) {
+            // Only finite numbers and non-null names are put, so it's not expected
+            throw new IllegalStateException(e);
+        }
+
+        return json;
+    }
+
+    private void increment(final String name, final long delta) {
+        mCounters.put(name, getCounter(name) + delta);
+    }
+
+    private LatencyHistogram getHistogram(final String name) {
+        LatencyHistogram histogram = mHistograms.get(name);
+
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            mHistograms.put(name, histogram);
+        }
+
+        return histogram;
+    }
+
+    private String getHostKey(final String host) {
+        final String key = PREFIX_HOST + host;
+
+        if (mHistograms.containsKey(key)) {
+            return key;
+        }
+
+        if (mTrackedHosts >= MAX_TRACKED_HOSTS) {
+            return PREFIX_HOST + OTHER_HOSTS;
+        }
+
+        mTrackedHosts++;
+        return key;
+    }
+}
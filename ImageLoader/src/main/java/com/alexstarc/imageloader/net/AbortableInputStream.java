@@ -0,0 +1,154 @@
+package com.alexstarc.imageloader.net;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Response body which can be aborted from another thread. Stream is never closed under running read,
+ * e.g. inflater of gzip body fails with runtime exception then, instead reads fail with IOException
+ * once stream is aborted and it's closed by the reading thread.
+ */
+class AbortableInputStream extends FilterInputStream {
+    /** Held while stream is read or closed */
+    private final ReentrantLock mLock = new ReentrantLock();
+    private volatile boolean mIsAborted = false;
+    /** Guarded by mLock */
+    private boolean mIsClosed = false;
+
+    /**
+     * @param input body to read from
+     */
+    AbortableInputStream(final InputStream input) {
+        super(input);
+    }
+
+    @Override
+    public int read() throws IOException {
+        mLock.lock();
+
+        try {
+            checkOpen();
+
+            final int value = in.read();
+
+            checkOpen();
+
+            return value;
+        } catch (RuntimeException e) {
+            throw getFailure(e);
+        } catch (IOException e) {
+            throw getFailure(e);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+        mLock.lock();
+
+        try {
+            checkOpen();
+
+            final int count = in.read(buffer, offset, length);
+
+            // Closed connection may look like end of data
+            checkOpen();
+
+            return count;
+        } catch (RuntimeException e) {
+            throw getFailure(e);
+        } catch (IOException e) {
+            throw getFailure(e);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public long skip(final long count) throws IOException {
+        mLock.lock();
+
+        try {
+            checkOpen();
+            return in.skip(count);
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public int available() throws IOException {
+        mLock.lock();
+
+        try {
+            checkOpen();
+            return in.available();
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mLock.lock();
+
+        try {
+            if (!mIsClosed) {
+                mIsClosed = true;
+                in.close();
+            }
+        } finally {
+            mLock.unlock();
+        }
+    }
+
+    /**
+     * Makes running and following reads fail. Stream is closed right away if nobody reads it,
+     * otherwise it has to be closed by the reading thread.
+     */
+    void abort() {
+        mIsAborted = true;
+
+        if (mLock.tryLock()) {
+            try {
+                if (!mIsClosed) {
+                    mIsClosed = true;
+                    in.close();
+                }
+            } catch (IOException e) {
+                // Stream is dropped anyway
+            } finally {
+                mLock.unlock();
+            }
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (mIsAborted) {
+            throw new IOException("Response is aborted");
+        }
+
+        if (mIsClosed) {
+            throw new IOException("Response is closed");
+        }
+    }
+
+    /**
+     * @return failure to report: aborted stream fails the same way whatever broke the read,
+     * runtime exceptions are not expected otherwise and are rethrown
+     */
+    private IOException getFailure(final Exception e) {
+        if (mIsAborted) {
+            return new IOException("Response is aborted");
+        }
+
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+
+        return (IOException) e;
+    }
+}
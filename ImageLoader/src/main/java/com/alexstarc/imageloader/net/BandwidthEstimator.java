@@ -0,0 +1,220 @@
+package com.alexstarc.imageloader.net;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Per-host estimate of latency (time to first byte) and throughput, exponentially weighted over finished
+ * requests. Timeouts, parallel downloads per host, read size and stall threshold are derived from it,
+ * so fast hosts fail fast and slow ones get enough time. Hosts without observations get defaults.
+ */
+public final class BandwidthEstimator {
+    /** Weight of the last observation in averages */
+    private static final double ALPHA = 0.25;
+    /** Weight of the last observation in latency deviation, as for TCP retransmission timeout */
+    private static final double BETA = 0.25;
+    /** Downloads smaller than this don't update throughput */
+    private static final long MIN_MEASURED_BYTES = 16 * 1024; // bytes
+    /** Hosts remembered, least recently used ones are dropped */
+    private static final int MAX_HOSTS = 64;
+
+    /** Connect timeout bounds, estimated one is latency plus four deviations */
+    private static final int MIN_CONNECT_TIMEOUT = 3000; // ms
+    private static final int MAX_CONNECT_TIMEOUT = HttpClient.DEFAULT_TIMEOUT;
+    /**
+     * Read timeout bounds, waiting for response includes server processing, so it's twice connect one.
+     * The same timeout limits body reads, so it's never shorter than default one
+     */
+    private static final int MIN_READ_TIMEOUT = HttpClient.DEFAULT_TIMEOUT;
+    private static final int MAX_READ_TIMEOUT = 30000; // ms
+
+    /** Per connection throughput below which parallel downloads from the host only split it */
+    private static final double SLOW_THROUGHPUT = 48 * 1024; // bytes per second
+    /** Per connection throughput below which only two downloads from the host run at once */
+    private static final double MODERATE_THROUGHPUT = 192 * 1024; // bytes per second
+
+    /** Transfer slower than this is stalled regardless of the host */
+    private static final long MIN_STALL_THROUGHPUT = 1024; // bytes per second
+    /** Transfer slower than this is stalled even on a fast host, its usual speed may just have dropped */
+    private static final long MAX_STALL_THROUGHPUT = 16 * 1024; // bytes per second
+    /** Part of usual host throughput below which transfer is stalled */
+    private static final int STALL_DIVIDER = 20;
+
+    private static BandwidthEstimator sInstance;
+
+    private final Map<String, HostEstimate> mHosts = new LinkedHashMap<String, HostEstimate>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, HostEstimate> eldest) {
+            return size() > MAX_HOSTS;
+        }
+    };
+
+    /**
+     * @return estimator shared by the application
+     */
+    public static synchronized BandwidthEstimator getInstance() {
+        if (sInstance == null) {
+            sInstance = new BandwidthEstimator();
+        }
+
+        return sInstance;
+    }
+
+    private BandwidthEstimator() {
+    }
+
+    /**
+     * @param host which responded
+     * @param millis from request start till response status, including connect
+     */
+    public synchronized void recordLatency(final String host, final long millis) {
+        if (millis < 0) {
+            return;
+        }
+
+        final HostEstimate estimate = getEstimate(host, true);
+
+        if (estimate.mLatency == 0) {
+            estimate.mLatency = millis;
+            estimate.mLatencyDeviation = millis / 2.0;
+        } else {
+            estimate.mLatencyDeviation = (1 - BETA) * estimate.mLatencyDeviation
+                    + BETA * Math.abs(estimate.mLatency - millis);
+            estimate.mLatency = (1 - ALPHA) * estimate.mLatency + ALPHA * millis;
+        }
+    }
+
+    /**
+     * @param host data was loaded from
+     * @param bytes loaded
+     * @param millis time spent loading them
+     */
+    public synchronized void recordThroughput(final String host, final long bytes, final long millis) {
+        // Too short downloads say more about latency than throughput
+        if (bytes < MIN_MEASURED_BYTES || millis <= 0) {
+            return;
+        }
+
+        final HostEstimate estimate = getEstimate(host, true);
+        final double bytesPerSecond = bytes * 1000.0 / millis;
+
+        estimate.mBytesPerSecond = estimate.mBytesPerSecond == 0 ? bytesPerSecond
+                : (1 - ALPHA) * estimate.mBytesPerSecond + ALPHA * bytesPerSecond;
+    }
+
+    /**
+     * @param host to connect to
+     *
+     * @return connect timeout, ms
+     */
+    public synchronized int getConnectTimeout(final String host) {
+        final HostEstimate estimate = getEstimate(host, false);
+
+        if (estimate == null || estimate.mLatency == 0) {
+            return HttpClient.DEFAULT_TIMEOUT;
+        }
+
+        return clamp(estimate.getTimeout(), MIN_CONNECT_TIMEOUT, MAX_CONNECT_TIMEOUT);
+    }
+
+    /**
+     * Timeout is set once per connection and limits body reads as well as waiting for response, so it's
+     * only extended for slow hosts. Slow bodies are caught by {@link StallWatchdog}
+     *
+     * @param host to read from
+     *
+     * @return read timeout, ms
+     */
+    public synchronized int getReadTimeout(final String host) {
+        final HostEstimate estimate = getEstimate(host, false);
+
+        if (estimate == null || estimate.mLatency == 0) {
+            return HttpClient.DEFAULT_TIMEOUT;
+        }
+
+        return clamp(2 * estimate.getTimeout(), MIN_READ_TIMEOUT, MAX_READ_TIMEOUT);
+    }
+
+    /**
+     * @param host to load from
+     *
+     * @return estimated throughput of one download, bytes per second, 0 if unknown
+     */
+    public synchronized double getBytesPerSecond(final String host) {
+        final HostEstimate estimate = getEstimate(host, false);
+
+        return estimate == null ? 0 : estimate.mBytesPerSecond;
+    }
+
+    /**
+     * Slow host finishes images one by one sooner than all of them at once
+     *
+     * @param host to load from
+     *
+     * @return limit of downloads from the host running at once, {@link Integer#MAX_VALUE} if there's no limit
+     */
+    public synchronized int getMaxConcurrent(final String host) {
+        final double bytesPerSecond = getBytesPerSecond(host);
+
+        if (bytesPerSecond == 0) {
+            return Integer.MAX_VALUE;
+        } else if (bytesPerSecond < SLOW_THROUGHPUT) {
+            return 1;
+        } else if (bytesPerSecond < MODERATE_THROUGHPUT) {
+            return 2;
+        }
+
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * @param host to load from
+     *
+     * @return throughput below which transfer from the host is stalled, bytes per second
+     */
+    public synchronized long getMinThroughput(final String host) {
+        final long usual = (long) getBytesPerSecond(host) / STALL_DIVIDER;
+
+        return Math.max(MIN_STALL_THROUGHPUT, Math.min(usual, MAX_STALL_THROUGHPUT));
+    }
+
+    /**
+     * Drops all estimates, e.g. when device switches to another network
+     */
+    public synchronized void reset() {
+        mHosts.clear();
+    }
+
+    private HostEstimate getEstimate(final String host, final boolean create) {
+        final String key = host == null ? "" : host.toLowerCase(Locale.US);
+        HostEstimate estimate = mHosts.get(key);
+
+        if (estimate == null && create) {
+            estimate = new HostEstimate();
+            mHosts.put(key, estimate);
+        }
+
+        return estimate;
+    }
+
+    private static int clamp(final double value, final int min, final int max) {
+        return (int) Math.max(min, Math.min(value, max));
+    }
+
+    private static final class HostEstimate {
+        /** Average time to first byte, ms, 0 if unknown */
+        private double mLatency = 0;
+        /** Average deviation of time to first byte, ms */
+        private double mLatencyDeviation = 0;
+        /** Average throughput of one download, bytes per second, 0 if unknown */
+        private double mBytesPerSecond = 0;
+
+        /**
+         * @return time in which nearly all responses arrive, ms
+         */
+        private double getTimeout() {
+            return mLatency + 4 * mLatencyDeviation;
+        }
+    }
+}
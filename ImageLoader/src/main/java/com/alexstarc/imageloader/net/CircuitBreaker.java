@@ -0,0 +1,132 @@
+package com.alexstarc.imageloader.net;
+
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Stops requests to a host which keeps failing, so loading fails fast instead of waiting for timeouts
+ * and a struggling server isn't hammered by retries. After a number of consecutive failures the host is
+ * blocked for a while, then a single probe request is let through: its success unblocks the host,
+ * its failure blocks it again for twice as long.
+ */
+public class CircuitBreaker {
+    private static final String TAG = "CircuitBreaker";
+
+    /** Consecutive failures which block the host */
+    private static final int FAILURE_THRESHOLD = 5;
+    /** Time the host is blocked for the first time */
+    private static final long OPEN_DURATION = 30000; // ms
+    /** Longest time the host is blocked */
+    private static final long MAX_OPEN_DURATION = 5 * 60000; // ms
+
+    private final Map<String, HostState> mHosts = new HashMap<String, HostState>();
+
+    /**
+     * @param host of the request
+     *
+     * @return true if request can be made, false if host is blocked and request has to fail right away
+     */
+    public boolean allowRequest(final String host) {
+        return allowRequest(host, SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * @param host of the request
+     * @param now current time, ms of {@link SystemClock#elapsedRealtime()}
+     *
+     * @return true if request can be made
+     */
+    synchronized boolean allowRequest(final String host, final long now) {
+        if (TextUtils.isEmpty(host)) {
+            return true;
+        }
+
+        final HostState state = mHosts.get(host);
+
+        if (state == null || state.mOpenUntil == 0) {
+            return true;
+        }
+
+        // Probe which never reported back, e.g. cancelled, doesn't keep the host blocked
+        if (now < state.mOpenUntil || (state.mIsProbing && now < state.mProbeUntil)) {
+            return false;
+        }
+
+        // Half open, the only request decides whether host is back
+        state.mIsProbing = true;
+        state.mProbeUntil = now + OPEN_DURATION;
+
+        return true;
+    }
+
+    /**
+     * @param host which responded
+     */
+    public synchronized void onSuccess(final String host) {
+        if (TextUtils.isEmpty(host)) {
+            return;
+        }
+
+        final HostState state = mHosts.remove(host);
+
+        if (state != null && state.mOpenUntil != 0) {
+            Log.d(TAG, "Host " + host + " is back");
+        }
+    }
+
+    /**
+     * @param host which failed with transient error
+     */
+    public void onFailure(final String host) {
+        onFailure(host, SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * @param host which failed with transient error
+     * @param now current time, ms of {@link SystemClock#elapsedRealtime()}
+     */
+    synchronized void onFailure(final String host, final long now) {
+        if (TextUtils.isEmpty(host)) {
+            return;
+        }
+
+        HostState state = mHosts.get(host);
+
+        if (state == null) {
+            state = new HostState();
+            mHosts.put(host, state);
+        }
+
+        state.mFailures++;
+
+        if (state.mIsProbing || (state.mOpenUntil == 0 && state.mFailures >= FAILURE_THRESHOLD)) {
+            state.mOpenDuration = state.mIsProbing
+                    ? Math.min(state.mOpenDuration * 2, MAX_OPEN_DURATION) : OPEN_DURATION;
+            state.mOpenUntil = now + state.mOpenDuration;
+            state.mIsProbing = false;
+            Log.w(TAG, "Host " + host + " is blocked for " + state.mOpenDuration + " ms after "
+                    + state.mFailures + " failures");
+        }
+    }
+
+    /**
+     * Unblocks all hosts, e.g. when network is changed
+     */
+    public synchronized void reset() {
+        mHosts.clear();
+    }
+
+    private static final class HostState {
+        private int mFailures = 0;
+        /** Time the host is blocked until, 0 if it's not blocked */
+        private long mOpenUntil = 0;
+        private long mOpenDuration = 0;
+        private boolean mIsProbing = false;
+        /** Time another probe is let through if the running one didn't report back */
+        private long mProbeUntil = 0;
+    }
+}
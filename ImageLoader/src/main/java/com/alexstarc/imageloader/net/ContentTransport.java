@@ -0,0 +1,66 @@
+package com.alexstarc.imageloader.net;
+
+import android.content.ContentResolver;
+import android.content.res.AssetFileDescriptor;
+import android.net.Uri;
+
+import com.alexstarc.imageloader.metrics.LoadMetrics;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Map;
+
+/**
+ * Loads content:// urls from content providers, e.g. gallery or document providers
+ */
+public class ContentTransport implements Transport {
+    public static final String SCHEME = "content";
+
+    private final ContentResolver mResolver;
+
+    /**
+     * @param resolver to open content with
+     */
+    public ContentTransport(final ContentResolver resolver) {
+        mResolver = resolver;
+    }
+
+    @Override
+    public Response fetch(final String url, final Map<String, String> headers, final LoadMetrics metrics)
+            throws IOException {
+        final Uri uri = Uri.parse(url);
+        final AssetFileDescriptor descriptor;
+
+        try {
+            descriptor = mResolver.openAssetFileDescriptor(uri, "r");
+        } catch (FileNotFoundException e) {
+            return new StreamResponse(HttpURLConnection.HTTP_NOT_FOUND, "Not Found", null);
+        } catch (SecurityException e) {
+            // Provider didn't grant access to the uri
+            return new StreamResponse(HttpURLConnection.HTTP_FORBIDDEN, "Forbidden", null);
+        }
+
+        if (descriptor == null) {
+            return new StreamResponse(HttpURLConnection.HTTP_NOT_FOUND, "Not Found", null);
+        }
+
+        final long length = descriptor.getLength();
+        final InputStream body;
+
+        try {
+            // Stream closes descriptor once it's closed
+            body = descriptor.createInputStream();
+        } catch (IOException e) {
+            descriptor.close();
+            throw e;
+        }
+
+        return new StreamResponse(HttpURLConnection.HTTP_OK, "OK", body)
+                .setHeader(Response.HEADER_CONTENT_TYPE, mResolver.getType(uri))
+                .setHeader(Response.HEADER_CONTENT_LENGTH,
+                        length == AssetFileDescriptor.UNKNOWN_LENGTH ? null : String.valueOf(length))
+                .setHeader(FileTransport.HEADER_CACHE_CONTROL, FileTransport.NO_CACHE);
+    }
+}
@@ -0,0 +1,52 @@
+package com.alexstarc.imageloader.net;
+
+import com.alexstarc.imageloader.metrics.LoadMetrics;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLConnection;
+import java.util.Map;
+
+/**
+ * Loads file:// urls from local storage. Files are read in full on every load, they're not revalidated,
+ * since reading the file costs about the same as checking it.
+ */
+public class FileTransport implements Transport {
+    public static final String SCHEME = "file";
+
+    /** Local data is never reused from cache without loading it again */
+    static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    static final String NO_CACHE = "no-cache";
+
+    @Override
+    public Response fetch(final String url, final Map<String, String> headers, final LoadMetrics metrics)
+            throws IOException {
+        final File file;
+
+        try {
+            file = new File(new URI(url));
+        } catch (URISyntaxException e) {
+            throw new MalformedURLException(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            // Not a file url or it has host, query etc.
+            throw new MalformedURLException(e.getMessage());
+        }
+
+        if (!file.isFile() || !file.canRead()) {
+            return new StreamResponse(HttpURLConnection.HTTP_NOT_FOUND, "Not Found", null);
+        }
+
+        final InputStream body = new FileInputStream(file);
+
+        return new StreamResponse(HttpURLConnection.HTTP_OK, "OK", body)
+                .setHeader(Response.HEADER_CONTENT_TYPE, URLConnection.guessContentTypeFromName(file.getName()))
+                .setHeader(Response.HEADER_CONTENT_LENGTH, String.valueOf(file.length()))
+                .setHeader(HEADER_CACHE_CONTROL, NO_CACHE);
+    }
+}
@@ -0,0 +1,167 @@
+package com.alexstarc.imageloader.net;
+
+import android.util.Log;
+
+import com.alexstarc.imageloader.io.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Shared HTTP client. Connections are kept alive and pooled by the platform, as long as response body
+ * is read to the end and closed instead of disconnecting. All HTTPS connections use one socket factory,
+ * so TLS sessions are cached and resumed for the same host instead of doing full handshake every time.
+ */
+public class HttpClient {
+    private static final String TAG = "HttpClient";
+
+    /** Connect and read timeout for hosts without {@link BandwidthEstimator} observations */
+    public static final int DEFAULT_TIMEOUT = 15000; // ms
+    /** Idle connections kept in the pool */
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    /** Idle connections are closed after this time */
+    private static final long KEEP_ALIVE_DURATION = 5 * 60 * 1000; // ms
+    /** Bodies of not needed responses (e.g. redirects) up to this size are read out to keep connection */
+    private static final int MAX_DRAIN_SIZE = 64 * 1024; // bytes
+
+    private static HttpClient sInstance;
+
+    private final SSLSocketFactory mSslSocketFactory;
+
+    /**
+     * @return client shared by the application
+     */
+    public static synchronized HttpClient getInstance() {
+        if (sInstance == null) {
+            sInstance = new HttpClient();
+        }
+
+        return sInstance;
+    }
+
+    private HttpClient() {
+        // Pool is configured by system properties, they're read once the first connection is made
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", String.valueOf(MAX_IDLE_CONNECTIONS));
+        System.setProperty("http.keepAliveDuration", String.valueOf(KEEP_ALIVE_DURATION));
+
+        mSslSocketFactory = createSslSocketFactory();
+    }
+
+    /**
+     * Opens GET connection configured with shared socket factory and timeouts estimated for the host.
+     * Connection is not connected yet, so request headers can be added.
+     *
+     * @param url to connect to
+     *
+     * @return new connection
+     *
+     * @throws IOException if connection cannot be opened
+     */
+    public HttpURLConnection open(final URL url) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+
+        if (connection instanceof HttpsURLConnection) {
+            final HttpsURLConnection httpsConnection = (HttpsURLConnection) connection;
+
+            // Default hostname verifier is kept, so certificate has to be issued for the host
+            if (mSslSocketFactory != null) {
+                httpsConnection.setSSLSocketFactory(mSslSocketFactory);
+            }
+        }
+
+        final BandwidthEstimator estimator = BandwidthEstimator.getInstance();
+
+        connection.setRequestMethod("GET");
+        connection.setConnectTimeout(estimator.getConnectTimeout(url.getHost()));
+        // Note that in some Android versions UrlConnection prepares silent retries,
+        // so with one-time links it might be issue (second request fails before first one).
+        // It's better to have read timeout no less than connection one
+        connection.setReadTimeout(estimator.getReadTimeout(url.getHost()));
+        // Redirects are followed by caller hop by hop, so they're counted and capped
+        connection.setInstanceFollowRedirects(false);
+
+        return connection;
+    }
+
+    /**
+     * Returns connection to the pool once response is read or not needed (e.g. redirect). Small rest of body is
+     * read out, otherwise connection is closed, since reading it would cost more than new connection.
+     *
+     * @param connection with received response
+     * @param openedBody body stream if it was already opened, null to open it here
+     */
+    public void release(final HttpURLConnection connection, final InputStream openedBody) {
+        InputStream body = openedBody;
+        boolean drained = false;
+
+        try {
+            if (body == null) {
+                body = connection.getResponseCode() >= HttpURLConnection.HTTP_BAD_REQUEST
+                        ? connection.getErrorStream() : connection.getInputStream();
+            }
+            drained = body == null || drain(body);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read out response " + e);
+        } finally {
+            StreamUtils.close(body);
+        }
+
+        if (!drained) {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Closes connection without reading the rest of response, e.g. on cancel or error
+     *
+     * @param connection to close
+     */
+    public void abort(final HttpURLConnection connection) {
+        connection.disconnect();
+    }
+
+    /**
+     * @return true if stream was read to the end
+     */
+    private static boolean drain(final InputStream body) throws IOException {
+        final byte[] buffer = new byte[4096];
+        int total = 0;
+        int count;
+
+        while ((count = body.read(buffer)) != -1) {
+            total += count;
+
+            if (total > MAX_DRAIN_SIZE) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Custom trust-all manager which was installed before never took effect (SSLContext was requested for
+     * unknown "TSL" protocol), so platform trust managers are kept.
+     *
+     * @return socket factory shared by all HTTPS connections, null if TLS isn't available
+     */
+    private static SSLSocketFactory createSslSocketFactory() {
+        try {
+            final SSLContext context = SSLContext.getInstance("TLS");
+
+            context.init(null, null, null);
+            return context.getSocketFactory();
+        } catch (GeneralSecurityException e) {
+            Log.e(TAG, "Failed to init TLS " + e);
+            return null;
+        }
+    }
+}
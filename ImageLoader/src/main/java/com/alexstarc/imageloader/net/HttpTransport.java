@@ -0,0 +1,145 @@
+package com.alexstarc.imageloader.net;
+
+import android.os.SystemClock;
+
+import com.alexstarc.imageloader.metrics.LoadMetrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Default transport, loads http and https urls with {@link HttpClient} connections.
+ * Gzip compressed bodies are decompressed while reading, so callers always get image data.
+ */
+public class HttpTransport implements Transport {
+    /** Legacy name of gzip coding, still sent by some servers */
+    private static final String ENCODING_X_GZIP = "x-gzip";
+    /** Buffer of compressed data, large enough to inflate in few calls */
+    private static final int GZIP_BUFFER_SIZE = 16 * 1024; // bytes
+
+    private final HttpClient mClient;
+
+    /**
+     * @param client to open connections with
+     */
+    public HttpTransport(final HttpClient client) {
+        mClient = client;
+    }
+
+    @Override
+    public Response fetch(final String url, final Map<String, String> headers, final LoadMetrics metrics)
+            throws IOException {
+        // Pooled connection to the same host is reused, including redirect hops
+        final URL parsedUrl = new URL(url);
+        final HttpURLConnection connection = mClient.open(parsedUrl);
+
+        try {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+
+            final long startMillis = SystemClock.elapsedRealtime();
+
+            if (metrics != null) {
+                metrics.begin(LoadMetrics.Phase.CONNECT);
+            }
+            connection.connect();
+            if (metrics != null) {
+                metrics.end(LoadMetrics.Phase.CONNECT);
+                metrics.begin(LoadMetrics.Phase.FIRST_BYTE);
+            }
+            final int status = connection.getResponseCode();
+            if (metrics != null) {
+                metrics.end(LoadMetrics.Phase.FIRST_BYTE);
+            }
+            // Timeouts of the next requests follow observed latency
+            BandwidthEstimator.getInstance().recordLatency(parsedUrl.getHost(),
+                    SystemClock.elapsedRealtime() - startMillis);
+
+            return new HttpResponse(mClient, connection, status);
+        } catch (IOException e) {
+            mClient.abort(connection);
+            throw e;
+        }
+    }
+
+    private static final class HttpResponse extends Response {
+        private final HttpClient mClient;
+        private final HttpURLConnection mConnection;
+        private final int mStatus;
+        /**
+         * Body once it's opened, connection returns the same stream only for some implementations.
+         * Response can be aborted on another thread while body is read, e.g. by {@link StallWatchdog}
+         */
+        private volatile AbortableInputStream mBody = null;
+
+        HttpResponse(final HttpClient client, final HttpURLConnection connection, final int status) {
+            mClient = client;
+            mConnection = connection;
+            mStatus = status;
+        }
+
+        @Override
+        public int getStatus() {
+            return mStatus;
+        }
+
+        @Override
+        public String getMessage() {
+            try {
+                final String message = mConnection.getResponseMessage();
+
+                return message == null ? "" : message;
+            } catch (IOException e) {
+                return "";
+            }
+        }
+
+        @Override
+        public String getHeader(final String name) {
+            return mConnection.getHeaderField(name);
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (mBody == null) {
+                final InputStream body = mStatus >= HttpURLConnection.HTTP_BAD_REQUEST
+                        ? mConnection.getErrorStream() : mConnection.getInputStream();
+
+                // Encoding is set explicitly in request, so connection doesn't decompress the body itself
+                if (body != null) {
+                    mBody = new AbortableInputStream(isGzip() ? new GZIPInputStream(body, GZIP_BUFFER_SIZE) : body);
+                }
+            }
+
+            return mBody;
+        }
+
+        private boolean isGzip() {
+            final String encoding = getHeader(HEADER_CONTENT_ENCODING);
+
+            return encoding != null && (ENCODING_GZIP.equalsIgnoreCase(encoding.trim())
+                    || ENCODING_X_GZIP.equalsIgnoreCase(encoding.trim()));
+        }
+
+        @Override
+        public void release() {
+            mClient.release(mConnection, mBody);
+        }
+
+        @Override
+        public void abort() {
+            final AbortableInputStream body = mBody;
+
+            if (body != null) {
+                body.abort();
+            }
+
+            mClient.abort(mConnection);
+        }
+    }
+}
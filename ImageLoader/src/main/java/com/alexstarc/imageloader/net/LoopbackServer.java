@@ -0,0 +1,389 @@
+package com.alexstarc.imageloader.net;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Minimal http server on 127.0.0.1 serving images from memory, to load test the whole pipeline through
+ * {@link HttpTransport} without live server. Supports keep-alive, redirects, ETag revalidation and Range
+ * requests, responses can be throttled to emulate slow network.
+ */
+public class LoopbackServer {
+    private static final String TAG = "LoopbackServer";
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final int SOCKET_TIMEOUT = 30000; // ms
+    private static final int WRITE_CHUNK_SIZE = 8 * 1024; // bytes
+    private static final int MAX_LINE_LENGTH = 8 * 1024; // chars
+    private static final String RANGE_PREFIX = "bytes=";
+    /** Http status for not satisfiable Range, missing in HttpURLConnection */
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    /** Served resource */
+    private static final class Resource {
+        final byte[] mData;
+        final String mContentType;
+        final String mETag;
+
+        Resource(final byte[] data, final String contentType) {
+            mData = data;
+            mContentType = contentType;
+            mETag = "\"" + Integer.toHexString(Arrays.hashCode(data)) + "-" + data.length + "\"";
+        }
+    }
+
+    /** Redirect to another path */
+    private static final class Redirect {
+        final int mStatus;
+        final String mLocation;
+
+        Redirect(final int status, final String location) {
+            mStatus = status;
+            mLocation = location;
+        }
+    }
+
+    private final Map<String, Resource> mResources = new ConcurrentHashMap<String, Resource>();
+    private final Map<String, Redirect> mRedirects = new ConcurrentHashMap<String, Redirect>();
+    private final long mLastModified = System.currentTimeMillis();
+    private ServerSocket mServerSocket = null;
+    private ExecutorService mExecutor = null;
+    /** 0 to send responses as fast as possible */
+    private volatile long mBytesPerSecond = 0;
+    private volatile int mMaxAge = 0;
+
+    /**
+     * @param path of the resource, starting with "/"
+     * @param data served for the path
+     * @param contentType of the data
+     *
+     * @return this server
+     */
+    public LoopbackServer put(final String path, final byte[] data, final String contentType) {
+        mResources.put(path, new Resource(data, contentType));
+        return this;
+    }
+
+    /**
+     * @param path which is redirected
+     * @param status of redirect response, e.g. 302
+     * @param location sent in Location header, can be relative, null to send broken redirect without it
+     *
+     * @return this server
+     */
+    public LoopbackServer putRedirect(final String path, final int status, final String location) {
+        mRedirects.put(path, new Redirect(status, location));
+        return this;
+    }
+
+    /**
+     * @param path of the resource or redirect to stop serving, next requests get 404
+     */
+    public void remove(final String path) {
+        mResources.remove(path);
+        mRedirects.remove(path);
+    }
+
+    /**
+     * @param bytesPerSecond limit of response body speed, 0 for no limit
+     */
+    public void setThrottle(final long bytesPerSecond) {
+        mBytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * @param maxAge value of Cache-Control max-age, seconds, 0 to make responses revalidated on every load
+     */
+    public void setMaxAge(final int maxAge) {
+        mMaxAge = maxAge;
+    }
+
+    /**
+     * Starts accepting connections on random free port
+     *
+     * @throws IOException if socket cannot be opened
+     */
+    public synchronized void start() throws IOException {
+        if (mServerSocket != null) {
+            return;
+        }
+
+        mServerSocket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+        mExecutor = Executors.newCachedThreadPool();
+
+        final ServerSocket serverSocket = mServerSocket;
+        final ExecutorService executor = mExecutor;
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections(serverSocket, executor);
+            }
+        });
+    }
+
+    /**
+     * Stops accepting connections, open ones are closed after current response or once they time out
+     */
+    public synchronized void stop() {
+        if (mServerSocket == null) {
+            return;
+        }
+
+        try {
+            mServerSocket.close();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to close server socket " + e);
+        }
+        mExecutor.shutdownNow();
+        mServerSocket = null;
+        mExecutor = null;
+    }
+
+    /**
+     * @param path of the resource
+     *
+     * @return url to load the resource from, server has to be started
+     */
+    public synchronized String getUrl(final String path) {
+        if (mServerSocket == null) {
+            throw new IllegalStateException("Server is not started");
+        }
+
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + path;
+    }
+
+    private void acceptConnections(final ServerSocket serverSocket, final ExecutorService executor) {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serveConnection(socket);
+                    }
+                });
+            } catch (SocketException e) {
+                // Server is stopped
+                return;
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to accept connection " + e);
+            }
+        }
+    }
+
+    private void serveConnection(final Socket socket) {
+        try {
+            socket.setSoTimeout(SOCKET_TIMEOUT);
+
+            final InputStream input = new BufferedInputStream(socket.getInputStream());
+            final OutputStream output = new BufferedOutputStream(socket.getOutputStream());
+            boolean keepAlive = true;
+
+            while (keepAlive && !Thread.currentThread().isInterrupted()) {
+                final String requestLine = readLine(input);
+
+                if (requestLine == null) {
+                    break;
+                }
+
+                final Map<String, String> headers = new HashMap<String, String>();
+                String line;
+
+                while ((line = readLine(input)) != null && !line.isEmpty()) {
+                    final int colon = line.indexOf(':');
+
+                    if (colon > 0) {
+                        headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US),
+                                line.substring(colon + 1).trim());
+                    }
+                }
+
+                keepAlive = !"close".equalsIgnoreCase(headers.get("connection"));
+                serveRequest(requestLine, headers, output);
+                output.flush();
+            }
+        } catch (IOException e) {
+            // Client closed connection or timed out
+            Log.d(TAG, "Connection closed " + e);
+        } catch (InterruptedException e) {
+            // Server is stopped
+            Thread.currentThread().interrupt();
+        } finally {
+            // Socket is not Closeable before API 19
+            try {
+                socket.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to close socket " + e);
+            }
+        }
+    }
+
+    private void serveRequest(final String requestLine, final Map<String, String> headers, final OutputStream output)
+            throws IOException, InterruptedException {
+        // GET /path HTTP/1.1
+        final String[] parts = requestLine.split(" ");
+
+        if (parts.length < 2 || !"GET".equals(parts[0])) {
+            writeHeaders(output, HttpURLConnection.HTTP_BAD_METHOD, "Method Not Allowed", 0, null);
+            return;
+        }
+
+        final Redirect redirect = mRedirects.get(parts[1]);
+
+        if (redirect != null) {
+            final Map<String, String> responseHeaders = new HashMap<String, String>();
+
+            if (redirect.mLocation != null) {
+                responseHeaders.put("Location", redirect.mLocation);
+            }
+            writeHeaders(output, redirect.mStatus, "Redirect", 0, responseHeaders);
+            return;
+        }
+
+        final Resource resource = mResources.get(parts[1]);
+
+        if (resource == null) {
+            writeHeaders(output, HttpURLConnection.HTTP_NOT_FOUND, "Not Found", 0, null);
+            return;
+        }
+
+        final Map<String, String> responseHeaders = new HashMap<String, String>();
+
+        responseHeaders.put("ETag", resource.mETag);
+        responseHeaders.put("Last-Modified", Response.formatDate(mLastModified));
+        responseHeaders.put("Cache-Control", "max-age=" + mMaxAge);
+
+        if (resource.mETag.equals(headers.get("if-none-match"))) {
+            writeHeaders(output, HttpURLConnection.HTTP_NOT_MODIFIED, "Not Modified", -1, responseHeaders);
+            return;
+        }
+
+        final long start = getRangeStart(headers, resource);
+
+        if (start >= resource.mData.length) {
+            responseHeaders.put("Content-Range", "bytes */" + resource.mData.length);
+            writeHeaders(output, HTTP_RANGE_NOT_SATISFIABLE, "Range Not Satisfiable", 0, responseHeaders);
+            return;
+        }
+
+        responseHeaders.put("Content-Type", resource.mContentType);
+
+        if (start > 0) {
+            responseHeaders.put("Content-Range",
+                    "bytes " + start + "-" + (resource.mData.length - 1) + "/" + resource.mData.length);
+            writeHeaders(output, HttpURLConnection.HTTP_PARTIAL, "Partial Content",
+                    resource.mData.length - start, responseHeaders);
+        } else {
+            writeHeaders(output, HttpURLConnection.HTTP_OK, "OK", resource.mData.length, responseHeaders);
+        }
+
+        writeBody(output, resource.mData, (int) start);
+    }
+
+    /**
+     * @return first requested byte, 0 if whole resource has to be sent
+     */
+    private static long getRangeStart(final Map<String, String> headers, final Resource resource) {
+        final String range = headers.get("range");
+        final String ifRange = headers.get("if-range");
+
+        // Only open ranges used to resume downloads are supported
+        if (range == null || !range.startsWith(RANGE_PREFIX) || !range.endsWith("-")
+                || (ifRange != null && !ifRange.equals(resource.mETag))) {
+            return 0;
+        }
+
+        try {
+            return Math.max(0, Long.parseLong(range.substring(RANGE_PREFIX.length(), range.length() - 1)));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void writeBody(final OutputStream output, final byte[] data, final int start)
+            throws IOException, InterruptedException {
+        final long bytesPerSecond = mBytesPerSecond;
+
+        for (int offset = start; offset < data.length; offset += WRITE_CHUNK_SIZE) {
+            final int count = Math.min(WRITE_CHUNK_SIZE, data.length - offset);
+
+            output.write(data, offset, count);
+
+            if (bytesPerSecond > 0) {
+                output.flush();
+                Thread.sleep(count * 1000L / bytesPerSecond);
+            }
+        }
+    }
+
+    /**
+     * @param contentLength of the body, -1 for responses without body
+     */
+    private static void writeHeaders(final OutputStream output, final int status, final String message,
+                                     final long contentLength, final Map<String, String> headers) throws IOException {
+        final StringBuilder builder = new StringBuilder();
+
+        builder.append("HTTP/1.1 ").append(status).append(' ').append(message).append("\r\n");
+
+        if (contentLength >= 0) {
+            builder.append("Content-Length: ").append(contentLength).append("\r\n");
+        }
+
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                builder.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+            }
+        }
+
+        builder.append("\r\n");
+        output.write(builder.toString().getBytes(ASCII));
+    }
+
+    /**
+     * @return line without line break, null if stream is ended
+     */
+    private static String readLine(final InputStream input) throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        int c;
+
+        while ((c = input.read()) != -1) {
+            if (c == '\n') {
+                final int length = builder.length();
+
+                if (length > 0 && builder.charAt(length - 1) == '\r') {
+                    builder.setLength(length - 1);
+                }
+
+                return builder.toString();
+            }
+
+            if (builder.length() >= MAX_LINE_LENGTH) {
+                throw new IOException("Too long line");
+            }
+
+            builder.append((char) c);
+        }
+
+        return builder.length() == 0 ? null : builder.toString();
+    }
+}
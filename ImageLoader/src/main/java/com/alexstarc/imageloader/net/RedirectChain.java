@@ -0,0 +1,87 @@
+package com.alexstarc.imageloader.net;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.URL;
+
+/**
+ * Redirect hops of one attempt. Connections don't follow redirects themselves, so every hop is counted,
+ * capped and goes through the connection pool of its host.
+ */
+public class RedirectChain {
+    /** Http statuses missing in HttpURLConnection */
+    public static final int HTTP_TEMPORARY_REDIRECT = 307;
+    public static final int HTTP_PERMANENT_REDIRECT = 308;
+
+    private final int mMaxRedirects;
+    private String mUrl;
+    private int mCount = 0;
+
+    /**
+     * @param url requested url
+     * @param maxRedirects hops followed, chain fails once there are more
+     */
+    public RedirectChain(final String url, final int maxRedirects) {
+        mUrl = url;
+        mMaxRedirects = maxRedirects;
+    }
+
+    /**
+     * @param status of the response
+     *
+     * @return true if response points to another url with Location header
+     */
+    public static boolean isRedirect(final int status) {
+        switch (status) {
+            case HttpURLConnection.HTTP_MOVED_PERM:
+            case HttpURLConnection.HTTP_MOVED_TEMP:
+            case HttpURLConnection.HTTP_SEE_OTHER:
+            case HTTP_TEMPORARY_REDIRECT:
+            case HTTP_PERMANENT_REDIRECT:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Moves to the location of redirect response, relative to the current url
+     *
+     * @param response with redirect status
+     *
+     * @return false if hop is over the limit, e.g. redirects make a cycle
+     *
+     * @throws IOException if response has no valid location
+     */
+    public boolean follow(final Response response) throws IOException {
+        if (mCount >= mMaxRedirects) {
+            return false;
+        }
+
+        final String location = response.getHeader(Response.HEADER_LOCATION);
+
+        if (location == null) {
+            throw new ProtocolException("Redirect " + response.getStatus() + " without location");
+        }
+
+        mUrl = new URL(new URL(mUrl), location).toExternalForm();
+        mCount++;
+        return true;
+    }
+
+    /**
+     * @return url of the last hop
+     */
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * @return hops followed
+     */
+    public int getCount() {
+        return mCount;
+    }
+}
@@ -0,0 +1,150 @@
+package com.alexstarc.imageloader.net;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Response of {@link Transport}: status, headers and body stream. Has to be finished with {@link #release()}
+ * once body is read or not needed, or with {@link #abort()} to drop it.
+ */
+public abstract class Response {
+    public static final String HEADER_CONTENT_TYPE = "Content-Type";
+    public static final String HEADER_CONTENT_LENGTH = "Content-Length";
+    public static final String HEADER_LOCATION = "Location";
+    public static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    public static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    /** Content coding of data sent as is */
+    public static final String ENCODING_IDENTITY = "identity";
+    /** Content coding of gzip compressed data, bodies with it are decompressed by transport */
+    public static final String ENCODING_GZIP = "gzip";
+
+    /** Http date format, RFC 7231 */
+    private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+    /**
+     * @return http status code, statuses of local sources are mapped to http ones
+     */
+    public abstract int getStatus();
+
+    /**
+     * @return status message, can be empty
+     */
+    public abstract String getMessage();
+
+    /**
+     * @param name of the header, case insensitive
+     *
+     * @return header value or null if there's no such header
+     */
+    public abstract String getHeader(String name);
+
+    /**
+     * @return response body, or error body for error statuses, can be null if there's no body
+     *
+     * @throws IOException if body cannot be opened
+     */
+    public abstract InputStream getBody() throws IOException;
+
+    /**
+     * Finishes response which body is read to the end or not needed, so underlying connection can be reused
+     */
+    public abstract void release();
+
+    /**
+     * Closes response without reading the rest of body, e.g. on cancel or error
+     */
+    public abstract void abort();
+
+    /**
+     * @return content type or null if unknown
+     */
+    public String getContentType() {
+        return getHeader(HEADER_CONTENT_TYPE);
+    }
+
+    /**
+     * @return body length or -1 if unknown, e.g. for compressed body which is decompressed while reading
+     */
+    public long getContentLength() {
+        return isContentEncoded() ? -1 : getLongHeader(HEADER_CONTENT_LENGTH, -1);
+    }
+
+    /**
+     * Body of encoded response differs from transferred data, so its length and byte ranges
+     * don't match transferred ones
+     *
+     * @return true if response data was compressed for transfer
+     */
+    public boolean isContentEncoded() {
+        final String encoding = getHeader(HEADER_CONTENT_ENCODING);
+
+        if (encoding == null) {
+            return false;
+        }
+
+        final String trimmed = encoding.trim();
+
+        return !trimmed.isEmpty() && !ENCODING_IDENTITY.equalsIgnoreCase(trimmed);
+    }
+
+    /**
+     * @param name of the header
+     * @param defaultValue returned if there's no such header or it's not a number
+     *
+     * @return header value
+     */
+    public long getLongHeader(final String name, final long defaultValue) {
+        final String value = getHeader(name);
+
+        if (value == null) {
+            return defaultValue;
+        }
+
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @param name of the header with http date
+     *
+     * @return date in ms from epoch, 0 if there's no such header or it cannot be parsed
+     */
+    public long getDateHeader(final String name) {
+        final String value = getHeader(name);
+
+        if (value == null) {
+            return 0;
+        }
+
+        try {
+            return createDateFormat().parse(value.trim()).getTime();
+        } catch (ParseException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * @param time ms from epoch
+     *
+     * @return time formatted as http date
+     */
+    public static String formatDate(final long time) {
+        return createDateFormat().format(new Date(time));
+    }
+
+    // SimpleDateFormat is not thread safe, and responses are read from several loading threads
+    private static SimpleDateFormat createDateFormat() {
+        final SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format;
+    }
+}
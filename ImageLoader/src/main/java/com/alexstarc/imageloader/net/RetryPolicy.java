@@ -0,0 +1,195 @@
+package com.alexstarc.imageloader.net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.NoRouteToHostException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Random;
+
+/**
+ * Decides which failures are worth repeating and how long to wait before next attempt.
+ * Delays grow exponentially with full jitter, so clients failed together don't come back together.
+ */
+public class RetryPolicy {
+    /** Attempts after the first one, by default */
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    /** Delay before the first retry, doubled with every next one, by default */
+    public static final long DEFAULT_BASE_DELAY = 500; // ms
+    /** Longest delay between attempts, by default */
+    public static final long DEFAULT_MAX_DELAY = 8000; // ms
+    /** Redirects followed by one attempt, by default */
+    public static final int DEFAULT_MAX_REDIRECTS = 10;
+
+    /** Server asks to slow down, missing in HttpURLConnection */
+    public static final int HTTP_TOO_MANY_REQUESTS = 429;
+    /** Server asking to wait longer than this is not retried, loading thread isn't held for so long */
+    private static final long MAX_RETRY_AFTER = 60000; // ms
+    /** Value meaning failure must not be retried */
+    public static final long NO_RETRY = -1;
+
+    private static final String HEADER_RETRY_AFTER = "Retry-After";
+
+    private final int mMaxRetries;
+    private final long mBaseDelay;
+    private final long mMaxDelay;
+    private final int mMaxRedirects;
+    private final Random mRandom = new Random();
+
+    /**
+     * @param maxRetries attempts after the first one, 0 to disable retries
+     * @param baseDelay delay before the first retry, ms
+     * @param maxDelay longest delay between attempts, ms
+     * @param maxRedirects redirects followed by one attempt
+     */
+    public RetryPolicy(final int maxRetries, final long baseDelay, final long maxDelay, final int maxRedirects) {
+        if (maxRetries < 0 || baseDelay <= 0 || maxDelay < baseDelay || maxRedirects < 0) {
+            throw new IllegalArgumentException("Wrong retry policy " + maxRetries + " " + baseDelay + "-" + maxDelay
+                    + " " + maxRedirects);
+        }
+
+        mMaxRetries = maxRetries;
+        mBaseDelay = baseDelay;
+        mMaxDelay = maxDelay;
+        mMaxRedirects = maxRedirects;
+    }
+
+    /**
+     * @return policy used when nothing is configured
+     */
+    public static RetryPolicy getDefault() {
+        return new RetryPolicy(DEFAULT_MAX_RETRIES, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY, DEFAULT_MAX_REDIRECTS);
+    }
+
+    /**
+     * @return attempts after the first one
+     */
+    public int getMaxRetries() {
+        return mMaxRetries;
+    }
+
+    /**
+     * @return redirects followed by one attempt, loading fails once there are more
+     */
+    public int getMaxRedirects() {
+        return mMaxRedirects;
+    }
+
+    /**
+     * @param status of the response
+     *
+     * @return true if the same request may succeed later
+     */
+    public static boolean isTransient(final int status) {
+        switch (status) {
+            case HttpURLConnection.HTTP_CLIENT_TIMEOUT:
+            case HTTP_TOO_MANY_REQUESTS:
+            case HttpURLConnection.HTTP_INTERNAL_ERROR:
+            case HttpURLConnection.HTTP_BAD_GATEWAY:
+            case HttpURLConnection.HTTP_UNAVAILABLE:
+            case HttpURLConnection.HTTP_GATEWAY_TIMEOUT:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Connection problems and timeouts are transient, while e.g. malformed url, missing file,
+     * protocol or certificate errors will fail again
+     *
+     * @param e failure of the request
+     *
+     * @return true if the same request may succeed later
+     */
+    public static boolean isTransient(final IOException e) {
+        if (e instanceof SocketTimeoutException) {
+            return true;
+        }
+
+        if (e instanceof InterruptedIOException) {
+            // Thread was interrupted, e.g. job is cancelled
+            return false;
+        }
+
+        return e instanceof ConnectException || e instanceof NoRouteToHostException
+                || e instanceof UnknownHostException || e instanceof SocketException
+                || e instanceof EOFException;
+    }
+
+    /**
+     * @param retry number of the retry, starting from 0
+     * @param status of failed response
+     * @param response failed response, to read Retry-After from
+     *
+     * @return delay before the retry, ms, or {@link #NO_RETRY}
+     */
+    public long getDelay(final int retry, final int status, final Response response) {
+        if (!isTransient(status) || retry >= mMaxRetries) {
+            return NO_RETRY;
+        }
+
+        final long retryAfter = getRetryAfter(response);
+
+        if (retryAfter > MAX_RETRY_AFTER) {
+            return NO_RETRY;
+        }
+
+        return Math.max(retryAfter, getBackoff(retry));
+    }
+
+    /**
+     * @param retry number of the retry, starting from 0
+     * @param e failure of the request
+     *
+     * @return delay before the retry, ms, or {@link #NO_RETRY}
+     */
+    public long getDelay(final int retry, final IOException e) {
+        if (!isTransient(e) || retry >= mMaxRetries) {
+            return NO_RETRY;
+        }
+
+        return getBackoff(retry);
+    }
+
+    /**
+     * @return random delay up to exponentially growing limit
+     */
+    private long getBackoff(final int retry) {
+        final long limit = Math.min(mMaxDelay, mBaseDelay << Math.min(retry, 30));
+
+        synchronized (mRandom) {
+            return (long) (mRandom.nextDouble() * limit);
+        }
+    }
+
+    /**
+     * @return delay asked by Retry-After header, seconds or http date, 0 if there's none
+     */
+    private static long getRetryAfter(final Response response) {
+        final String value = response.getHeader(HEADER_RETRY_AFTER);
+
+        if (value == null) {
+            return 0;
+        }
+
+        try {
+            return Math.max(0, Long.parseLong(value.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            final long date = response.getDateHeader(HEADER_RETRY_AFTER);
+
+            return date > 0 ? Math.max(0, date - System.currentTimeMillis()) : 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy " + mMaxRetries + " retries " + mBaseDelay + "-" + mMaxDelay + "ms, "
+                + mMaxRedirects + " redirects";
+    }
+}
@@ -0,0 +1,43 @@
+package com.alexstarc.imageloader.net;
+
+import com.alexstarc.imageloader.metrics.LoadMetrics;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Transport choosing backend by url scheme, urls with not registered schemes go to default transport
+ */
+public class SchemeTransport implements Transport {
+    private final Transport mDefaultTransport;
+    private final Map<String, Transport> mTransports = new ConcurrentHashMap<String, Transport>();
+
+    /**
+     * @param defaultTransport for http(s) and unknown schemes
+     */
+    public SchemeTransport(final Transport defaultTransport) {
+        mDefaultTransport = defaultTransport;
+    }
+
+    /**
+     * @param scheme of urls, e.g. "file"
+     * @param transport to load such urls with
+     *
+     * @return this transport
+     */
+    public SchemeTransport register(final String scheme, final Transport transport) {
+        mTransports.put(scheme.toLowerCase(Locale.US), transport);
+        return this;
+    }
+
+    @Override
+    public Response fetch(final String url, final Map<String, String> headers, final LoadMetrics metrics)
+            throws IOException {
+        final int colon = url.indexOf(':');
+        final Transport transport = colon > 0 ? mTransports.get(url.substring(0, colon).toLowerCase(Locale.US)) : null;
+
+        return (transport == null ? mDefaultTransport : transport).fetch(url, headers, metrics);
+    }
+}
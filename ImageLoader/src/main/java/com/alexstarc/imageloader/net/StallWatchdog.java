@@ -0,0 +1,244 @@
+package com.alexstarc.imageloader.net;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Aborts response bodies which keep coming slower than minimum throughput. Single read timeout doesn't catch
+ * a server trickling a few bytes now and then, and it's too short for a slow but working link.
+ * Only time the loading thread is blocked in reads is counted, so decoding while loading or paced
+ * background download is never taken for a stall.
+ */
+public final class StallWatchdog {
+    private static final String TAG = "StallWatchdog";
+
+    /** How often running transfers are checked */
+    private static final long CHECK_INTERVAL = 1000; // ms
+    /** Throughput is measured over this read time */
+    private static final long WINDOW = 5000; // ms
+
+    private static StallWatchdog sInstance;
+
+    /** Guarded by this */
+    private final List<Watch> mWatches = new ArrayList<Watch>();
+    /** Checking thread, runs while there's something to watch. Guarded by this */
+    private Thread mThread = null;
+
+    /**
+     * @return watchdog shared by the application
+     */
+    public static synchronized StallWatchdog getInstance() {
+        if (sInstance == null) {
+            sInstance = new StallWatchdog();
+        }
+
+        return sInstance;
+    }
+
+    private StallWatchdog() {
+    }
+
+    /**
+     * Starts watching the response, its body has to be read through {@link Watch#wrap(InputStream)}
+     * and watching has to be finished with {@link Watch#stop()}
+     *
+     * @param response to abort if it stalls
+     * @param minBytesPerSecond throughput below which response is stalled
+     *
+     * @return watch of the response
+     */
+    public synchronized Watch watch(final Response response, final long minBytesPerSecond) {
+        final Watch watch = new Watch(response, minBytesPerSecond);
+
+        mWatches.add(watch);
+
+        if (mThread == null) {
+            mThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    checkWhileWatching();
+                }
+            }, TAG);
+            mThread.start();
+        }
+
+        return watch;
+    }
+
+    private synchronized void remove(final Watch watch) {
+        mWatches.remove(watch);
+    }
+
+    private void checkWhileWatching() {
+        final List<Watch> watches = new ArrayList<Watch>();
+
+        while (true) {
+            synchronized (this) {
+                if (mWatches.isEmpty()) {
+                    mThread = null;
+                    return;
+                }
+
+                try {
+                    wait(CHECK_INTERVAL);
+                } catch (InterruptedException e) {
+                    mThread = null;
+                    return;
+                }
+
+                watches.clear();
+                watches.addAll(mWatches);
+            }
+
+            // Abort closes connection, it's not done under the lock
+            for (Watch watch : watches) {
+                watch.check(SystemClock.elapsedRealtime());
+            }
+        }
+    }
+
+    /**
+     * Watch of a single response
+     */
+    public final class Watch {
+        private final Response mResponse;
+        private final long mMinBytesPerSecond;
+        // Updated by loading thread, read by watchdog thread
+        private volatile long mBytes = 0;
+        /** Time spent in finished reads */
+        private volatile long mReadMillis = 0;
+        /** Start of the current read, 0 if thread is not reading */
+        private volatile long mReadStart = 0;
+        private volatile boolean mIsStalled = false;
+        // Window start, used by watchdog thread only
+        private long mWindowBytes = 0;
+        private long mWindowReadMillis = 0;
+
+        Watch(final Response response, final long minBytesPerSecond) {
+            mResponse = response;
+            mMinBytesPerSecond = minBytesPerSecond;
+        }
+
+        /**
+         * @param body of the watched response
+         *
+         * @return stream counting data and time spent reading it
+         */
+        public InputStream wrap(final InputStream body) {
+            return new FilterInputStream(body) {
+                @Override
+                public int read() throws IOException {
+                    int value = -1;
+
+                    beginRead(SystemClock.elapsedRealtime());
+
+                    try {
+                        value = in.read();
+                        return value;
+                    } catch (IOException e) {
+                        throw getFailure(e);
+                    } finally {
+                        endRead(value == -1 ? 0 : 1, SystemClock.elapsedRealtime());
+                    }
+                }
+
+                @Override
+                public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+                    int count = 0;
+
+                    beginRead(SystemClock.elapsedRealtime());
+
+                    try {
+                        count = in.read(buffer, offset, length);
+                        return count;
+                    } catch (IOException e) {
+                        throw getFailure(e);
+                    } finally {
+                        endRead(count, SystemClock.elapsedRealtime());
+                    }
+                }
+            };
+        }
+
+        /**
+         * Reads of stalled response fail with {@link SocketTimeoutException}
+         *
+         * @return true if response was aborted as stalled
+         */
+        public boolean isStalled() {
+            return mIsStalled;
+        }
+
+        /**
+         * Finishes watching, response is not aborted after this call
+         */
+        public void stop() {
+            remove(this);
+        }
+
+        /**
+         * @return timeout if response was aborted as stalled, whatever error closed connection gave
+         */
+        private IOException getFailure(final IOException e) {
+            return mIsStalled ? new SocketTimeoutException("Transfer stalled") : e;
+        }
+
+        /**
+         * @param now elapsed realtime, ms
+         */
+        void beginRead(final long now) {
+            mReadStart = now;
+        }
+
+        /**
+         * @param count of bytes read, 0 or -1 if there were none
+         * @param now elapsed realtime, ms
+         */
+        void endRead(final int count, final long now) {
+            if (count > 0) {
+                mBytes += count;
+            }
+
+            mReadMillis += now - mReadStart;
+            mReadStart = 0;
+        }
+
+        /**
+         * Aborts response if throughput of the last {@link #WINDOW} of read time is below minimum
+         *
+         * @param now elapsed realtime, ms
+         */
+        void check(final long now) {
+            final long readStart = mReadStart;
+            final long readMillis = mReadMillis + (readStart == 0 ? 0 : now - readStart);
+            final long windowMillis = readMillis - mWindowReadMillis;
+
+            if (mIsStalled || windowMillis < WINDOW) {
+                return;
+            }
+
+            final long bytes = mBytes;
+            final long bytesPerSecond = (bytes - mWindowBytes) * 1000 / windowMillis;
+
+            if (bytesPerSecond < mMinBytesPerSecond) {
+                Log.w(TAG, "Stalled at " + bytesPerSecond + " B/s, aborting after " + bytes + " bytes");
+                mIsStalled = true;
+                remove(this);
+                mResponse.abort();
+                return;
+            }
+
+            mWindowBytes = bytes;
+            mWindowReadMillis = readMillis;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.alexstarc.imageloader.net;
+
+import com.alexstarc.imageloader.io.StreamUtils;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Response of local source, there's no connection to reuse, so body is just closed once it's finished
+ */
+class StreamResponse extends Response {
+    private final int mStatus;
+    private final String mMessage;
+    /** Header values by lower case name */
+    private final Map<String, String> mHeaders = new HashMap<String, String>();
+    private final InputStream mBody;
+
+    /**
+     * @param status http status mapped from local result
+     * @param message status message
+     * @param body response body, can be null
+     */
+    StreamResponse(final int status, final String message, final InputStream body) {
+        mStatus = status;
+        mMessage = message;
+        mBody = body;
+    }
+
+    /**
+     * @param name of the header
+     * @param value of the header, header isn't added if it's null
+     *
+     * @return this response
+     */
+    StreamResponse setHeader(final String name, final String value) {
+        if (value != null) {
+            mHeaders.put(name.toLowerCase(Locale.US), value);
+        }
+
+        return this;
+    }
+
+    @Override
+    public int getStatus() {
+        return mStatus;
+    }
+
+    @Override
+    public String getMessage() {
+        return mMessage;
+    }
+
+    @Override
+    public String getHeader(final String name) {
+        return mHeaders.get(name.toLowerCase(Locale.US));
+    }
+
+    @Override
+    public InputStream getBody() {
+        return mBody;
+    }
+
+    @Override
+    public void release() {
+        StreamUtils.close(mBody);
+    }
+
+    @Override
+    public void abort() {
+        StreamUtils.close(mBody);
+    }
+}
@@ -0,0 +1,27 @@
+package com.alexstarc.imageloader.net;
+
+import com.alexstarc.imageloader.metrics.LoadMetrics;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Source of image data. Loading pipeline doesn't depend on the way data is fetched,
+ * so images can be loaded from network, local storage or test server the same way.
+ */
+public interface Transport {
+    /**
+     * Fetches data for the url. Response is returned once status and headers are received,
+     * body is read by the caller.
+     *
+     * @param url to fetch
+     * @param headers request headers, e.g. conditional or Range ones
+     * @param metrics to record connect and first byte time to, can be null
+     *
+     * @return response which has to be released or aborted by the caller
+     *
+     * @throws java.net.MalformedURLException if url is not supported by transport
+     * @throws IOException if data cannot be fetched
+     */
+    Response fetch(String url, Map<String, String> headers, LoadMetrics metrics) throws IOException;
+}
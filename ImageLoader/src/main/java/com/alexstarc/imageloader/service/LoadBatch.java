@@ -0,0 +1,269 @@
+package com.alexstarc.imageloader.service;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.alexstarc.imageloader.image.DerivativeSpec;
+import com.alexstarc.imageloader.image.TargetSize;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Set of urls loaded with the same policy, submitted via {@link LoaderService#load(LoadBatch)}.
+ * Results are delivered directly to {@link LoadListener} on the main thread, without broadcasts.
+ */
+public class LoadBatch {
+    private final TargetSize mTargetSize;
+    private final String mTag;
+    private final LoadListener mListener;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final List<String> mUrls = new ArrayList<String>();
+    private final List<Integer> mPriorities = new ArrayList<Integer>();
+    private final List<DerivativeSpec> mDerivatives = new ArrayList<DerivativeSpec>();
+
+    // Guarded by this
+    private final List<LoadRequest> mRequests = new ArrayList<LoadRequest>();
+    private LoadEngine mEngine = null;
+    private boolean mIsCancelled = false;
+
+    /** Number of images without result, accessed on main thread only */
+    private int mRemaining = 0;
+
+    /**
+     * @param targetSize to decode rotated images to, null for screen size
+     * @param listener to deliver results to
+     */
+    public LoadBatch(final TargetSize targetSize, final LoadListener listener) {
+        this(targetSize, null, listener);
+    }
+
+    /**
+     * @param targetSize to decode rotated images to, null for screen size
+     * @param tag of all batch requests, to cancel them with {@link LoaderService#cancel(String)}, can be null
+     * @param listener to deliver results to
+     */
+    public LoadBatch(final TargetSize targetSize, final String tag, final LoadListener listener) {
+        mTargetSize = targetSize;
+        mTag = tag;
+        mListener = listener;
+    }
+
+    /**
+     * Adds url with default priority
+     *
+     * @param url to load image from
+     *
+     * @return this batch
+     */
+    public LoadBatch add(final String url) {
+        return add(url, LoadRequest.PRIORITY_DEFAULT);
+    }
+
+    /**
+     * @param url to load image from
+     * @param priority of the url, higher is loaded first, see {@link LoadRequest} PRIORITY_ constants
+     *
+     * @return this batch
+     */
+    public synchronized LoadBatch add(final String url, final int priority) {
+        if (mEngine != null) {
+            throw new IllegalStateException("Batch is already submitted");
+        }
+
+        mUrls.add(url);
+        mPriorities.add(priority);
+
+        return this;
+    }
+
+    /**
+     * Adds extra image made for every url of the batch. All images of the url are made from single decoded one,
+     * their paths are delivered together in {@link LoadResult#getDerivativePaths()}.
+     *
+     * @param derivative size, transformation and format of the image
+     *
+     * @return this batch
+     */
+    public synchronized LoadBatch addDerivative(final DerivativeSpec derivative) {
+        if (mEngine != null) {
+            throw new IllegalStateException("Batch is already submitted");
+        }
+
+        mDerivatives.add(derivative);
+
+        return this;
+    }
+
+    /**
+     * @return target size of rotated images, null for screen size
+     */
+    public TargetSize getTargetSize() {
+        return mTargetSize;
+    }
+
+    /**
+     * @return tag of batch requests, can be null
+     */
+    public String getTag() {
+        return mTag;
+    }
+
+    /**
+     * @return number of urls in the batch
+     */
+    public synchronized int size() {
+        return mUrls.size();
+    }
+
+    /**
+     * Cancels all images of the batch, no more results will be delivered
+     */
+    public void cancel() {
+        final List<LoadRequest> requests;
+        final LoadEngine engine;
+
+        synchronized (this) {
+            mIsCancelled = true;
+            requests = new ArrayList<LoadRequest>(mRequests);
+            engine = mEngine;
+        }
+
+        mHandler.removeCallbacksAndMessages(null);
+
+        if (engine != null) {
+            for (LoadRequest request : requests) {
+                engine.cancel(request);
+            }
+        }
+    }
+
+    /**
+     * Cancels images of the batch loaded from the url, other images are still loaded.
+     * Cancelled images count as finished ones.
+     *
+     * @param url of images to cancel
+     */
+    public void cancel(final String url) {
+        final List<LoadRequest> cancelled = new ArrayList<LoadRequest>();
+        final LoadEngine engine;
+
+        synchronized (this) {
+            engine = mEngine;
+
+            for (LoadRequest request : mRequests) {
+                if (request.getUrl().equals(url) && !request.isCancelled()) {
+                    cancelled.add(request);
+                }
+            }
+        }
+
+        if (engine == null || cancelled.isEmpty()) {
+            return;
+        }
+
+        for (LoadRequest request : cancelled) {
+            engine.cancel(request);
+        }
+
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                onFinished(cancelled.size());
+            }
+        });
+    }
+
+    /**
+     * @return true if batch was cancelled
+     */
+    public synchronized boolean isCancelled() {
+        return mIsCancelled;
+    }
+
+    /**
+     * Creates requests for all urls, batch cannot be changed afterwards
+     *
+     * @param defaultTargetSize used if batch doesn't have own one
+     * @param engine requests are submitted to, used to cancel them
+     *
+     * @return requests to submit, ordered as urls were added
+     */
+    synchronized List<LoadRequest> createRequests(final TargetSize defaultTargetSize, final LoadEngine engine) {
+        if (mEngine != null) {
+            throw new IllegalStateException("Batch is already submitted");
+        }
+
+        mEngine = engine;
+        mRemaining = mUrls.size();
+
+        final TargetSize targetSize = mTargetSize != null ? mTargetSize : defaultTargetSize;
+
+        for (int i = 0; i < mUrls.size(); i++) {
+            mRequests.add(new LoadRequest(mUrls.get(i), targetSize, mDerivatives, mPriorities.get(i), mTag, this));
+        }
+
+        if (mRequests.isEmpty()) {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onFinished(0);
+                }
+            });
+        }
+
+        return Collections.unmodifiableList(new ArrayList<LoadRequest>(mRequests));
+    }
+
+    /**
+     * Called on worker thread, latest progress is posted once previous one is delivered
+     */
+    void onProgress(final LoadRequest request, final LoadProgress progress) {
+        request.setProgress(progress);
+
+        if (!request.markProgressPosted()) {
+            return;
+        }
+
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                request.clearProgressPosted();
+
+                if (!isCancelled() && !request.isCancelled()) {
+                    mListener.onProgress(request.getProgress());
+                }
+            }
+        });
+    }
+
+    /**
+     * Called on worker thread once request result is known
+     */
+    void onResult(final LoadRequest request, final LoadResult result) {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                // Cancelled request is already counted as finished
+                if (request.isCancelled()) {
+                    return;
+                }
+
+                mListener.onResult(result);
+                onFinished(1);
+            }
+        });
+    }
+
+    /**
+     * Called on main thread when requests got results or were cancelled
+     */
+    private void onFinished(final int count) {
+        mRemaining -= count;
+
+        if (mRemaining == 0 && !isCancelled()) {
+            mListener.onBatchFinished(this);
+        }
+    }
+}
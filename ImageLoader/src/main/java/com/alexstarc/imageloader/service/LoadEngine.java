@@ -0,0 +1,484 @@
+package com.alexstarc.imageloader.service;
+
+import android.os.Process;
+import android.util.Log;
+
+import com.alexstarc.imageloader.net.BandwidthEstimator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded worker pool which runs several {@link LoadJob}s in parallel, requests for the same image share one job.
+ * Number of running jobs is limited globally and per host, so one slow host cannot take all workers
+ * and jobs for other hosts are started as soon as there's free slot for them. Jobs making other images
+ * from the same url run one by one, so the url is downloaded once and next jobs take it from the cache.
+ */
+public class LoadEngine {
+    private static final String TAG = "LoadEngine";
+
+    /** Default limit of simultaneously running jobs */
+    public static final int DEFAULT_MAX_CONCURRENT = 4;
+    /** Default limit of simultaneously running jobs for the same host */
+    public static final int DEFAULT_MAX_PER_HOST = 2;
+    /** Idle worker threads are kept alive for this time to be reused by next jobs */
+    private static final long KEEP_ALIVE = 30; // seconds
+
+    /**
+     * Does actual job processing, called on a worker thread
+     */
+    public interface Worker {
+        void process(LoadJob job);
+    }
+
+    /**
+     * Notified (on a worker or caller thread) when there's no more running or pending jobs
+     */
+    public interface IdleListener {
+        void onIdle();
+    }
+
+    private final Worker mWorker;
+    private final IdleListener mIdleListener;
+    private final ThreadPoolExecutor mExecutor;
+
+    // All fields below are guarded by this
+    private final LinkedList<LoadJob> mPending = new LinkedList<LoadJob>();
+    private final List<LoadJob> mRunning = new ArrayList<LoadJob>();
+    private final Map<String, Integer> mRunningPerHost = new HashMap<String, Integer>();
+    /** Urls of running jobs, other jobs for them wait for the download to finish */
+    private final Set<String> mRunningUrls = new HashSet<String>();
+    /** Pending and running jobs by key, to join requests for the same image */
+    private final Map<String, LoadJob> mJobs = new HashMap<String, LoadJob>();
+    private int mMaxConcurrent = DEFAULT_MAX_CONCURRENT;
+    private int mMaxPerHost = DEFAULT_MAX_PER_HOST;
+    /** Limit of running background jobs, 0 while they are paused */
+    private int mMaxBackground = DEFAULT_MAX_CONCURRENT;
+
+    /**
+     * @param worker to process jobs
+     * @param idleListener to be notified when all jobs are done, can be null
+     */
+    public LoadEngine(final Worker worker, final IdleListener idleListener) {
+        mWorker = worker;
+        mIdleListener = idleListener;
+        // Concurrency is limited by dispatch(), so pool itself just creates threads on demand
+        mExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), new WorkerThreadFactory());
+    }
+
+    /**
+     * Updates concurrency limits, values less than 1 are ignored
+     *
+     * @param maxConcurrent global limit of running jobs
+     * @param maxPerHost limit of running jobs per one host
+     */
+    public void setLimits(final int maxConcurrent, final int maxPerHost) {
+        synchronized (this) {
+            if (maxConcurrent > 0) {
+                mMaxConcurrent = maxConcurrent;
+            }
+            if (maxPerHost > 0) {
+                mMaxPerHost = maxPerHost;
+            }
+
+            Log.d(TAG, "Limits " + mMaxConcurrent + " / " + mMaxPerHost + " per host");
+            dispatch();
+        }
+    }
+
+    /**
+     * Limits background jobs, see {@link LoadRequest#PRIORITY_BACKGROUND}. They are started only
+     * while there's no other pending or running job, running ones are not stopped by lower limit.
+     *
+     * @param maxBackground limit of running background jobs, 0 to pause them
+     */
+    public void setBackgroundLimit(final int maxBackground) {
+        synchronized (this) {
+            mMaxBackground = Math.max(0, maxBackground);
+            Log.d(TAG, "Background limit " + mMaxBackground);
+            dispatch();
+        }
+    }
+
+    /**
+     * @return true if any job with priority above background is running
+     */
+    public boolean isForegroundRunning() {
+        synchronized (this) {
+            return countForeground(mRunning) > 0;
+        }
+    }
+
+    /**
+     * @return true if any job with priority above background waits for a slot
+     */
+    public boolean isForegroundPending() {
+        synchronized (this) {
+            return countForeground(mPending) > 0;
+        }
+    }
+
+    /**
+     * @param job to check
+     *
+     * @return true if nobody waits for the job result, see {@link LoadRequest#PRIORITY_BACKGROUND}
+     */
+    static boolean isBackground(final LoadJob job) {
+        return job.getPriority() <= LoadRequest.PRIORITY_BACKGROUND;
+    }
+
+    private static int countForeground(final List<LoadJob> jobs) {
+        int count = 0;
+
+        for (LoadJob job : jobs) {
+            if (!isBackground(job)) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Queues request to be processed as soon as limits allow. Request for the url and target size which is
+     * already pending or running joins that job instead of loading the image again. Request for other
+     * target size starts own job, which waits for running job of the url and decodes its cached file.
+     * Jobs with higher priority are started first, jobs with the same priority are started in submission order.
+     *
+     * @param request to be processed
+     */
+    public void submit(final LoadRequest request) {
+        synchronized (this) {
+            enqueue(request);
+            dispatch();
+        }
+    }
+
+    /**
+     * Queues several requests at once, see {@link #submit(LoadRequest)}
+     *
+     * @param requests to be processed
+     */
+    public void submitAll(final List<LoadRequest> requests) {
+        synchronized (this) {
+            for (LoadRequest request : requests) {
+                enqueue(request);
+            }
+
+            dispatch();
+        }
+    }
+
+    /**
+     * Cancels request. If no other request waits for its job, job is stopped and its slot is given
+     * to the next pending job right away, without waiting for running download to notice cancellation.
+     *
+     * @param request to cancel
+     */
+    public void cancel(final LoadRequest request) {
+        final boolean idle;
+
+        synchronized (this) {
+            cancelRequest(request);
+            dispatch();
+            idle = mRunning.isEmpty() && mPending.isEmpty();
+        }
+
+        if (idle) {
+            notifyIdle();
+        }
+    }
+
+    /**
+     * Cancels all pending and running requests with the tag, see {@link #cancel(LoadRequest)}
+     *
+     * @param tag of requests to cancel
+     */
+    public void cancelByTag(final String tag) {
+        final boolean idle;
+
+        synchronized (this) {
+            for (LoadJob job : new ArrayList<LoadJob>(mJobs.values())) {
+                for (LoadRequest request : job.getRequests()) {
+                    if (tag.equals(request.getTag())) {
+                        cancelRequest(request);
+                    }
+                }
+            }
+
+            dispatch();
+            idle = mRunning.isEmpty() && mPending.isEmpty();
+        }
+
+        if (idle) {
+            notifyIdle();
+        }
+    }
+
+    /**
+     * Cancels all running and pending jobs. All slots are freed immediately,
+     * running jobs will stop on their next cancellation check.
+     */
+    public void cancelAll() {
+        synchronized (this) {
+            for (LoadJob job : mJobs.values()) {
+                for (LoadRequest request : job.getRequests()) {
+                    request.markCancelled();
+                }
+
+                job.cancel();
+            }
+
+            mPending.clear();
+            mRunning.clear();
+            mRunningPerHost.clear();
+            mRunningUrls.clear();
+            mJobs.clear();
+        }
+
+        notifyIdle();
+    }
+
+    private void enqueue(final LoadRequest request) {
+        LoadJob job = mJobs.get(request.getJobKey());
+
+        if (job != null && job.addRequest(request)) {
+            Log.d(TAG, "Joined " + job + " by " + request);
+            request.setJob(job);
+
+            // New request may raise job priority
+            if (mPending.remove(job)) {
+                enqueue(job);
+            }
+
+            return;
+        }
+
+        job = new LoadJob(request);
+        request.setJob(job);
+        mJobs.put(job.getKey(), job);
+        enqueue(job);
+    }
+
+    private void enqueue(final LoadJob job) {
+        final ListIterator<LoadJob> iterator = mPending.listIterator(mPending.size());
+        final int priority = job.getPriority();
+
+        // Most jobs have the same priority, so search for the place from the end
+        while (iterator.hasPrevious()) {
+            if (iterator.previous().getPriority() >= priority) {
+                iterator.next();
+                break;
+            }
+        }
+
+        iterator.add(job);
+    }
+
+    /**
+     * Detaches request from its job, drops the job if nobody waits for it anymore
+     */
+    private void cancelRequest(final LoadRequest request) {
+        final LoadJob job = request.getJob();
+
+        if (!request.markCancelled() || job == null) {
+            return;
+        }
+
+        if (job.removeRequest(request)) {
+            Log.d(TAG, "Cancelled " + job);
+
+            if (!mPending.remove(job) && mRunning.remove(job)) {
+                // Worker thread will finish on its own shortly, its slot is free already
+                releaseSlot(job);
+            }
+
+            forget(job);
+        } else if (mPending.remove(job)) {
+            // Priority may drop with removed request
+            enqueue(job);
+        }
+    }
+
+    /**
+     * Removes job from active ones, so new requests start new job
+     */
+    private void forget(final LoadJob job) {
+        if (mJobs.get(job.getKey()) == job) {
+            mJobs.remove(job.getKey());
+        }
+    }
+
+    /**
+     * @return true if there's no running or pending jobs
+     */
+    public boolean isIdle() {
+        synchronized (this) {
+            return mRunning.isEmpty() && mPending.isEmpty();
+        }
+    }
+
+    /**
+     * Cancels all jobs and releases worker threads, engine cannot be used after this call
+     */
+    public void shutdown() {
+        cancelAll();
+        mExecutor.shutdown();
+    }
+
+    /**
+     * Starts pending jobs while global and per host limits allow
+     */
+    private void dispatch() {
+        final Iterator<LoadJob> iterator = mPending.iterator();
+        final int runningForeground = countForeground(mRunning);
+        // Background jobs wait for all others, including ones held by per host limit
+        final boolean foregroundActive = runningForeground > 0 || countForeground(mPending) > 0;
+        int runningBackground = mRunning.size() - runningForeground;
+
+        while (iterator.hasNext() && mRunning.size() < mMaxConcurrent) {
+            final LoadJob job = iterator.next();
+
+            if (job.isCancelled()) {
+                iterator.remove();
+                forget(job);
+                continue;
+            }
+
+            final boolean background = isBackground(job);
+
+            if (background && (foregroundActive || runningBackground >= mMaxBackground)) {
+                // Pending jobs are sorted by priority, so the rest are background too
+                break;
+            }
+
+            final Integer hostCount = mRunningPerHost.get(job.getHost());
+            // Slow host gets fewer parallel downloads, so its images come one by one instead of all late
+            final int maxPerHost = Math.min(mMaxPerHost,
+                    BandwidthEstimator.getInstance().getMaxConcurrent(job.getHost()));
+
+            if ((hostCount != null && hostCount >= maxPerHost) || mRunningUrls.contains(job.getUrl())) {
+                // Keep order for this host and url, but let others go ahead
+                continue;
+            }
+
+            if (background) {
+                runningBackground++;
+            }
+
+            iterator.remove();
+            mRunning.add(job);
+            mRunningPerHost.put(job.getHost(), hostCount == null ? 1 : hostCount + 1);
+            mRunningUrls.add(job.getUrl());
+
+            try {
+                mExecutor.execute(new JobRunnable(job));
+            } catch (RejectedExecutionException e) {
+                Log.e(TAG, "Engine is shut down, dropping " + job);
+                mRunning.remove(job);
+                releaseSlot(job);
+                forget(job);
+            }
+        }
+    }
+
+    /**
+     * Called on worker thread once job is processed
+     *
+     * @param job which is done
+     */
+    private void onFinished(final LoadJob job) {
+        final boolean idle;
+
+        synchronized (this) {
+            // Slot of cancelled job could be released already
+            if (mRunning.remove(job)) {
+                releaseSlot(job);
+            }
+
+            forget(job);
+            dispatch();
+            idle = mRunning.isEmpty() && mPending.isEmpty();
+        }
+
+        if (idle) {
+            notifyIdle();
+        }
+    }
+
+    private void releaseSlot(final LoadJob job) {
+        final String host = job.getHost();
+        final Integer hostCount = mRunningPerHost.get(host);
+
+        if (hostCount == null || hostCount <= 1) {
+            mRunningPerHost.remove(host);
+        } else {
+            mRunningPerHost.put(host, hostCount - 1);
+        }
+
+        mRunningUrls.remove(job.getUrl());
+    }
+
+    private void notifyIdle() {
+        if (mIdleListener != null) {
+            mIdleListener.onIdle();
+        }
+    }
+
+    /**
+     * Runs job and returns its slot back to engine
+     */
+    private final class JobRunnable implements Runnable {
+        private final LoadJob mJob;
+
+        JobRunnable(final LoadJob job) {
+            mJob = job;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!mJob.isCancelled()) {
+                    mWorker.process(mJob);
+                }
+            } catch (RuntimeException e) {
+                // Do not let one broken job to leak its slot
+                Log.e(TAG, "Job failed " + mJob + " " + e);
+            } finally {
+                onFinished(mJob);
+            }
+        }
+    }
+
+    /**
+     * Creates named background priority threads
+     */
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, TAG + "-" + mCount.incrementAndGet());
+        }
+    }
+}
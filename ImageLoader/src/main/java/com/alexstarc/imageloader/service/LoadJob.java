@@ -0,0 +1,216 @@
+package com.alexstarc.imageloader.service;
+
+import android.text.TextUtils;
+
+import com.alexstarc.imageloader.image.DerivativeSpec;
+import com.alexstarc.imageloader.image.TargetSize;
+import com.alexstarc.imageloader.io.Cancellable;
+import com.alexstarc.imageloader.metrics.LoadMetrics;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Image load handled by {@link LoadEngine}, shared by all {@link LoadRequest}s for the same url and target size.
+ * Job is cancelled once all its requests are cancelled.
+ */
+public class LoadJob implements Cancellable {
+    /** Host key used for urls without network host (local files, content) or which cannot be parsed */
+    static final String UNKNOWN_HOST = "";
+
+    private static final AtomicInteger sNextId = new AtomicInteger(0);
+
+    private final int mId;
+    private final String mKey;
+    private final String mUrl;
+    private final String mHost;
+    private final TargetSize mTargetSize;
+    private final List<DerivativeSpec> mDerivatives;
+    private final LoadMetrics mMetrics;
+    private final AtomicBoolean mIsCancelled = new AtomicBoolean(false);
+    private final AtomicBoolean mIsResultDelivered = new AtomicBoolean(false);
+
+    // Guarded by this
+    private final List<LoadRequest> mRequests = new ArrayList<LoadRequest>();
+    private boolean mIsFinished = false;
+
+    /**
+     * @param request which starts the job
+     */
+    LoadJob(final LoadRequest request) {
+        mId = sNextId.incrementAndGet();
+        mKey = request.getJobKey();
+        mUrl = request.getUrl();
+        mHost = parseHost(mUrl);
+        mTargetSize = request.getTargetSize();
+        mDerivatives = request.getDerivatives();
+        mMetrics = new LoadMetrics(mHost);
+        mRequests.add(request);
+    }
+
+    /**
+     * @return unique (per process) job id
+     */
+    public int getId() {
+        return mId;
+    }
+
+    /**
+     * @return key of requests served by the job
+     */
+    String getKey() {
+        return mKey;
+    }
+
+    /**
+     * @return url to load image from
+     */
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * @return lower-cased host of the url, used to limit connections per host
+     */
+    public String getHost() {
+        return mHost;
+    }
+
+    /**
+     * @return size to decode rotated image to
+     */
+    public TargetSize getTargetSize() {
+        return mTargetSize;
+    }
+
+    /**
+     * @return extra images to make from the same decoded image, can be empty
+     */
+    public List<DerivativeSpec> getDerivatives() {
+        return mDerivatives;
+    }
+
+    /**
+     * @return metrics of the job, filled by the thread processing it
+     */
+    public LoadMetrics getMetrics() {
+        return mMetrics;
+    }
+
+    /**
+     * Attaches one more request to the job
+     *
+     * @param request for the same url and target size
+     *
+     * @return false if job is already finished or cancelled and cannot serve new requests
+     */
+    synchronized boolean addRequest(final LoadRequest request) {
+        if (mIsFinished || isCancelled()) {
+            return false;
+        }
+
+        mRequests.add(request);
+        return true;
+    }
+
+    /**
+     * Detaches cancelled request, job is cancelled once there's no more requests waiting for it
+     *
+     * @param request which is cancelled
+     *
+     * @return true if job got cancelled
+     */
+    synchronized boolean removeRequest(final LoadRequest request) {
+        mRequests.remove(request);
+
+        if (mRequests.isEmpty() && !mIsFinished) {
+            mIsCancelled.set(true);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return highest priority of requests waiting for the job
+     */
+    synchronized int getPriority() {
+        int priority = Integer.MIN_VALUE;
+
+        for (LoadRequest request : mRequests) {
+            priority = Math.max(priority, request.getPriority());
+        }
+
+        return priority;
+    }
+
+    /**
+     * @return requests waiting for the job, copy
+     */
+    synchronized List<LoadRequest> getRequests() {
+        return new ArrayList<LoadRequest>(mRequests);
+    }
+
+    /**
+     * Finishes the job, no more requests can be attached
+     *
+     * @return requests waiting for the result
+     */
+    synchronized List<LoadRequest> finish() {
+        mIsFinished = true;
+        return new ArrayList<LoadRequest>(mRequests);
+    }
+
+    /**
+     * Marks result as delivered, so it's delivered only once
+     *
+     * @return true if result wasn't delivered before
+     */
+    boolean markResultDelivered() {
+        return mIsResultDelivered.compareAndSet(false, true);
+    }
+
+    boolean isResultDelivered() {
+        return mIsResultDelivered.get();
+    }
+
+    /**
+     * Requests job to stop, running download will be interrupted on the next chunk
+     */
+    void cancel() {
+        mIsCancelled.set(true);
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return mIsCancelled.get();
+    }
+
+    /**
+     * @param url to take host from
+     *
+     * @return lower case host, {@link #UNKNOWN_HOST} if url has none or cannot be parsed
+     */
+    static String parseHost(final String url) {
+        if (TextUtils.isEmpty(url)) {
+            return UNKNOWN_HOST;
+        }
+
+        try {
+            final String host = new URL(url).getHost();
+
+            return host == null ? UNKNOWN_HOST : host.toLowerCase();
+        } catch (MalformedURLException e) {
+            return UNKNOWN_HOST;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LoadJob#" + mId + " " + mUrl + " " + mTargetSize;
+    }
+}
@@ -0,0 +1,27 @@
+package com.alexstarc.imageloader.service;
+
+/**
+ * Receives results of {@link LoadBatch}, all methods are called on the main thread
+ */
+public interface LoadListener {
+    /**
+     * Download progress of single image, updates are throttled and only the latest one is delivered
+     *
+     * @param progress of the image
+     */
+    void onProgress(LoadProgress progress);
+
+    /**
+     * Image is loaded or failed to load
+     *
+     * @param result of loading
+     */
+    void onResult(LoadResult result);
+
+    /**
+     * All images of the batch have got results, not called for cancelled batch
+     *
+     * @param batch which is finished
+     */
+    void onBatchFinished(LoadBatch batch);
+}
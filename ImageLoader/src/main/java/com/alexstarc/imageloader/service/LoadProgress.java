@@ -0,0 +1,70 @@
+package com.alexstarc.imageloader.service;
+
+/**
+ * Download progress of single image
+ */
+public class LoadProgress {
+    private final String mUrl;
+    private final long mBytesLoaded;
+    private final long mTotalBytes;
+    private final long mBytesPerSecond;
+    private final long mEtaMillis;
+
+    /**
+     * @param url image is loaded from
+     * @param bytesLoaded number of loaded bytes, including resumed part
+     * @param totalBytes size of the image or -1 if server didn't tell it
+     * @param bytesPerSecond recent throughput or -1 if it's not known yet
+     * @param etaMillis estimated time to finish or -1 if it cannot be estimated
+     */
+    public LoadProgress(final String url, final long bytesLoaded, final long totalBytes, final long bytesPerSecond,
+                        final long etaMillis) {
+        mUrl = url;
+        mBytesLoaded = bytesLoaded;
+        mTotalBytes = totalBytes;
+        mBytesPerSecond = bytesPerSecond;
+        mEtaMillis = etaMillis;
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    public long getBytesLoaded() {
+        return mBytesLoaded;
+    }
+
+    /**
+     * @return size of the image or -1 if it's unknown
+     */
+    public long getTotalBytes() {
+        return mTotalBytes;
+    }
+
+    /**
+     * @return loaded percent or -1 if size of the image is unknown
+     */
+    public int getPercent() {
+        return mTotalBytes > 0 ? (int) (mBytesLoaded * 100 / mTotalBytes) : -1;
+    }
+
+    /**
+     * @return recent throughput or -1 if it's not known yet
+     */
+    public long getBytesPerSecond() {
+        return mBytesPerSecond;
+    }
+
+    /**
+     * @return estimated time to finish, ms, or -1 if it cannot be estimated
+     */
+    public long getEtaMillis() {
+        return mEtaMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadProgress " + mBytesLoaded + "/" + mTotalBytes + " " + mBytesPerSecond + " B/s eta "
+                + mEtaMillis + "ms " + mUrl;
+    }
+}
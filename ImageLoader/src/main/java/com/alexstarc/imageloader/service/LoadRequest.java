@@ -0,0 +1,187 @@
+package com.alexstarc.imageloader.service;
+
+import com.alexstarc.imageloader.image.DerivativeSpec;
+import com.alexstarc.imageloader.image.TargetSize;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Single client request for an image. Requests for the same url and target size are served by one
+ * shared {@link LoadJob}. Jobs for the same url and other sizes are not run together, so the image
+ * is downloaded once.
+ */
+public class LoadRequest {
+    /** Images visible to the user right now */
+    public static final int PRIORITY_VISIBLE = 20;
+    /** Images which will likely be needed soon, e.g. next page of a gallery */
+    public static final int PRIORITY_PREFETCH = 10;
+    /** Images nobody waits for, e.g. prefetched ones. Started only while no other images are loading */
+    public static final int PRIORITY_BACKGROUND = 0;
+    /** Priority of requests submitted without one */
+    public static final int PRIORITY_DEFAULT = PRIORITY_VISIBLE;
+
+    private static final AtomicInteger sNextId = new AtomicInteger(0);
+
+    private final int mId;
+    private final String mUrl;
+    private final TargetSize mTargetSize;
+    /** Extra images made from the same decoded one */
+    private final List<DerivativeSpec> mDerivatives;
+    private final int mPriority;
+    private final String mTag;
+    private final LoadBatch mBatch;
+    private final AtomicBoolean mIsCancelled = new AtomicBoolean(false);
+    private final AtomicBoolean mIsProgressPosted = new AtomicBoolean(false);
+    private volatile LoadProgress mProgress = null;
+    /** Job serving the request, set once request is submitted */
+    private volatile LoadJob mJob = null;
+
+    /**
+     * @param url to load image from
+     * @param targetSize to decode rotated image to
+     * @param priority of the request, higher is started first, see PRIORITY_ constants
+     * @param tag to cancel requests in groups, can be null
+     * @param batch to deliver result to, null to broadcast it
+     */
+    public LoadRequest(final String url, final TargetSize targetSize, final int priority, final String tag,
+                       final LoadBatch batch) {
+        this(url, targetSize, Collections.<DerivativeSpec>emptyList(), priority, tag, batch);
+    }
+
+    /**
+     * @param url to load image from
+     * @param targetSize to decode rotated image to
+     * @param derivatives extra images to make from the same decoded image, can be empty
+     * @param priority of the request, higher is started first, see PRIORITY_ constants
+     * @param tag to cancel requests in groups, can be null
+     * @param batch to deliver result to, null to broadcast it
+     */
+    public LoadRequest(final String url, final TargetSize targetSize, final List<DerivativeSpec> derivatives,
+                       final int priority, final String tag, final LoadBatch batch) {
+        mId = sNextId.incrementAndGet();
+        mUrl = url;
+        mTargetSize = targetSize;
+        mDerivatives = Collections.unmodifiableList(new ArrayList<DerivativeSpec>(derivatives));
+        mPriority = priority;
+        mTag = tag;
+        mBatch = batch;
+    }
+
+    /**
+     * @return unique (per process) request id
+     */
+    public int getId() {
+        return mId;
+    }
+
+    /**
+     * @return url to load image from
+     */
+    public String getUrl() {
+        return mUrl;
+    }
+
+    /**
+     * @return size to decode rotated image to
+     */
+    public TargetSize getTargetSize() {
+        return mTargetSize;
+    }
+
+    /**
+     * @return extra images to make from the same decoded image, can be empty
+     */
+    public List<DerivativeSpec> getDerivatives() {
+        return mDerivatives;
+    }
+
+    /**
+     * @return priority of the request, higher is started first
+     */
+    public int getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * @return tag of the request, can be null
+     */
+    public String getTag() {
+        return mTag;
+    }
+
+    /**
+     * @return batch the request belongs to, null if result is broadcast
+     */
+    public LoadBatch getBatch() {
+        return mBatch;
+    }
+
+    /**
+     * @return key of requests which can share one job, they have to make the same images
+     */
+    String getJobKey() {
+        final StringBuilder key = new StringBuilder(mUrl).append('@').append(mTargetSize.toKey());
+
+        for (DerivativeSpec derivative : mDerivatives) {
+            key.append('+').append(derivative.toKey());
+        }
+
+        return key.toString();
+    }
+
+    /**
+     * Marks request as cancelled, {@link LoadEngine#cancel(LoadRequest)} releases its job too
+     *
+     * @return true if request wasn't cancelled before
+     */
+    boolean markCancelled() {
+        return mIsCancelled.compareAndSet(false, true);
+    }
+
+    public boolean isCancelled() {
+        return mIsCancelled.get();
+    }
+
+    void setJob(final LoadJob job) {
+        mJob = job;
+    }
+
+    /**
+     * @return job serving the request, null until it's submitted
+     */
+    LoadJob getJob() {
+        return mJob;
+    }
+
+    void setProgress(final LoadProgress progress) {
+        mProgress = progress;
+    }
+
+    /**
+     * @return latest reported progress, null if there was none
+     */
+    LoadProgress getProgress() {
+        return mProgress;
+    }
+
+    /**
+     * @return true if there was no progress update waiting for delivery
+     */
+    boolean markProgressPosted() {
+        return mIsProgressPosted.compareAndSet(false, true);
+    }
+
+    void clearProgressPosted() {
+        mIsProgressPosted.set(false);
+    }
+
+    @Override
+    public String toString() {
+        return "LoadRequest#" + mId + " " + mUrl + " " + mTargetSize + " p" + mPriority
+                + (mTag == null ? "" : " #" + mTag);
+    }
+}
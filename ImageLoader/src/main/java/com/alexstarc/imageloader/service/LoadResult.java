@@ -0,0 +1,71 @@
+package com.alexstarc.imageloader.service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of single image load
+ */
+public class LoadResult {
+    private final String mUrl;
+    private final int mStatus;
+    private final String mPath;
+    private final String mRotatedPath;
+    private final List<String> mDerivativePaths;
+
+    /**
+     * @param url image was loaded from
+     * @param status from HttpURLConnection statuses, 200 is OK
+     * @param path of saved file, empty if loading failed
+     * @param rotatedPath of saved rotated file, empty if it cannot be made
+     */
+    public LoadResult(final String url, final int status, final String path, final String rotatedPath) {
+        this(url, status, path, rotatedPath, new String[0]);
+    }
+
+    /**
+     * @param url image was loaded from
+     * @param status from HttpURLConnection statuses, 200 is OK
+     * @param path of saved file, empty if loading failed
+     * @param rotatedPath of saved rotated file, empty if it cannot be made
+     * @param derivativePaths of saved extra images, empty if loading failed
+     */
+    public LoadResult(final String url, final int status, final String path, final String rotatedPath,
+                      final String[] derivativePaths) {
+        mUrl = url;
+        mStatus = status;
+        mPath = path;
+        mRotatedPath = rotatedPath;
+        mDerivativePaths = Collections.unmodifiableList(Arrays.asList(derivativePaths.clone()));
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    public int getStatus() {
+        return mStatus;
+    }
+
+    public String getPath() {
+        return mPath;
+    }
+
+    public String getRotatedPath() {
+        return mRotatedPath;
+    }
+
+    /**
+     * @return paths of extra images in the order they were added to the batch, empty string for ones
+     * which cannot be made, empty list if loading failed
+     */
+    public List<String> getDerivativePaths() {
+        return mDerivativePaths;
+    }
+
+    @Override
+    public String toString() {
+        return "LoadResult " + mStatus + " " + mUrl + " at [" + mPath + "]";
+    }
+}
@@ -1,18 +1,50 @@
 package com.alexstarc.imageloader.service;
 
-import android.app.IntentService;
+import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
 import android.graphics.Point;
+import android.os.Binder;
+import android.os.IBinder;
 import android.support.v4.content.LocalBroadcastManager;
-import android.text.TextUtils;
 import android.util.Log;
 import android.view.Display;
 import android.view.WindowManager;
-import android.webkit.MimeTypeMap;
+
+import com.alexstarc.imageloader.cache.CacheValidators;
+import com.alexstarc.imageloader.cache.ImageCache;
+import com.alexstarc.imageloader.cache.PartialDownload;
+import com.alexstarc.imageloader.image.BitmapPool;
+import com.alexstarc.imageloader.image.DerivativeGenerator;
+import com.alexstarc.imageloader.image.DerivativeSpec;
+import com.alexstarc.imageloader.image.ExifOrientation;
+import com.alexstarc.imageloader.image.ImageDecoder;
+import com.alexstarc.imageloader.image.ImageEncoder;
+import com.alexstarc.imageloader.image.ImageHeader;
+import com.alexstarc.imageloader.image.RotateTransform;
+import com.alexstarc.imageloader.image.TargetSize;
+import com.alexstarc.imageloader.image.Transform;
+import com.alexstarc.imageloader.io.BufferPool;
+import com.alexstarc.imageloader.io.LimitedInputStream;
+import com.alexstarc.imageloader.io.ProgressListener;
+import com.alexstarc.imageloader.io.ProgressTracker;
+import com.alexstarc.imageloader.io.StreamUtils;
+import com.alexstarc.imageloader.io.TeeInputStream;
+import com.alexstarc.imageloader.metrics.LoadMetrics;
+import com.alexstarc.imageloader.metrics.MetricsRegistry;
+import com.alexstarc.imageloader.net.BandwidthEstimator;
+import com.alexstarc.imageloader.net.CircuitBreaker;
+import com.alexstarc.imageloader.net.ContentTransport;
+import com.alexstarc.imageloader.net.FileTransport;
+import com.alexstarc.imageloader.net.HttpClient;
+import com.alexstarc.imageloader.net.HttpTransport;
+import com.alexstarc.imageloader.net.RedirectChain;
+import com.alexstarc.imageloader.net.Response;
+import com.alexstarc.imageloader.net.RetryPolicy;
+import com.alexstarc.imageloader.net.SchemeTransport;
+import com.alexstarc.imageloader.net.StallWatchdog;
+import com.alexstarc.imageloader.net.Transport;
 
 import java.io.BufferedInputStream;
 import java.io.File;
@@ -23,27 +55,34 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
-import java.security.cert.CertificateException;
-import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
-import java.util.concurrent.atomic.AtomicBoolean;
-
-import javax.net.ssl.HostnameVerifier;
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLSession;
-import javax.net.ssl.TrustManager;
-import javax.net.ssl.X509TrustManager;
 
 /**
- * Simple local service to load image and save into provided directory
+ * Simple local service to load images and save into provided directory.
+ * Several images are loaded in parallel by {@link LoadEngine}, service stops itself once all jobs are done.
  */
-public class LoaderService extends IntentService {
+public class LoaderService extends Service implements LoadEngine.Worker, LoadEngine.IdleListener {
     private static final String TAG = "LoaderService";
 
     /** Extra to hold url to load image from */
     public static final String EXTRA_URL = "";
+    /** Optional extra for {@link Action#LOAD_IMAGE}, int priority, see {@link LoadRequest} PRIORITY_ constants */
+    public static final String EXTRA_PRIORITY = "priorityExtra";
+    /** Optional extra for {@link Action#LOAD_IMAGE} and {@link Action#CANCEL}, String tag to cancel requests by */
+    public static final String EXTRA_TAG = "tagExtra";
+    /** Optional extra for {@link Action#LOAD_IMAGE}, int width of rotated image, screen width by default */
+    public static final String EXTRA_TARGET_WIDTH = "targetWidthExtra";
+    /** Optional extra for {@link Action#LOAD_IMAGE}, int height of rotated image, screen height by default */
+    public static final String EXTRA_TARGET_HEIGHT = "targetHeightExtra";
+    /** Optional extra for {@link Action#LOAD_IMAGE}, String name of {@link TargetSize.ScaleMode}, FIT by default */
+    public static final String EXTRA_SCALE_MODE = "scaleModeExtra";
     /** Action to be handled by result receiver */
     public static final String ACTION_LOAD_RESULT = "com.alexstarc.imageloader.LOAD_RESULT";
     /** Return extra, int from HttpUrlConnection statuses */
@@ -52,117 +91,540 @@ public class LoaderService extends IntentService {
     public static final String EXTRA_PATH = "pathExtra";
     /** Return extra, String with full path to saved rotated file */
     public static final String EXTRA_ROTATED_PATH = "rotatedPathExtra";
+    /** Extra for {@link Action#CONFIGURE}, int limit of images loaded in parallel */
+    public static final String EXTRA_MAX_CONCURRENT = "maxConcurrentExtra";
+    /** Extra for {@link Action#CONFIGURE}, int limit of images loaded in parallel from the same host */
+    public static final String EXTRA_MAX_PER_HOST = "maxPerHostExtra";
+    /** Extra for {@link Action#CONFIGURE}, String name of {@link ImageEncoder.OutputFormat} of rotated images */
+    public static final String EXTRA_OUTPUT_FORMAT = "outputFormatExtra";
+    /** Extra for {@link Action#CONFIGURE}, int 0-100 quality of rotated images, used with {@link #EXTRA_OUTPUT_FORMAT} */
+    public static final String EXTRA_OUTPUT_QUALITY = "outputQualityExtra";
+    /** Extra for {@link Action#CONFIGURE}, int number of retries of transient failures, 0 disables retries */
+    public static final String EXTRA_MAX_RETRIES = "maxRetriesExtra";
+    /** Extra for {@link Action#PREFETCH}, String array of urls to load to cache */
+    public static final String EXTRA_URLS = "urlsExtra";
+    /** Tag of prefetch requests, to cancel them with {@link Action#CANCEL} or {@link #cancel(String)} */
+    public static final String PREFETCH_TAG = "prefetch";
+
+    /** Prefetched images are just cached, nobody waits for their results */
+    private static final LoadListener PREFETCH_LISTENER = new LoadListener() {
+        @Override
+        public void onProgress(final LoadProgress progress) {
+        }
 
-    /** Chunk size for files loading */
-    private static final int CHUNK_SIZE = 1024; // bytes
-    /** Apps folder to store downloaded images */
-    private static final String IMAGES_FOLDER = "img";
-    /** Downloaded image name */
-    private static final String DEFAULT_FILENAME = "image";
-    /** Rotated image default name */
-    private static final String DEFAULT_ROTATE_FILENAME = "rotated_image.jpg";
-    /** Maximum supported file size, bytes */
+        @Override
+        public void onResult(final LoadResult result) {
+            Log.d(TAG, "Prefetched " + result);
+        }
+
+        @Override
+        public void onBatchFinished(final LoadBatch batch) {
+        }
+    };
+
+    /** Largest chunk read from response at once, socket rarely has more data ready */
+    private static final int MAX_READ_SIZE = 64 * 1024; // bytes
+    /** Suffix of cache key for images made from loaded one, appended to url and source file version */
+    private static final String DERIVATIVE_KEY_SUFFIX = "#derivative";
+    /** Maximum supported file size, bytes, file of exactly this size is loaded */
     private static final int FILE_SIZE_LIMIT = 20 * 1024 * 1024; // 20 MB
-    private static final int CONNECT_TIMEOUT = 15000; // ms
+    /** Http status for not satisfiable Range, missing in HttpURLConnection */
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+    /** Waiting for retry is split into such steps, so cancelled job doesn't hold its slot */
+    private static final long RETRY_WAIT_STEP = 250; // ms
+    /** Name of metrics dump file */
+    public static final String METRICS_FILE = "metrics.json";
     /** Degrees to rotate image for */
-    private static final float ROTATION_DEGRESS = 180;
-
-    private AtomicBoolean mIsStopRequested = new AtomicBoolean(false);
+    private static final int ROTATION_DEGRESS = 180;
+
+    private final IBinder mBinder = new LocalBinder();
+    private LoadEngine mEngine = null;
+    private PrefetchPolicy mPrefetchPolicy = null;
+    private ImageCache mCache = null;
+    private BitmapPool mPool = null;
+    /** Source of image data, chosen by url scheme */
+    private volatile Transport mTransport = null;
+    /** Transformation applied to loaded images */
+    private final Transform mTransform = new RotateTransform(ROTATION_DEGRESS);
+    /** Format rotated images are saved in */
+    private volatile ImageEncoder mEncoder = ImageEncoder.getDefault();
+    /** Retries of transient failures and redirect limit */
+    private volatile RetryPolicy mRetryPolicy = RetryPolicy.getDefault();
+    /** Fails requests to hosts which keep failing right away */
+    private final CircuitBreaker mCircuitBreaker = new CircuitBreaker();
+    /** Last start id, to stop service only if no new commands were received. Guarded by mEngine */
+    private int mLastStartId = 0;
 
     /** Supported actions enum for client to avoid hard-coded action or string constants */
     public enum Action {
         LOAD_IMAGE,
-        STOP_LOADING
+        STOP_LOADING,
+        /** Cancels requests with {@link #EXTRA_TAG} */
+        CANCEL,
+        CONFIGURE,
+        /**
+         * Warms cache with images of {@link #EXTRA_URLS}, see {@link #prefetch(List)}.
+         * Service stays started while prefetch is paused by network or battery state.
+         */
+        PREFETCH,
+        /** Writes {@link MetricsRegistry} JSON dump to {@link #METRICS_FILE} in files dir and to the log */
+        DUMP_METRICS
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        mCache = ImageCache.getInstance(this);
+        mPool = BitmapPool.getInstance();
+        mTransport = createDefaultTransport();
+        mEngine = new LoadEngine(this, this);
+        mPrefetchPolicy = new PrefetchPolicy(mEngine, mCircuitBreaker);
+        mPrefetchPolicy.start(this);
+    }
+
+    @Override
+    public void onDestroy() {
+        mPrefetchPolicy.stop(this);
+        mEngine.shutdown();
+
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(final Intent intent) {
+        return mBinder;
+    }
+
+    /**
+     * Gives bound clients (in the same process) direct access to the service
+     */
+    public class LocalBinder extends Binder {
+        public LoaderService getService() {
+            return LoaderService.this;
+        }
+    }
+
+    /**
+     * Loads all images of the batch, results are delivered to batch listener instead of broadcasts.
+     * Must be called by bound client, jobs are cancelled once the last client unbinds from not started service.
+     *
+     * @param batch to load
+     */
+    public void load(final LoadBatch batch) {
+        final List<LoadRequest> requests = batch.createRequests(getDefaultTargetSize(), mEngine);
+
+        Log.d(TAG, "Batch of " + requests.size());
+        mEngine.submitAll(requests);
+    }
+
+    /**
+     * Loads images to cache in background, so later requests for them are served from cache.
+     * Images are loaded only while nothing else is loading, with limits of {@link PrefetchPolicy}.
+     * Use {@link #PREFETCH_TAG} to cancel them.
+     *
+     * @param urls to load images from
+     */
+    public void prefetch(final List<String> urls) {
+        final LoadBatch batch = new LoadBatch(null, PREFETCH_TAG, PREFETCH_LISTENER);
+
+        for (String url : urls) {
+            batch.add(url, LoadRequest.PRIORITY_BACKGROUND);
+        }
+
+        load(batch);
+    }
+
+    /**
+     * Cancels pending and running requests with the tag, their slots are given to other requests right away
+     *
+     * @param tag of requests to cancel
+     */
+    public void cancel(final String tag) {
+        mEngine.cancelByTag(tag);
     }
 
-    // TODO: limit number of possible image types
-    private final static String TYPE_JPG = "jpg";
-    private final static String TYPE_JPEG = "jpeg";
-    private final static String TYPE_PNG = "png";
-    private final static String TYPE_BMP = "bmp";
+    /**
+     * Replaces source of image data, e.g. to load test the pipeline with in-memory or local data.
+     * Applied to jobs started after the call.
+     *
+     * @param transport to load images with, null to restore default one
+     */
+    public void setTransport(final Transport transport) {
+        mTransport = transport == null ? createDefaultTransport() : transport;
+    }
 
     /**
-     * Creates an IntentService.  Invoked by your subclass's constructor.
+     * Replaces retry policy, applied to jobs started after the call
      *
-     * @param name Used to name the worker thread, important only for debugging.
+     * @param policy to retry failed loads with, null to restore default one
      */
-    public LoaderService(final String name) {
-        super(name);
+    public void setRetryPolicy(final RetryPolicy policy) {
+        mRetryPolicy = policy == null ? RetryPolicy.getDefault() : policy;
+        Log.d(TAG, "Retry " + mRetryPolicy);
     }
 
     /**
-     * Default constructor
+     * @return transport loading http(s) from network, file:// from local storage and content:// from providers
      */
-    public LoaderService() {
-        super(LoaderService.class.getSimpleName());
+    private Transport createDefaultTransport() {
+        return new SchemeTransport(new HttpTransport(HttpClient.getInstance()))
+                .register(FileTransport.SCHEME, new FileTransport())
+                .register(ContentTransport.SCHEME, new ContentTransport(getContentResolver()));
     }
 
     @Override
-    protected void onHandleIntent(final Intent intent) {
-        final String actionStr = intent.getAction();
+    public int onStartCommand(final Intent intent, final int flags, final int startId) {
+        // Lock engine, so worker cannot stop service between start id update and job submit
+        synchronized (mEngine) {
+            mLastStartId = startId;
+            handleCommand(intent);
+        }
+
+        return START_NOT_STICKY;
+    }
+
+    /**
+     * Handles command received via startService
+     *
+     * @param intent with {@link Action} and its extras
+     */
+    private void handleCommand(final Intent intent) {
         Action action = null;
 
         try {
-            action = Action.valueOf(actionStr);
+            action = Action.valueOf(intent.getAction());
         } catch(IllegalArgumentException e) {
             Log.e(TAG, "Invalid action received");
+        } catch(NullPointerException e) {
+            Log.e(TAG, "No action received");
+        }
+
+        if (action == null) {
+            stopIfIdle();
             return;
         }
 
         switch (action) {
             case LOAD_IMAGE:
-                mIsStopRequested.set(false);
-                loadImage(intent.getStringExtra(EXTRA_URL));
+                mEngine.submit(new LoadRequest(intent.getStringExtra(EXTRA_URL), getTargetSize(intent),
+                        intent.getIntExtra(EXTRA_PRIORITY, LoadRequest.PRIORITY_DEFAULT),
+                        intent.getStringExtra(EXTRA_TAG), null));
+                break;
+
+            case PREFETCH:
+                final String[] urls = intent.getStringArrayExtra(EXTRA_URLS);
+
+                if (urls != null) {
+                    prefetch(Arrays.asList(urls));
+                }
+
+                stopIfIdle();
+                break;
+
+            case CANCEL:
+                final String tag = intent.getStringExtra(EXTRA_TAG);
+
+                if (tag != null) {
+                    mEngine.cancelByTag(tag);
+                }
+
+                stopIfIdle();
                 break;
 
             case STOP_LOADING:
-                // Not to be handled here
+                // Stops all jobs, running and pending ones, running jobs free their slots right away
+                mEngine.cancelAll();
+                break;
+
+            case CONFIGURE:
+                mEngine.setLimits(intent.getIntExtra(EXTRA_MAX_CONCURRENT, 0),
+                        intent.getIntExtra(EXTRA_MAX_PER_HOST, 0));
+                configureEncoder(intent);
+                configureRetries(intent);
+                stopIfIdle();
+                break;
+
+            case DUMP_METRICS:
+                dumpMetrics();
+                stopIfIdle();
+                break;
+
             default:
                 break;
         }
     }
 
     /**
-     * Loads image from provided
-     * @param urlStr to load image from
+     * Sets output format of rotated images if it's provided, images saved before are kept in their format
+     *
+     * @param intent with {@link #EXTRA_OUTPUT_FORMAT} and optional {@link #EXTRA_OUTPUT_QUALITY}
+     */
+    private void configureEncoder(final Intent intent) {
+        final String format = intent.getStringExtra(EXTRA_OUTPUT_FORMAT);
+
+        if (format == null) {
+            return;
+        }
+
+        try {
+            mEncoder = new ImageEncoder(ImageEncoder.OutputFormat.valueOf(format),
+                    intent.getIntExtra(EXTRA_OUTPUT_QUALITY, ImageEncoder.DEFAULT_QUALITY));
+            Log.d(TAG, "Output " + mEncoder);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Invalid output format " + e);
+        }
+    }
+
+    /**
+     * Sets number of retries if it's provided, other parameters of the policy are kept
+     *
+     * @param intent with {@link #EXTRA_MAX_RETRIES}
+     */
+    private void configureRetries(final Intent intent) {
+        if (!intent.hasExtra(EXTRA_MAX_RETRIES)) {
+            return;
+        }
+
+        try {
+            setRetryPolicy(new RetryPolicy(intent.getIntExtra(EXTRA_MAX_RETRIES, RetryPolicy.DEFAULT_MAX_RETRIES),
+                    RetryPolicy.DEFAULT_BASE_DELAY, RetryPolicy.DEFAULT_MAX_DELAY, RetryPolicy.DEFAULT_MAX_REDIRECTS));
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Invalid retry policy " + e);
+        }
+    }
+
+    /**
+     * Writes metrics collected so far to the file in app files dir
+     */
+    private void dumpMetrics() {
+        final String json = MetricsRegistry.getInstance().toJson().toString();
+        final File file = new File(getFilesDir(), METRICS_FILE);
+        FileOutputStream output = null;
+
+        Log.i(TAG, "Metrics " + json);
+
+        try {
+            output = new FileOutputStream(file);
+            output.write(json.getBytes("UTF-8"));
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to dump metrics " + e);
+        } finally {
+            StreamUtils.close(output);
+        }
+    }
+
+    /**
+     * @param intent with optional target size extras
+     *
+     * @return requested target size, screen size if it's not provided
+     */
+    private TargetSize getTargetSize(final Intent intent) {
+        final TargetSize defaultSize = getDefaultTargetSize();
+        final int width = intent.getIntExtra(EXTRA_TARGET_WIDTH, 0);
+        final int height = intent.getIntExtra(EXTRA_TARGET_HEIGHT, 0);
+        final String scaleModeName = intent.getStringExtra(EXTRA_SCALE_MODE);
+        TargetSize.ScaleMode scaleMode = TargetSize.ScaleMode.FIT;
+
+        if (scaleModeName != null) {
+            try {
+                scaleMode = TargetSize.ScaleMode.valueOf(scaleModeName);
+            } catch (IllegalArgumentException e) {
+                Log.e(TAG, "Invalid scale mode " + scaleModeName);
+            }
+        }
+
+        return new TargetSize(width > 0 ? width : defaultSize.getWidth(),
+                height > 0 ? height : defaultSize.getHeight(), scaleMode);
+    }
+
+    /**
+     * @return target size used when client doesn't provide one, screen size
+     */
+    private TargetSize getDefaultTargetSize() {
+        final Point screenSize = getScreenSize();
+
+        return new TargetSize(screenSize.x, screenSize.y, TargetSize.ScaleMode.FIT);
+    }
+
+    @Override
+    public void process(final LoadJob job) {
+        final LoadMetrics metrics = job.getMetrics();
+
+        metrics.start();
+
+        try {
+            loadImage(job);
+        } finally {
+            if (!job.isCancelled() && !job.isResultDelivered()) {
+                // Loading failed unexpectedly, client still waits for the result
+                returnStatus(job, HttpURLConnection.HTTP_INTERNAL_ERROR, "", "");
+            }
+
+            metrics.finish(job.isCancelled());
+            MetricsRegistry.getInstance().record(metrics);
+            Log.d(TAG, "Metrics " + metrics);
+        }
+    }
+
+    @Override
+    public void onIdle() {
+        stopIfIdle();
+    }
+
+    /**
+     * Stops service if there's no more work, stopSelf(int) keeps service alive if newer command arrived
+     */
+    private void stopIfIdle() {
+        synchronized (mEngine) {
+            if (mEngine.isIdle()) {
+                stopSelf(mLastStartId);
+            }
+        }
+    }
+
+    /**
+     * Loads image from provided job url
+     *
+     * @param job with url to load image from, checked for cancellation while loading
+     */
+    private void loadImage(final LoadJob job) {
+        final String urlStr = job.getUrl();
+        final File cachedFile = mCache.getFile(urlStr);
+        final CacheValidators cachedValidators = cachedFile == null ? null : mCache.getValidators(urlStr);
+
+        if (cachedValidators != null && cachedValidators.isFresh()) {
+            Log.d(TAG, "Cache hit " + urlStr);
+            job.getMetrics().setCacheResult(LoadMetrics.CacheResult.HIT);
+            returnStatus(job, HttpURLConnection.HTTP_OK, cachedFile.getPath(),
+                    getDerivatives(job, getDerivativeSpecs(job), cachedFile.getPath(), null));
+            return;
+        }
+
+        final PartialDownload partial;
+
+        try {
+            partial = mCache.acquirePartialDownload(urlStr);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to create file " + e);
+            returnStatus(job, HttpURLConnection.HTTP_INTERNAL_ERROR, "", "");
+            return;
+        }
+
+        final RetryPolicy policy = mRetryPolicy;
+
+        try {
+            // Failed attempt suspends partial download, so the next one asks only for the rest of data
+            for (int retry = 0; ; retry++) {
+                final long retryDelay = downloadImage(job, cachedFile, cachedValidators, partial, policy, retry);
+
+                if (retryDelay == RetryPolicy.NO_RETRY) {
+                    return;
+                }
+
+                Log.d(TAG, "Retry " + (retry + 1) + " in " + retryDelay + " ms " + urlStr);
+                job.getMetrics().addRetry();
+
+                if (!waitForRetry(job, retryDelay)) {
+                    return;
+                }
+            }
+        } finally {
+            mCache.releasePartialDownload(partial);
+        }
+    }
+
+    /**
+     * @param job waiting for retry
+     * @param delay before the retry, ms
+     *
+     * @return false if job was cancelled or thread was interrupted while waiting
+     */
+    private static boolean waitForRetry(final LoadJob job, final long delay) {
+        long remaining = delay;
+
+        try {
+            while (remaining > 0 && !job.isCancelled()) {
+                final long step = Math.min(remaining, RETRY_WAIT_STEP);
+
+                Thread.sleep(step);
+                remaining -= step;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        return !job.isCancelled();
+    }
+
+    /**
+     * Downloads image, revalidating cached file or resuming previously interrupted download if possible
+     *
+     * @param job with url to load image from, checked for cancellation while loading
+     * @param cachedFile stale cached file for the url, can be null
+     * @param cachedValidators of the cached file, can be null
+     * @param partial download to write data into
+     * @param policy to decide whether failure is retried
+     * @param retry number of this attempt's retry, 0 for the first attempt
+     *
+     * @return delay before the next attempt, ms, or {@link RetryPolicy#NO_RETRY} if result is delivered
+     * or job is cancelled
      */
-    private void loadImage(final String urlStr) {
-        // Here DownloadManager will be easiest way probably
-        InputStream input = null;
-        HttpURLConnection connection = null;
+    private long downloadImage(final LoadJob job, final File cachedFile, final CacheValidators cachedValidators,
+                               final PartialDownload partial, final RetryPolicy policy, final int retry) {
+        final String urlStr = job.getUrl();
+        final LoadMetrics metrics = job.getMetrics();
+        final List<DerivativeSpec> specs = getDerivativeSpecs(job);
+        // Stale cached file is revalidated with conditional request, 304 response means it still can be used
+        final boolean revalidate = cachedValidators != null && cachedValidators.canRevalidate();
+        // Otherwise ask only for the rest of previously interrupted download
+        boolean resume = !revalidate && partial.canResume();
+
+        Response response = null;
         OutputStream output = null;
         boolean connected = false;
         String currUrlStr = urlStr;
+        String currHost = job.getHost();
+        final RedirectChain redirects = new RedirectChain(urlStr, policy.getMaxRedirects());
+        long retryDelay = RetryPolicy.NO_RETRY;
         int status = HttpURLConnection.HTTP_OK;
+        File outFile = null;
         String fileName = "";
+        CacheValidators validators = null;
+        boolean downloadStarted = false;
+        boolean bodyConsumed = false;
+        long bytesWritten = 0;
+        Bitmap decodedBitmap = null;
+        final BandwidthEstimator estimator = BandwidthEstimator.getInstance();
+        StallWatchdog.Watch watch = null;
 
         try {
             while (!connected) {
-                URL url = new URL(currUrlStr);
+                final Map<String, String> headers = new HashMap<String, String>();
 
-                if (url.getProtocol().toLowerCase().equals("https")) {
-                    trustAllHosts();
-                    Log.d(TAG, "Trust all hosts");
+                if (revalidate) {
+                    cachedValidators.applyTo(headers);
+                } else if (resume) {
+                    partial.applyTo(headers);
+                }
 
-                    final HttpsURLConnection httpsConnection = (HttpsURLConnection) url.openConnection();
+                headers.put(Response.HEADER_ACCEPT_ENCODING, getAcceptEncoding(currUrlStr, resume));
 
-                    httpsConnection.setHostnameVerifier(DO_NOT_VERIFY);
-                    connection = httpsConnection;
-                } else {
-                    connection = (HttpURLConnection) url.openConnection();
+                if (!mCircuitBreaker.allowRequest(currHost)) {
+                    Log.w(TAG, "Host keeps failing, skipped " + currUrlStr);
+                    returnStatus(job, HttpURLConnection.HTTP_UNAVAILABLE, "", "");
+                    return RetryPolicy.NO_RETRY;
                 }
 
-                connection.setDoOutput(true);
-                connection.setRequestMethod("GET");
-                connection.setConnectTimeout(CONNECT_TIMEOUT);
-                // Note that in some Android versions UrlConnection prepares silent retries,
-                // so with one-time links it might be issue (second request fails before first one).
-                // It's better to have read timeout no less than connection one
-                connection.setReadTimeout(CONNECT_TIMEOUT);
-                connection.setInstanceFollowRedirects(true);
-                connection.connect();
+                response = mTransport.fetch(currUrlStr, headers, metrics);
+                status = response.getStatus();
 
-                status = connection.getResponseCode();
+                if (RetryPolicy.isTransient(status)) {
+                    mCircuitBreaker.onFailure(currHost);
+                } else {
+                    mCircuitBreaker.onSuccess(currHost);
+                }
 
                 // Get location header
                 switch (status) {
@@ -170,84 +632,244 @@ public class LoaderService extends IntentService {
                         connected = true;
                         break;
 
+                    case HttpURLConnection.HTTP_NOT_MODIFIED:
+                        if (!revalidate) {
+                            // Not expected without conditional request
+                            returnStatus(job, status, "", "");
+                            Log.e(TAG, "Unexpected " + status + " for " + currUrlStr);
+                            return RetryPolicy.NO_RETRY;
+                        }
+
+                        Log.d(TAG, "Not modified " + urlStr);
+                        metrics.setCacheResult(LoadMetrics.CacheResult.REVALIDATED);
+                        mCache.putValidators(urlStr, CacheValidators.fromResponse(response, cachedValidators));
+                        response.release();
+                        response = null;
+                        returnStatus(job, HttpURLConnection.HTTP_OK, cachedFile.getPath(),
+                                getDerivatives(job, specs, cachedFile.getPath(), null));
+                        return RetryPolicy.NO_RETRY;
+
+                    case HttpURLConnection.HTTP_PARTIAL:
+                    case HTTP_RANGE_NOT_SATISFIABLE:
+                        if (!resume) {
+                            // Not expected without Range request
+                            returnStatus(job, status, "", "");
+                            Log.e(TAG, "Unexpected " + status + " for " + currUrlStr);
+                            return RetryPolicy.NO_RETRY;
+                        }
+
+                        if (status == HttpURLConnection.HTTP_PARTIAL && partial.matchesRange(response)) {
+                            Log.d(TAG, "Resuming from " + partial.getBytesWritten() + " " + urlStr);
+                            connected = true;
+                            break;
+                        }
+
+                        // Downloaded part doesn't match server's file, so try again from the beginning
+                        Log.w(TAG, "Cannot resume " + urlStr);
+                        partial.discard();
+                        resume = false;
+                        response.release();
+                        response = null;
+                        break;
+
                     case HttpURLConnection.HTTP_MOVED_PERM:
                     case HttpURLConnection.HTTP_MOVED_TEMP:
-                        // Obtain new URL and try connect again
-                        final String location = connection.getHeaderField("location");
-                        currUrlStr = new URL(url, location).toExternalForm();
+                    case HttpURLConnection.HTTP_SEE_OTHER:
+                    case RedirectChain.HTTP_TEMPORARY_REDIRECT:
+                    case RedirectChain.HTTP_PERMANENT_REDIRECT:
+                        if (!redirects.follow(response)) {
+                            returnStatus(job, status, "", "");
+                            Log.e(TAG, "Too many redirects " + urlStr);
+                            return RetryPolicy.NO_RETRY;
+                        }
+
+                        // Try new URL, connection to the same host is taken from the pool
+                        currUrlStr = redirects.getUrl();
+                        currHost = LoadJob.parseHost(currUrlStr);
+                        metrics.addRedirect();
+                        response.release();
+                        response = null;
                         Log.d(TAG, "Try URL " + currUrlStr);
                         break;
 
                     default:
-                        returnStatus(status, "", "");
-                        Log.e(TAG, "Connection failed " + status + " returned " + connection.getResponseMessage()
-                                + " / Error Stream: " + new Scanner(connection.getErrorStream()).useDelimiter("\\A").next());
-                        return;
+                        retryDelay = policy.getDelay(retry, status, response);
+
+                        if (retryDelay != RetryPolicy.NO_RETRY) {
+                            Log.w(TAG, "Connection failed " + status + ", retrying " + currUrlStr);
+                            return retryDelay;
+                        }
+
+                        returnStatus(job, status, "", "");
+                        final InputStream errorBody = response.getBody();
+
+                        Log.e(TAG, "Connection failed " + status + " returned " + response.getMessage()
+                                + " / Error Stream: " + (errorBody == null ? ""
+                                        : new Scanner(errorBody).useDelimiter("\\A").next()));
+                        return RetryPolicy.NO_RETRY;
                 }
             }
 
-            final String contentType = connection.getContentType();
-            final String extension = MimeTypeMap.getSingleton().getExtensionFromMimeType(contentType);
+            // Read headers before body, they're not available once response is finished
+            validators = CacheValidators.fromResponse(response, null);
 
-            if (TextUtils.isEmpty(contentType)) {
-                // Here and later, return empty string since returning null is not best practice
-                status = HttpURLConnection.HTTP_NO_CONTENT;
-                returnStatus(HttpURLConnection.HTTP_NO_CONTENT, "", "");
-                Log.e(TAG, "Empty content type");
-                return;
-            }
+            // Content type is often missing or generic (e.g. application/octet-stream),
+            // so image format is detected from the data once it's started to load
+            Log.d(TAG, "Content type " + response.getContentType() + " " + urlStr);
 
-            final String normExt = extension.toLowerCase();
+            // Server may ignore Range or If-Range didn't match, then full file is returned with 200
+            final boolean resumed = status == HttpURLConnection.HTTP_PARTIAL;
+            final long contentLength = response.getContentLength();
+            final long fileLength = resumed && contentLength >= 0 ? partial.getBytesWritten() + contentLength : contentLength;
 
-            if (!TYPE_JPEG.equals(normExt)
-                    && !TYPE_JPG.equals(normExt)
-                    && !TYPE_BMP.equals(normExt)
-                    && !TYPE_PNG.equals(normExt)) {
+            // Let's limit size of file to 20 MB, seems all above cannot be an image in a real world.
+            // Length is unknown for chunked or compressed response, then the limit is checked while reading
+            if (fileLength > FILE_SIZE_LIMIT) {
                 status = HttpURLConnection.HTTP_NO_CONTENT;
-                returnStatus(HttpURLConnection.HTTP_NO_CONTENT, "", "");
-                Log.e(TAG, "Wrong content type " + normExt);
-                return;
+                returnStatus(job, HttpURLConnection.HTTP_NO_CONTENT, "", "");
+                Log.e(TAG, "Wrong content size " + fileLength);
+                return RetryPolicy.NO_RETRY;
             }
 
-            final File outFolder = new File(getApplicationContext().getFilesDir().getAbsolutePath() + "/" + IMAGES_FOLDER);
+            if (resumed) {
+                status = HttpURLConnection.HTTP_OK;
+            } else {
+                partial.start(response);
+            }
 
-            //noinspection ResultOfMethodCallIgnored
-            outFolder.mkdir();
-            cleanFolder(outFolder);
+            // download the file, it's added to cache once complete.
+            // All data read from response is copied to the file, so it can be decoded while loading
+            output = partial.openOutput(resumed, contentLength);
+            downloadStarted = true;
+
+            // Small responses and slow hosts are read with small buffer, large ones with fewer larger reads
+            final int readSize = Math.min(BufferPool.getInstance().chooseSize(contentLength,
+                    estimator.getBytesPerSecond(currHost)), MAX_READ_SIZE);
+
+            final long resumedBytes = resumed ? partial.getBytesWritten() : 0;
+            final PrefetchPolicy.Pacer pacer = mPrefetchPolicy.newPacer(job);
+            // Body which keeps coming too slow is aborted, instead of waiting for it till read timeout
+            watch = StallWatchdog.getInstance().watch(response, estimator.getMinThroughput(currHost));
+            // Data over the limit fails the read before it's written, so runaway response can't fill storage.
+            // The boundary is the same as for known length, whole file of FILE_SIZE_LIMIT bytes is accepted
+            final InputStream body = new LimitedInputStream(watch.wrap(response.getBody()),
+                    FILE_SIZE_LIMIT - resumedBytes);
+            final TeeInputStream teeInput = new TeeInputStream(body, output, job,
+                    new ProgressListener() {
+                        private final ProgressTracker mTracker = new ProgressTracker(resumedBytes);
+
+                        @Override
+                        public void onProgress(final long bytesRead) {
+                            final long bytesLoaded = resumedBytes + bytesRead;
+
+                            // Background download is slowed down or held, others go at full speed
+                            pacer.onBytesRead(bytesRead);
+
+                            // Most reads are not reported, so progress never slows down loading
+                            if (mTracker.update(bytesLoaded, fileLength)) {
+                                reportProgress(job, new LoadProgress(urlStr, bytesLoaded, fileLength,
+                                        mTracker.getBytesPerSecond(), mTracker.getEtaMillis(bytesLoaded, fileLength)));
+                            }
+                        }
+                    });
+
+            metrics.begin(LoadMetrics.Phase.DOWNLOAD);
+
+            try {
+                if (!resumed) {
+                    // Decoder needs whole image, so resumed download is decoded from file once complete
+                    final InputStream decoderInput = new BufferedInputStream(teeInput, readSize);
+                    final ImageHeader header = ImageDecoder.peekHeader(decoderInput);
+
+                    if (header == null) {
+                        // Here and later, return empty string since returning null is not best practice
+                        status = HttpURLConnection.HTTP_NO_CONTENT;
+                        returnStatus(job, HttpURLConnection.HTTP_NO_CONTENT, "", "");
+                        Log.e(TAG, "Unsupported image format " + response.getContentType());
+                        partial.discard();
+                        return RetryPolicy.NO_RETRY;
+                    }
+
+                    partial.setExtension(header.getFormat().getExtension());
+
+                    // JPEG which doesn't need downsampling is rotated without decoding at all,
+                    // large images are decoded by regions from file
+                    final List<TargetSize> decodedTargets = new ArrayList<TargetSize>(specs.size());
+
+                    for (DerivativeSpec spec : specs) {
+                        if (!canRotateLosslessly(header, spec)) {
+                            decodedTargets.add(spec.getTargetSize());
+                        }
+                    }
+
+                    if (!ImageDecoder.isLarge(header) && !decodedTargets.isEmpty()) {
+                        metrics.begin(LoadMetrics.Phase.DECODE);
+                        decodedBitmap = ImageDecoder.decodeStream(decoderInput, header, decodedTargets, mPool);
+                        metrics.end(LoadMetrics.Phase.DECODE);
+                    }
+                }
 
-            // Let's store with same name, so only one file will exist
-            fileName = outFolder.getAbsolutePath() + "/" + DEFAULT_FILENAME + "." + normExt;
-            final int fileLength = connection.getContentLength();
+                // Decoder may stop before end of data, store the rest too
+                byte data[] = new byte[readSize];
 
-            // Let's limit size of file to 20 MB, seems all above cannot be an image in a real world
-            if (fileLength >= FILE_SIZE_LIMIT) {
-                status = HttpURLConnection.HTTP_NO_CONTENT;
-                returnStatus(HttpURLConnection.HTTP_NO_CONTENT, "", "");
-                Log.e(TAG, "Wrong content size " + fileLength);
-                return;
-            }
+                //noinspection StatementWithEmptyBody
+                while (teeInput.read(data) != -1) {
+                    // Data is copied by teeInput
+                }
 
-            // download the file
-            input = new BufferedInputStream(connection.getInputStream());
-            output = new FileOutputStream(fileName);
+                if (watch.isStalled()) {
+                    // Aborted body may end without error, but the file is incomplete
+                    throw new SocketTimeoutException("Transfer stalled");
+                }
 
-            byte data[] = new byte[CHUNK_SIZE];
-            int count;
+                output.flush();
+                // Fully read response lets connection go back to the pool
+                bodyConsumed = !job.isCancelled();
+            } finally {
+                bytesWritten = resumedBytes + teeInput.getCount();
+                metrics.end(LoadMetrics.Phase.DOWNLOAD);
+                metrics.addBytes(teeInput.getCount());
 
-            while ((count = input.read(data)) != -1 && !mIsStopRequested.get()) {
-                output.write(data, 0, count);
-            }
+                // Background download may be paced, so its speed isn't network throughput
+                if (bodyConsumed && !LoadEngine.isBackground(job)) {
+                    // Decoding while loading slows reading down, it's not part of network throughput
+                    final long decodeMillis = metrics.isMeasured(LoadMetrics.Phase.DECODE)
+                            ? metrics.getMillis(LoadMetrics.Phase.DECODE) : 0;
+
+                    final long downloadMillis = metrics.getMillis(LoadMetrics.Phase.DOWNLOAD) - decodeMillis;
 
-            output.flush();
+                    BufferPool.getInstance().recordThroughput(teeInput.getCount(), downloadMillis);
+                    estimator.recordThroughput(currHost, teeInput.getCount(), downloadMillis);
+                }
+            }
         } catch (MalformedURLException e) {
             Log.e(TAG, "Malformed URL was provided " + e);
             status = HttpURLConnection.HTTP_BAD_REQUEST;
-            returnStatus(HttpURLConnection.HTTP_BAD_REQUEST, "", "");
+            returnStatus(job, HttpURLConnection.HTTP_BAD_REQUEST, "", "");
+        } catch (LimitedInputStream.LimitExceededException e) {
+            Log.e(TAG, "Response is too large " + e);
+            status = HttpURLConnection.HTTP_NO_CONTENT;
+            // Rest of the file would exceed the limit as well, so downloaded part is dropped, not suspended
+            bytesWritten = 0;
+            returnStatus(job, HttpURLConnection.HTTP_NO_CONTENT, "", "");
         } catch (IOException e) {
+            // Read of stalled response fails with timeout
             Log.e(TAG, "Failed to download " + e);
             status = HttpURLConnection.HTTP_INTERNAL_ERROR;
-            returnStatus(HttpURLConnection.HTTP_INTERNAL_ERROR, "", "");
+
+            if (RetryPolicy.isTransient(e)) {
+                mCircuitBreaker.onFailure(currHost);
+            }
+
+            retryDelay = job.isCancelled() ? RetryPolicy.NO_RETRY : policy.getDelay(retry, e);
+
+            if (retryDelay == RetryPolicy.NO_RETRY) {
+                returnStatus(job, HttpURLConnection.HTTP_INTERNAL_ERROR, "", "");
+            }
         } finally {
+            if (watch != null) {
+                watch.stop();
+            }
             if (output != null) {
                 try {
                     output.close();
@@ -255,99 +877,268 @@ public class LoaderService extends IntentService {
                     Log.e(TAG, "Failed to close output " + e);
                 }
             }
-            if (input != null) {
-                try {
-                    input.close();
-                } catch (IOException e) {
-                    Log.e(TAG, "Failed to close input " + e);
+            if (response != null) {
+                if (bodyConsumed) {
+                    response.release();
+                } else {
+                    response.abort();
                 }
             }
-            if (connection != null) {
-                connection.disconnect();
-            }
         }
 
-        String rotatedImagePath = "";
+        if (downloadStarted && (job.isCancelled() || status != HttpURLConnection.HTTP_OK)) {
+            // Keep downloaded part to continue from it next time
+            partial.suspend(bytesWritten);
+        }
+
+        if (job.isCancelled() || status != HttpURLConnection.HTTP_OK) {
+            mPool.put(decodedBitmap);
+            decodedBitmap = null;
+        }
+
+        if (job.isCancelled()) {
+            // Nobody waits for the result anymore
+            Log.d(TAG, "Cancelled " + job);
+            return RetryPolicy.NO_RETRY;
+        }
+
+        if (retryDelay != RetryPolicy.NO_RETRY) {
+            return retryDelay;
+        }
+
+        String[] derivativePaths = {""};
 
         if (status == HttpURLConnection.HTTP_OK) {
-            rotatedImagePath = saveRotatedImage(fileName);
+            try {
+                metrics.begin(LoadMetrics.Phase.SAVE);
+                outFile = validators.isStorable() ? mCache.commitPartialDownload(partial, validators)
+                        : mCache.takeUncachedDownload(partial);
+                metrics.end(LoadMetrics.Phase.SAVE);
+                fileName = outFile.getPath();
+                // If image was decoded while loading, file doesn't have to be read again
+                derivativePaths = getDerivatives(job, specs, fileName, decodedBitmap);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to store " + e);
+                status = HttpURLConnection.HTTP_INTERNAL_ERROR;
+                mPool.put(decodedBitmap);
+            }
         }
 
-        returnStatus(status, fileName, rotatedImagePath);
+        returnStatus(job, status, fileName, derivativePaths);
+
+        return RetryPolicy.NO_RETRY;
     }
 
     /**
-     * Decodes and rotates provided file by name to be displayed on the screen (for full screen)
+     * Images are mostly compressed already, compressing them again only costs CPU on both sides,
+     * while identity keeps Content-Length for progress and byte offsets for resuming.
+     * So gzip is asked only for formats it shrinks, guessed from url extension.
      *
-     * @param fileName to rotate
+     * @param url to request
+     * @param resume true if rest of partial download is requested
      *
-     * @return path to rotated image
+     * @return value of Accept-Encoding header
      */
-    private String saveRotatedImage(final String fileName) {
-        String path = getCacheDir().getPath() + "/" + DEFAULT_ROTATE_FILENAME;
-        final File outFile = new File(path);
-
-        if (outFile.exists()) {
-            //noinspection ResultOfMethodCallIgnored
-            outFile.delete();
+    private static String getAcceptEncoding(final String url, final boolean resume) {
+        if (resume) {
+            // Range of compressed response counts compressed bytes
+            return Response.ENCODING_IDENTITY;
         }
 
+        final String path;
+
         try {
-            outFile.createNewFile();
-        } catch (IOException e) {
-            Log.wtf(TAG, "Failed to create file!");
+            path = new URL(url).getPath();
+        } catch (MalformedURLException e) {
+            return Response.ENCODING_IDENTITY;
         }
 
-        // First decode with inJustDecodeBounds=true to check dimensions
-        final BitmapFactory.Options options = new BitmapFactory.Options();
+        final int dot = path.lastIndexOf('.');
 
-        options.inJustDecodeBounds = true;
-        BitmapFactory.decodeFile(fileName, options);
+        if (dot < 0 || dot < path.lastIndexOf('/')) {
+            return Response.ENCODING_IDENTITY;
+        }
 
-        final WindowManager wm = (WindowManager) getSystemService(Context.WINDOW_SERVICE);
-        final Display display = wm.getDefaultDisplay();
-        final Point screenSize = new Point();
+        final ImageHeader.Format format = ImageHeader.Format.fromExtension(path.substring(dot + 1));
 
-        display.getSize(screenSize);
+        return format != null && format.isCompressible() ? Response.ENCODING_GZIP : Response.ENCODING_IDENTITY;
+    }
+
+    /**
+     * Encoder can be reconfigured while job is running, specs keep the one used for both key and saving
+     *
+     * @param job images are made for
+     *
+     * @return rotated image followed by extra derivatives of the job
+     */
+    private List<DerivativeSpec> getDerivativeSpecs(final LoadJob job) {
+        final List<DerivativeSpec> specs = new ArrayList<DerivativeSpec>(1 + job.getDerivatives().size());
+
+        specs.add(new DerivativeSpec(job.getTargetSize(), mTransform, mEncoder));
+        specs.addAll(job.getDerivatives());
+
+        return specs;
+    }
+
+    /**
+     * Returns images made from the loaded one from cache. Missing ones are made from single decoded image,
+     * sampled for the biggest of them and progressively downscaled to the rest.
+     *
+     * @param job image was loaded for
+     * @param specs images to return, see {@link #getDerivativeSpecs(LoadJob)}
+     * @param fileName of downloaded image
+     * @param decodedBitmap image decoded while loading for specs which can't be made losslessly, released to the pool
+     *                      once used, can be null
+     *
+     * @return paths in the order of specs, empty string for images which cannot be made
+     */
+    private String[] getDerivatives(final LoadJob job, final List<DerivativeSpec> specs, final String fileName,
+                                    final Bitmap decodedBitmap) {
+        final LoadMetrics metrics = job.getMetrics();
+        final String[] paths = new String[specs.size()];
+        final List<DerivativeSpec> pendingSpecs = new ArrayList<DerivativeSpec>(specs.size());
+        final List<Integer> pendingIndices = new ArrayList<Integer>(specs.size());
+        ImageHeader header = null;
+
+        for (int i = 0; i < specs.size(); i++) {
+            final DerivativeSpec spec = specs.get(i);
+            final String key = getDerivativeKey(job.getUrl(), fileName, spec);
+            final File cachedFile = mCache.getFile(key);
+
+            if (cachedFile != null) {
+                paths[i] = cachedFile.getPath();
+                continue;
+            }
+
+            if (header == null && isLosslessRotation(spec)) {
+                header = ImageDecoder.readHeader(fileName);
+            }
+
+            if (canRotateLosslessly(header, spec)) {
+                metrics.begin(LoadMetrics.Phase.SAVE);
+
+                final String savedPath = saveLosslessRotatedImage(key, fileName, (RotateTransform) spec.getTransform());
+
+                metrics.end(LoadMetrics.Phase.SAVE);
+
+                if (savedPath != null) {
+                    paths[i] = savedPath;
+                    continue;
+                }
+
+                Log.w(TAG, "Lossless rotation failed, re-encoding " + fileName);
+            }
+
+            final Bitmap cachedBitmap = mCache.getBitmap(key);
+
+            if (cachedBitmap != null) {
+                // Image is still in memory tier, it only has to be encoded again
+                paths[i] = saveImage(key, spec.getEncoder(), cachedBitmap, metrics);
+                continue;
+            }
+
+            pendingSpecs.add(spec);
+            pendingIndices.add(i);
+        }
+
+        if (pendingSpecs.isEmpty()) {
+            mPool.put(decodedBitmap);
+            return paths;
+        }
+
+        Bitmap bitmap = decodedBitmap;
+
+        if (bitmap == null) {
+            metrics.begin(LoadMetrics.Phase.DECODE);
+            bitmap = ImageDecoder.decodeFile(fileName, DerivativeGenerator.getTargetSizes(pendingSpecs), mPool);
+            metrics.end(LoadMetrics.Phase.DECODE);
+        }
+
+        if (bitmap == null) {
+            Log.e(TAG, "Failed to decode " + fileName);
+            fillEmpty(paths);
+            return paths;
+        }
 
-        // Calculate inSampleSize
-        int inSampleSize = 1;
+        metrics.begin(LoadMetrics.Phase.TRANSFORM);
+        final List<Bitmap> bitmaps = DerivativeGenerator.generate(bitmap, pendingSpecs, mPool);
+        metrics.end(LoadMetrics.Phase.TRANSFORM);
 
-        // Trivial algorithm to find closes inSampleSize which is power of 2
-        if (options.outHeight > screenSize.y || options.outWidth > screenSize.x) {
-            final int halfHeight = options.outHeight / 2;
-            final int halfWidth = options.outWidth / 2;
+        for (int i = 0; i < bitmaps.size(); i++) {
+            final DerivativeSpec spec = pendingSpecs.get(i);
+            final String key = getDerivativeKey(job.getUrl(), fileName, spec);
 
-            while ((halfHeight / inSampleSize) >= screenSize.x
-                    && (halfWidth / inSampleSize) >= screenSize.y) {
-                inSampleSize *= 2;
+            paths[pendingIndices.get(i)] = saveImage(key, spec.getEncoder(), bitmaps.get(i), metrics);
+            // Cached bitmap is never given back to the pool, so it's not overwritten by later decodes
+            mCache.putBitmap(key, bitmaps.get(i));
+        }
+
+        return paths;
+    }
+
+    private static void fillEmpty(final String[] paths) {
+        for (int i = 0; i < paths.length; i++) {
+            if (paths[i] == null) {
+                paths[i] = "";
             }
         }
+    }
+
+    /**
+     * Image made from the loaded one depends on the source file version. Cached file keeps its name when content
+     * changes, so version is its length and modification time. Once new content is stored, images made from the old
+     * one are not found anymore and are evicted from cache eventually.
+     *
+     * @param url image was loaded from
+     * @param fileName of downloaded image
+     * @param spec of the image made from the loaded one
+     *
+     * @return cache key of the image
+     */
+    private static String getDerivativeKey(final String url, final String fileName, final DerivativeSpec spec) {
+        final File file = new File(fileName);
 
-        options.inSampleSize = inSampleSize;
+        return url + "#" + file.length() + "-" + file.lastModified() + DERIVATIVE_KEY_SUFFIX + "@" + spec.toKey();
+    }
 
-        // Decode bitmap with inSampleSize set
-        options.inJustDecodeBounds = false;
-        options.inPreferredConfig = Bitmap.Config.RGB_565;
-        options.inDither = true;
+    /**
+     * Encodes bitmap to the cache file
+     *
+     * @param key cache key of the image
+     * @param encoder to save image with
+     * @param bitmap to save, not released
+     * @param metrics to record encoding and saving timings to
+     *
+     * @return path to saved image or empty string if it cannot be saved
+     */
+    private String saveImage(final String key, final ImageEncoder encoder, final Bitmap bitmap,
+                             final LoadMetrics metrics) {
+        final File outFile;
 
-        // Here don't expect OutOfMemory since
-        final Bitmap orginalBitmap = BitmapFactory.decodeFile(fileName, options);
-        final Matrix matrix = new Matrix();
-        matrix.postRotate(ROTATION_DEGRESS);
+        try {
+            outFile = mCache.newFile(key, encoder.getExtension());
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to create file " + e);
+            return "";
+        }
 
-        final Bitmap rotatedBitmap = Bitmap.createBitmap(orginalBitmap, 0, 0, orginalBitmap.getWidth(), orginalBitmap.getHeight(), matrix, true);
         FileOutputStream fileOutputStream = null;
+        boolean saved = false;
 
         try {
             fileOutputStream = new FileOutputStream(outFile);
-            rotatedBitmap.compress(Bitmap.CompressFormat.JPEG, 90, fileOutputStream);
+            metrics.begin(LoadMetrics.Phase.ENCODE);
+            saved = encoder.encode(bitmap, fileOutputStream);
+            metrics.end(LoadMetrics.Phase.ENCODE);
             fileOutputStream.flush();
             fileOutputStream.close();
+            fileOutputStream = null;
         } catch (FileNotFoundException e) {
             Log.wtf(TAG, "File not found!");
+            saved = false;
         } catch (IOException e) {
-            Log.e(TAG, "Failed to save rotated image " + e);
+            Log.e(TAG, "Failed to save image " + e);
+            saved = false;
         } finally {
             if (fileOutputStream != null) {
                 try {
@@ -358,90 +1149,167 @@ public class LoaderService extends IntentService {
             }
         }
 
-        return outFile.getPath();
+        if (!saved) {
+            mCache.abortFile(outFile);
+            return "";
+        }
+
+        try {
+            metrics.begin(LoadMetrics.Phase.SAVE);
+            return mCache.commitFile(key, outFile).getPath();
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to store image " + e);
+            return "";
+        } finally {
+            metrics.end(LoadMetrics.Phase.SAVE);
+        }
     }
 
     /**
-     * Cleans contents of provided folder
+     * @param spec of the image made from the loaded one
      *
-     * @param outFolder to be cleaned
+     * @return true if image is rotated and saved as JPEG, so it may be rotated losslessly
      */
-    private void cleanFolder(final File outFolder) {
-        if (outFolder.isDirectory()) {
-            for (File child : outFolder.listFiles()) {
-                Log.d(TAG, "Removed " + child.getName() + " " + child.delete());
-            }
-        }
+    private static boolean isLosslessRotation(final DerivativeSpec spec) {
+        return spec.getTransform() instanceof RotateTransform
+                && spec.getEncoder().getFormat() == ImageEncoder.OutputFormat.JPEG;
     }
 
-    // Use simple local broadcast to deliver results. In case if there's some performance issue
-    // can use more complex ways like ResultReceiver, Messenger etc.
     /**
-     * Sends finish callback.
+     * JPEG rotation can be written to EXIF orientation tag, without decoding and re-encoding pixels.
+     * It's possible only if image doesn't have to be scaled to the target size and JPEG output is configured.
      *
-     * @param status Http status of request, 200 is OK
-     * @param path of saved file
-     * @param rotatedPath of rotated saved file
+     * @param header of loaded image, can be null
+     * @param spec of the image made from the loaded one
+     *
+     * @return true if lossless rotation can be used
      */
-    private void returnStatus(final int status, final String path, final String rotatedPath) {
-        Log.d(TAG, "returnStatus " + status + " on " + path);
+    private static boolean canRotateLosslessly(final ImageHeader header, final DerivativeSpec spec) {
+        if (header == null || header.getFormat() != ImageHeader.Format.JPEG || !isLosslessRotation(spec)) {
+            return false;
+        }
 
-        final Intent intent = new Intent(ACTION_LOAD_RESULT);
+        final TargetSize targetSize = spec.getTargetSize();
+        final int width = header.getWidth();
+        final int height = header.getHeight();
 
-        intent.putExtra(EXTRA_STATUS, status);
-        intent.putExtra(EXTRA_PATH, path);
-        intent.putExtra(EXTRA_ROTATED_PATH, rotatedPath);
-        LocalBroadcastManager.getInstance(getApplicationContext()).sendBroadcast(intent);
+        return targetSize.getOutputWidth(width, height) == width && targetSize.getOutputHeight(width, height) == height
+                && targetSize.getVisibleWidth(width, height) == width
+                && targetSize.getVisibleHeight(width, height) == height;
     }
 
-    // Use onStartCommand callback in order to handle STOP_LOADING action properly
-    @Override
-    public int onStartCommand(final Intent intent, final int flags, final int startId) {
-        if (Action.STOP_LOADING.name().equals(intent.getAction())) {
-            mIsStopRequested.set(true);
+    /**
+     * Copies JPEG file and rotates it by updating EXIF orientation
+     *
+     * @param key cache key of rotated image
+     * @param fileName of JPEG image
+     * @param rotation to write
+     *
+     * @return path to rotated image or null if it cannot be saved
+     */
+    private String saveLosslessRotatedImage(final String key, final String fileName, final RotateTransform rotation) {
+        final File outFile;
+
+        try {
+            outFile = mCache.newFile(key, ImageEncoder.OutputFormat.JPEG.getExtension());
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to create file " + e);
+            return null;
         }
 
-        return super.onStartCommand(intent, flags, startId);
+        try {
+            StreamUtils.copyFile(new File(fileName), outFile);
+
+            if (ExifOrientation.writeRotation(outFile.getPath(), rotation.getDegrees())) {
+                return mCache.commitFile(key, outFile).getPath();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to save losslessly " + e);
+        }
+
+        mCache.abortFile(outFile);
+        return null;
     }
 
-    // START: Trust all certificates, under cc by-sa 3.0 from Ulrich Scheller at http://stackoverflow.com/a/1000205/657487
+    /**
+     * @return size of the screen, default target size of rotated image
+     */
+    private Point getScreenSize() {
+        final WindowManager wm = (WindowManager) getSystemService(Context.WINDOW_SERVICE);
+        final Display display = wm.getDefaultDisplay();
+        final Point screenSize = new Point();
+
+        display.getSize(screenSize);
 
-    // always verify the host - don't check for certificate
-    final static HostnameVerifier DO_NOT_VERIFY = new HostnameVerifier() {
-        public boolean verify(String hostname, SSLSession session) {
-            return true;
-        }
-    };
+        return screenSize;
+    }
 
+    // Use simple local broadcast to deliver results of single intents, batches are delivered to their listeners
     /**
-     * Trust every server - don't check for any certificate
+     * Sends finish callback, only first one per job is sent.
+     *
+     * @param job which is finished
+     * @param status Http status of request, 200 is OK
+     * @param path of saved file
+     * @param rotatedPath of rotated saved file
      */
-    private static void trustAllHosts() {
-        // Create a trust manager that does not validate certificate chains
-        final TrustManager[] trustAllCerts = new TrustManager[] { new X509TrustManager() {
-            public java.security.cert.X509Certificate[] getAcceptedIssuers() {
-                return new java.security.cert.X509Certificate[] {};
-            }
+    private void returnStatus(final LoadJob job, final int status, final String path, final String rotatedPath) {
+        returnStatus(job, status, path, new String[] {rotatedPath});
+    }
 
-            public void checkClientTrusted(X509Certificate[] chain,
-                                           String authType) throws CertificateException {
+    /**
+     * Sends finish callback, only first one per job is sent.
+     *
+     * @param job which is finished
+     * @param status Http status of request, 200 is OK
+     * @param path of saved file
+     * @param derivativePaths of rotated saved file followed by extra images of the job
+     */
+    private void returnStatus(final LoadJob job, final int status, final String path, final String[] derivativePaths) {
+        final String rotatedPath = derivativePaths[0];
+
+        if (!job.markResultDelivered()) {
+            // First result wins, e.g. error was already reported
+            return;
+        }
+
+        Log.d(TAG, "returnStatus " + status + " on " + path);
+        job.getMetrics().setStatus(status);
+
+        final LoadResult result = new LoadResult(job.getUrl(), status, path, rotatedPath,
+                Arrays.copyOfRange(derivativePaths, 1, derivativePaths.length));
+
+        // Every request joined to the job gets the same result
+        for (LoadRequest request : job.finish()) {
+            if (request.isCancelled()) {
+                continue;
             }
 
-            public void checkServerTrusted(X509Certificate[] chain,
-                                           String authType) throws CertificateException {
+            if (request.getBatch() != null) {
+                request.getBatch().onResult(request, result);
+                continue;
             }
-        } };
 
-        // Install the all-trusting trust manager
-        try {
-            final SSLContext sc = SSLContext.getInstance("TSL");
-            sc.init(null, trustAllCerts, new java.security.SecureRandom());
-            HttpsURLConnection
-                    .setDefaultSSLSocketFactory(sc.getSocketFactory());
-        } catch (Exception e) {
-            e.printStackTrace();
+            final Intent intent = new Intent(ACTION_LOAD_RESULT);
+
+            intent.putExtra(EXTRA_STATUS, status);
+            intent.putExtra(EXTRA_PATH, path);
+            intent.putExtra(EXTRA_ROTATED_PATH, rotatedPath);
+            LocalBroadcastManager.getInstance(getApplicationContext()).sendBroadcast(intent);
         }
     }
 
-    // END: Trust all certificates
+    /**
+     * Passes download progress to all batch requests waiting for the job
+     *
+     * @param job which is loading
+     * @param progress of the job
+     */
+    private void reportProgress(final LoadJob job, final LoadProgress progress) {
+        for (LoadRequest request : job.getRequests()) {
+            if (request.getBatch() != null && !request.isCancelled()) {
+                request.getBatch().onProgress(request, progress);
+            }
+        }
+    }
 }
@@ -0,0 +1,237 @@
+package com.alexstarc.imageloader.service;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.BatteryManager;
+import android.os.SystemClock;
+import android.telephony.TelephonyManager;
+import android.util.Log;
+
+import com.alexstarc.imageloader.net.BandwidthEstimator;
+import com.alexstarc.imageloader.net.CircuitBreaker;
+
+/**
+ * Decides how background (prefetch) jobs may use network, from connectivity and battery state:
+ * <ul>
+ *     <li>no network, roaming, 2G or low battery without charger - paused</li>
+ *     <li>metered network - one job at a time with limited bandwidth</li>
+ *     <li>unmetered network - a few jobs, bandwidth is not limited</li>
+ * </ul>
+ * Limits are applied to {@link LoadEngine}, running background downloads are paced with {@link Pacer}.
+ */
+class PrefetchPolicy extends BroadcastReceiver {
+    private static final String TAG = "PrefetchPolicy";
+
+    /** Background jobs running at once on unmetered network */
+    private static final int UNMETERED_MAX_JOBS = 2;
+    /** Background jobs running at once on metered network */
+    private static final int METERED_MAX_JOBS = 1;
+    /** Background bandwidth on metered network, so user's traffic isn't drained at once */
+    private static final long METERED_BYTES_PER_SECOND = 64 * 1024;
+    /** Battery level, percents, below which background loading is paused if device is not charging */
+    private static final int LOW_BATTERY_LEVEL = 15;
+    /** How often paused download checks whether it can continue */
+    private static final long PAUSE_CHECK_INTERVAL = 250; // ms
+    /** Longest sleep to keep bandwidth, so cancellation is noticed soon enough */
+    private static final long MAX_PACE_SLEEP = 1000; // ms
+
+    private final LoadEngine mEngine;
+    private final CircuitBreaker mCircuitBreaker;
+    /** Bandwidth of single background download, 0 if it's not limited */
+    private volatile long mBytesPerSecond = 0;
+    private volatile boolean mIsPaused = false;
+    private boolean mIsLowBattery = false;
+
+    /**
+     * @param engine to apply background limits to
+     * @param circuitBreaker to unblock hosts when network is changed
+     */
+    PrefetchPolicy(final LoadEngine engine, final CircuitBreaker circuitBreaker) {
+        mEngine = engine;
+        mCircuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * Starts listening to connectivity and battery changes, applies current limits
+     *
+     * @param context to register receiver with
+     */
+    void start(final Context context) {
+        final IntentFilter filter = new IntentFilter(ConnectivityManager.CONNECTIVITY_ACTION);
+
+        filter.addAction(Intent.ACTION_BATTERY_CHANGED);
+        // Battery broadcast is sticky, so state is known right away
+        updateBattery(context.registerReceiver(this, filter));
+        update(context);
+    }
+
+    /**
+     * @param context receiver was registered with
+     */
+    void stop(final Context context) {
+        context.unregisterReceiver(this);
+    }
+
+    @Override
+    public void onReceive(final Context context, final Intent intent) {
+        if (Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction())) {
+            updateBattery(intent);
+        } else {
+            // Latency, throughput and failures of the previous network don't apply to the new one
+            BandwidthEstimator.getInstance().reset();
+            mCircuitBreaker.reset();
+        }
+
+        update(context);
+    }
+
+    private void updateBattery(final Intent intent) {
+        if (intent == null) {
+            return;
+        }
+
+        final int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+        final int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+        final boolean charging = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+
+        mIsLowBattery = !charging && level >= 0 && scale > 0 && level * 100 / scale < LOW_BATTERY_LEVEL;
+    }
+
+    private void update(final Context context) {
+        final ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        final NetworkInfo info = cm.getActiveNetworkInfo();
+        final int maxJobs;
+        final long bytesPerSecond;
+
+        if (mIsLowBattery || info == null || !info.isConnected() || info.isRoaming() || isSlow(info)) {
+            maxJobs = 0;
+            bytesPerSecond = 0;
+        } else if (cm.isActiveNetworkMetered()) {
+            maxJobs = METERED_MAX_JOBS;
+            bytesPerSecond = METERED_BYTES_PER_SECOND;
+        } else {
+            maxJobs = UNMETERED_MAX_JOBS;
+            bytesPerSecond = 0;
+        }
+
+        if (maxJobs == 0 && !mIsPaused) {
+            Log.d(TAG, "Paused, " + (mIsLowBattery ? "low battery" : "network " + info));
+        }
+
+        applyLimits(maxJobs, bytesPerSecond);
+    }
+
+    /**
+     * @param maxJobs background jobs running at once, 0 to pause them
+     * @param bytesPerSecond bandwidth of single background download, 0 if it's not limited
+     */
+    void applyLimits(final int maxJobs, final long bytesPerSecond) {
+        mIsPaused = maxJobs == 0;
+        mBytesPerSecond = bytesPerSecond;
+        mEngine.setBackgroundLimit(maxJobs);
+    }
+
+    /**
+     * @return true if network is too slow to load anything nobody waits for
+     */
+    private static boolean isSlow(final NetworkInfo info) {
+        if (info.getType() != ConnectivityManager.TYPE_MOBILE) {
+            return false;
+        }
+
+        switch (info.getSubtype()) {
+            case TelephonyManager.NETWORK_TYPE_GPRS:
+            case TelephonyManager.NETWORK_TYPE_EDGE:
+            case TelephonyManager.NETWORK_TYPE_CDMA:
+            case TelephonyManager.NETWORK_TYPE_1xRTT:
+            case TelephonyManager.NETWORK_TYPE_IDEN:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @param job being downloaded
+     *
+     * @return pacer for the job download
+     */
+    Pacer newPacer(final LoadJob job) {
+        return new Pacer(job);
+    }
+
+    /**
+     * @param bytesRead since download start
+     * @param bytesPerSecond bandwidth of the download
+     * @param elapsedMillis download time, without time it was held
+     *
+     * @return time to sleep to keep bandwidth, ms, 0 if download is not ahead of it
+     */
+    static long getPaceDelay(final long bytesRead, final long bytesPerSecond, final long elapsedMillis) {
+        final long aheadMillis = bytesRead * 1000 / bytesPerSecond - elapsedMillis;
+
+        return Math.max(0, Math.min(aheadMillis, MAX_PACE_SLEEP));
+    }
+
+    /**
+     * Slows background download down to policy bandwidth and holds it while foreground jobs are running
+     * or background loading is paused. Download goes at full speed once somebody waits for it.
+     * Held download keeps its engine slot, so it's never held while a foreground job may wait for that slot:
+     * running foreground jobs finish anyway, while pending one releases paused download.
+     */
+    class Pacer {
+        private final LoadJob mJob;
+        private final long mStartMillis = SystemClock.elapsedRealtime();
+        /** Time download was held, not counted for bandwidth */
+        private long mPausedMillis = 0;
+
+        Pacer(final LoadJob job) {
+            mJob = job;
+        }
+
+        /**
+         * Called on downloading thread after each read, sleeps if download has to be slowed down
+         *
+         * @param bytesRead since download start
+         */
+        void onBytesRead(final long bytesRead) {
+            try {
+                while (mustHold()) {
+                    Thread.sleep(PAUSE_CHECK_INTERVAL);
+                    mPausedMillis += PAUSE_CHECK_INTERVAL;
+                }
+
+                final long bytesPerSecond = mBytesPerSecond;
+
+                if (bytesPerSecond <= 0 || !LoadEngine.isBackground(mJob)) {
+                    return;
+                }
+
+                final long elapsedMillis = SystemClock.elapsedRealtime() - mStartMillis - mPausedMillis;
+                final long delay = getPaceDelay(bytesRead, bytesPerSecond, elapsedMillis);
+
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * @return true if download has to wait before reading more
+         */
+        boolean mustHold() {
+            if (mJob.isCancelled() || !LoadEngine.isBackground(mJob)) {
+                return false;
+            }
+
+            return mEngine.isForegroundRunning() || (mIsPaused && !mEngine.isForegroundPending());
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package android.text;
+
+/**
+ * JVM replacement of framework class for unit tests, android.jar stub returns defaults only
+ */
+public class TextUtils {
+    /**
+     * @param str to check
+     *
+     * @return true if the string is null or 0-length
+     */
+    public static boolean isEmpty(final CharSequence str) {
+        return str == null || str.length() == 0;
+    }
+}
@@ -0,0 +1,184 @@
+package com.alexstarc.imageloader.cache;
+
+import com.alexstarc.imageloader.net.Response;
+
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CacheValidatorsTest {
+    private static final long HOUR = 60 * 60 * 1000; // ms
+    private static final String ETAG = "\"abc\"";
+
+    @Test
+    public void maxAgeMakesResponseFresh() {
+        assertTrue(CacheValidators.fromResponse(response("Cache-Control", "public, max-age=600"), null).isFresh());
+    }
+
+    @Test
+    public void ageIsSubtractedFromMaxAge() {
+        assertFalse(CacheValidators.fromResponse(response("Cache-Control", "max-age=600", "Age", "900"), null)
+                .isFresh());
+    }
+
+    @Test
+    public void noCacheOverridesMaxAge() {
+        assertFalse(CacheValidators.fromResponse(response("Cache-Control", "no-cache, max-age=600"), null)
+                .isFresh());
+    }
+
+    @Test
+    public void expiresIsCountedFromResponseDate() {
+        final long now = System.currentTimeMillis();
+
+        assertTrue(CacheValidators.fromResponse(response("Date", Response.formatDate(now),
+                "Expires", Response.formatDate(now + HOUR)), null).isFresh());
+        // Server clock is ahead, expiration is in the future for device but already passed for server
+        assertFalse(CacheValidators.fromResponse(response("Date", Response.formatDate(now + 2 * HOUR),
+                "Expires", Response.formatDate(now + HOUR)), null).isFresh());
+    }
+
+    @Test
+    public void lastModifiedGivesHeuristicFreshness() {
+        final long now = System.currentTimeMillis();
+
+        assertTrue(CacheValidators.fromResponse(response("Date", Response.formatDate(now),
+                "Last-Modified", Response.formatDate(now - 10 * HOUR)), null).isFresh());
+    }
+
+    @Test
+    public void responseWithoutCacheHeadersIsFreshForWhile() {
+        final CacheValidators validators = CacheValidators.fromResponse(response(), null);
+
+        assertTrue(validators.isFresh());
+        assertFalse(validators.canRevalidate());
+        assertTrue(CacheValidators.parse(validators.serialize()).isFresh());
+    }
+
+    @Test
+    public void responseWithOnlyETagIsRevalidated() {
+        final CacheValidators validators = CacheValidators.fromResponse(response("ETag", ETAG), null);
+
+        assertFalse(validators.isFresh());
+        assertTrue(validators.canRevalidate());
+    }
+
+    @Test
+    public void noStoreResponseIsNotStorable() {
+        final CacheValidators validators = CacheValidators.fromResponse(response("Cache-Control",
+                "private, No-Store", "ETag", ETAG), null);
+
+        assertFalse(validators.isStorable());
+        assertFalse(validators.isFresh());
+        assertTrue(CacheValidators.fromResponse(response("Cache-Control", "no-cache"), null).isStorable());
+        assertTrue(CacheValidators.fromResponse(response(), null).isStorable());
+    }
+
+    @Test
+    public void validatorsAreAppliedAsConditionalHeaders() {
+        final String lastModified = Response.formatDate(System.currentTimeMillis() - HOUR);
+        final CacheValidators validators = CacheValidators.fromResponse(response("ETag", ETAG,
+                "Last-Modified", lastModified), null);
+        final Map<String, String> headers = new HashMap<String, String>();
+
+        validators.applyTo(headers);
+
+        assertTrue(validators.canRevalidate());
+        assertEquals(ETAG, headers.get("If-None-Match"));
+        assertEquals(lastModified, headers.get("If-Modified-Since"));
+    }
+
+    @Test
+    public void responseWithoutValidatorsCannotBeRevalidated() {
+        final CacheValidators validators = CacheValidators.fromResponse(response("Cache-Control", "max-age=60"), null);
+        final Map<String, String> headers = new HashMap<String, String>();
+
+        validators.applyTo(headers);
+
+        assertFalse(validators.canRevalidate());
+        assertTrue(headers.isEmpty());
+    }
+
+    @Test
+    public void notModifiedResponseKeepsPreviousValidators() {
+        final CacheValidators previous = CacheValidators.fromResponse(response("ETag", ETAG), null);
+        final CacheValidators updated = CacheValidators.fromResponse(response("Cache-Control", "max-age=60"),
+                previous);
+        final Map<String, String> headers = new HashMap<String, String>();
+
+        updated.applyTo(headers);
+
+        assertTrue(updated.isFresh());
+        assertEquals(ETAG, headers.get("If-None-Match"));
+    }
+
+    @Test
+    public void serializedValidatorsAreRestored() {
+        final CacheValidators validators = CacheValidators.fromResponse(response("ETag", ETAG,
+                "Cache-Control", "max-age=60"), null);
+        final CacheValidators restored = CacheValidators.parse(validators.serialize());
+
+        assertNotNull(restored);
+        assertEquals(validators.serialize(), restored.serialize());
+        assertTrue(restored.isFresh());
+    }
+
+    @Test
+    public void wrongSerializedFormIsNotParsed() {
+        assertNull(CacheValidators.parse(null));
+        assertNull(CacheValidators.parse(""));
+        assertNull(CacheValidators.parse("etag\nlast-modified"));
+        assertNull(CacheValidators.parse("etag\nlast-modified\nsoon"));
+    }
+
+    /**
+     * @param headers names and values
+     *
+     * @return response with the headers only
+     */
+    private static Response response(final String... headers) {
+        final Map<String, String> values = new HashMap<String, String>();
+
+        for (int i = 0; i < headers.length; i += 2) {
+            values.put(headers[i], headers[i + 1]);
+        }
+
+        return new Response() {
+            @Override
+            public int getStatus() {
+                return 200;
+            }
+
+            @Override
+            public String getMessage() {
+                return "";
+            }
+
+            @Override
+            public String getHeader(final String name) {
+                return values.get(name);
+            }
+
+            @Override
+            public InputStream getBody() {
+                return null;
+            }
+
+            @Override
+            public void release() {
+            }
+
+            @Override
+            public void abort() {
+            }
+        };
+    }
+}
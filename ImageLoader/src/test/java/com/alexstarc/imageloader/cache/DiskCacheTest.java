@@ -0,0 +1,183 @@
+package com.alexstarc.imageloader.cache;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.FilenameFilter;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DiskCacheTest {
+    private static final long MAX_SIZE = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void committedFileIsRenamedToKeyHash() throws IOException {
+        final DiskCache cache = new DiskCache(mFolder.getRoot(), MAX_SIZE);
+        final File file = write(cache.newFile("key", "jpg"), 10);
+
+        assertTrue(file.getName().endsWith(".jpg.tmp"));
+
+        final File cached = cache.commit("key", file);
+
+        assertEquals(DiskCache.hashKey("key") + ".jpg", cached.getName());
+        assertFalse(file.exists());
+        assertEquals(cached, cache.get("key"));
+        assertEquals(10, cache.size());
+        assertNull(cache.get("other"));
+    }
+
+    @Test
+    public void newFileReplacesPreviousOne() throws IOException {
+        final DiskCache cache = new DiskCache(mFolder.getRoot(), MAX_SIZE);
+        final File previous = cache.commit("key", write(cache.newFile("key", "png"), 10));
+        final File cached = cache.commit("key", write(cache.newFile("key", "jpg"), 20));
+
+        assertFalse(previous.exists());
+        assertEquals(cached, cache.get("key"));
+        assertEquals(20, cache.size());
+    }
+
+    @Test
+    public void entriesAndMetadataAreRestoredFromJournal() throws IOException {
+        final DiskCache cache = new DiskCache(mFolder.getRoot(), MAX_SIZE);
+
+        cache.commit("first", write(cache.newFile("first", "jpg"), 10), "first");
+        cache.commit("second", write(cache.newFile("second", "png"), 20));
+        cache.setMetadata("second", "updated");
+        cache.remove("first");
+
+        final DiskCache reopened = new DiskCache(mFolder.getRoot(), MAX_SIZE);
+
+        assertNull(reopened.get("first"));
+        assertNotNull(reopened.get("second"));
+        assertEquals("updated", reopened.getMetadata("second"));
+        assertEquals(20, reopened.size());
+    }
+
+    @Test
+    public void metadataWithSeparatorsIsKept() throws IOException {
+        final String metadata = "etag \"abc\"\nexpires 100%";
+        final DiskCache cache = new DiskCache(mFolder.getRoot(), MAX_SIZE);
+
+        cache.commit("key", write(cache.newFile("key", "jpg"), 10), metadata);
+
+        assertEquals(metadata, cache.getMetadata("key"));
+        assertEquals(metadata, new DiskCache(mFolder.getRoot(), MAX_SIZE).getMetadata("key"));
+    }
+
+    @Test
+    public void eldestEntryIsEvicted() throws IOException {
+        final DiskCache cache = new DiskCache(mFolder.getRoot(), 25);
+        final File first = cache.commit("first", write(cache.newFile("first", "jpg"), 10));
+
+        cache.commit("second", write(cache.newFile("second", "jpg"), 10));
+        // Access makes the first one recently used
+        cache.get("first");
+        cache.commit("third", write(cache.newFile("third", "jpg"), 10));
+
+        assertTrue(first.exists());
+        assertNull(cache.get("second"));
+        assertNotNull(cache.get("third"));
+        assertEquals(20, cache.size());
+    }
+
+    @Test
+    public void accessOrderIsRestoredFromJournal() throws IOException {
+        final DiskCache cache = new DiskCache(mFolder.getRoot(), MAX_SIZE);
+
+        cache.commit("first", write(cache.newFile("first", "jpg"), 10));
+        cache.commit("second", write(cache.newFile("second", "jpg"), 10));
+        cache.get("first");
+
+        // Smaller cache keeps only the recently used entry
+        final DiskCache reopened = new DiskCache(mFolder.getRoot(), 15);
+
+        assertNotNull(reopened.get("first"));
+        assertNull(reopened.get("second"));
+    }
+
+    @Test
+    public void entryWithChangedFileIsDroppedOnOpen() throws IOException {
+        final DiskCache cache = new DiskCache(mFolder.getRoot(), MAX_SIZE);
+        final File cached = cache.commit("key", write(cache.newFile("key", "jpg"), 10));
+
+        write(cached, 5);
+
+        final DiskCache reopened = new DiskCache(mFolder.getRoot(), MAX_SIZE);
+
+        assertNull(reopened.get("key"));
+        assertFalse(cached.exists());
+        assertEquals(0, reopened.size());
+    }
+
+    @Test
+    public void corruptedJournalLinesAreSkipped() throws IOException {
+        final DiskCache cache = new DiskCache(mFolder.getRoot(), MAX_SIZE);
+
+        cache.commit("key", write(cache.newFile("key", "jpg"), 10));
+
+        final FileWriter journal = new FileWriter(new File(mFolder.getRoot(), "journal"), true);
+
+        try {
+            journal.write("DIRTY abc\nREAD\n");
+        } finally {
+            journal.close();
+        }
+
+        assertNotNull(new DiskCache(mFolder.getRoot(), MAX_SIZE).get("key"));
+    }
+
+    @Test
+    public void orphansAreRemovedExceptKeptOnes() throws IOException {
+        final DiskCache cache = new DiskCache(mFolder.getRoot(), MAX_SIZE);
+        final File cached = cache.commit("key", write(cache.newFile("key", "jpg"), 10));
+        final File interrupted = write(cache.newFile("other", "jpg"), 10);
+        final File kept = write(new File(mFolder.getRoot(), "download.part"), 10);
+
+        new DiskCache(mFolder.getRoot(), MAX_SIZE).removeOrphans(new FilenameFilter() {
+            @Override
+            public boolean accept(final File directory, final String name) {
+                return name.endsWith(".part");
+            }
+        });
+
+        assertTrue(cached.exists());
+        assertTrue(kept.exists());
+        assertFalse(interrupted.exists());
+    }
+
+    @Test
+    public void abortedFileIsDeleted() throws IOException {
+        final DiskCache cache = new DiskCache(mFolder.getRoot(), MAX_SIZE);
+        final File file = write(cache.newFile("key", "jpg"), 10);
+
+        cache.abort(file);
+
+        assertFalse(file.exists());
+        assertNull(cache.get("key"));
+    }
+
+    private static File write(final File file, final int length) throws IOException {
+        final FileOutputStream output = new FileOutputStream(file);
+
+        try {
+            output.write(new byte[length]);
+        } finally {
+            output.close();
+        }
+
+        return file;
+    }
+}
@@ -0,0 +1,117 @@
+package com.alexstarc.imageloader.cache;
+
+import com.alexstarc.imageloader.net.Response;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PartialDownloadTest {
+    private static final String URL = "http://a.com/1.jpg";
+    private static final int WRITTEN = 100;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void downloadWithDetectedFormatIsResumed() throws IOException {
+        final PartialDownload partial = newDownload();
+
+        partial.start(response("\"abc\""));
+        partial.setExtension("jpg");
+        write(partial);
+        partial.suspend(WRITTEN);
+
+        final PartialDownload resumed = newDownload();
+
+        assertTrue(resumed.canResume());
+        assertEquals(WRITTEN, resumed.getBytesWritten());
+        assertEquals("jpg", resumed.getExtension());
+    }
+
+    @Test
+    public void downloadFailedBeforeHeaderIsDiscarded() throws IOException {
+        final PartialDownload partial = newDownload();
+
+        partial.start(response("\"abc\""));
+        write(partial);
+        partial.suspend(WRITTEN);
+
+        assertFalse(partial.getFile().exists());
+        assertFalse(newDownload().canResume());
+    }
+
+    @Test
+    public void downloadWithoutValidatorIsDiscarded() throws IOException {
+        final PartialDownload partial = newDownload();
+
+        partial.start(response(null));
+        partial.setExtension("jpg");
+        write(partial);
+        partial.suspend(WRITTEN);
+
+        assertFalse(partial.getFile().exists());
+        assertFalse(newDownload().canResume());
+    }
+
+    private PartialDownload newDownload() {
+        return new PartialDownload(new File(mFolder.getRoot(), "1" + PartialDownload.PARTIAL_EXTENSION),
+                new File(mFolder.getRoot(), "1" + PartialDownload.RECORD_EXTENSION), URL);
+    }
+
+    private static void write(final PartialDownload partial) throws IOException {
+        final OutputStream output = partial.openOutput(false, -1);
+
+        try {
+            output.write(new byte[WRITTEN]);
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * @param eTag of the response, can be null
+     *
+     * @return response with the ETag only
+     */
+    private static Response response(final String eTag) {
+        return new Response() {
+            @Override
+            public int getStatus() {
+                return 200;
+            }
+
+            @Override
+            public String getMessage() {
+                return "";
+            }
+
+            @Override
+            public String getHeader(final String name) {
+                return "ETag".equals(name) ? eTag : null;
+            }
+
+            @Override
+            public InputStream getBody() {
+                return null;
+            }
+
+            @Override
+            public void release() {
+            }
+
+            @Override
+            public void abort() {
+            }
+        };
+    }
+}
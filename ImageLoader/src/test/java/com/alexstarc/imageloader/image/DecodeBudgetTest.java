@@ -0,0 +1,98 @@
+package com.alexstarc.imageloader.image;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DecodeBudgetTest {
+    private static final long MB = 1024 * 1024;
+    private static final long WAIT = 5; // seconds
+
+    @Test
+    public void decodeWithinBudgetKeepsSampleSize() {
+        final DecodeBudget budget = new DecodeBudget(64 * MB);
+
+        assertEquals(1, budget.acquire(4000, 3000, Bitmap.Config.ARGB_8888, 1));
+        assertEquals(2, budget.acquire(4000, 3000, Bitmap.Config.ARGB_8888, 2));
+    }
+
+    @Test
+    public void decodeOverBudgetIsSampledDown() {
+        final DecodeBudget budget = new DecodeBudget(4 * MB);
+
+        // 48 MB at full size, 12 MB by 2, 3 MB by 4
+        assertEquals(4, budget.acquire(4000, 3000, Bitmap.Config.ARGB_8888, 1));
+    }
+
+    @Test
+    public void smallerPixelsNeedLessSampling() {
+        final DecodeBudget budget = new DecodeBudget(7 * MB);
+
+        assertEquals(4, budget.acquire(4000, 3000, Bitmap.Config.ARGB_8888, 2));
+        budget.release(4000, 3000, Bitmap.Config.ARGB_8888, 4);
+        assertEquals(2, budget.acquire(4000, 3000, Bitmap.Config.RGB_565, 2));
+    }
+
+    @Test
+    public void samplingStopsAtSinglePixel() {
+        final DecodeBudget budget = new DecodeBudget(1);
+
+        assertEquals(128, budget.acquire(100, 60, Bitmap.Config.ARGB_8888, 1));
+    }
+
+    @Test
+    public void decodeWaitsForRelease() throws InterruptedException {
+        final DecodeBudget budget = new DecodeBudget(10 * MB);
+        final AtomicInteger admitted = new AtomicInteger(-1);
+        final CountDownLatch done = new CountDownLatch(1);
+
+        // 8 MB each, the second one doesn't fit while the first one is decoded
+        assertEquals(1, budget.acquire(2000, 1000, Bitmap.Config.ARGB_8888, 1));
+
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                admitted.set(budget.acquire(2000, 1000, Bitmap.Config.ARGB_8888, 1));
+                done.countDown();
+            }
+        });
+
+        thread.start();
+
+        assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+
+        budget.release(2000, 1000, Bitmap.Config.ARGB_8888, 1);
+
+        assertTrue(done.await(WAIT, TimeUnit.SECONDS));
+        assertEquals(1, admitted.get());
+    }
+
+    @Test
+    public void interruptedWaitReturnsZero() throws InterruptedException {
+        final DecodeBudget budget = new DecodeBudget(10 * MB);
+        final AtomicInteger admitted = new AtomicInteger(-1);
+
+        budget.acquire(2000, 1000, Bitmap.Config.ARGB_8888, 1);
+
+        final Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                admitted.set(budget.acquire(2000, 1000, Bitmap.Config.ARGB_8888, 1));
+            }
+        });
+
+        thread.start();
+        thread.interrupt();
+        thread.join(WAIT * 1000);
+
+        assertEquals(0, admitted.get());
+    }
+}
@@ -0,0 +1,75 @@
+package com.alexstarc.imageloader.image;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class ImageDecoderTest {
+    /** Strip height of decoded regions, sampled pixels */
+    private static final int STRIP_ROWS = 512;
+
+    @Test
+    public void divisionIsRoundedUp() {
+        assertEquals(0, ImageDecoder.divideRoundUp(0, 4));
+        assertEquals(1, ImageDecoder.divideRoundUp(1, 4));
+        assertEquals(1, ImageDecoder.divideRoundUp(4, 4));
+        assertEquals(2, ImageDecoder.divideRoundUp(5, 4));
+        assertEquals(5000, ImageDecoder.divideRoundUp(5000, 1));
+    }
+
+    @Test
+    public void sampleSizeFitsEveryTarget() {
+        final TargetSize small = new TargetSize(100, 100, TargetSize.ScaleMode.FIT);
+        final TargetSize large = new TargetSize(1000, 1000, TargetSize.ScaleMode.FIT);
+
+        assertEquals(32, ImageDecoder.calculateInSampleSize(4000, 3000, Collections.singletonList(small)));
+        assertEquals(4, ImageDecoder.calculateInSampleSize(4000, 3000, Arrays.asList(small, large)));
+        assertEquals(4, ImageDecoder.calculateInSampleSize(4000, 3000, Arrays.asList(large, small)));
+    }
+
+    @Test
+    public void fullStripIsDrawnWhole() {
+        assertEquals(STRIP_ROWS, ImageDecoder.getDrawnRows(STRIP_ROWS * 4, 4, STRIP_ROWS, 3000));
+    }
+
+    @Test
+    public void onlyDecodedRowsOfReusedStripAreDrawn() {
+        // Last region is 1001 pixels high, reused strip still has rows of the previous one below decoded ones
+        assertEquals(251, ImageDecoder.getDrawnRows(1001, 4, STRIP_ROWS, 251));
+        assertEquals(251, ImageDecoder.getDrawnRows(1001, 4, STRIP_ROWS, 300));
+    }
+
+    @Test
+    public void stripIsNotDrawnBelowResult() {
+        // Decoder rounded sampled size up, result has fewer rows left
+        assertEquals(250, ImageDecoder.getDrawnRows(1001, 4, 252, 250));
+    }
+
+    @Test
+    public void stripsCoverResultExactly() {
+        final int[] heights = {1, STRIP_ROWS, STRIP_ROWS + 1, 4097, 10000};
+        final int[] sampleSizes = {1, 2, 4, 8};
+
+        for (int height : heights) {
+            for (int sampleSize : sampleSizes) {
+                final int resultRows = ImageDecoder.divideRoundUp(height, sampleSize);
+                final int stripHeight = STRIP_ROWS * sampleSize;
+                int drawnRows = 0;
+
+                for (int y = 0; y < height; y += stripHeight) {
+                    final int regionHeight = Math.min(stripHeight, height - y);
+
+                    assertEquals("strip at " + y, drawnRows, y / sampleSize);
+                    // Reused strip is always of full size
+                    drawnRows += ImageDecoder.getDrawnRows(regionHeight, sampleSize, STRIP_ROWS,
+                            resultRows - y / sampleSize);
+                }
+
+                assertEquals(height + " by " + sampleSize, resultRows, drawnRows);
+            }
+        }
+    }
+}
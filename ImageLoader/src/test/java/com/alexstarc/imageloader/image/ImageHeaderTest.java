@@ -0,0 +1,179 @@
+package com.alexstarc.imageloader.image;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ImageHeaderTest {
+    @Test
+    public void jpegSizeIsReadFromFrameHeader() throws IOException {
+        final ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+
+        write(jpeg, 0xFF, 0xD8);
+        // APP0 segment, then padded SOF0 with height 480 and width 640
+        write(jpeg, 0xFF, 0xE0, 0x00, 0x10);
+        jpeg.write(new byte[14]);
+        write(jpeg, 0xFF, 0xFF, 0xC0, 0x00, 0x11, 0x08, 0x01, 0xE0, 0x02, 0x80);
+
+        assertHeader(ImageHeader.Format.JPEG, 640, 480, jpeg.toByteArray());
+    }
+
+    @Test
+    public void jpegWithoutFrameHeaderIsNotParsed() throws IOException {
+        assertNull(parse(bytes(0xFF, 0xD8, 0xFF, 0xDA, 0x00, 0x08)));
+    }
+
+    @Test
+    public void jpegHeaderIsReadUpToLimit() throws IOException {
+        final ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+
+        write(jpeg, 0xFF, 0xD8);
+
+        // Three largest APP segments don't fit the limit, frame header is never reached
+        for (int i = 0; i < 3; i++) {
+            write(jpeg, 0xFF, 0xE1, 0xFF, 0xFF);
+            jpeg.write(new byte[0xFFFF - 2]);
+        }
+        write(jpeg, 0xFF, 0xC0, 0x00, 0x11, 0x08, 0x01, 0xE0, 0x02, 0x80);
+
+        assertNull(parse(jpeg.toByteArray()));
+    }
+
+    @Test
+    public void pngSizeIsReadFromImageHeaderChunk() throws IOException {
+        assertHeader(ImageHeader.Format.PNG, 256, 128, bytes(0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n',
+                0x00, 0x00, 0x00, 0x0D, 'I', 'H', 'D', 'R', 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x00, 0x80));
+    }
+
+    @Test
+    public void bmpTopDownHeightIsPositive() throws IOException {
+        final ByteArrayOutputStream bmp = new ByteArrayOutputStream();
+
+        write(bmp, 'B', 'M');
+        bmp.write(new byte[12]);
+        // Info header size 40, width 100, height -50
+        write(bmp, 40, 0, 0, 0, 100, 0, 0, 0, 0xCE, 0xFF, 0xFF, 0xFF);
+
+        assertHeader(ImageHeader.Format.BMP, 100, 50, bmp.toByteArray());
+    }
+
+    @Test
+    public void bmpCoreHeaderHasShortSize() throws IOException {
+        final ByteArrayOutputStream bmp = new ByteArrayOutputStream();
+
+        write(bmp, 'B', 'M');
+        bmp.write(new byte[12]);
+        write(bmp, 12, 0, 0, 0, 0x2C, 0x01, 0xC8, 0x00);
+
+        assertHeader(ImageHeader.Format.BMP, 300, 200, bmp.toByteArray());
+    }
+
+    @Test
+    public void gifSizeIsLogicalScreenSize() throws IOException {
+        assertHeader(ImageHeader.Format.GIF, 320, 240, bytes('G', 'I', 'F', '8', '9', 'a', 0x40, 0x01, 0xF0, 0x00));
+        assertHeader(ImageHeader.Format.GIF, 320, 240, bytes('G', 'I', 'F', '8', '7', 'a', 0x40, 0x01, 0xF0, 0x00));
+        assertNull(parse(bytes('G', 'I', 'F', '8', '8', 'a', 0x40, 0x01, 0xF0, 0x00)));
+    }
+
+    @Test
+    public void lossyWebpSizeIgnoresScaleBits() throws IOException {
+        // Frame tag, start code, then width 400 and height 300 with scale bits set
+        assertHeader(ImageHeader.Format.WEBP, 400, 300, webp('V', 'P', '8', ' ',
+                0x00, 0x00, 0x00, 0x9D, 0x01, 0x2A, 0x90, 0x41, 0x2C, 0x81));
+    }
+
+    @Test
+    public void losslessWebpSizeIsPacked() throws IOException {
+        // Width - 1 = 399 in low 14 bits, height - 1 = 299 in next 14 bits
+        final int bits = 399 | (299 << 14);
+
+        assertHeader(ImageHeader.Format.WEBP, 400, 300, webp('V', 'P', '8', 'L', 0x2F,
+                bits & 0xFF, (bits >> 8) & 0xFF, (bits >> 16) & 0xFF, (bits >> 24) & 0xFF));
+    }
+
+    @Test
+    public void extendedWebpSizeIsCanvasSize() throws IOException {
+        // Flags and reserved bytes, then 24 bit width - 1 = 69999 and height - 1 = 499
+        assertHeader(ImageHeader.Format.WEBP, 70000, 500, webp('V', 'P', '8', 'X', 0x10, 0x00, 0x00, 0x00,
+                0x6F, 0x11, 0x01, 0xF3, 0x01, 0x00));
+    }
+
+    @Test
+    public void unknownOrTruncatedDataIsNotParsed() throws IOException {
+        assertNull(parse(new byte[0]));
+        assertNull(parse(bytes('<', 'h', 't', 'm', 'l', '>')));
+        assertNull(parse(bytes(0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n', 0x00, 0x00)));
+        assertNull(parse(bytes('R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'A', 'V', 'E')));
+    }
+
+    @Test
+    public void formatIsFoundByExtension() {
+        assertSame(ImageHeader.Format.JPEG, ImageHeader.Format.fromExtension("JPG"));
+        assertSame(ImageHeader.Format.WEBP, ImageHeader.Format.fromExtension("webp"));
+        assertNull(ImageHeader.Format.fromExtension("jpeg2000"));
+        assertNull(ImageHeader.Format.fromExtension(null));
+    }
+
+    @Test
+    public void onlyUncompressedFormatsAreCompressible() {
+        assertTrue(ImageHeader.Format.BMP.isCompressible());
+        assertFalse(ImageHeader.Format.JPEG.isCompressible());
+        assertFalse(ImageHeader.Format.PNG.isCompressible());
+    }
+
+    private static void assertHeader(final ImageHeader.Format format, final int width, final int height,
+                                     final byte[] data) throws IOException {
+        final ImageHeader header = parse(data);
+
+        assertNotNull(header);
+        assertSame(format, header.getFormat());
+        assertEquals(width, header.getWidth());
+        assertEquals(height, header.getHeight());
+    }
+
+    private static ImageHeader parse(final byte[] data) throws IOException {
+        return ImageHeader.parse(new ByteArrayInputStream(data));
+    }
+
+    /**
+     * @return RIFF WEBP container with the first chunk, chunk size is not checked
+     */
+    private static byte[] webp(final int... chunk) {
+        final byte[] header = bytes('R', 'I', 'F', 'F', 0, 0, 0, 0, 'W', 'E', 'B', 'P');
+        final byte[] data = Arrays.copyOf(header, header.length + chunk.length + 4);
+
+        // Chunk type, then its size, then the rest
+        for (int i = 0; i < 4; i++) {
+            data[header.length + i] = (byte) chunk[i];
+        }
+        for (int i = 4; i < chunk.length; i++) {
+            data[header.length + 4 + i] = (byte) chunk[i];
+        }
+
+        return data;
+    }
+
+    private static byte[] bytes(final int... values) {
+        final byte[] data = new byte[values.length];
+
+        for (int i = 0; i < values.length; i++) {
+            data[i] = (byte) values[i];
+        }
+
+        return data;
+    }
+
+    private static void write(final ByteArrayOutputStream output, final int... values) throws IOException {
+        output.write(bytes(values));
+    }
+}
@@ -0,0 +1,64 @@
+package com.alexstarc.imageloader.image;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class TargetSizeTest {
+    @Test
+    public void fitSampleKeepsLongerSideNotSmaller() {
+        final TargetSize target = new TargetSize(500, 500, TargetSize.ScaleMode.FIT);
+
+        assertEquals(8, target.calculateInSampleSize(4000, 1000));
+        assertEquals(1, target.calculateInSampleSize(999, 200));
+        assertEquals(2, target.calculateInSampleSize(1000, 200));
+    }
+
+    @Test
+    public void fillSampleKeepsBothSidesNotSmaller() {
+        final TargetSize target = new TargetSize(500, 500, TargetSize.ScaleMode.FILL);
+
+        assertEquals(2, target.calculateInSampleSize(4000, 1000));
+        assertEquals(1, target.calculateInSampleSize(4000, 999));
+    }
+
+    @Test
+    public void fillCropsWiderImageSides() {
+        final TargetSize target = new TargetSize(400, 300, TargetSize.ScaleMode.FILL);
+
+        assertEquals(4000, target.getVisibleWidth(8000, 3000));
+        assertEquals(3000, target.getVisibleHeight(8000, 3000));
+    }
+
+    @Test
+    public void fillCropsTallerImageTopAndBottom() {
+        final TargetSize target = new TargetSize(400, 300, TargetSize.ScaleMode.FILL);
+
+        assertEquals(2000, target.getVisibleWidth(2000, 6000));
+        assertEquals(1500, target.getVisibleHeight(2000, 6000));
+    }
+
+    @Test
+    public void fitAndExactShowWholeImage() {
+        final TargetSize fit = new TargetSize(400, 300, TargetSize.ScaleMode.FIT);
+        final TargetSize exact = new TargetSize(400, 300, TargetSize.ScaleMode.EXACT);
+
+        assertEquals(8000, fit.getVisibleWidth(8000, 3000));
+        assertEquals(3000, exact.getVisibleHeight(8000, 3000));
+    }
+
+    @Test
+    public void fitOutputKeepsAspectRatioAndIsNotUpscaled() {
+        final TargetSize target = new TargetSize(400, 300, TargetSize.ScaleMode.FIT);
+
+        assertEquals(400, target.getOutputWidth(8000, 3000));
+        assertEquals(150, target.getOutputHeight(8000, 3000));
+        assertEquals(200, target.getOutputWidth(200, 100));
+        assertEquals(100, target.getOutputHeight(200, 100));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyTargetIsRejected() {
+        new TargetSize(0, 100, TargetSize.ScaleMode.FIT);
+    }
+}
@@ -0,0 +1,83 @@
+package com.alexstarc.imageloader.io;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BufferPoolTest {
+    private static final int KB = 1024;
+
+    private final BufferPool mPool = BufferPool.getInstance();
+
+    @Before
+    public void setUp() {
+        mPool.clear();
+    }
+
+    @Test
+    public void sizeIsRoundedToPowerOfTwoInBounds() {
+        assertEquals(BufferPool.MIN_SIZE, BufferPool.roundSize(0));
+        assertEquals(BufferPool.MIN_SIZE, BufferPool.roundSize(BufferPool.MIN_SIZE));
+        assertEquals(2 * BufferPool.MIN_SIZE, BufferPool.roundSize(BufferPool.MIN_SIZE + 1));
+        assertEquals(128 * KB, BufferPool.roundSize(100 * KB));
+        assertEquals(128 * KB, BufferPool.roundSize(128 * KB));
+        assertEquals(BufferPool.MAX_SIZE, BufferPool.roundSize(BufferPool.MAX_SIZE - 1));
+        assertEquals(BufferPool.MAX_SIZE, BufferPool.roundSize(100L * BufferPool.MAX_SIZE));
+    }
+
+    @Test
+    public void sizeHoldsTenthOfSecondAtThroughput() {
+        assertEquals(BufferPool.MIN_SIZE, mPool.chooseSize(-1, 50 * KB));
+        assertEquals(128 * KB, mPool.chooseSize(-1, 1000 * KB));
+        assertEquals(BufferPool.MAX_SIZE, mPool.chooseSize(-1, 100 * 1000 * KB));
+    }
+
+    @Test
+    public void smallResponseFitsSmallBuffer() {
+        assertEquals(BufferPool.MIN_SIZE, mPool.chooseSize(1000, 100 * 1000 * KB));
+        assertEquals(64 * KB, mPool.chooseSize(50 * KB, 100 * 1000 * KB));
+        assertEquals(BufferPool.MIN_SIZE, mPool.chooseSize(0, 0));
+    }
+
+    @Test
+    public void acquiredBufferIsDirectAndRounded() {
+        final ByteBuffer buffer = mPool.acquire(20 * KB);
+
+        assertTrue(buffer.isDirect());
+        assertEquals(32 * KB, buffer.capacity());
+    }
+
+    @Test
+    public void releasedBufferIsReusedCleared() {
+        final ByteBuffer buffer = mPool.acquire(BufferPool.MIN_SIZE);
+
+        buffer.put((byte) 1);
+        mPool.release(buffer);
+
+        final ByteBuffer reused = mPool.acquire(BufferPool.MIN_SIZE);
+
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(reused.capacity(), reused.limit());
+        // Only one buffer of this size was pooled
+        assertNotSame(reused, mPool.acquire(BufferPool.MIN_SIZE));
+    }
+
+    @Test
+    public void foreignBuffersAreNotPooled() {
+        mPool.release(ByteBuffer.allocate(BufferPool.MIN_SIZE));
+        mPool.release(ByteBuffer.allocateDirect(BufferPool.MIN_SIZE + 1));
+        mPool.release(null);
+
+        final ByteBuffer buffer = mPool.acquire(BufferPool.MIN_SIZE);
+
+        assertTrue(buffer.isDirect());
+        assertEquals(BufferPool.MIN_SIZE, buffer.capacity());
+    }
+}
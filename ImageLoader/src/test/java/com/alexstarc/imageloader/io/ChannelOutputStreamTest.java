@@ -0,0 +1,112 @@
+package com.alexstarc.imageloader.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class ChannelOutputStreamTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void writesLargerThanBufferAreKeptInOrder() throws IOException {
+        final File file = mFolder.newFile("data.part");
+        final byte[] data = new byte[3 * BufferPool.MIN_SIZE + 123];
+
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+
+        final ChannelOutputStream output = open(file, 0);
+
+        // Single bytes, part of buffer and several buffers at once
+        output.write(data[0]);
+        output.write(data, 1, 100);
+        output.write(data, 101, data.length - 101);
+        output.close();
+
+        assertArrayEquals(data, read(file));
+    }
+
+    @Test
+    public void writingStartsFromPosition() throws IOException {
+        final File file = mFolder.newFile("data.part");
+        final RandomAccessFile existing = new RandomAccessFile(file, "rw");
+
+        existing.write(new byte[] {1, 2, 3, 4});
+        existing.close();
+
+        final ChannelOutputStream output = open(file, 2);
+
+        output.write(new byte[] {7, 8, 9});
+        output.close();
+
+        assertArrayEquals(new byte[] {1, 2, 7, 8, 9}, read(file));
+    }
+
+    @Test
+    public void preallocatedTailIsCutOnClose() throws IOException {
+        final File file = mFolder.newFile("data.part");
+        final RandomAccessFile preallocated = new RandomAccessFile(file, "rw");
+
+        preallocated.setLength(BufferPool.MAX_SIZE);
+
+        final ChannelOutputStream output = new ChannelOutputStream(preallocated, 0, BufferPool.MIN_SIZE,
+                BufferPool.getInstance());
+
+        output.write(new byte[10]);
+        output.close();
+
+        assertEquals(10, file.length());
+    }
+
+    @Test
+    public void flushWritesBufferedData() throws IOException {
+        final File file = mFolder.newFile("data.part");
+        final ChannelOutputStream output = open(file, 0);
+
+        output.write(new byte[] {5, 6});
+        output.flush();
+
+        try {
+            assertArrayEquals(new byte[] {5, 6}, read(file));
+        } finally {
+            output.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void writeAfterCloseFails() throws IOException {
+        final ChannelOutputStream output = open(mFolder.newFile("data.part"), 0);
+
+        output.close();
+        // Second close does nothing
+        output.close();
+        output.write(1);
+    }
+
+    private static ChannelOutputStream open(final File file, final long position) throws IOException {
+        return new ChannelOutputStream(new RandomAccessFile(file, "rw"), position, BufferPool.MIN_SIZE,
+                BufferPool.getInstance());
+    }
+
+    private static byte[] read(final File file) throws IOException {
+        final RandomAccessFile input = new RandomAccessFile(file, "r");
+
+        try {
+            final byte[] data = new byte[(int) input.length()];
+
+            input.readFully(data);
+            return data;
+        } finally {
+            input.close();
+        }
+    }
+}
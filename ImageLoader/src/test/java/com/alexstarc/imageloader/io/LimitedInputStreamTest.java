@@ -0,0 +1,101 @@
+package com.alexstarc.imageloader.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class LimitedInputStreamTest {
+    private static final int LIMIT = 100;
+
+    @Test
+    public void dataOfLimitSizeIsRead() throws IOException {
+        final InputStream input = new LimitedInputStream(data(LIMIT), LIMIT);
+
+        assertEquals(LIMIT, readAll(input));
+        assertEquals(-1, input.read());
+    }
+
+    @Test(expected = LimitedInputStream.LimitExceededException.class)
+    public void byteOverLimitFailsBulkRead() throws IOException {
+        readAll(new LimitedInputStream(data(LIMIT + 1), LIMIT));
+    }
+
+    @Test(expected = LimitedInputStream.LimitExceededException.class)
+    public void byteOverLimitFailsSingleByteRead() throws IOException {
+        final InputStream input = new LimitedInputStream(data(LIMIT + 1), LIMIT);
+
+        for (int i = 0; i <= LIMIT; i++) {
+            input.read();
+        }
+    }
+
+    @Test
+    public void onlyOneByteOverLimitIsRead() throws IOException {
+        final ByteArrayInputStream source = data(10 * LIMIT);
+        final InputStream input = new LimitedInputStream(source, LIMIT);
+
+        try {
+            input.read(new byte[10 * LIMIT], 0, 10 * LIMIT);
+            fail("Limit is not checked");
+        } catch (LimitedInputStream.LimitExceededException e) {
+            // Rest of runaway response is left in the source
+            assertEquals(10 * LIMIT - LIMIT - 1, source.available());
+        }
+    }
+
+    @Test
+    public void readsAfterLimitKeepFailing() throws IOException {
+        final InputStream input = new LimitedInputStream(data(2 * LIMIT), LIMIT);
+
+        try {
+            readAll(input);
+            fail("Limit is not checked");
+        } catch (LimitedInputStream.LimitExceededException e) {
+            // Expected
+        }
+
+        try {
+            input.read(new byte[10], 0, 10);
+            fail("Read after limit succeeded");
+        } catch (LimitedInputStream.LimitExceededException e) {
+            // Expected
+        }
+    }
+
+    @Test(expected = LimitedInputStream.LimitExceededException.class)
+    public void skippedDataIsCounted() throws IOException {
+        final InputStream input = new LimitedInputStream(data(2 * LIMIT), LIMIT);
+
+        input.skip(LIMIT);
+        input.read();
+    }
+
+    @Test(expected = IOException.class)
+    public void markIsNotSupported() throws IOException {
+        final InputStream input = new LimitedInputStream(data(LIMIT), LIMIT);
+
+        input.mark(LIMIT);
+        input.reset();
+    }
+
+    private static ByteArrayInputStream data(final int length) {
+        return new ByteArrayInputStream(new byte[length]);
+    }
+
+    private static int readAll(final InputStream input) throws IOException {
+        final byte[] buffer = new byte[16];
+        int total = 0;
+        int count;
+
+        while ((count = input.read(buffer, 0, buffer.length)) != -1) {
+            total += count;
+        }
+
+        return total;
+    }
+}
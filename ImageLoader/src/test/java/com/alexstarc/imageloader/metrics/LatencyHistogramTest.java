@@ -0,0 +1,76 @@
+package com.alexstarc.imageloader.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LatencyHistogramTest {
+    @Test
+    public void emptyHistogramReportsZeros() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMean());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void percentilesUseNearestRank() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        // Added out of order, 1 to 100 ms
+        for (int i = 100; i > 0; i--) {
+            histogram.add(i);
+        }
+
+        assertEquals(50, histogram.getPercentile(50));
+        assertEquals(90, histogram.getPercentile(90));
+        assertEquals(99, histogram.getPercentile(99));
+        assertEquals(100, histogram.getPercentile(99.5));
+        assertEquals(100, histogram.getPercentile(100));
+        assertEquals(1, histogram.getPercentile(0.1));
+    }
+
+    @Test
+    public void singleSampleIsEveryPercentile() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.add(42);
+
+        assertEquals(42, histogram.getPercentile(1));
+        assertEquals(42, histogram.getPercentile(50));
+        assertEquals(42, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void percentilesFollowRecentSamples() {
+        final LatencyHistogram histogram = new LatencyHistogram(10);
+
+        for (int i = 0; i < 10; i++) {
+            histogram.add(1000);
+        }
+        // Old slow samples are replaced by fast ones
+        for (int i = 0; i < 10; i++) {
+            histogram.add(10);
+        }
+
+        assertEquals(10, histogram.getPercentile(50));
+        assertEquals(10, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void countMeanAndMaxCoverAllSamples() {
+        final LatencyHistogram histogram = new LatencyHistogram(4);
+
+        histogram.add(1000);
+        for (int i = 0; i < 9; i++) {
+            histogram.add(100);
+        }
+
+        assertEquals(10, histogram.getCount());
+        assertEquals(190, histogram.getMean());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(100, histogram.getPercentile(100));
+    }
+}
@@ -0,0 +1,93 @@
+package com.alexstarc.imageloader.net;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class BandwidthEstimatorTest {
+    private static final String HOST = "cdn.example.com";
+    private static final long KB = 1024;
+
+    private final BandwidthEstimator mEstimator = BandwidthEstimator.getInstance();
+
+    @After
+    public void tearDown() {
+        mEstimator.reset();
+    }
+
+    @Test
+    public void unknownHostGetsDefaults() {
+        assertEquals(HttpClient.DEFAULT_TIMEOUT, mEstimator.getConnectTimeout(HOST));
+        assertEquals(HttpClient.DEFAULT_TIMEOUT, mEstimator.getReadTimeout(HOST));
+        assertEquals(Integer.MAX_VALUE, mEstimator.getMaxConcurrent(HOST));
+        assertEquals(KB, mEstimator.getMinThroughput(HOST));
+    }
+
+    @Test
+    public void fastHostTimeoutsAreClampedFromBelow() {
+        mEstimator.recordLatency(HOST, 100);
+
+        assertEquals(3000, mEstimator.getConnectTimeout(HOST));
+        // Read timeout limits body reads too, so it's never shorter than default
+        assertEquals(HttpClient.DEFAULT_TIMEOUT, mEstimator.getReadTimeout(HOST));
+    }
+
+    @Test
+    public void slowHostTimeoutsAreClampedFromAbove() {
+        mEstimator.recordLatency(HOST, 20000);
+
+        assertEquals(HttpClient.DEFAULT_TIMEOUT, mEstimator.getConnectTimeout(HOST));
+        assertEquals(30000, mEstimator.getReadTimeout(HOST));
+    }
+
+    @Test
+    public void timeoutCoversLatencyDeviation() {
+        // Latency 1000 ms with deviation 500 ms, timeout is latency plus four deviations
+        mEstimator.recordLatency(HOST, 1000);
+
+        assertEquals(3000, mEstimator.getConnectTimeout(HOST));
+
+        mEstimator.recordLatency(HOST.toUpperCase(), 3000);
+
+        // 1500 ms average with 875 ms deviation
+        assertEquals(5000, mEstimator.getConnectTimeout(HOST));
+    }
+
+    @Test
+    public void slowerHostGetsFewerParallelDownloads() {
+        mEstimator.recordThroughput("slow", 32 * KB, 1000);
+        mEstimator.recordThroughput("moderate", 100 * KB, 1000);
+        mEstimator.recordThroughput("fast", 1000 * KB, 1000);
+
+        assertEquals(1, mEstimator.getMaxConcurrent("slow"));
+        assertEquals(2, mEstimator.getMaxConcurrent("moderate"));
+        assertEquals(Integer.MAX_VALUE, mEstimator.getMaxConcurrent("fast"));
+    }
+
+    @Test
+    public void smallDownloadsDoNotUpdateThroughput() {
+        mEstimator.recordThroughput(HOST, 15 * KB, 1000);
+
+        assertEquals(0, mEstimator.getBytesPerSecond(HOST), 0);
+    }
+
+    @Test
+    public void stallThresholdFollowsHostThroughputWithinBounds() {
+        mEstimator.recordThroughput("slow", 16 * KB, 1000);
+        mEstimator.recordThroughput("moderate", 200 * KB, 1000);
+        mEstimator.recordThroughput("fast", 10000 * KB, 1000);
+
+        assertEquals(KB, mEstimator.getMinThroughput("slow"));
+        assertEquals(10 * KB, mEstimator.getMinThroughput("moderate"));
+        assertEquals(16 * KB, mEstimator.getMinThroughput("fast"));
+    }
+
+    @Test
+    public void resetDropsEstimates() {
+        mEstimator.recordLatency(HOST, 20000);
+        mEstimator.reset();
+
+        assertEquals(HttpClient.DEFAULT_TIMEOUT, mEstimator.getReadTimeout(HOST));
+    }
+}
@@ -0,0 +1,113 @@
+package com.alexstarc.imageloader.net;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+    private static final String HOST = "images.example.com";
+    private static final long START = 100000; // ms
+    private static final long OPEN_DURATION = 30000; // ms
+    private static final long MAX_OPEN_DURATION = 5 * 60000; // ms
+
+    private final CircuitBreaker mBreaker = new CircuitBreaker();
+
+    @Test
+    public void fewFailuresDoNotBlockHost() {
+        fail(4, START);
+
+        assertTrue(mBreaker.allowRequest(HOST, START));
+    }
+
+    @Test
+    public void consecutiveFailuresBlockHost() {
+        fail(5, START);
+
+        assertFalse(mBreaker.allowRequest(HOST, START));
+        assertFalse(mBreaker.allowRequest(HOST, START + OPEN_DURATION - 1));
+        // Other hosts are not affected
+        assertTrue(mBreaker.allowRequest("other.example.com", START));
+    }
+
+    @Test
+    public void successResetsFailureCount() {
+        fail(4, START);
+        mBreaker.onSuccess(HOST);
+        fail(4, START);
+
+        assertTrue(mBreaker.allowRequest(HOST, START));
+    }
+
+    @Test
+    public void singleProbeIsLetThroughAfterBlock() {
+        fail(5, START);
+
+        assertTrue(mBreaker.allowRequest(HOST, START + OPEN_DURATION));
+        assertFalse(mBreaker.allowRequest(HOST, START + OPEN_DURATION));
+    }
+
+    @Test
+    public void successfulProbeUnblocksHost() {
+        fail(5, START);
+        mBreaker.allowRequest(HOST, START + OPEN_DURATION);
+        mBreaker.onSuccess(HOST);
+
+        assertTrue(mBreaker.allowRequest(HOST, START + OPEN_DURATION));
+        assertTrue(mBreaker.allowRequest(HOST, START + OPEN_DURATION));
+    }
+
+    @Test
+    public void failedProbeDoublesBlockUpToLimit() {
+        fail(5, START);
+
+        long now = START;
+        long duration = OPEN_DURATION;
+
+        for (int i = 0; i < 6; i++) {
+            now += duration;
+            assertTrue("probe " + i, mBreaker.allowRequest(HOST, now));
+            mBreaker.onFailure(HOST, now);
+
+            duration = Math.min(duration * 2, MAX_OPEN_DURATION);
+            assertFalse("blocked " + i, mBreaker.allowRequest(HOST, now + duration - 1));
+        }
+
+        assertTrue(mBreaker.allowRequest(HOST, now + MAX_OPEN_DURATION));
+    }
+
+    @Test
+    public void probeWhichNeverReportedExpires() {
+        fail(5, START);
+
+        final long probeStart = START + OPEN_DURATION;
+
+        assertTrue(mBreaker.allowRequest(HOST, probeStart));
+        assertFalse(mBreaker.allowRequest(HOST, probeStart + OPEN_DURATION - 1));
+        assertTrue(mBreaker.allowRequest(HOST, probeStart + OPEN_DURATION));
+    }
+
+    @Test
+    public void resetUnblocksAllHosts() {
+        fail(5, START);
+        mBreaker.reset();
+
+        assertTrue(mBreaker.allowRequest(HOST, START));
+    }
+
+    @Test
+    public void requestsWithoutHostAreAlwaysAllowed() {
+        for (int i = 0; i < 10; i++) {
+            mBreaker.onFailure("", START);
+        }
+
+        assertTrue(mBreaker.allowRequest("", START));
+        assertTrue(mBreaker.allowRequest(null, START));
+    }
+
+    private void fail(final int count, final long now) {
+        for (int i = 0; i < count; i++) {
+            mBreaker.onFailure(HOST, now);
+        }
+    }
+}
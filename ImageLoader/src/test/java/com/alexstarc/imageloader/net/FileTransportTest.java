@@ -0,0 +1,99 @@
+package com.alexstarc.imageloader.net;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class FileTransportTest {
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private final FileTransport mTransport = new FileTransport();
+
+    @Test
+    public void existingFileIsServed() throws IOException {
+        final byte[] data = {1, 2, 3, 4, 5};
+        final File file = mFolder.newFile("image.png");
+        final FileOutputStream output = new FileOutputStream(file);
+
+        try {
+            output.write(data);
+        } finally {
+            output.close();
+        }
+
+        final Response response = fetch(file.toURI().toString());
+
+        try {
+            assertEquals(HttpURLConnection.HTTP_OK, response.getStatus());
+            assertEquals(data.length, response.getContentLength());
+            assertEquals("image/png", response.getContentType());
+            // Local file is loaded again every time instead of revalidation
+            assertEquals("no-cache", response.getHeader("cache-control"));
+            assertArrayEquals(data, readAll(response.getBody()));
+        } finally {
+            response.release();
+        }
+    }
+
+    @Test
+    public void missingFileIsNotFound() throws IOException {
+        final Response response = fetch(new File(mFolder.getRoot(), "missing.jpg").toURI().toString());
+
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, response.getStatus());
+        assertNull(response.getBody());
+    }
+
+    @Test
+    public void directoryIsNotFound() throws IOException {
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, fetch(mFolder.getRoot().toURI().toString()).getStatus());
+    }
+
+    @Test(expected = MalformedURLException.class)
+    public void urlWithHostIsMalformed() throws IOException {
+        fetch("file://host/image.jpg");
+    }
+
+    @Test(expected = MalformedURLException.class)
+    public void urlWithQueryIsMalformed() throws IOException {
+        fetch("file:/image.jpg?size=10");
+    }
+
+    @Test
+    public void schemeTransportRoutesFileUrls() throws IOException {
+        final SchemeTransport transport = new SchemeTransport(null).register("FILE", mTransport);
+        final Response response = transport.fetch(new File(mFolder.getRoot(), "missing.jpg").toURI().toString(),
+                Collections.<String, String>emptyMap(), null);
+
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, response.getStatus());
+    }
+
+    private Response fetch(final String url) throws IOException {
+        return mTransport.fetch(url, Collections.<String, String>emptyMap(), null);
+    }
+
+    static byte[] readAll(final InputStream input) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        int count;
+
+        while ((count = input.read(buffer)) != -1) {
+            output.write(buffer, 0, count);
+        }
+
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,158 @@
+package com.alexstarc.imageloader.net;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class LoopbackServerTest {
+    private static final String PATH = "/image.jpg";
+    private static final int RESUMED = 100;
+
+    private final LoopbackServer mServer = new LoopbackServer();
+    private final HttpTransport mTransport = new HttpTransport(HttpClient.getInstance());
+    private final byte[] mData = new byte[20000];
+
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < mData.length; i++) {
+            mData[i] = (byte) i;
+        }
+
+        mServer.put(PATH, mData, "image/jpeg");
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    @Test
+    public void resourceIsServedWithValidators() throws IOException {
+        final Response response = fetch(new HashMap<String, String>());
+
+        try {
+            assertEquals(HttpURLConnection.HTTP_OK, response.getStatus());
+            assertEquals(mData.length, response.getContentLength());
+            assertEquals("image/jpeg", response.getContentType());
+            assertEquals("max-age=0", response.getHeader("Cache-Control"));
+            assertNotNull(response.getHeader("ETag"));
+            assertArrayEquals(mData, FileTransportTest.readAll(response.getBody()));
+        } finally {
+            response.release();
+        }
+    }
+
+    @Test
+    public void sameETagIsNotModified() throws IOException {
+        final Map<String, String> headers = new HashMap<String, String>();
+
+        headers.put("If-None-Match", getETag());
+
+        final Response response = fetch(headers);
+
+        try {
+            assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, response.getStatus());
+        } finally {
+            response.release();
+        }
+    }
+
+    @Test
+    public void rangeResumesDownload() throws IOException {
+        final Map<String, String> headers = new HashMap<String, String>();
+
+        headers.put("Range", "bytes=" + RESUMED + "-");
+        headers.put("If-Range", getETag());
+
+        final Response response = fetch(headers);
+
+        try {
+            assertEquals(HttpURLConnection.HTTP_PARTIAL, response.getStatus());
+            assertEquals(mData.length - RESUMED, response.getContentLength());
+            assertEquals("bytes " + RESUMED + "-" + (mData.length - 1) + "/" + mData.length,
+                    response.getHeader("Content-Range"));
+            assertArrayEquals(Arrays.copyOfRange(mData, RESUMED, mData.length),
+                    FileTransportTest.readAll(response.getBody()));
+        } finally {
+            response.release();
+        }
+    }
+
+    @Test
+    public void changedResourceIsSentWhole() throws IOException {
+        final Map<String, String> headers = new HashMap<String, String>();
+
+        headers.put("Range", "bytes=" + RESUMED + "-");
+        headers.put("If-Range", "\"old\"");
+
+        final Response response = fetch(headers);
+
+        try {
+            assertEquals(HttpURLConnection.HTTP_OK, response.getStatus());
+            assertArrayEquals(mData, FileTransportTest.readAll(response.getBody()));
+        } finally {
+            response.release();
+        }
+    }
+
+    @Test
+    public void rangeAfterEndIsNotSatisfiable() throws IOException {
+        final Map<String, String> headers = new HashMap<String, String>();
+
+        headers.put("Range", "bytes=" + mData.length + "-");
+
+        final Response response = fetch(headers);
+
+        try {
+            assertEquals(416, response.getStatus());
+            assertEquals("bytes */" + mData.length, response.getHeader("Content-Range"));
+        } finally {
+            response.release();
+        }
+    }
+
+    @Test
+    public void removedResourceIsNotFound() throws IOException {
+        mServer.remove(PATH);
+
+        final Response response = fetch(new HashMap<String, String>());
+
+        try {
+            assertEquals(HttpURLConnection.HTTP_NOT_FOUND, response.getStatus());
+        } finally {
+            response.release();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void stoppedServerHasNoUrl() {
+        mServer.stop();
+        mServer.getUrl(PATH);
+    }
+
+    private String getETag() throws IOException {
+        final Response response = fetch(new HashMap<String, String>());
+
+        try {
+            FileTransportTest.readAll(response.getBody());
+            return response.getHeader("ETag");
+        } finally {
+            response.release();
+        }
+    }
+
+    private Response fetch(final Map<String, String> headers) throws IOException {
+        return mTransport.fetch(mServer.getUrl(PATH), headers, null);
+    }
+}
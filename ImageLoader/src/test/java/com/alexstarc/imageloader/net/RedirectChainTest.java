@@ -0,0 +1,110 @@
+package com.alexstarc.imageloader.net;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RedirectChainTest {
+    private static final String PATH = "/image.jpg";
+
+    private final LoopbackServer mServer = new LoopbackServer();
+    private final HttpTransport mTransport = new HttpTransport(HttpClient.getInstance());
+    private final byte[] mData = new byte[1000];
+
+    @Before
+    public void setUp() throws IOException {
+        mServer.put(PATH, mData, "image/jpeg");
+        // Same host chain of every redirect status, relative and absolute locations
+        mServer.putRedirect("/1", HttpURLConnection.HTTP_MOVED_PERM, "/2");
+        mServer.putRedirect("/2", HttpURLConnection.HTTP_MOVED_TEMP, "3");
+        mServer.putRedirect("/3", HttpURLConnection.HTTP_SEE_OTHER, "/4");
+        mServer.putRedirect("/4", RedirectChain.HTTP_TEMPORARY_REDIRECT, "/5");
+        mServer.putRedirect("/cycle", HttpURLConnection.HTTP_MOVED_TEMP, "/cycle");
+        mServer.start();
+        mServer.putRedirect("/5", RedirectChain.HTTP_PERMANENT_REDIRECT, mServer.getUrl(PATH));
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop();
+    }
+
+    @Test
+    public void everyHopIsSeenAndCounted() throws IOException {
+        final RedirectChain chain = new RedirectChain(mServer.getUrl("/1"), RetryPolicy.DEFAULT_MAX_REDIRECTS);
+        final Response response = load(chain);
+
+        try {
+            assertEquals(HttpURLConnection.HTTP_OK, response.getStatus());
+            assertArrayEquals(mData, FileTransportTest.readAll(response.getBody()));
+            assertEquals(5, chain.getCount());
+            assertEquals(mServer.getUrl(PATH), chain.getUrl());
+        } finally {
+            response.release();
+        }
+    }
+
+    @Test
+    public void chainIsCapped() throws IOException {
+        final RedirectChain chain = new RedirectChain(mServer.getUrl("/1"), 4);
+
+        assertNull(load(chain));
+        assertEquals(4, chain.getCount());
+        assertEquals(mServer.getUrl("/5"), chain.getUrl());
+    }
+
+    @Test
+    public void cycleStopsAtLimit() throws IOException {
+        final RedirectChain chain = new RedirectChain(mServer.getUrl("/cycle"), RetryPolicy.DEFAULT_MAX_REDIRECTS);
+
+        assertNull(load(chain));
+        assertEquals(RetryPolicy.DEFAULT_MAX_REDIRECTS, chain.getCount());
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void redirectWithoutLocationFails() throws IOException {
+        mServer.putRedirect("/broken", HttpURLConnection.HTTP_MOVED_TEMP, null);
+
+        load(new RedirectChain(mServer.getUrl("/broken"), RetryPolicy.DEFAULT_MAX_REDIRECTS));
+    }
+
+    @Test
+    public void onlyRedirectStatusesAreFollowed() {
+        assertTrue(RedirectChain.isRedirect(HttpURLConnection.HTTP_SEE_OTHER));
+        assertTrue(RedirectChain.isRedirect(RedirectChain.HTTP_PERMANENT_REDIRECT));
+        assertFalse(RedirectChain.isRedirect(HttpURLConnection.HTTP_NOT_MODIFIED));
+        assertFalse(RedirectChain.isRedirect(HttpURLConnection.HTTP_OK));
+    }
+
+    /**
+     * @return final response, null if chain is over the limit
+     */
+    private Response load(final RedirectChain chain) throws IOException {
+        while (true) {
+            final Response response = mTransport.fetch(chain.getUrl(), new HashMap<String, String>(), null);
+
+            if (!RedirectChain.isRedirect(response.getStatus())) {
+                return response;
+            }
+
+            final boolean followed = chain.follow(response);
+
+            response.release();
+
+            if (!followed) {
+                return null;
+            }
+        }
+    }
+}
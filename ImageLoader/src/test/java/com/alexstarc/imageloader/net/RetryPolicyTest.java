@@ -0,0 +1,150 @@
+package com.alexstarc.imageloader.net;
+
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.net.ssl.SSLHandshakeException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+    private static final int SAMPLES = 1000;
+
+    @Test
+    public void serverOverloadAndGatewayErrorsAreTransient() {
+        assertTrue(RetryPolicy.isTransient(408));
+        assertTrue(RetryPolicy.isTransient(429));
+        assertTrue(RetryPolicy.isTransient(500));
+        assertTrue(RetryPolicy.isTransient(503));
+        assertTrue(RetryPolicy.isTransient(504));
+        assertFalse(RetryPolicy.isTransient(400));
+        assertFalse(RetryPolicy.isTransient(404));
+        assertFalse(RetryPolicy.isTransient(501));
+    }
+
+    @Test
+    public void connectionProblemsAreTransient() {
+        assertTrue(RetryPolicy.isTransient(new SocketTimeoutException()));
+        assertTrue(RetryPolicy.isTransient(new ConnectException()));
+        assertTrue(RetryPolicy.isTransient(new UnknownHostException()));
+        assertTrue(RetryPolicy.isTransient(new EOFException()));
+        // Interrupted thread, e.g. cancelled job, and protocol errors fail the same way again
+        assertFalse(RetryPolicy.isTransient(new InterruptedIOException()));
+        assertFalse(RetryPolicy.isTransient(new SSLHandshakeException("untrusted")));
+        assertFalse(RetryPolicy.isTransient(new IOException()));
+    }
+
+    @Test
+    public void backoffIsJitteredUnderGrowingLimit() {
+        final RetryPolicy policy = new RetryPolicy(6, 100, 1000, 5);
+
+        for (int retry = 0; retry < 6; retry++) {
+            final long limit = Math.min(1000, 100L << retry);
+            final Set<Long> delays = new HashSet<Long>();
+
+            for (int i = 0; i < SAMPLES; i++) {
+                final long delay = policy.getDelay(retry, new SocketTimeoutException());
+
+                assertTrue("retry " + retry + " delay " + delay, delay >= 0 && delay < limit);
+                delays.add(delay);
+            }
+
+            // Clients failed together don't retry together
+            assertTrue("retry " + retry, delays.size() > 10);
+        }
+    }
+
+    @Test
+    public void retriesStopAtLimit() {
+        final RetryPolicy policy = RetryPolicy.getDefault();
+
+        assertTrue(policy.getDelay(RetryPolicy.DEFAULT_MAX_RETRIES - 1, new ConnectException()) >= 0);
+        assertEquals(RetryPolicy.NO_RETRY, policy.getDelay(RetryPolicy.DEFAULT_MAX_RETRIES, new ConnectException()));
+        assertEquals(RetryPolicy.NO_RETRY, policy.getDelay(RetryPolicy.DEFAULT_MAX_RETRIES, 503, response(null)));
+        assertEquals(RetryPolicy.NO_RETRY, new RetryPolicy(0, 100, 100, 0).getDelay(0, new ConnectException()));
+    }
+
+    @Test
+    public void permanentFailuresAreNotRetried() {
+        final RetryPolicy policy = RetryPolicy.getDefault();
+
+        assertEquals(RetryPolicy.NO_RETRY, policy.getDelay(0, 404, response(null)));
+        assertEquals(RetryPolicy.NO_RETRY, policy.getDelay(0, new IOException()));
+    }
+
+    @Test
+    public void retryAfterSecondsIsHonoured() {
+        final RetryPolicy policy = RetryPolicy.getDefault();
+
+        assertEquals(5000, policy.getDelay(0, 503, response("5")));
+        // Backoff is used if server asks for less
+        assertTrue(policy.getDelay(0, 429, response("0")) < RetryPolicy.DEFAULT_BASE_DELAY);
+    }
+
+    @Test
+    public void retryAfterDateIsHonoured() {
+        final long delay = RetryPolicy.getDefault().getDelay(0, 503,
+                response(Response.formatDate(System.currentTimeMillis() + 10000)));
+
+        // Http date has second precision
+        assertTrue("delay " + delay, delay > 8000 && delay <= 10000);
+    }
+
+    @Test
+    public void tooLongRetryAfterIsNotWaited() {
+        assertEquals(RetryPolicy.NO_RETRY, RetryPolicy.getDefault().getDelay(0, 503, response("120")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxDelayBelowBaseIsRejected() {
+        new RetryPolicy(3, 1000, 500, 5);
+    }
+
+    /**
+     * @param retryAfter value of Retry-After header, null if there's none
+     *
+     * @return failed response
+     */
+    private static Response response(final String retryAfter) {
+        return new Response() {
+            @Override
+            public int getStatus() {
+                return 503;
+            }
+
+            @Override
+            public String getMessage() {
+                return "";
+            }
+
+            @Override
+            public String getHeader(final String name) {
+                return "Retry-After".equalsIgnoreCase(name) ? retryAfter : null;
+            }
+
+            @Override
+            public InputStream getBody() {
+                return null;
+            }
+
+            @Override
+            public void release() {
+            }
+
+            @Override
+            public void abort() {
+            }
+        };
+    }
+}
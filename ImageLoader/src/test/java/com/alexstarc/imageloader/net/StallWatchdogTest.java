@@ -0,0 +1,131 @@
+package com.alexstarc.imageloader.net;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StallWatchdogTest {
+    private static final long MIN_THROUGHPUT = 1000; // bytes per second
+    /** Elapsed realtime when watch starts, 0 means there's no read in progress */
+    private static final long START = 1000; // ms
+    private static final long WINDOW = 5000; // ms
+
+    private boolean mIsAborted;
+    private StallWatchdog.Watch mWatch;
+
+    @Before
+    public void setUp() {
+        mIsAborted = false;
+        // Watch which isn't registered, so only the test checks it
+        mWatch = StallWatchdog.getInstance().new Watch(new Response() {
+            @Override
+            public int getStatus() {
+                return 200;
+            }
+
+            @Override
+            public String getMessage() {
+                return "";
+            }
+
+            @Override
+            public String getHeader(final String name) {
+                return null;
+            }
+
+            @Override
+            public InputStream getBody() {
+                return null;
+            }
+
+            @Override
+            public void release() {
+            }
+
+            @Override
+            public void abort() {
+                mIsAborted = true;
+            }
+        }, MIN_THROUGHPUT);
+    }
+
+    @Test
+    public void slowTransferIsNotJudgedBeforeWindowIsFull() {
+        read(10, START, START + WINDOW - 1);
+        mWatch.check(START + WINDOW - 1);
+
+        assertFalse(mWatch.isStalled());
+        assertFalse(mIsAborted);
+    }
+
+    @Test
+    public void slowTransferIsAbortedOnceWindowIsFull() {
+        read(WINDOW - 1, START, START + WINDOW);
+        mWatch.check(START + WINDOW);
+
+        assertTrue(mWatch.isStalled());
+        assertTrue(mIsAborted);
+    }
+
+    @Test
+    public void transferAtMinimumThroughputGoesOn() {
+        read(WINDOW, START, START + WINDOW);
+        mWatch.check(START + WINDOW);
+
+        assertFalse(mWatch.isStalled());
+    }
+
+    @Test
+    public void timeOutsideReadsIsNotCounted() {
+        read(10, START, START + WINDOW / 2);
+        // Decoding or pacing between reads
+        mWatch.check(START + 10 * WINDOW);
+        read(10, START + 10 * WINDOW, START + 10 * WINDOW + WINDOW / 2 - 1);
+        mWatch.check(START + 20 * WINDOW);
+
+        assertFalse(mWatch.isStalled());
+    }
+
+    @Test
+    public void blockedReadIsCounted() {
+        mWatch.beginRead(START);
+        mWatch.check(START + WINDOW);
+
+        assertTrue(mWatch.isStalled());
+    }
+
+    @Test
+    public void fastStartDoesNotHideLaterStall() {
+        read(100 * WINDOW, START, START + WINDOW);
+        mWatch.check(START + WINDOW);
+        read(10, START + WINDOW, START + 2 * WINDOW);
+        mWatch.check(START + 2 * WINDOW);
+
+        assertTrue(mWatch.isStalled());
+    }
+
+    @Test(expected = SocketTimeoutException.class)
+    public void readOfStalledResponseTimesOut() throws IOException {
+        mWatch.beginRead(START);
+        mWatch.check(START + WINDOW);
+
+        // Aborted connection fails with whatever error
+        mWatch.wrap(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Socket closed");
+            }
+        }).read();
+    }
+
+    private void read(final long bytes, final long start, final long end) {
+        mWatch.beginRead(start);
+        mWatch.endRead((int) bytes, end);
+    }
+}
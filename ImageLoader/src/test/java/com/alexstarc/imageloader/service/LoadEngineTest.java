@@ -0,0 +1,241 @@
+package com.alexstarc.imageloader.service;
+
+import com.alexstarc.imageloader.image.TargetSize;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LoadEngineTest {
+    private static final long WAIT = 5; // seconds
+    private static final TargetSize SIZE = new TargetSize(100, 100, TargetSize.ScaleMode.FIT);
+
+    /** Jobs taken by worker threads */
+    private final BlockingQueue<LoadJob> mStarted = new LinkedBlockingQueue<LoadJob>();
+    /** Workers are held until it's opened */
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+    private final CountDownLatch mIdle = new CountDownLatch(1);
+    private LoadEngine mEngine;
+
+    @Before
+    public void setUp() {
+        mEngine = new LoadEngine(new LoadEngine.Worker() {
+            @Override
+            public void process(final LoadJob job) {
+                mStarted.add(job);
+
+                try {
+                    mRelease.await(WAIT, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, new LoadEngine.IdleListener() {
+            @Override
+            public void onIdle() {
+                mIdle.countDown();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mRelease.countDown();
+        mEngine.shutdown();
+    }
+
+    @Test
+    public void requestsForSameImageShareJob() throws InterruptedException {
+        final LoadRequest first = request("http://a.com/1.jpg", null);
+        final LoadRequest second = request("http://a.com/1.jpg", null);
+
+        mEngine.submit(first);
+        mEngine.submit(second);
+
+        assertSame(first.getJob(), second.getJob());
+        assertEquals(2, first.getJob().getRequests().size());
+        assertSame(first.getJob(), mStarted.poll(WAIT, TimeUnit.SECONDS));
+
+        mRelease.countDown();
+
+        assertTrue(mIdle.await(WAIT, TimeUnit.SECONDS));
+        assertTrue(mStarted.isEmpty());
+    }
+
+    @Test
+    public void otherTargetSizeWaitsForDownloadOfSameUrl() throws InterruptedException {
+        final LoadRequest first = request("http://a.com/1.jpg", null);
+        final LoadRequest second = new LoadRequest("http://a.com/1.jpg",
+                new TargetSize(200, 200, TargetSize.ScaleMode.FIT), LoadRequest.PRIORITY_DEFAULT, null, null);
+        final LoadRequest other = request("http://a.com/2.jpg", null);
+
+        mEngine.submit(first);
+        mEngine.submit(second);
+        mEngine.submit(other);
+
+        assertNotSame(first.getJob(), second.getJob());
+        // Other url goes ahead, while the same url waits even though there's free slot
+        final LoadJob started = mStarted.poll(WAIT, TimeUnit.SECONDS);
+        final LoadJob otherStarted = mStarted.poll(WAIT, TimeUnit.SECONDS);
+
+        assertNotSame(started, otherStarted);
+        assertTrue(started == first.getJob() || started == other.getJob());
+        assertTrue(otherStarted == first.getJob() || otherStarted == other.getJob());
+        assertNull(mStarted.poll(100, TimeUnit.MILLISECONDS));
+
+        mRelease.countDown();
+
+        assertSame(second.getJob(), mStarted.poll(WAIT, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void jobIsKeptWhileAnyRequestWaits() throws InterruptedException {
+        final LoadRequest first = request("http://a.com/1.jpg", null);
+        final LoadRequest second = request("http://a.com/1.jpg", null);
+
+        mEngine.submit(first);
+        mEngine.submit(second);
+        final LoadJob job = mStarted.poll(WAIT, TimeUnit.SECONDS);
+
+        mEngine.cancel(first);
+
+        assertTrue(first.isCancelled());
+        assertFalse(job.isCancelled());
+        assertFalse(mEngine.isIdle());
+
+        mEngine.cancel(second);
+
+        assertTrue(job.isCancelled());
+        // Slot is released without waiting for the worker
+        assertTrue(mEngine.isIdle());
+    }
+
+    @Test
+    public void requestAfterCancelStartsNewJob() throws InterruptedException {
+        final LoadRequest first = request("http://a.com/1.jpg", null);
+
+        mEngine.submit(first);
+        mStarted.poll(WAIT, TimeUnit.SECONDS);
+        mEngine.cancel(first);
+
+        final LoadRequest second = request("http://a.com/1.jpg", null);
+
+        mEngine.submit(second);
+
+        assertNotSame(first.getJob(), second.getJob());
+        assertSame(second.getJob(), mStarted.poll(WAIT, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void cancelByTagCancelsOnlyTaggedRequests() throws InterruptedException {
+        mEngine.setLimits(1, 1);
+
+        final LoadRequest running = request("http://a.com/1.jpg", "gallery");
+        final LoadRequest pending = request("http://b.com/2.jpg", "gallery");
+        final LoadRequest other = request("http://c.com/3.jpg", "avatar");
+        // Joins pending job, which is kept for it
+        final LoadRequest joined = request("http://b.com/2.jpg", "avatar");
+
+        mEngine.submit(running);
+        mEngine.submit(pending);
+        mEngine.submit(other);
+        mEngine.submit(joined);
+        assertSame(running.getJob(), mStarted.poll(WAIT, TimeUnit.SECONDS));
+
+        mEngine.cancelByTag("gallery");
+
+        assertTrue(running.isCancelled());
+        assertTrue(pending.isCancelled());
+        assertFalse(other.isCancelled());
+        assertFalse(joined.isCancelled());
+        assertTrue(running.getJob().isCancelled());
+        assertFalse(joined.getJob().isCancelled());
+
+        // Freed slot goes to pending job right away, both left jobs are run
+        final LoadJob next = mStarted.poll(WAIT, TimeUnit.SECONDS);
+
+        assertFalse(next.isCancelled());
+        assertNull(mStarted.poll(100, TimeUnit.MILLISECONDS));
+
+        mRelease.countDown();
+
+        final LoadJob last = mStarted.poll(WAIT, TimeUnit.SECONDS);
+
+        assertNotSame(next, last);
+        assertTrue(last == joined.getJob() || last == other.getJob());
+        assertTrue(next == joined.getJob() || next == other.getJob());
+    }
+
+    @Test
+    public void runningJobsAreLimitedGlobally() throws InterruptedException {
+        mEngine.setLimits(2, 2);
+
+        mEngine.submit(request("http://a.com/1.jpg", null));
+        mEngine.submit(request("http://b.com/2.jpg", null));
+        mEngine.submit(request("http://c.com/3.jpg", null));
+
+        mStarted.poll(WAIT, TimeUnit.SECONDS);
+        mStarted.poll(WAIT, TimeUnit.SECONDS);
+
+        assertNull(mStarted.poll(100, TimeUnit.MILLISECONDS));
+
+        mRelease.countDown();
+
+        assertEquals("http://c.com/3.jpg", mStarted.poll(WAIT, TimeUnit.SECONDS).getUrl());
+    }
+
+    @Test
+    public void busyHostDoesNotHoldOtherHosts() throws InterruptedException {
+        mEngine.setLimits(4, 1);
+
+        final LoadRequest first = request("http://a.com/1.jpg", null);
+        final LoadRequest sameHost = request("http://A.com/2.jpg", null);
+        final LoadRequest otherHost = request("http://b.com/3.jpg", null);
+
+        mEngine.submit(first);
+        mEngine.submit(sameHost);
+        mEngine.submit(otherHost);
+
+        final LoadJob started = mStarted.poll(WAIT, TimeUnit.SECONDS);
+        final LoadJob otherStarted = mStarted.poll(WAIT, TimeUnit.SECONDS);
+
+        assertTrue(started == first.getJob() || started == otherHost.getJob());
+        assertTrue(otherStarted == first.getJob() || otherStarted == otherHost.getJob());
+        assertNull(mStarted.poll(100, TimeUnit.MILLISECONDS));
+
+        // Cancel of the running job frees its host slot
+        mEngine.cancel(first);
+
+        assertSame(sameHost.getJob(), mStarted.poll(WAIT, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void cancelAllMakesEngineIdle() throws InterruptedException {
+        final LoadRequest request = request("http://a.com/1.jpg", null);
+
+        mEngine.submit(request);
+        mStarted.poll(WAIT, TimeUnit.SECONDS);
+        mEngine.cancelAll();
+
+        assertTrue(request.isCancelled());
+        assertTrue(request.getJob().isCancelled());
+        assertTrue(mEngine.isIdle());
+        assertTrue(mIdle.await(WAIT, TimeUnit.SECONDS));
+    }
+
+    private static LoadRequest request(final String url, final String tag) {
+        return new LoadRequest(url, SIZE, LoadRequest.PRIORITY_DEFAULT, tag, null);
+    }
+}
@@ -0,0 +1,127 @@
+package com.alexstarc.imageloader.service;
+
+import com.alexstarc.imageloader.image.TargetSize;
+import com.alexstarc.imageloader.net.CircuitBreaker;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PrefetchPolicyTest {
+    private static final long WAIT = 5; // seconds
+    private static final TargetSize SIZE = new TargetSize(100, 100, TargetSize.ScaleMode.FIT);
+
+    /** Jobs taken by worker threads */
+    private final BlockingQueue<LoadJob> mStarted = new LinkedBlockingQueue<LoadJob>();
+    /** Workers are held until it's opened */
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+    private LoadEngine mEngine;
+    private PrefetchPolicy mPolicy;
+
+    @Before
+    public void setUp() {
+        mEngine = new LoadEngine(new LoadEngine.Worker() {
+            @Override
+            public void process(final LoadJob job) {
+                mStarted.add(job);
+
+                try {
+                    mRelease.await(WAIT, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, null);
+        mPolicy = new PrefetchPolicy(mEngine, new CircuitBreaker());
+    }
+
+    @After
+    public void tearDown() {
+        mRelease.countDown();
+        mEngine.shutdown();
+    }
+
+    @Test
+    public void backgroundDownloadGoesOnWhenNothingElseLoads() throws InterruptedException {
+        final LoadJob job = start(LoadRequest.PRIORITY_BACKGROUND, "http://a.com/1.jpg");
+
+        assertFalse(mPolicy.newPacer(job).mustHold());
+    }
+
+    @Test
+    public void backgroundDownloadIsHeldWhileForegroundRuns() throws InterruptedException {
+        final LoadJob job = start(LoadRequest.PRIORITY_BACKGROUND, "http://a.com/1.jpg");
+        final PrefetchPolicy.Pacer pacer = mPolicy.newPacer(job);
+
+        start(LoadRequest.PRIORITY_VISIBLE, "http://b.com/2.jpg");
+
+        assertTrue(pacer.mustHold());
+    }
+
+    @Test
+    public void pausedDownloadIsHeld() throws InterruptedException {
+        final LoadJob job = start(LoadRequest.PRIORITY_BACKGROUND, "http://a.com/1.jpg");
+
+        mPolicy.applyLimits(0, 0);
+
+        assertTrue(mPolicy.newPacer(job).mustHold());
+    }
+
+    @Test
+    public void pausedDownloadGoesOnForPendingForeground() throws InterruptedException {
+        final LoadJob job = start(LoadRequest.PRIORITY_BACKGROUND, "http://a.com/1.jpg");
+
+        // Foreground job waits for the slot held by background one
+        mEngine.setLimits(1, 1);
+        mEngine.submit(new LoadRequest("http://b.com/2.jpg", SIZE, LoadRequest.PRIORITY_VISIBLE, null, null));
+        mPolicy.applyLimits(0, 0);
+
+        assertTrue(mEngine.isForegroundPending());
+        assertFalse(mPolicy.newPacer(job).mustHold());
+    }
+
+    @Test
+    public void foregroundAndCancelledDownloadsAreNeverHeld() throws InterruptedException {
+        final LoadJob foreground = start(LoadRequest.PRIORITY_VISIBLE, "http://a.com/1.jpg");
+        final LoadRequest request = new LoadRequest("http://b.com/2.jpg", SIZE, LoadRequest.PRIORITY_BACKGROUND,
+                null, null);
+        final LoadJob cancelled = new LoadJob(request);
+
+        mPolicy.applyLimits(0, 0);
+        cancelled.cancel();
+
+        assertFalse(mPolicy.newPacer(foreground).mustHold());
+        assertFalse(mPolicy.newPacer(cancelled).mustHold());
+    }
+
+    @Test
+    public void downloadAheadOfBandwidthSleeps() {
+        // 64 KB read in 500 ms at 64 KB/s
+        assertEquals(500, PrefetchPolicy.getPaceDelay(64 * 1024, 64 * 1024, 500));
+        // Longer sleeps are split, so cancellation is noticed
+        assertEquals(1000, PrefetchPolicy.getPaceDelay(640 * 1024, 64 * 1024, 500));
+        assertEquals(0, PrefetchPolicy.getPaceDelay(64 * 1024, 64 * 1024, 1500));
+    }
+
+    /**
+     * @return running job of the new request
+     */
+    private LoadJob start(final int priority, final String url) throws InterruptedException {
+        final LoadRequest request = new LoadRequest(url, SIZE, priority, null, null);
+
+        mEngine.submit(request);
+        assertSame(request.getJob(), mStarted.poll(WAIT, TimeUnit.SECONDS));
+
+        return request.getJob();
+    }
+}
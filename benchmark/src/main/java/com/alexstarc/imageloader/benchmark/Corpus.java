@@ -0,0 +1,144 @@
+package com.alexstarc.imageloader.benchmark;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Fixed set of sample images. Images are generated from constant seed, so every run gets the same pixels
+ * and no binary files are kept in the repository.
+ */
+public final class Corpus {
+    /** Image sizes, from small one to the size of MainActivity test image */
+    public static final String SIZE_SMALL = "600x400";
+    public static final String SIZE_MEDIUM = "1280x960";
+    public static final String SIZE_LARGE = "2600x2400";
+
+    public static final String FORMAT_JPEG = "jpeg";
+    public static final String FORMAT_PNG = "png";
+
+    /** Same quality as used by LoaderService for rotated images */
+    public static final float JPEG_QUALITY = 0.9f;
+
+    private static final long SEED = 42;
+    private static final int NOISE = 16;
+
+    private Corpus() {
+    }
+
+    /**
+     * @param size in form "WIDTHxHEIGHT"
+     *
+     * @return width
+     */
+    public static int getWidth(final String size) {
+        return Integer.parseInt(size.substring(0, size.indexOf('x')));
+    }
+
+    /**
+     * @param size in form "WIDTHxHEIGHT"
+     *
+     * @return height
+     */
+    public static int getHeight(final String size) {
+        return Integer.parseInt(size.substring(size.indexOf('x') + 1));
+    }
+
+    /**
+     * Makes image with gradients and noise, so encoders have to do real work
+     *
+     * @param size in form "WIDTHxHEIGHT"
+     *
+     * @return generated image
+     */
+    public static BufferedImage createImage(final String size) {
+        final int width = getWidth(size);
+        final int height = getHeight(size);
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final Random random = new Random(SEED);
+        final int[] row = new int[width];
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int red = clamp(x * 255 / width + random.nextInt(NOISE));
+                final int green = clamp(y * 255 / height + random.nextInt(NOISE));
+                final int blue = clamp((x + y) * 255 / (width + height) + random.nextInt(NOISE));
+
+                row[x] = (red << 16) | (green << 8) | blue;
+            }
+
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+
+        return image;
+    }
+
+    /**
+     * @param size in form "WIDTHxHEIGHT"
+     *
+     * @return generated image pixels, ARGB row by row
+     */
+    public static int[] createPixels(final String size) {
+        final int width = getWidth(size);
+        final int height = getHeight(size);
+
+        return createImage(size).getRGB(0, 0, width, height, null, 0, width);
+    }
+
+    /**
+     * @param size in form "WIDTHxHEIGHT"
+     * @param format {@link #FORMAT_JPEG} or {@link #FORMAT_PNG}
+     *
+     * @return encoded generated image
+     *
+     * @throws IOException if image cannot be encoded
+     */
+    public static byte[] createEncoded(final String size, final String format) throws IOException {
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        encode(createImage(size), format, output);
+
+        return output.toByteArray();
+    }
+
+    /**
+     * Encodes image, JPEG is encoded with {@link #JPEG_QUALITY}
+     *
+     * @param image to encode
+     * @param format {@link #FORMAT_JPEG} or {@link #FORMAT_PNG}
+     * @param output to write encoded image to
+     *
+     * @throws IOException if image cannot be encoded
+     */
+    public static void encode(final BufferedImage image, final String format, final ByteArrayOutputStream output)
+            throws IOException {
+        final ImageWriter writer = ImageIO.getImageWritersByFormatName(format).next();
+        final ImageWriteParam param = writer.getDefaultWriteParam();
+
+        if (FORMAT_JPEG.equals(format)) {
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+        }
+
+        final ImageOutputStream imageOutput = ImageIO.createImageOutputStream(output);
+
+        try {
+            writer.setOutput(imageOutput);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+            imageOutput.close();
+        }
+    }
+
+    private static int clamp(final int value) {
+        return Math.min(255, Math.max(0, value));
+    }
+}
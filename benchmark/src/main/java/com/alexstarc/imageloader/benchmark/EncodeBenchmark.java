@@ -0,0 +1,53 @@
+package com.alexstarc.imageloader.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JPEG and PNG encoding. Bitmap.compress is not available on the JVM, so ImageIO encoders are measured instead,
+ * they show how encoding cost scales with image size and format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodeBenchmark {
+    @Param({Corpus.SIZE_SMALL, Corpus.SIZE_MEDIUM, Corpus.SIZE_LARGE})
+    public String size;
+
+    @Param({Corpus.FORMAT_JPEG, Corpus.FORMAT_PNG})
+    public String format;
+
+    private BufferedImage mImage;
+    private ByteArrayOutputStream mOutput;
+
+    @Setup
+    public void setUp() {
+        mImage = Corpus.createImage(size);
+        mOutput = new ByteArrayOutputStream(mImage.getWidth() * mImage.getHeight() * 3);
+    }
+
+    @Benchmark
+    public int encode() throws IOException {
+        mOutput.reset();
+        Corpus.encode(mImage, format, mOutput);
+
+        return mOutput.size();
+    }
+}
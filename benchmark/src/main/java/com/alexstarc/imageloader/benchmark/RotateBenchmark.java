@@ -0,0 +1,50 @@
+package com.alexstarc.imageloader.benchmark;
+
+import com.alexstarc.imageloader.image.PixelUtils;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In place 180 degrees rotation of pixels, core of RotateTransform for mutable bitmaps
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class RotateBenchmark {
+    @Param({Corpus.SIZE_SMALL, Corpus.SIZE_MEDIUM, Corpus.SIZE_LARGE})
+    public String size;
+
+    private int[] mPixels;
+    private int mWidth;
+    private int mHeight;
+
+    @Setup
+    public void setUp() {
+        mPixels = Corpus.createPixels(size);
+        mWidth = Corpus.getWidth(size);
+        mHeight = Corpus.getHeight(size);
+    }
+
+    @Benchmark
+    public int[] rotate180() {
+        // Rotation is its own inverse, so state stays valid between invocations
+        PixelUtils.rotate180(mPixels, mWidth, mHeight);
+
+        return mPixels;
+    }
+}
@@ -0,0 +1,55 @@
+package com.alexstarc.imageloader.benchmark;
+
+import com.alexstarc.imageloader.image.ImageHeader;
+import com.alexstarc.imageloader.image.TargetSize;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounds decoding from image header and sample size computation, done before every decode
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SampleSizeBenchmark {
+    /** Typical phone screen */
+    private static final TargetSize TARGET = new TargetSize(1080, 1920, TargetSize.ScaleMode.FIT);
+
+    @Param({Corpus.SIZE_SMALL, Corpus.SIZE_MEDIUM, Corpus.SIZE_LARGE})
+    public String size;
+
+    @Param({Corpus.FORMAT_JPEG, Corpus.FORMAT_PNG})
+    public String format;
+
+    private byte[] mData;
+
+    @Setup
+    public void setUp() throws IOException {
+        mData = Corpus.createEncoded(size, format);
+    }
+
+    @Benchmark
+    public int boundsAndSampleSize() throws IOException {
+        final ImageHeader header = ImageHeader.parse(new BufferedInputStream(new ByteArrayInputStream(mData)));
+
+        return TARGET.calculateInSampleSize(header.getWidth(), header.getHeight());
+    }
+}
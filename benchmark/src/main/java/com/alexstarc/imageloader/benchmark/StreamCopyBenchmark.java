@@ -0,0 +1,138 @@
+package com.alexstarc.imageloader.benchmark;
+
+import com.alexstarc.imageloader.io.BufferPool;
+import com.alexstarc.imageloader.io.Cancellable;
+import com.alexstarc.imageloader.io.ChannelOutputStream;
+import com.alexstarc.imageloader.io.StreamUtils;
+import com.alexstarc.imageloader.io.TeeInputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copy loop of LoaderService: image data read with fixed size chunks through {@link TeeInputStream} to the file,
+ * written directly to file stream or through pooled direct buffer to file channel
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class StreamCopyBenchmark {
+    private static final Cancellable NOT_CANCELLED = new Cancellable() {
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    @Param({"1024", "8192", "65536"})
+    public int bufferSize;
+
+    @Param({Corpus.SIZE_SMALL, Corpus.SIZE_MEDIUM, Corpus.SIZE_LARGE})
+    public String size;
+
+    private byte[] mData;
+    private File mSource;
+    private File mTarget;
+
+    @Setup
+    public void setUp() throws IOException {
+        mData = Corpus.createEncoded(size, Corpus.FORMAT_PNG);
+        mSource = File.createTempFile("source", ".png");
+        mTarget = File.createTempFile("target", ".png");
+
+        final FileOutputStream output = new FileOutputStream(mSource);
+
+        try {
+            output.write(mData);
+        } finally {
+            output.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        mSource.delete();
+        mTarget.delete();
+    }
+
+    @Benchmark
+    public long teeCopy() throws IOException {
+        final FileOutputStream output = new FileOutputStream(mTarget);
+        final TeeInputStream input = new TeeInputStream(new ByteArrayInputStream(mData), output, NOT_CANCELLED);
+        final byte[] buffer = new byte[bufferSize];
+
+        try {
+            //noinspection StatementWithEmptyBody
+            while (input.read(buffer) != -1) {
+                // Data is copied by input
+            }
+
+            output.flush();
+        } finally {
+            StreamUtils.close(input);
+            StreamUtils.close(output);
+        }
+
+        return input.getCount();
+    }
+
+    /**
+     * Download path of LoaderService: preallocated file written through pooled direct buffer sized for the content
+     */
+    @Benchmark
+    public long teeChannelCopy() throws IOException {
+        final BufferPool pool = BufferPool.getInstance();
+        final RandomAccessFile file = new RandomAccessFile(mTarget, "rw");
+
+        file.setLength(mData.length);
+
+        final OutputStream output = new ChannelOutputStream(file, 0, pool.chooseSize(mData.length), pool);
+        final TeeInputStream input = new TeeInputStream(new ByteArrayInputStream(mData), output, NOT_CANCELLED);
+        final byte[] buffer = new byte[bufferSize];
+
+        try {
+            //noinspection StatementWithEmptyBody
+            while (input.read(buffer) != -1) {
+                // Data is copied by input
+            }
+
+            output.flush();
+        } finally {
+            StreamUtils.close(input);
+            StreamUtils.close(output);
+        }
+
+        return input.getCount();
+    }
+
+    /**
+     * Channel copy used for lossless rotation, doesn't depend on buffer size
+     */
+    @Benchmark
+    public long channelCopy() throws IOException {
+        StreamUtils.copyFile(mSource, mTarget);
+
+        return mTarget.length();
+    }
+}